@@ -0,0 +1,881 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * The default parser, which tries the alternatives of each rule one after
+ * the other, recursively, and commits to the first one that matches.
+ * Depending on the options it is given, it can memoize the outcome of
+ * each rule at each position (packrat mode), and grow the match of
+ * left-recursive rules (left recursion mode).
+ * <p>
+ * An instance of this class holds the state of the parsing of a single
+ * string; each call to {@link CompiledGrammar#parse(String, ParseOptions)}
+ * creates its own, so that a grammar can be used by multiple threads at
+ * the same time.
+ * 
+ * @author Sylvain Hallé
+ */
+final class BacktrackingParser
+{
+	/**
+	 * The value returned by the parsing methods to indicate that a rule
+	 * does not match the input at a given position
+	 */
+	private static final int NO_MATCH = ParseTracer.NO_MATCH;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The string being parsed
+	 */
+	private final InputBuffer m_input;
+
+	/**
+	 * The tracer notified of the progress of the parsing, or <tt>null</tt>
+	 * if no tracing is done
+	 */
+	private final ParseTracer m_tracer;
+
+	/**
+	 * Maximum number of recursion steps when parsing the string
+	 */
+	private final int m_maxRecursionSteps;
+
+	/**
+	 * Whether partial parsing is enabled
+	 */
+	private final boolean m_partialParsing;
+
+	/**
+	 * Whether numbers are attached to the nodes of the parse tree
+	 */
+	private final boolean m_numberValues;
+
+	/**
+	 * Whether left-recursive rules are parsed by growing a memoized seed
+	 */
+	private final boolean m_leftRecursionMode;
+
+	/**
+	 * The table of memoized results used in packrat and left recursion
+	 * modes, or <tt>null</tt> if results are not memoized. It associates
+	 * the ID of a rule in the symbol table and an input offset with the
+	 * outcome of parsing that rule at that offset.
+	 */
+	private final MemoTable m_memo;
+
+	/**
+	 * The input of an incremental parsing, which records how far it is
+	 * read so that each memo entry knows the part of the input it depends
+	 * on; otherwise <tt>null</tt>
+	 */
+	private final TrackedCharSequence m_tracker;
+
+	/**
+	 * The left recursion being grown at each input position, in left
+	 * recursion mode
+	 */
+	private final Map<Integer,RecursionHead> m_heads;
+
+	/**
+	 * The stack of the rules being parsed in left recursion mode whose
+	 * memo entry is not known yet; a rule that is called again at the same
+	 * position while in this stack is left-recursive
+	 */
+	private LeftRecursion m_recursionStack = null;
+
+	/**
+	 * The number of times a memoized result was reused
+	 */
+	private int m_memoHits = 0;
+
+	/**
+	 * The number of times a rule had to be evaluated because no memoized
+	 * result existed
+	 */
+	private int m_memoMisses = 0;
+
+	/**
+	 * The lexer that splits the string into tokens, or <tt>null</tt> if
+	 * terminals are matched directly against the string
+	 */
+	private final Lexer m_lexer;
+
+	/**
+	 * The tokens of the string, or <tt>null</tt> if the string is not split
+	 * into tokens or if some part of it is not a token
+	 */
+	private final Lexer.Lexemes m_lexemes;
+
+	/**
+	 * The outcome of the terminals already matched at each position, or
+	 * <tt>null</tt> if terminal matches are not cached. Terminals are
+	 * designated by their type in the lexer of the grammar.
+	 */
+	private final TerminalCache m_terminalCache;
+
+	/**
+	 * Creates a new parser for a string
+	 * @param symbols The symbol table of the grammar
+	 * @param input The string to parse
+	 * @param options The options of the parsing
+	 */
+	BacktrackingParser(/*@NonNull*/ SymbolTable symbols, /*@NonNull*/ InputBuffer input, /*@NonNull*/ ParseOptions options)
+	{
+		this(symbols, input, options, null, null);
+	}
+
+	/**
+	 * Creates a new parser for a string, in packrat mode, which reuses the
+	 * memo entries of a previous parsing that are still valid for this
+	 * string
+	 * @param symbols The symbol table of the grammar
+	 * @param input The string to parse, whose text and contents are
+	 *   tracked
+	 * @param options The options of the parsing
+	 * @param memo The memo table, or <tt>null</tt> to create one if the
+	 *   options require it
+	 * @param tracker The tracked text of the input, or <tt>null</tt>
+	 * @see IncrementalParser
+	 */
+	BacktrackingParser(/*@NonNull*/ SymbolTable symbols, /*@NonNull*/ InputBuffer input, /*@NonNull*/ ParseOptions options, /*@Nullable*/ MemoTable memo, /*@Nullable*/ TrackedCharSequence tracker)
+	{
+		super();
+		m_symbols = symbols;
+		m_input = input;
+		m_tracer = options.getTracer();
+		m_maxRecursionSteps = options.getMaxRecursionSteps();
+		m_partialParsing = options.isPartialParsing();
+		m_numberValues = options.isNumberValues();
+		m_leftRecursionMode = options.isLeftRecursionMode();
+		if (memo == null && (options.isPackratMode() || m_leftRecursionMode))
+		{
+			memo = new MemoTable();
+		}
+		m_memo = memo;
+		m_tracker = tracker;
+		m_heads = m_leftRecursionMode ? new HashMap<Integer,RecursionHead>() : null;
+		m_lexer = options.isLexerMode() && !m_partialParsing ? symbols.getLexer() : null;
+		m_lexemes = m_lexer == null ? null : m_lexer.tokenize(input);
+		m_terminalCache = options.isTerminalCache() && m_lexer == null ? new TerminalCache() : null;
+	}
+
+	/**
+	 * Parses the string
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached, or if the parsing reaches a non-terminal token that has
+	 *   no rule
+	 */
+	ParseNode parse(int start_id) throws ParseException
+	{
+		ParseTracer tracer = m_tracer;
+		if (tracer != null)
+		{
+			tracer.startParse(m_input.getText());
+		}
+		// The root of the tree is attached to a placeholder parent node
+		ParseNode parent = new ParseNode();
+		boolean success = false;
+		// In lexer mode, a string with a part that is not a token does not
+		// parse
+		boolean tokenized = m_lexer == null || m_lexemes != null;
+		if (tokenized && m_leftRecursionMode)
+		{
+			// The start rule is first parsed as any other rule, so that it
+			// can be left-recursive; if it does not match the complete
+			// string, the top-level rule gets to try its other alternatives
+			int end = parse(start_id, m_input.skip(0), 1, parent);
+			success = end != NO_MATCH && m_input.isAtEnd(end);
+			if (!success)
+			{
+				parent = new ParseNode();
+			}
+		}
+		if (tokenized && !success)
+		{
+			success = parse(start_id, 0, 0, parent) != NO_MATCH;
+		}
+		if (tracer != null)
+		{
+			tracer.endParse(success);
+		}
+		return success ? parent.getChildren().get(0) : null;
+	}
+
+	/**
+	 * Gets the number of times a memoized result was reused
+	 * @return The number of memo hits
+	 */
+	/*@ pure @*/ int getMemoHits()
+	{
+		return m_memoHits;
+	}
+
+	/**
+	 * Gets the number of times a rule had to be evaluated at some position
+	 * because no memoized result existed
+	 * @return The number of memo misses
+	 */
+	/*@ pure @*/ int getMemoMisses()
+	{
+		return m_memoMisses;
+	}
+
+	/**
+	 * Gets the number of times the outcome of matching a terminal was
+	 * found in the cache
+	 * @return The number of cache hits
+	 */
+	/*@ pure @*/ int getTerminalCacheHits()
+	{
+		return m_terminalCache == null ? 0 : m_terminalCache.getHits();
+	}
+
+	/**
+	 * Gets the number of times a terminal had to be matched because the
+	 * outcome of the match was not in the cache
+	 * @return The number of cache misses
+	 */
+	/*@ pure @*/ int getTerminalCacheMisses()
+	{
+		return m_terminalCache == null ? 0 : m_terminalCache.getMisses();
+	}
+
+	/**
+	 * Parses the input string from a given position with a rule, reusing
+	 * a memoized result when packrat mode is enabled.
+	 * @param rule_id The ID of the rule to parse in the symbol table
+	 * @param position The position in the input string where parsing starts
+	 * @param level The recursion level
+	 * @param parent The node to which the parse node produced by the rule
+	 *   is appended if parsing succeeds
+	 * @return The position that follows the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if the rule does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached
+	 */
+	int parse(final int rule_id, int position, int level, ParseNode parent) throws ParseException
+	{
+		if (m_memo == null || level == 0)
+		{
+			// The top-level rule has a different success condition, and is
+			// parsed only once anyway
+			return parseAlternatives(rule_id, position, level, parent);
+		}
+		if (m_leftRecursionMode)
+		{
+			return parseLeftRecursive(rule_id, position, level, parent);
+		}
+		MemoEntry entry = m_memo.get(rule_id, position);
+		final TrackedCharSequence tracker = m_tracker;
+		if (entry != null)
+		{
+			m_memoHits++;
+			if (tracker != null)
+			{
+				tracker.extendRead(entry.m_read);
+			}
+			return useEntry(entry, position, parent);
+		}
+		m_memoMisses++;
+		int read = 0;
+		if (tracker != null)
+		{
+			// Record the characters read by this rule alone
+			read = tracker.getRead();
+			tracker.setRead(position);
+		}
+		ParseNode holder = new ParseNode();
+		int end = parseAlternatives(rule_id, position, level, holder);
+		ParseNode node = end == NO_MATCH ? null : holder.getChildren().get(0);
+		entry = new MemoEntry(node, end);
+		if (tracker != null)
+		{
+			entry.m_read = tracker.getRead();
+			tracker.extendRead(read);
+			if (node != null)
+			{
+				// The node may be reused in the trees of later versions of
+				// the input, which must not keep this version alive
+				node.copyChildTokens();
+			}
+		}
+		m_memo.put(rule_id, position, entry);
+		if (node == null)
+		{
+			return NO_MATCH;
+		}
+		parent.addChild(node);
+		return end;
+	}
+
+	/**
+	 * Parses the input string from a given position with a rule, in left
+	 * recursion mode. This follows the algorithm of Warth, Douglass and
+	 * Millstein (<i>Packrat parsers can support left recursion</i>, PEPM
+	 * 2008), which also handles rules that are left-recursive through
+	 * other rules.
+	 * @param rule_id The ID of the rule to parse in the symbol table
+	 * @param position The position in the input string where parsing starts
+	 * @param level The recursion level
+	 * @param parent The node to which the parse node produced by the rule
+	 *   is appended if parsing succeeds
+	 * @return The position that follows the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if the rule does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached
+	 */
+	private int parseLeftRecursive(final int rule_id, int position, int level, ParseNode parent) throws ParseException
+	{
+		MemoEntry entry = recall(rule_id, position, level);
+		if (entry == null)
+		{
+			m_memoMisses++;
+			LeftRecursion recursion = new LeftRecursion(rule_id, m_recursionStack);
+			m_recursionStack = recursion;
+			entry = new MemoEntry(null, NO_MATCH);
+			entry.m_recursion = recursion;
+			m_memo.put(rule_id, position, entry);
+			ParseNode holder = new ParseNode();
+			int end = parseAlternatives(rule_id, position, level, holder);
+			m_recursionStack = recursion.m_next;
+			ParseNode node = end == NO_MATCH ? null : holder.getChildren().get(0);
+			if (recursion.m_head == null)
+			{
+				// The rule did not call itself
+				entry.m_recursion = null;
+				entry.m_node = node;
+				entry.m_end = end;
+				return useEntry(entry, position, parent);
+			}
+			recursion.m_seed = new MemoEntry(node, end);
+			if (recursion.m_head.m_ruleId != rule_id)
+			{
+				// The rule is involved in the left recursion of another rule,
+				// which is the one that grows
+				return useEntry(recursion.m_seed, position, parent);
+			}
+			entry.m_recursion = null;
+			entry.m_node = node;
+			entry.m_end = end;
+			if (end == NO_MATCH)
+			{
+				return NO_MATCH;
+			}
+			return growLeftRecursion(rule_id, position, level, entry, recursion.m_head, parent);
+		}
+		m_memoHits++;
+		if (entry.m_recursion != null)
+		{
+			// The rule calls itself at the same position: mark every rule in
+			// between as involved in the recursion, and use the seed
+			LeftRecursion recursion = entry.m_recursion;
+			if (recursion.m_head == null)
+			{
+				recursion.m_head = new RecursionHead(rule_id);
+			}
+			for (LeftRecursion r = m_recursionStack; r != null && r.m_head != recursion.m_head; r = r.m_next)
+			{
+				r.m_head = recursion.m_head;
+				recursion.m_head.m_involved.set(r.m_ruleId);
+			}
+			return useEntry(recursion.m_seed, position, parent);
+		}
+		return useEntry(entry, position, parent);
+	}
+
+	/**
+	 * Gets the memoized outcome of a rule at some position, in left
+	 * recursion mode. While a left recursion is grown at that position,
+	 * the rules involved in it are parsed again (once per growth step)
+	 * instead of reusing their outcome, and the rules that are not
+	 * involved fail.
+	 * @param rule_id The ID of the rule
+	 * @param position The position
+	 * @param level The recursion level
+	 * @return The memo entry, or <tt>null</tt> if the rule must be parsed
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached
+	 */
+	private MemoEntry recall(final int rule_id, int position, int level) throws ParseException
+	{
+		MemoEntry entry = m_memo.get(rule_id, position);
+		RecursionHead head = m_heads.get(position);
+		if (head == null)
+		{
+			return entry;
+		}
+		if (entry == null && head.m_ruleId != rule_id && !head.m_involved.get(rule_id))
+		{
+			return new MemoEntry(null, NO_MATCH);
+		}
+		if (head.m_evaluate.get(rule_id))
+		{
+			head.m_evaluate.clear(rule_id);
+			ParseNode holder = new ParseNode();
+			int end = parseAlternatives(rule_id, position, level, holder);
+			if (entry == null)
+			{
+				entry = new MemoEntry(null, NO_MATCH);
+				m_memo.put(rule_id, position, entry);
+			}
+			entry.m_recursion = null;
+			entry.m_node = end == NO_MATCH ? null : holder.getChildren().get(0);
+			entry.m_end = end;
+		}
+		return entry;
+	}
+
+	/**
+	 * Grows the match of a left-recursive rule, by parsing it again as long
+	 * as its match becomes longer. Each time, the recursive call to the
+	 * rule returns the previous match, so that the tree grows by one level
+	 * per iteration.
+	 * @param rule_id The ID of the rule
+	 * @param position The position where the rule starts
+	 * @param level The recursion level
+	 * @param entry The memo entry of the rule, which contains its seed
+	 * @param head The head of the left recursion
+	 * @param parent The node to which the parse node produced by the rule
+	 *   is appended
+	 * @return The position that follows the last character consumed by the
+	 *   rule
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached
+	 */
+	private int growLeftRecursion(final int rule_id, int position, int level, MemoEntry entry, RecursionHead head, ParseNode parent) throws ParseException
+	{
+		m_heads.put(position, head);
+		while (true)
+		{
+			head.m_evaluate.clear();
+			head.m_evaluate.or(head.m_involved);
+			ParseNode holder = new ParseNode();
+			int end = parseAlternatives(rule_id, position, level, holder);
+			if (end == NO_MATCH || end <= entry.m_end)
+			{
+				break;
+			}
+			entry.m_node = holder.getChildren().get(0);
+			entry.m_end = end;
+		}
+		m_heads.remove(position);
+		return useEntry(entry, position, parent);
+	}
+
+	/**
+	 * Appends the node of a memo entry to a parent node
+	 * @param entry The memo entry
+	 * @param position The position where the rule of the entry starts
+	 * @param parent The parent node
+	 * @return The position that follows the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if the rule does not parse
+	 */
+	private static int useEntry(MemoEntry entry, int position, ParseNode parent)
+	{
+		if (entry.m_node == null)
+		{
+			return NO_MATCH;
+		}
+		if (entry.m_end == position)
+		{
+			// A node that consumes nothing could appear more than once in
+			// the same tree; give each occurrence its own copy
+			parent.addChild(entry.m_node.duplicate());
+		}
+		else
+		{
+			parent.addChild(entry.m_node);
+		}
+		return entry.m_end;
+	}
+
+	/**
+	 * Determines if the outcome of matching a terminal is cached. Literals
+	 * are not cached, since they are as cheap to match as to look up, and
+	 * neither are regular expressions with capture blocks, which must be
+	 * matched again to read these blocks.
+	 * @param tok The terminal
+	 * @param type The type of the terminal in the lexer of the grammar
+	 * @return {@code true} if the outcome of the match is cached
+	 */
+	private boolean isCached(Token tok, int type)
+	{
+		return type != Lexer.NO_TYPE && tok.getClass() != TerminalToken.class && !m_symbols.getLexer().hasCaptureBlocks(type);
+	}
+
+	private int parseAlternatives(final int rule_id, final int position, int level, ParseNode parent) throws ParseException
+	{
+		if (level > m_maxRecursionSteps)
+		{
+			throw new ParseException("Maximum number of recursion steps reached. If the input string is indeed valid, try increasing the limit.");
+		}
+		final ParseTracer tracer = m_tracer;
+		if (tracer == null)
+		{
+			return applyRule(rule_id, position, level, parent);
+		}
+		BnfRule rule = m_symbols.getRule(rule_id);
+		tracer.enterRule(rule, position, level);
+		int end = applyRule(rule_id, position, level, parent);
+		tracer.exitRule(rule, position, end, level);
+		return end;
+	}
+
+	private int applyRule(final int rule_id, final int position, int level, ParseNode parent) throws ParseException
+	{
+		final InputBuffer input = m_input;
+		final int input_end = input.getEnd();
+		final ParseTracer tracer = m_tracer;
+		final SymbolTable symbols = m_symbols;
+		final String left_hand_side = symbols.getName(rule_id);
+		final TokenString[] alternatives = symbols.getAlternatives(rule_id);
+		final Token[][] alternative_tokens = symbols.getTokens(rule_id);
+		final int[][] alternative_links = symbols.getLinks(rule_id);
+		final Lexer.Lexemes lexemes = m_lexemes;
+		final TerminalCache cache = m_terminalCache;
+		final int[][] alternative_types = lexemes == null && cache == null ? null : symbols.getLexer().getTypes(rule_id);
+		final FirstSets first_sets = symbols.getFirstSets();
+		// The first character each alternative will read; alternatives that
+		// cannot start with it are skipped. In partial parsing, any
+		// non-terminal token can also match a string starting with '<'.
+		final int first_position = input.skip(position);
+		final int first_char = first_position < input_end ? input.charAt(first_position) : -1;
+		final boolean skip_alternatives = !m_partialParsing || first_char != '<';
+		// Among the alternatives starting with a literal, only try those
+		// whose literal matches the input
+		final LiteralTrie trie = symbols.getLiteralTrie(rule_id);
+		final int[] candidates = trie == null ? null : trie.getCandidates(input.getContents(), first_position, input_end);
+		final int num_candidates = candidates == null ? alternatives.length : candidates.length;
+		ParseNode out_node = null;
+		int n_position = position;
+		boolean wrong_symbol = true;
+		boolean read_epsilon = false;
+		for (int candidate = 0; candidate < num_candidates; candidate++)
+		{
+			int alt_number = candidates == null ? candidate : candidates[candidate];
+			if (skip_alternatives && first_sets.canSkip(rule_id, alt_number, first_char, level, m_maxRecursionSteps))
+			{
+				// The alternative fails for sure
+				wrong_symbol = true;
+				continue;
+			}
+			Token[] alt_tokens = alternative_tokens[alt_number];
+			int[] alt_links = alternative_links[alt_number];
+			int[] alt_types = alternative_types == null ? null : alternative_types[alt_number];
+			if (tracer != null)
+			{
+				tracer.enterAlternative(symbols.getRule(rule_id), alternatives[alt_number], position, level);
+			}
+			out_node = new ParseNode();
+			out_node.setToken(left_hand_side);
+			out_node.setValue(left_hand_side);
+			int alt_size = alt_tokens.length;
+			int alt_index = 0;
+			n_position = position;
+			wrong_symbol = false;
+			while (alt_index < alt_size && !wrong_symbol)
+			{
+				n_position = input.skip(n_position);
+				int token_link = alt_links[alt_index];
+				int token_type = alt_types == null ? Lexer.NO_TYPE : alt_types[alt_index];
+				Token alt_tok = alt_tokens[alt_index++];
+				if (alt_tok instanceof TerminalToken)
+				{
+					if (alt_tok instanceof EpsilonTerminalToken)
+					{
+						// Epsilon always works
+						ParseNode child = new ParseNode();
+						child.setToken("");
+						out_node.addChild(child);       
+						read_epsilon = true;
+						if (tracer != null)
+						{
+							tracer.matchTerminal((TerminalToken) alt_tok, n_position, n_position, level);
+						}
+						break;
+					}
+					if (n_position >= input_end)
+					{
+						// Rule expects a token, string has no more: NO MATCH
+						wrong_symbol = true;
+						if (tracer != null)
+						{
+							tracer.matchTerminal((TerminalToken) alt_tok, n_position, NO_MATCH, level);
+						}
+						break;
+					}
+					int match_prefix_size;
+					if (lexemes != null)
+					{
+						match_prefix_size = lexemes.match(token_type, n_position);
+					}
+					else if (cache != null && isCached(alt_tok, token_type))
+					{
+						match_prefix_size = cache.get(token_type, n_position);
+						if (match_prefix_size == TerminalCache.ABSENT)
+						{
+							match_prefix_size = alt_tok.match(input.getContents(), n_position, input_end);
+							cache.put(token_type, n_position, match_prefix_size);
+						}
+					}
+					else
+					{
+						match_prefix_size = alt_tok.match(input.getContents(), n_position, input_end);
+					}
+					if (tracer != null)
+					{
+						tracer.matchTerminal((TerminalToken) alt_tok, n_position, match_prefix_size > 0 ? n_position + match_prefix_size : NO_MATCH, level);
+					}
+					if (match_prefix_size > 0)
+					{
+						ParseNode child = new ParseNode();
+						input.setToken(child, n_position, n_position + match_prefix_size);
+						n_position += match_prefix_size;
+						if (alt_tok instanceof RegexTerminalToken)
+						{
+							// In the case of a regex, create children with each capture block
+							if (lexemes != null && m_lexer.hasCaptureBlocks(token_type))
+							{
+								// Match the regex again to get its capture blocks
+								alt_tok.match(input.getContents(), n_position - match_prefix_size, input_end);
+							}
+							child = BnfParser.appendRegexChildren(child, (RegexTerminalToken) alt_tok, input);
+						}
+						else if (m_numberValues && alt_tok instanceof NumberTerminalToken)
+						{
+							((NumberTerminalToken) alt_tok).setValue(child, input.substring(n_position - match_prefix_size, n_position));
+						}
+						out_node.addChild(child);
+					}
+					else
+					{
+						// Rule expects a token, token in string does not match: NO MATCH
+						wrong_symbol = true;
+						out_node = null;
+						break;
+					}
+				}
+				else
+				{
+					// Non-terminal token: recursively try to parse it
+					String alt_tok_string = alt_tok.toString();
+					if (m_partialParsing && input.startsWith(alt_tok_string, n_position))
+					{
+						n_position += alt_tok_string.length();
+						out_node.addChild(new ParseNode(alt_tok_string));
+					}
+					else
+					{
+						if (token_link == SymbolTable.UNDEFINED)
+						{
+							// No rule found for non-terminal symbol:
+							// there is an error in the grammar
+							throw new ParseException("Cannot find rule for token " + alt_tok);
+
+						}
+						int child_end = parse(token_link, n_position, level + 1, out_node);
+						if (child_end == NO_MATCH)
+						{
+							// Parsing failed
+							wrong_symbol = true;
+							out_node = null;
+							break;
+						}
+						n_position = child_end;
+					}
+				}
+			}
+			boolean done = false;
+			boolean give_up = false;
+			if (!wrong_symbol)
+			{
+				if (alt_index == alt_size)
+				{
+					// We succeeded in parsing the complete string: done
+					done = level > 0 || input.isAtEnd(n_position);
+				}
+				else
+				{
+					// The rule expects more symbols, but there are none
+					// left in the input; set wrong_symbol back to true to
+					// force exploring the next alternative
+					wrong_symbol = true;
+					give_up = true;
+					n_position = position;
+				}
+			}
+			if (tracer != null)
+			{
+				tracer.exitAlternative(symbols.getRule(rule_id), alternatives[alt_number], position, done ? n_position : NO_MATCH, level);
+			}
+			if (done || give_up)
+			{
+				break;
+			}
+		}
+		if (wrong_symbol)
+		{
+			// None of the alternatives matched
+			return NO_MATCH;
+		}
+		// At the top level, the leading and trailing skipped content of the
+		// input counts as consumed
+		int chars_consumed = level == 0 ? input.length() - (input_end - input.skip(n_position)) : n_position - position;
+		if (chars_consumed == 0 && !read_epsilon)
+		{
+			// We did not consume anything, and the symbol was not epsilon: fail
+			return NO_MATCH;
+		}
+		if (level == 0 && !input.isAtEnd(n_position))
+		{
+			// The top-level rule must parse the complete string
+			return NO_MATCH;
+		}
+		parent.addChild(out_node);
+		return n_position;
+	}
+
+	/**
+	 * The memoized outcome of parsing a rule at some position of the input
+	 */
+	static final class MemoEntry
+	{
+		/**
+		 * The parse node produced by the rule, or <tt>null</tt> if the rule
+		 * does not parse at this position
+		 */
+		ParseNode m_node;
+
+		/**
+		 * The position that follows the last character consumed by the rule
+		 */
+		int m_end;
+
+		/**
+		 * In left recursion mode, the left recursion the rule is involved in
+		 * while its outcome is not known yet, or <tt>null</tt>
+		 */
+		LeftRecursion m_recursion = null;
+
+		/**
+		 * In an incremental parsing, the position that follows the last
+		 * character read to compute this outcome
+		 */
+		int m_read = 0;
+
+		MemoEntry(ParseNode node, int end)
+		{
+			super();
+			m_node = node;
+			m_end = end;
+		}
+	}
+
+	/**
+	 * A rule being parsed in left recursion mode, whose outcome is not
+	 * known yet
+	 */
+	private static final class LeftRecursion
+	{
+		/**
+		 * The ID of the rule
+		 */
+		final int m_ruleId;
+
+		/**
+		 * The rule that was being parsed before this one
+		 */
+		final LeftRecursion m_next;
+
+		/**
+		 * The outcome the rule gives to its recursive calls
+		 */
+		MemoEntry m_seed = new MemoEntry(null, NO_MATCH);
+
+		/**
+		 * The head of the left recursion this rule is involved in, or
+		 * <tt>null</tt> if the rule has not called itself
+		 */
+		RecursionHead m_head = null;
+
+		LeftRecursion(int rule_id, LeftRecursion next)
+		{
+			super();
+			m_ruleId = rule_id;
+			m_next = next;
+		}
+	}
+
+	/**
+	 * The rule whose match is grown in a left recursion, along with the
+	 * other rules involved in that recursion
+	 */
+	private static final class RecursionHead
+	{
+		/**
+		 * The ID of the rule whose match is grown
+		 */
+		final int m_ruleId;
+
+		/**
+		 * The IDs of the other rules involved in the recursion
+		 */
+		final BitSet m_involved = new BitSet();
+
+		/**
+		 * The IDs of the involved rules that must still be parsed again in
+		 * the current growth step
+		 */
+		final BitSet m_evaluate = new BitSet();
+
+		RecursionHead(int rule_id)
+		{
+			super();
+			m_ruleId = rule_id;
+		}
+	}
+}
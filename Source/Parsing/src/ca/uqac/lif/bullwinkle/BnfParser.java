@@ -32,17 +32,19 @@
 
 package ca.uqac.lif.bullwinkle;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ca.uqac.lif.bullwinkle.BnfRule.InvalidRuleException;
@@ -73,14 +75,10 @@ public class BnfParser implements Serializable
 	private BnfRule m_startRule;
 
 	/**
-	 * Whether the parser is set on debug mode
+	 * The tracer notified of the progress of the parsing, or <tt>null</tt>
+	 * if no tracing is done
 	 */
-	private transient boolean m_debugMode = false;
-
-	/**
-	 * Where debug info should be printed
-	 */
-	private transient Logger m_debugOut = Logger.getAnonymousLogger(); 
+	private transient ParseTracer m_tracer = null;
 
 	/**
 	 * Maximum number of recursion steps when parsing a string.
@@ -95,6 +93,92 @@ public class BnfParser implements Serializable
 	 */
 	private boolean m_partialParsing = false;
 
+	/**
+	 * Sets whether packrat parsing (memoization of the result of each
+	 * rule at each input position) is enabled
+	 */
+	private boolean m_packratMode = false;
+
+	/**
+	 * Sets whether left-recursive rules are parsed by growing a memoized
+	 * seed
+	 */
+	private boolean m_leftRecursionMode = false;
+
+	/**
+	 * Sets whether the parser uses a table-driven LL(1) parser when the
+	 * grammar allows it
+	 */
+	private boolean m_ll1Mode = true;
+
+	/**
+	 * Sets whether the parser uses Earley's algorithm instead of
+	 * backtracking over the alternatives of each rule
+	 */
+	private boolean m_earleyMode = false;
+
+	/**
+	 * Sets whether the parser generates code specialized for its grammar
+	 */
+	private boolean m_codeGeneration = false;
+
+	/**
+	 * Sets whether the input is split into tokens before it is parsed
+	 */
+	private boolean m_lexerMode = false;
+
+	/**
+	 * Sets whether terminal symbols ignore case when they are matched
+	 */
+	private boolean m_ignoreCase = false;
+
+	/**
+	 * The skipper for the content skipped before each token, as declared
+	 * by the <tt>%skip</tt> directive of the grammar
+	 */
+	private Skipper m_skipper = Skipper.WHITESPACE;
+
+	/**
+	 * Sets whether numbers are attached to the nodes of the parse tree
+	 */
+	private boolean m_numberValues = false;
+
+	/**
+	 * Whether the outcome of matching terminals is cached during parsing
+	 */
+	private boolean m_terminalCache = false;
+
+	/**
+	 * The compiled version of the rules of the parser. It is built on the
+	 * first call to {@link #parse(String)} or {@link #compile()}, and built
+	 * again whenever the rules or the start rule have changed since then.
+	 */
+	private transient CompiledGrammar m_compiled = null;
+
+	/**
+	 * The number of times a memoized result was reused during the last
+	 * call to {@link #parse(String)}
+	 */
+	private transient int m_memoHits = 0;
+
+	/**
+	 * The number of times a rule had to be evaluated because no memoized
+	 * result existed, during the last call to {@link #parse(String)}
+	 */
+	private transient int m_memoMisses = 0;
+
+	/**
+	 * The number of times the outcome of matching a terminal was found in
+	 * the cache during the last call to {@link #parse(String)}
+	 */
+	private transient int m_terminalCacheHits = 0;
+
+	/**
+	 * The number of times a terminal had to be matched because its outcome
+	 * was not in the cache, during the last call to {@link #parse(String)}
+	 */
+	private transient int m_terminalCacheMisses = 0;
+
 	/**
 	 * Creates a new empty parser with no grammar
 	 */
@@ -115,6 +199,7 @@ public class BnfParser implements Serializable
 		m_rules = new LinkedList<BnfRule>();
 		m_rules.addAll(parser.m_rules);
 		m_startRule = parser.m_startRule;
+		m_skipper = parser.m_skipper;
 	}
 
 	/**
@@ -148,11 +233,270 @@ public class BnfParser implements Serializable
 		m_partialParsing = b;
 	}
 
+	/**
+	 * Instructs the parser to perform packrat parsing. In this mode, the
+	 * outcome of parsing each rule at each position of the input string
+	 * (including failures) is recorded, so that backtracking over the
+	 * alternatives of a rule never parses the same rule at the same place
+	 * twice. For grammars whose backtracking would otherwise take
+	 * exponential time, parsing time becomes roughly linear in the length
+	 * of the input, at the price of memory proportional to that length.
+	 * The trees produced are the same as in the default mode.
+	 * @param b Set to true to enable packrat parsing
+	 */
+	public void setPackratMode(boolean b)
+	{
+		m_packratMode = b;
+	}
+
+	/**
+	 * Instructs the parser to support left-recursive rules, such as
+	 * <pre>
+	 * &lt;exp&gt; := &lt;exp&gt; + &lt;num&gt; | &lt;num&gt;
+	 * </pre>
+	 * In the default mode, such a rule calls itself until the maximum
+	 * number of recursion steps is reached. In left recursion mode, the
+	 * results of the rules are memoized as in packrat mode; when a rule
+	 * calls itself at the same position, directly or through other rules,
+	 * the recursive call first fails, which gives a first match (the
+	 * "seed") for the rule. The rule is then parsed again repeatedly, each
+	 * time with the recursive call returning the previous match, as long
+	 * as the match becomes longer. A chain of <i>n</i> operators is thus
+	 * parsed in time linear in <i>n</i> without recursing <i>n</i> times,
+	 * and produces a left-associative tree.
+	 * <p>
+	 * For grammars without left recursion, the trees produced are the same
+	 * as in the default mode.
+	 * @param b Set to true to enable left recursion mode
+	 */
+	public void setLeftRecursionMode(boolean b)
+	{
+		m_leftRecursionMode = b;
+	}
+
+	/**
+	 * Instructs the parser to use a table-driven LL(1) parser when the
+	 * grammar is LL(1), that is, when the next character of the input
+	 * always determines which alternative of a rule can match. Such a
+	 * parser never backtracks and does not recurse. Strings that it cannot
+	 * parse are given to the general parser, so that the outcome of the
+	 * parsing is always the same. The LL(1) parser is not used in partial
+	 * parsing, packrat or debug mode, or when a tracer is set. This
+	 * setting is enabled by default.
+	 * @param b Set to false to always use the general parser
+	 * @see #isLl1()
+	 */
+	public void setLl1Mode(boolean b)
+	{
+		m_ll1Mode = b;
+	}
+
+	/**
+	 * Instructs the parser to use Earley's algorithm. Rather than trying
+	 * the alternatives of each rule one after the other, this algorithm
+	 * follows all of them at the same time; its running time is at most
+	 * cubic in the length of the input for any grammar (including
+	 * ambiguous and left-recursive ones), and close to linear for
+	 * grammars that are nearly deterministic. In this mode, the maximum
+	 * number of recursion steps does not apply.
+	 * <p>
+	 * The parser then accepts any string that the grammar can produce,
+	 * including strings that the default parser rejects because it commits
+	 * to the first alternative of a rule that matches. When a string has
+	 * more than one parse tree, the one returned is obtained by giving
+	 * precedence to the alternatives of each rule in the order they are
+	 * tried in the default mode, from the root of the tree and from left
+	 * to right. Packrat and left recursion modes have no effect when this
+	 * mode is enabled.
+	 * @param b Set to true to use Earley's algorithm
+	 */
+	public void setEarleyMode(boolean b)
+	{
+		m_earleyMode = b;
+	}
+
+	/**
+	 * Instructs the parser to generate, when the grammar is compiled, a
+	 * Java class specialized for its rules, and to use it instead of
+	 * interpreting the rules. The generated parser has one method per
+	 * rule, where literal tokens and calls to other rules are written out,
+	 * and produces the same trees as the default parser. It requires the
+	 * platform to provide a Java compiler; if it does not, or if the code
+	 * cannot be generated, the rules are interpreted as usual. Generating
+	 * the code takes some time, and only pays off when the same grammar
+	 * parses many strings. A new class is generated each time the grammar
+	 * changes; the class of a previous version is unloaded once no compiled
+	 * grammar uses it. The generated parser is not used in packrat, left
+	 * recursion or Earley mode, or when a tracer is set.
+	 * @param b Set to true to generate code for the grammar
+	 * @see CompiledGrammar#isGenerated()
+	 */
+	public void setCodeGeneration(boolean b)
+	{
+		m_codeGeneration = b;
+	}
+
+	/**
+	 * Instructs the parser to split the input into tokens before parsing
+	 * it. The lexer reads the input once, and at each position produces a
+	 * token for the terminal symbol of the grammar that matches the
+	 * longest prefix of the input; when several terminals match a prefix
+	 * of the same length, literals are preferred over regular expressions,
+	 * and otherwise the terminal that appears first in the grammar. The
+	 * parser then only checks the kind of each token, instead of matching
+	 * terminals against the input each time an alternative is tried.
+	 * <p>
+	 * This changes the strings a grammar accepts, since a terminal can only
+	 * match where the lexer has produced a token for it: with terminals
+	 * <tt>a</tt>, <tt>b</tt> and <tt>^[a-z]+</tt>, the string <tt>ab</tt> is
+	 * a single token of the regular expression. A string with a part that no
+	 * terminal matches does not parse. The lexer is not used in partial
+	 * parsing or Earley mode; in this mode, the LL(1) parser and the
+	 * generated parser are not used either.
+	 * @param b Set to true to split the input into tokens
+	 * @see #getTerminalTokens()
+	 */
+	public void setLexerMode(boolean b)
+	{
+		m_lexerMode = b;
+	}
+
+	/**
+	 * Instructs the parser to ignore case when matching the terminal
+	 * symbols of its grammar. The setting belongs to this parser only, so
+	 * that parsers with different settings can be used at the same time.
+	 * <p>
+	 * The literals of the grammar are folded to lowercase when the grammar
+	 * is compiled, and its regular expressions are compiled with
+	 * {@link java.util.regex.Pattern#CASE_INSENSITIVE} and
+	 * {@link java.util.regex.Pattern#UNICODE_CASE}; each call to
+	 * {@link #parse(String)} then folds the input once, and matches
+	 * terminals against it exactly as in a grammar that is sensitive to
+	 * case. The parse tree still contains the original text of the input,
+	 * capture blocks included.
+	 * @param b Set to true to ignore case
+	 */
+	public void setIgnoreCase(boolean b)
+	{
+		m_ignoreCase = b;
+	}
+
+	/**
+	 * Instructs the parser to attach to the parse tree the value of each
+	 * number matched by a {@link NumberTerminalToken}, such as a terminal
+	 * defined by the rule <tt>&lt;num&gt; := %decimal;</tt>. The value can
+	 * then be read with {@link ParseNode#getLongValue()} or
+	 * {@link ParseNode#getDoubleValue()}, instead of parsing the text of
+	 * the node again.
+	 * @param b Set to true to attach numbers
+	 */
+	public void setNumberValues(boolean b)
+	{
+		m_numberValues = b;
+	}
+
+	/**
+	 * Instructs the parser to cache the outcome of matching each terminal
+	 * at each position of the input. When the parser backtracks, the
+	 * alternatives it tries next often start by matching a terminal that
+	 * was already matched at the same position; with the cache, a costly
+	 * terminal such as a regular expression is only matched once there.
+	 * The cache belongs to a single call to {@link #parse(String)}, and
+	 * unlike {@linkplain #setPackratMode(boolean) packrat mode}, it does not
+	 * record the outcome of rules. Literals, which are as cheap to match
+	 * as to look up, and regular expressions with capture blocks are not
+	 * cached. The cache is not used when the input is parsed by the LL(1)
+	 * parser or in lexer mode, which never match a terminal twice at the
+	 * same position.
+	 * @param b Set to true to cache the outcome of matching terminals
+	 * @see #getTerminalCacheHits()
+	 */
+	public void setTerminalCache(boolean b)
+	{
+		m_terminalCache = b;
+	}
+
+	/**
+	 * Determines if the grammar of this parser is LL(1)
+	 * @return {@code true} if the grammar is LL(1), {@code false} otherwise
+	 * @see #getLl1Conflicts()
+	 */
+	public boolean isLl1()
+	{
+		return getCompiledGrammar().isLl1();
+	}
+
+	/**
+	 * Gets a description of each conflict that prevents the grammar of this
+	 * parser from being LL(1). Each conflict names the rule and the
+	 * alternatives involved, for example:
+	 * <pre>
+	 * &lt;exp&gt;: alternatives '( &lt;exp&gt; )' and '( &lt;op&gt; )' can both start with '('
+	 * </pre>
+	 * @return The list of conflicts, which is empty if the grammar is LL(1)
+	 */
+	public /*@NonNull*/ List<String> getLl1Conflicts()
+	{
+		return getCompiledGrammar().getLl1Conflicts();
+	}
+
+	/**
+	 * Gets the number of times a memoized result was reused during the last
+	 * call to {@link #parse(String)}. This value is always 0 when packrat
+	 * mode is disabled.
+	 * @return The number of memo hits
+	 */
+	/*@ pure @*/ public int getMemoHits()
+	{
+		return m_memoHits;
+	}
+
+	/**
+	 * Gets the number of times a rule had to be evaluated at some position
+	 * because no memoized result existed, during the last call to
+	 * {@link #parse(String)}. This value is always 0 when packrat mode is
+	 * disabled.
+	 * @return The number of memo misses
+	 */
+	/*@ pure @*/ public int getMemoMisses()
+	{
+		return m_memoMisses;
+	}
+
+	/**
+	 * Gets the number of times the outcome of matching a terminal was
+	 * found in the cache during the last call to {@link #parse(String)}.
+	 * This value is always 0 when the terminal cache is disabled.
+	 * @return The number of cache hits
+	 * @see #setTerminalCache(boolean)
+	 */
+	/*@ pure @*/ public int getTerminalCacheHits()
+	{
+		return m_terminalCacheHits;
+	}
+
+	/**
+	 * Gets the number of times a terminal had to be matched because the
+	 * outcome of the match was not in the cache, during the last call to
+	 * {@link #parse(String)}. This value is always 0 when the terminal
+	 * cache is disabled.
+	 * @return The number of cache misses
+	 * @see #setTerminalCache(boolean)
+	 */
+	/*@ pure @*/ public int getTerminalCacheMisses()
+	{
+		return m_terminalCacheMisses;
+	}
+
 	/**
 	 * Whether the matching is sensitive to case. This is a program-wide
-	 * value
+	 * value, which only affects the comparison of tokens with
+	 * {@link Token#matches(Token)}
 	 * @param b True if parsing is case-sensitive, false otherwise
+	 * @deprecated Use {@link #setIgnoreCase(boolean)}, which applies to a
+	 * single parser
 	 */
+	@Deprecated
 	public static void setCaseSensitive(boolean b)
 	{
 		Token.setCaseSensitive(b);
@@ -178,19 +522,30 @@ public class BnfParser implements Serializable
 	 */
 	public void setDebugMode(boolean b)
 	{
-		m_debugMode = b;
+		setDebugMode(b, Logger.getAnonymousLogger());
 	}
 
 	/**
 	 * Sets the parser into "debug mode". This will print information messages
-	 * about the status of the parsing in some print stream.
+	 * about the status of the parsing in some print stream. Debug mode
+	 * replaces any tracer set with {@link #setTracer(ParseTracer)}.
 	 * @param b Set to <code>true</code> to enable debug mode
 	 * @param out A logger to log the information
 	 */
 	public void setDebugMode(boolean b, /*@ non_null @*/ Logger out)
 	{
-		m_debugMode = b;
-		m_debugOut = out;
+		m_tracer = b ? new LoggingTracer(out) : null;
+	}
+
+	/**
+	 * Sets the tracer that is notified of each step of the parsing. By
+	 * default, a parser has no tracer, and does not spend any time
+	 * describing what it does.
+	 * @param tracer The tracer, or <tt>null</tt> to disable tracing
+	 */
+	public void setTracer(/*@Nullable*/ ParseTracer tracer)
+	{
+		m_tracer = tracer;
 	}
 	
 	/**
@@ -262,15 +617,26 @@ public class BnfParser implements Serializable
 	}
 
 	/**
-	 * Sets the parser's grammar from a string
+	 * Sets the parser's grammar from a string. Besides rules, the grammar
+	 * can contain a <tt>%skip</tt> directive, which declares the content
+	 * skipped before each token, such as whitespace and comments:
+	 * <pre>
+	 * %skip whitespace line // block /* *&#47; ;
+	 * </pre>
+	 * Without this directive, the parser skips whitespace only; with
+	 * <tt>%skip none ;</tt>, it skips nothing. See {@link Skipper} for
+	 * the syntax of the directive.
 	 * @param grammar The string containing the grammar to be used
 	 * @throws InvalidGrammarException Thrown if the grammar string is
 	 *   invalid
 	 */
 	public void setGrammar(String grammar) throws InvalidGrammarException
 	{
-		List<BnfRule> rules = getRules(grammar);
-		addRules(rules);
+		if (grammar == null)
+		{
+			throw new InvalidGrammarException("Null argument given");
+		}
+		setGrammar(new Scanner(grammar));
 	}
 	
 	/**
@@ -278,11 +644,17 @@ public class BnfParser implements Serializable
 	 * @param scanner A scanner containing the grammar to be used
 	 * @throws InvalidGrammarException Thrown if the grammar string is
 	 *   invalid
+	 * @see #setGrammar(String)
 	 */
 	public void setGrammar(Scanner scanner) throws InvalidGrammarException
 	{
-		List<BnfRule> rules = getRules(scanner);
+		List<BnfRule> rules = new LinkedList<BnfRule>();
+		Skipper skipper = readGrammar(scanner, rules);
 		addRules(rules);
+		if (skipper != null)
+		{
+			m_skipper = skipper;
+		}
 	}
 
 
@@ -304,7 +676,9 @@ public class BnfParser implements Serializable
 	}
 
 	/**
-	 * Converts a string source into a list of grammar rules
+	 * Converts a string source into a list of grammar rules. A
+	 * <tt>%skip</tt> directive in the grammar is checked, but is not part
+	 * of the rules.
 	 * @param scanner A scanner open on a string containing the
 	 *  grammar to be used
 	 * @return A list of grammar rules
@@ -314,6 +688,23 @@ public class BnfParser implements Serializable
 	public static List<BnfRule> getRules(Scanner scanner) throws InvalidGrammarException
 	{
 		List<BnfRule> rules = new LinkedList<BnfRule>();
+		readGrammar(scanner, rules);
+		return rules;
+	}
+
+	/**
+	 * Reads the rules and the directives of a grammar
+	 * @param scanner A scanner open on a string containing the
+	 *  grammar to be used
+	 * @param rules The list to which the rules are added
+	 * @return The skipper declared by the last <tt>%skip</tt> directive of
+	 *   the grammar, or <tt>null</tt> if there is none
+	 * @throws InvalidGrammarException Thrown if the grammar string is
+	 *   invalid
+	 */
+	private static Skipper readGrammar(Scanner scanner, List<BnfRule> rules) throws InvalidGrammarException
+	{
+		Skipper skipper = null;
 		StringBuilder current_rule_builder = new StringBuilder();
 		while (scanner.hasNextLine())
 		{
@@ -338,14 +729,27 @@ public class BnfParser implements Serializable
 				{
 					// Remove semi-colon
 					current_rule = current_rule.trim();
-					BnfRule new_rule = BnfRule.parseRule(current_rule.substring(0, current_rule.length() - 1));
-					rules.add(new_rule);
+					current_rule = current_rule.substring(0, current_rule.length() - 1);
+					if (current_rule.startsWith(Skipper.DIRECTIVE))
+					{
+						skipper = Skipper.parse(current_rule);
+					}
+					else
+					{
+						BnfRule new_rule = BnfRule.parseRule(current_rule);
+						rules.add(new_rule);
+					}
 				}
 				catch (InvalidRuleException e)
 				{
 					scanner.close();
 					throw new InvalidGrammarException(e);
 				}
+				catch (InvalidGrammarException e)
+				{
+					scanner.close();
+					throw e;
+				}
 				current_rule_builder.setLength(0);
 			}
 		}
@@ -354,7 +758,7 @@ public class BnfParser implements Serializable
 		{
 			throw new InvalidGrammarException("Error parsing rule " + current_rule_builder.toString());
 		}
-		return rules;
+		return skipper;
 	}
 	
 	/**
@@ -469,7 +873,163 @@ public class BnfParser implements Serializable
 	 */
 	public /*@NonNull*/ ParseNode parse(final String input) throws ParseException
 	{
-		MutableString n_input = new MutableString(input);
+		return parse((CharSequence) input);
+	}
+
+	/**
+	 * Parses a part of an array of characters, such as a buffer taken from
+	 * a pool, without copying it into a string. The tokens of the nodes of
+	 * the resulting tree are copied out of the array the first time they
+	 * are read; until then, the array must not be modified.
+	 * @param input The array
+	 * @param offset The position of the first character to parse
+	 * @param length The number of characters to parse
+	 * @return The root of the resulting parsing tree
+	 * @throws ParseException Thrown if the characters do not follow the
+	 *   grammar
+	 */
+	public /*@NonNull*/ ParseNode parse(final char[] input, final int offset, final int length) throws ParseException
+	{
+		return parse(new CharArraySequence(input, offset, length));
+	}
+
+	/**
+	 * Parses the contents of a file. The file is read through a memory
+	 * mapping instead of being loaded into a string: its characters are
+	 * only read, and decoded if needed, when the parser looks at them, so
+	 * that the heap used to parse a large file depends on the size of its
+	 * parse tree rather than on the size of the file. This is also the case
+	 * when the grammar {@linkplain #setIgnoreCase(boolean) ignores case},
+	 * since the characters of the file are then folded as they are read,
+	 * and not in a copy of the file. A file encoded in
+	 * ISO-8859-1, or only made of ASCII characters, is read without any
+	 * decoding. The file can be at most 2 GiB long, and must not be
+	 * modified while the parse tree is in use.
+	 * @param path The path of the file
+	 * @param charset The encoding of the file
+	 * @return The root of the resulting parsing tree
+	 * @throws ParseException Thrown if the file does not follow the grammar
+	 * @throws IOException Thrown if the file cannot be read, or if it is
+	 *   larger than 2 GiB
+	 */
+	public /*@NonNull*/ ParseNode parse(final Path path, final Charset charset) throws ParseException, IOException
+	{
+		return parse(MappedCharSequence.map(path, charset));
+	}
+
+	/**
+	 * Parses a sequence of characters, such as a {@link StringBuilder} or a
+	 * {@link java.nio.CharBuffer}, without copying it into a string. The
+	 * sequence is read in place while it is parsed, and the tokens of the
+	 * nodes of the resulting tree are copied out of it the first time they
+	 * are read; until then, the sequence must not be modified.
+	 * @param input The sequence to parse
+	 * @return The root of the resulting parsing tree
+	 * @throws ParseException Thrown if the sequence does not follow the
+	 *   grammar
+	 */
+	public /*@NonNull*/ ParseNode parse(final CharSequence input) throws ParseException
+	{
+		ParseOptions options = getParseOptions();
+		int[] counts = new int[4];
+		try
+		{
+			CompiledGrammar compiled = getCompiledGrammar();
+			return compiled.parse(compiled.newBuffer(input), options, counts);
+		}
+		finally
+		{
+			m_memoHits = counts[0];
+			m_memoMisses = counts[1];
+			m_terminalCacheHits = counts[2];
+			m_terminalCacheMisses = counts[3];
+		}
+	}
+
+	/**
+	 * Parses a sequence of characters without building its parse tree;
+	 * its structure is instead given to a handler while it is parsed, so
+	 * that the memory used does not grow with the size of the tree. The
+	 * parsing is always done in the default mode, whatever mode is set
+	 * on this parser.
+	 * @param input The sequence to parse
+	 * @param handler The handler receiving the events of the parsing
+	 * @return {@code true} if the sequence follows the grammar,
+	 *   {@code false} otherwise
+	 * @throws ParseException Thrown if the grammar has no start rule, if
+	 *   the maximum number of recursion steps is reached, or if the
+	 *   parsing reaches a non-terminal token that has no rule
+	 * @see ParseEventHandler
+	 */
+	public boolean parse(final CharSequence input, final ParseEventHandler handler) throws ParseException
+	{
+		ParseOptions options = getParseOptions();
+		return getCompiledGrammar().parse(input, options, handler);
+	}
+
+	/**
+	 * Parses, one after the other, the documents read from a source that
+	 * holds many documents separated by a delimiter, such as a file with
+	 * one expression per line. The source is read through a buffer that
+	 * holds one document at a time, so that the memory used does not
+	 * depend on the size of the source. The documents are parsed with the
+	 * current rules and settings of this parser; changing them afterwards
+	 * has no effect on the documents read.
+	 * @param reader The source of the documents
+	 * @param delimiter The string that separates two documents
+	 * @return A reader that gives the parse tree of each document, as an
+	 *   iterator or as a stream
+	 * @throws ParseException Thrown if the grammar has no start rule
+	 * @see DocumentReader
+	 */
+	public /*@NonNull*/ DocumentReader parseDocuments(final Reader reader, final String delimiter) throws ParseException
+	{
+		ParseOptions options = getParseOptions();
+		return getCompiledGrammar().documents(reader, delimiter, options);
+	}
+
+	/**
+	 * Creates a parser to which a string is given in chunks, such as the
+	 * parts of a message received from a network connection. Each chunk is
+	 * parsed as soon as it is given, so that the tree is ready shortly
+	 * after the last chunk arrives, and a string that does not follow the
+	 * grammar is rejected as soon as possible. The parsing is done in
+	 * Earley mode, with the current rules of this parser.
+	 * @return The push parser
+	 * @throws ParseException Thrown if the grammar has no start rule, or
+	 *   if partial parsing is enabled
+	 * @see PushParser
+	 */
+	public /*@NonNull*/ PushParser newPushParser() throws ParseException
+	{
+		ParseOptions options = getParseOptions();
+		return getCompiledGrammar().newPushParser(options);
+	}
+
+	/**
+	 * Creates a parser for a string that is edited, such as the contents of
+	 * a text editor. After each edit, the parser only parses again the
+	 * part of the string that the edit affects, reusing the subtrees of the
+	 * rest. The parsing is done in packrat mode, with the current rules of
+	 * this parser.
+	 * @return The incremental parser, for an empty string
+	 * @throws ParseException Thrown if the grammar has no start rule
+	 * @see IncrementalParser
+	 */
+	public /*@NonNull*/ IncrementalParser newIncrementalParser() throws ParseException
+	{
+		ParseOptions options = getParseOptions();
+		return getCompiledGrammar().newIncrementalParser(options);
+	}
+
+	/**
+	 * Gets the options of a parsing with the current settings of this
+	 * parser, setting the start rule to the first rule if none was given
+	 * @return The options
+	 * @throws ParseException Thrown if the grammar has no rule
+	 */
+	ParseOptions getParseOptions() throws ParseException
+	{
 		if (m_startRule == null)
 		{
 			if (m_rules.isEmpty())
@@ -479,150 +1039,58 @@ public class BnfParser implements Serializable
 			// If no start rule was specified, take first rule of the list as default
 			m_startRule = m_rules.peekFirst();
 		}
-		return parse(m_startRule, n_input, 0);
+		return new ParseOptions()
+				.setPartialParsing(m_partialParsing)
+				.setMaxRecursionSteps(m_maxRecursionSteps)
+				.setPackratMode(m_packratMode)
+				.setLeftRecursionMode(m_leftRecursionMode)
+				.setEarleyMode(m_earleyMode)
+				.setLl1Mode(m_ll1Mode)
+				.setLexerMode(m_lexerMode)
+				.setNumberValues(m_numberValues)
+				.setTerminalCache(m_terminalCache)
+				.setTracer(m_tracer);
 	}
 
-	private /*@Nullable*/ ParseNode parse(final BnfRule rule, MutableString input, int level) throws ParseException
+	/**
+	 * Compiles the current rules of this parser into a grammar that can be
+	 * used for parsing by multiple threads at the same time. The compiled
+	 * grammar is not affected by later changes to the rules or to the
+	 * settings of this parser; the settings are instead given as
+	 * {@link ParseOptions} to each call to
+	 * {@link CompiledGrammar#parse(String, ParseOptions)}.
+	 * @return The compiled grammar
+	 */
+	public /*@NonNull*/ CompiledGrammar compile()
 	{
-		if (level > m_maxRecursionSteps)
-		{
-			throw new ParseException("Maximum number of recursion steps reached. If the input string is indeed valid, try increasing the limit.");
-		}
-		ParseNode out_node = null;
-		MutableString n_input = new MutableString(input);
-		boolean wrong_symbol = true;
-		boolean read_epsilon = false;
-		log("Considering input '" + input + "' with rule " + rule, level);
-		for (TokenString alt : rule.getAlternatives())
-		{
-			log("Alternative " + alt, level);
-			out_node = new ParseNode();
-			NonTerminalToken left_hand_side = rule.getLeftHandSide();
-			out_node.setToken(left_hand_side.toString());
-			out_node.setValue(left_hand_side.toString());
-			TokenString new_alt = alt.getCopy();
-			Iterator<Token> alt_it = new_alt.iterator();
-			n_input = new MutableString(input);
-			wrong_symbol = false;
-			while (alt_it.hasNext() && !wrong_symbol)
-			{
-				n_input.trim();
-				Token alt_tok = alt_it.next();
-				if (alt_tok instanceof TerminalToken)
-				{
-					if (alt_tok instanceof EpsilonTerminalToken)
-					{
-						// Epsilon always works
-						ParseNode child = new ParseNode();
-						child.setToken("");
-						out_node.addChild(child);       
-						read_epsilon = true;
-						break;
-					}
-					if (n_input.isEmpty())
-					{
-						// Rule expects a token, string has no more: NO MATCH
-						wrong_symbol = true;
-						break;
-					}
-					int match_prefix_size = alt_tok.match(n_input.toString());
-					if (match_prefix_size > 0)
-					{
-						ParseNode child = new ParseNode();
-						MutableString input_tok = n_input.truncateSubstring(0, match_prefix_size);
-						if (alt_tok instanceof RegexTerminalToken)
-						{
-							// In the case of a regex, create children with each capture block
-							child = appendRegexChildren(child, (RegexTerminalToken) alt_tok, input_tok);
-						}
-						child.setToken(input_tok.toString());
-						out_node.addChild(child);
-					}
-					else
-					{
-						// Rule expects a token, token in string does not match: NO MATCH
-						wrong_symbol = true;
-						out_node = null;
-						log("FAILED parsing with case " + new_alt, level);
-						break;
-					}
-				}
-				else
-				{
-					ParseNode child = null;
-					// Non-terminal token: recursively try to parse it
-					String alt_tok_string = alt_tok.toString();
-					if (m_partialParsing && n_input.startsWith(alt_tok_string))
-					{
-						n_input.truncateSubstring(0, alt_tok_string.length());
-						child = new ParseNode(alt_tok_string);
-					}
-					else
-					{
-						BnfRule new_rule = getRule(alt_tok);
-						if (new_rule == null)
-						{
-							// No rule found for non-terminal symbol:
-							// there is an error in the grammar
-							throw new ParseException("Cannot find rule for token " + alt_tok);
-
-						}
-						child = parse(new_rule, n_input, level + 1);
-						if (child == null)
-						{
-							// Parsing failed
-							wrong_symbol = true;
-							out_node = null;
-							log("FAILED parsing input " + input + " with rule " + rule, level);
-							break;
-						}
-					}
-					out_node.addChild(child);
-				}
-			}
-			if (!wrong_symbol)
-			{
-				if (!alt_it.hasNext())
-				{
-					// We succeeded in parsing the complete string: done
-					if (level > 0 || (level == 0 && n_input.toString().trim().length() == 0))
-					{
-						break;
-					}
-				}
-				else
-				{
-					// The rule expects more symbols, but there are none
-					// left in the input; set wrong_symbol back to true to
-					// force exploring the next alternative
-					wrong_symbol = true;
-					n_input = new MutableString(input);
-					log("No symbols left in input; will explore next alternative", level);
-					break;
-				}
-			}
-		}
-		int chars_consumed = input.length() - n_input.length();
-		if (wrong_symbol)
+		return getCompiledGrammar();
+	}
+
+	/**
+	 * Gets the compiled version of the current rules of the parser,
+	 * compiling them again if these rules or the start rule have changed
+	 * since they were last compiled, if code generation or case folding
+	 * has been enabled or disabled, or if the content to skip has changed
+	 * @return The compiled grammar
+	 */
+	private CompiledGrammar getCompiledGrammar()
+	{
+		BnfRule start_rule = m_startRule;
+		if (start_rule == null)
 		{
-			// We did not consume anything, and the symbol was not epsilon: fail
-			log("FAILED: expected more symbols with rule " + rule, level);
-			return null;    	
+			start_rule = m_rules.peekFirst();
 		}
-		if (chars_consumed == 0 && !read_epsilon)
+		CompiledGrammar compiled = m_compiled;
+		if (compiled == null || !compiled.getSymbols().isUpToDate(m_rules) || compiled.getSymbols().isIgnoreCase() != m_ignoreCase || compiled.getSymbols().getSkipper() != m_skipper)
 		{
-			// We did not consume anything, and the symbol was not epsilon: fail
-			log("FAILED: did not consume anything of " + input + " with rule " + rule, level);
-			return null;
+			compiled = new CompiledGrammar(new SymbolTable(m_rules, m_ignoreCase, m_skipper), start_rule, m_codeGeneration);
 		}
-		input.truncateSubstring(chars_consumed);
-		if (level == 0 && !input.isEmpty())
+		else if (compiled.getStartRule() != start_rule || compiled.isGenerated() != (m_codeGeneration && compiled.getSymbols().getGeneratedParser() != null))
 		{
-			// The top-level rule must parse the complete string
-			log("FAILED: The top-level rule must parse the complete string", level);
-			return null;
+			compiled = new CompiledGrammar(compiled.getSymbols(), start_rule, m_codeGeneration);
 		}
-		return out_node;
+		m_compiled = compiled;
+		return compiled;
 	}
 
 	private BnfRule getRule(/* @NonNull */ final Token tok)
@@ -642,6 +1110,10 @@ public class BnfParser implements Serializable
 		return null;
 	}
 
+	/**
+	 * Gets the terminal tokens occurring in the rules of this parser
+	 * @return The set of terminal tokens
+	 */
 	public Set<TerminalToken> getTerminalTokens()
 	{
 		Set<TerminalToken> out = new HashSet<TerminalToken>();
@@ -652,16 +1124,26 @@ public class BnfParser implements Serializable
 		return out;
 	}
 
-	private void log(String message, int level)
+	/**
+	 * In the case where the parsing matches a regex terminal node, creates
+	 * children to the parse node representing the contents of each capture
+	 * block in the regex, if any. The capture blocks are those of the last
+	 * match of the token by the current thread, which must be the match that
+	 * produced the node.
+	 * @param node The parse node
+	 * @param tok The terminal token that matches the string
+	 * @param input The input buffer against which the token was matched
+	 * @return The input node, to which children may have been appended 
+	 */
+	static ParseNode appendRegexChildren(ParseNode node, RegexTerminalToken tok, InputBuffer input)
 	{
-		StringBuilder out = new StringBuilder();
-		if (m_debugMode)
+		List<String> blocks = tok.getLastCaptureBlocks(input);
+		for (String block : blocks)
 		{
-			for (int i = 0; i < level; i++)
-				out.append("  ");
-			out.append(message);
-			m_debugOut.log(Level.INFO, "{0}", out.toString());
+			ParseNode pn = new CaptureBlockParseNode(block);
+			node.addChild(pn);
 		}
+		return node;
 	}
 
 	/**
@@ -675,7 +1157,21 @@ public class BnfParser implements Serializable
 	 */
 	protected static ParseNode appendRegexChildren(ParseNode node, RegexTerminalToken tok, MutableString s)
 	{
-		List<String> blocks = tok.getCaptureBlocks(s.toString());
+		return appendRegexChildren(node, tok, s.toString());
+	}
+
+	/**
+	 * In the case where the parsing matches a regex terminal node, creates
+	 * children to the parse node representing the contents of each capture
+	 * block in the regex, if any.
+	 * @param node The parse node
+	 * @param tok The terminal token that matches the string
+	 * @param s The string that was matched
+	 * @return The input node, to which children may have been appended 
+	 */
+	protected static ParseNode appendRegexChildren(ParseNode node, RegexTerminalToken tok, String s)
+	{
+		List<String> blocks = tok.getCaptureBlocks(s);
 		for (String block : blocks)
 		{
 			ParseNode pn = new CaptureBlockParseNode(block);
@@ -684,6 +1180,7 @@ public class BnfParser implements Serializable
 		return node;
 	}
 
+
 	public static class InvalidGrammarException extends EmptyException
 	{
 		/**
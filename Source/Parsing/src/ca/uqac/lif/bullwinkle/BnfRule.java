@@ -68,6 +68,12 @@ public class BnfRule implements Serializable
 	 */
 	private NonTerminalToken m_leftHandSide;
 
+	/**
+	 * The number of times the rule has been modified since its creation,
+	 * not counting the modifications made to its alternatives
+	 */
+	private transient int m_modifications = 0;
+
 	/**
 	 * Creates a new empty BNF rule
 	 */
@@ -106,6 +112,13 @@ public class BnfRule implements Serializable
 			alternative_to_add.add(to_add);
 			out.addAlternative(alternative_to_add);
 		}
+		else if (NumberTerminalToken.Format.forName(lr[1].trim()) != null)
+		{
+			// This is a number line
+			TokenString alternative_to_add = new TokenString();
+			alternative_to_add.add(new NumberTerminalToken(NumberTerminalToken.Format.forName(lr[1].trim())));
+			out.addAlternative(alternative_to_add);
+		}
 		else
 		{
 			// Anything but a regex line
@@ -182,6 +195,7 @@ public class BnfRule implements Serializable
 	void setLeftHandSide(final NonTerminalToken t)
 	{
 		m_leftHandSide = t;
+		m_modifications++;
 	}
 
 	/**
@@ -191,6 +205,7 @@ public class BnfRule implements Serializable
 	void addAlternative(/* @NonNull */ final TokenString ts)
 	{
 		m_alternatives.add(ts);
+		m_modifications++;
 	}
 
 	/**
@@ -201,10 +216,13 @@ public class BnfRule implements Serializable
 	void addAlternative(int index, /* @NonNull */ final TokenString ts)
 	{
 		m_alternatives.add(index, ts);
+		m_modifications++;
 	}
 
 	/**
-	 * Retrieves the list of all the alternatives that this rule defines
+	 * Retrieves the list of all the alternatives that this rule defines.
+	 * The list is a copy, but its elements are the token strings of the
+	 * rule: modifying one of them modifies the rule.
 	 * @return A list of alternatives, each of which is a string of tokens
 	 *   (either terminal or non-terminal)
 	 */
@@ -236,6 +254,23 @@ public class BnfRule implements Serializable
 		return m_leftHandSide;
 	}
 
+	/**
+	 * Gets the number of times the rule has been modified since its
+	 * creation, including the modifications made to the token strings of
+	 * its alternatives. Parsers use this value to detect that their
+	 * compiled version of the rule is out of date.
+	 * @return The number of modifications
+	 */
+	/*@ pure @*/ int getModificationCount()
+	{
+		int count = m_modifications;
+		for (TokenString ts : m_alternatives)
+		{
+			count += ts.getModificationCount();
+		}
+		return count;
+	}
+
 	/**
 	 * Interprets UTF-8 escaped characters and converts them back into
 	 * a UTF-8 string. The solution used here (going through a
@@ -299,6 +334,7 @@ public class BnfRule implements Serializable
 	public void addAlternatives(Collection<TokenString> alternatives)
 	{
 		m_alternatives.addAll(alternatives);
+		m_modifications++;
 	}
 
 	/**
@@ -314,6 +350,7 @@ public class BnfRule implements Serializable
 		{
 			m_alternatives.add(position, alt);
 		}
+		m_modifications++;
 	}
 
 	/**
@@ -33,16 +33,31 @@
 
 package ca.uqac.lif.bullwinkle;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ca.uqac.lif.bullwinkle.BnfParser.InvalidGrammarException;
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+import ca.uqac.lif.bullwinkle.DocumentReader.DocumentException;
 import ca.uqac.lif.bullwinkle.ParseNodeVisitor.VisitException;
 import ca.uqac.lif.bullwinkle.output.GraphvizVisitor;
 import ca.uqac.lif.bullwinkle.output.IndentedTextVisitor;
@@ -75,7 +90,10 @@ public class BullwinkleCli
 	/*
 	 * Command line argument constants
 	 */
+	private static final String P_BATCH = "batch";
+	private static final String P_DELIMITER = "delimiter";
 	private static final String P_FORMAT = "format";
+	private static final String P_THREADS = "threads";
 	private static final String P_HELP = "help";
 	private static final String P_VERBOSITY = "verbosity";
 	private static final String P_VERSION = "version";
@@ -85,6 +103,12 @@ public class BullwinkleCli
 	 */
 	protected static final String VERSION_STRING = BullwinkleCli.class.getPackage().getImplementationVersion();
 
+	/**
+	 * In batch mode, the number of records per worker thread that can be
+	 * parsed ahead of the record being printed
+	 */
+	private static final int BATCH_WINDOW = 64;
+
 	private BullwinkleCli()
 	{
 		throw new IllegalAccessError("Main class");
@@ -108,6 +132,8 @@ public class BullwinkleCli
 		String output_format = "xml";
 		String grammar_filename = null;
 		String filename_to_parse = null;
+		String delimiter = "\n";
+		int threads = Runtime.getRuntime().availableProcessors();
 
 		// Parse command line arguments
 		CliParser cli_parser = setupOptions();
@@ -144,6 +170,31 @@ public class BullwinkleCli
 		{
 			output_format = c_line.getOptionValue(P_FORMAT);
 		}
+		if (c_line.hasOption(P_DELIMITER))
+		{
+			delimiter = unescape(c_line.getOptionValue(P_DELIMITER));
+			if (delimiter.isEmpty())
+			{
+				stderr.println("ERROR: the delimiter cannot be empty");
+				return ERR_ARGUMENTS;
+			}
+		}
+		if (c_line.hasOption(P_THREADS))
+		{
+			try
+			{
+				threads = Integer.parseInt(c_line.getOptionValue(P_THREADS));
+			}
+			catch (NumberFormatException e)
+			{
+				threads = 0;
+			}
+			if (threads < 1)
+			{
+				stderr.println("ERROR: invalid number of threads " + c_line.getOptionValue(P_THREADS));
+				return ERR_ARGUMENTS;
+			}
+		}
 		// Get grammar file
 		List<String> remaining_args = c_line.getOthers();
 		if (remaining_args.isEmpty())
@@ -175,36 +226,55 @@ public class BullwinkleCli
 			return ERR_IO;
 		}
 		assert parser != null;
+		if (verbosity > 1)
+		{
+			List<String> conflicts = parser.getLl1Conflicts();
+			if (conflicts.isEmpty())
+			{
+				stderr.println("The grammar is LL(1)");
+			}
+			else
+			{
+				stderr.println("The grammar is not LL(1), using the general parser:");
+				for (String conflict : conflicts)
+				{
+					stderr.println("  " + conflict);
+				}
+			}
+		}
+		if (c_line.hasOption(P_BATCH))
+		{
+			return doBatch(parser, filename_to_parse, stdin, stdout, stderr, output_format, delimiter, threads, verbosity);
+		}
 
-		// Read input file
-		Scanner scanner = null;
+		// Read input file. A file is mapped into memory rather than loaded
+		// onto the heap; standard input is read line by line.
+		CharSequence file_contents = null;
 		if (filename_to_parse == null)
 		{
-			// Read from stdin
-			scanner = new Scanner(stdin);
+			Scanner scanner = new Scanner(stdin);
+			StringBuilder input_file = new StringBuilder();
+			while (scanner.hasNextLine())
+			{
+				String line = scanner.nextLine();
+				input_file.append(line).append("\n");
+			}
+			scanner.close();
+			file_contents = input_file;
 		}
 		else
 		{
-			// Read from file
 			try
 			{
-				scanner = new Scanner(new File(filename_to_parse));
-			} 
-			catch (FileNotFoundException e)
+				file_contents = MappedCharSequence.map(new File(filename_to_parse).toPath(), Charset.defaultCharset());
+			}
+			catch (IOException e)
 			{
 				stderr.println("ERROR reading input\n");
 				return ERR_IO;
 			}
 		}
-		StringBuilder input_file = new StringBuilder();
-		assert scanner != null;
-		while (scanner.hasNextLine())
-		{
-			String line = scanner.nextLine();
-			input_file.append(line).append("\n");
-		}
-		scanner.close();
-		String file_contents = input_file.toString();
+		assert file_contents != null;
 
 		// Parse contents of file
 		ParseNode p_node = null;
@@ -227,22 +297,7 @@ public class BullwinkleCli
 
 		// Output parse node to desired format
 		PrintStream output = stdout;
-		OutputFormatVisitor out_vis = null;
-		if (output_format.compareToIgnoreCase("xml") == 0)
-		{
-			// Output to XML
-			out_vis = new XmlVisitor();
-		}
-		else if (output_format.compareToIgnoreCase("dot") == 0)
-		{
-			// Output to DOT
-			out_vis = new GraphvizVisitor();
-		}
-		else if (output_format.compareToIgnoreCase("txt") == 0)
-		{
-			// Output to indented plain text
-			out_vis = new IndentedTextVisitor();
-		}
+		OutputFormatVisitor out_vis = newVisitor(output_format);
 		if (out_vis == null)
 		{
 			stderr.println("ERROR: unknown output format " + output_format);
@@ -263,6 +318,279 @@ public class BullwinkleCli
 		return ERR_OK;
 	}
 
+	/**
+	 * Parses each record of the input as a separate string, and prints the
+	 * output of each record in the order of the input. The records are
+	 * parsed in parallel by a pool of worker threads, while the input is
+	 * read and the outputs are printed by the calling thread; a record that
+	 * cannot be parsed is reported in the output, in place of its tree.
+	 * @param parser The parser, with the grammar
+	 * @param filename_to_parse The name of the file to parse, or
+	 *   <tt>null</tt> to parse the standard input
+	 * @param stdin The standard input
+	 * @param stdout The standard output
+	 * @param stderr The standard error
+	 * @param output_format The output format
+	 * @param delimiter The string that separates two records
+	 * @param threads The number of worker threads
+	 * @param verbosity The verbosity level
+	 * @return The return code
+	 */
+	@SuppressWarnings({"squid:S1166", "squid:S3776"})
+	private static int doBatch(BnfParser parser, String filename_to_parse, InputStream stdin, PrintStream stdout, PrintStream stderr, final String output_format, String delimiter, int threads, int verbosity)
+	{
+		if (newVisitor(output_format) == null)
+		{
+			stderr.println("ERROR: unknown output format " + output_format);
+			return ERR_ARGUMENTS;
+		}
+		final ParseOptions options;
+		try
+		{
+			options = parser.getParseOptions();
+		}
+		catch (ParseException e)
+		{
+			stderr.println("ERROR: invalid grammar");
+			return ERR_GRAMMAR;
+		}
+		final CompiledGrammar grammar = parser.compile();
+		Reader reader;
+		if (filename_to_parse == null)
+		{
+			reader = new InputStreamReader(stdin, Charset.defaultCharset());
+		}
+		else
+		{
+			try
+			{
+				reader = Files.newBufferedReader(new File(filename_to_parse).toPath(), Charset.defaultCharset());
+			}
+			catch (IOException e)
+			{
+				stderr.println("ERROR reading input\n");
+				return ERR_IO;
+			}
+		}
+		// The outputs of the records are printed through a buffer, rather
+		// than flushed one by one
+		PrintStream output = new PrintStream(new BufferedOutputStream(stdout, 1 << 16), false);
+		final AtomicInteger failures = new AtomicInteger();
+		Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start_time = System.nanoTime();
+		int count = 0;
+		try (DocumentReader documents = grammar.documents(reader, delimiter, options))
+		{
+			while (true)
+			{
+				Future<String> result;
+				try
+				{
+					final String record = documents.nextDocument();
+					if (record == null)
+					{
+						break;
+					}
+					final int number = documents.getCount();
+					result = pool.submit(() -> parseRecord(grammar, options, record, number, output_format, failures));
+				}
+				catch (DocumentException e)
+				{
+					failures.incrementAndGet();
+					result = CompletableFuture.completedFuture(formatError(output_format, DocumentReader.getTooLongMessage("Record", e.getNumber(), documents.getMaxLength())));
+				}
+				count++;
+				pending.add(result);
+				if (pending.size() >= threads * BATCH_WINDOW)
+				{
+					printRecord(output, pending.remove().get());
+				}
+			}
+			while (!pending.isEmpty())
+			{
+				printRecord(output, pending.remove().get());
+			}
+		}
+		catch (IOException | UncheckedIOException e)
+		{
+			stderr.println("ERROR reading input\n");
+			return ERR_IO;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return ERR_RUNTIME;
+		}
+		catch (ExecutionException e)
+		{
+			stderr.println("ERROR: " + e.getCause());
+			return ERR_RUNTIME;
+		}
+		finally
+		{
+			pool.shutdownNow();
+			output.flush();
+		}
+		if (verbosity > 0)
+		{
+			double seconds = Math.max(System.nanoTime() - start_time, 1) / 1e9;
+			stderr.println(String.format("%d records (%d failed) parsed in %.3f s with %d threads, %.0f records/s", count, failures.get(), seconds, threads, count / seconds));
+		}
+		return failures.get() == 0 ? ERR_OK : ERR_PARSE;
+	}
+
+	/**
+	 * Parses a record in batch mode, and converts its tree to the output
+	 * format
+	 * @param grammar The grammar
+	 * @param options The options of the parsing
+	 * @param record The record
+	 * @param number The number of the record in the input, starting at 1
+	 * @param output_format The output format
+	 * @param failures The number of records that could not be parsed,
+	 *   which is incremented if this one cannot
+	 * @return The output for the record, or a description of the error
+	 */
+	@SuppressWarnings("squid:S1166")
+	private static String parseRecord(CompiledGrammar grammar, ParseOptions options, String record, int number, String output_format, AtomicInteger failures)
+	{
+		String error;
+		try
+		{
+			ParseNode node = grammar.parse(record, options);
+			if (node != null)
+			{
+				OutputFormatVisitor out_vis = newVisitor(output_format);
+				node.prefixAccept(out_vis);
+				return out_vis.toOutputString();
+			}
+			error = "Record " + number + " does not follow the grammar";
+		}
+		catch (ParseException e)
+		{
+			error = "Record " + number + ": " + e.getMessage();
+		}
+		catch (VisitException e)
+		{
+			error = "Record " + number + ": " + e.getMessage();
+		}
+		catch (RuntimeException e)
+		{
+			// An unexpected failure on one record must not stop the others
+			error = "Record " + number + ": " + e;
+		}
+		catch (StackOverflowError e)
+		{
+			// Idem; the regex engine, for example, recurses on each
+			// repetition in a long token
+			error = "Record " + number + ": " + e;
+		}
+		failures.incrementAndGet();
+		return formatError(output_format, error);
+	}
+
+	/**
+	 * Prints the output of a record in batch mode, on its own lines
+	 * @param out The stream to print to
+	 * @param output The output of the record
+	 */
+	private static void printRecord(PrintStream out, String output)
+	{
+		out.print(output);
+		if (!output.endsWith("\n"))
+		{
+			out.println();
+		}
+	}
+
+	/**
+	 * Formats the description of an error as a comment of an output format,
+	 * so that it can appear among the outputs of the other records
+	 * @param output_format The output format
+	 * @param message The description of the error
+	 * @return The formatted error
+	 */
+	private static String formatError(String output_format, String message)
+	{
+		if (output_format.compareToIgnoreCase("xml") == 0)
+		{
+			return "<!-- ERROR " + message.replace("--", "- -") + " -->";
+		}
+		if (output_format.compareToIgnoreCase("dot") == 0)
+		{
+			return "# ERROR " + message.replace('\n', ' ');
+		}
+		return "ERROR " + message.replace('\n', ' ');
+	}
+
+	/**
+	 * Creates the visitor that converts a parse tree to an output format
+	 * @param output_format The name of the output format
+	 * @return The visitor, or <tt>null</tt> if the format is unknown
+	 */
+	private static OutputFormatVisitor newVisitor(String output_format)
+	{
+		if (output_format.compareToIgnoreCase("xml") == 0)
+		{
+			// Output to XML
+			return new XmlVisitor();
+		}
+		if (output_format.compareToIgnoreCase("dot") == 0)
+		{
+			// Output to DOT
+			return new GraphvizVisitor();
+		}
+		if (output_format.compareToIgnoreCase("txt") == 0)
+		{
+			// Output to indented plain text
+			return new IndentedTextVisitor();
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the escape sequences <tt>\n</tt>, <tt>\r</tt>,
+	 * <tt>\t</tt> and <tt>\\</tt> of a command-line argument by the
+	 * characters they stand for
+	 * @param s The argument
+	 * @return The argument with its escape sequences replaced
+	 */
+	private static String unescape(String s)
+	{
+		StringBuilder out = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length())
+			{
+				char next = s.charAt(++i);
+				switch (next)
+				{
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case '\\':
+					c = '\\';
+					break;
+				default:
+					// Not an escape sequence: keep both characters
+					out.append(c);
+					c = next;
+					break;
+				}
+			}
+			out.append(c);
+		}
+		return out.toString();
+	}
+
 	/**
 	 * Sets up the options for the command line parser
 	 * @return The options
@@ -279,6 +607,18 @@ public class BullwinkleCli
 				.withLongName(P_FORMAT)
 				.withArgument("x")
 				.withDescription("Output parse tree in format x (dot, xml, txt). Default: xml"));
+		cli_parser.addArgument(new CliParser.Argument()
+				.withShortName("b")
+				.withLongName(P_BATCH)
+				.withDescription("Parse each line of the input as a separate string, in parallel"));
+		cli_parser.addArgument(new CliParser.Argument()
+				.withLongName(P_DELIMITER)
+				.withArgument("x")
+				.withDescription("In batch mode, separate the strings by x instead of a new line"));
+		cli_parser.addArgument(new CliParser.Argument()
+				.withLongName(P_THREADS)
+				.withArgument("n")
+				.withDescription("In batch mode, parse with n threads. Default: number of processors"));
 		cli_parser.addArgument(new CliParser.Argument()
 				.withLongName(P_VERBOSITY)
 				.withArgument("x")
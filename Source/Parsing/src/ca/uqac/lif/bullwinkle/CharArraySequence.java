@@ -0,0 +1,111 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * A sequence of characters read directly from a part of an array, without
+ * copying them. It is used to parse a slice of a character array, such as
+ * a buffer taken from a pool, as if it were a string.
+ * 
+ * @author Sylvain Hallé
+ */
+final class CharArraySequence implements CharSequence
+{
+	/**
+	 * The array containing the characters
+	 */
+	private final char[] m_chars;
+
+	/**
+	 * The position of the first character of the sequence in the array
+	 */
+	private final int m_offset;
+
+	/**
+	 * The number of characters of the sequence
+	 */
+	private final int m_length;
+
+	/**
+	 * Creates a new sequence
+	 * @param chars The array containing the characters
+	 * @param offset The position of the first character of the sequence in
+	 *   the array
+	 * @param length The number of characters of the sequence
+	 * @throws IndexOutOfBoundsException Thrown if the sequence does not fit
+	 *   in the array
+	 */
+	CharArraySequence(/*@NonNull*/ char[] chars, int offset, int length)
+	{
+		super();
+		if (offset < 0 || length < 0 || offset > chars.length - length)
+		{
+			throw new IndexOutOfBoundsException("Offset " + offset + " and length " + length + " out of bounds for array of length " + chars.length);
+		}
+		m_chars = chars;
+		m_offset = offset;
+		m_length = length;
+	}
+
+	@Override
+	public int length()
+	{
+		return m_length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= m_length)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + m_length);
+		}
+		return m_chars[m_offset + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		if (start < 0 || end > m_length || start > end)
+		{
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + m_length);
+		}
+		return new CharArraySequence(m_chars, m_offset + start, end - start);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(m_chars, m_offset, m_length);
+	}
+}
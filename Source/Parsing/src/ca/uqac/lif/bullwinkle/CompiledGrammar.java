@@ -0,0 +1,479 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * A grammar ready to be used for parsing, obtained from a parser with
+ * {@link BnfParser#compile()}. A compiled grammar is a snapshot of the
+ * rules and of the start rule of the parser at the moment it is created:
+ * modifying the parser afterwards has no effect on it. It is immutable,
+ * and holds no state about the strings it parses; any number of threads
+ * can therefore use the same compiled grammar at the same time, without
+ * any locking.
+ * <p>
+ * The options that {@link BnfParser} stores as settings, such as partial
+ * parsing or the maximum number of recursion steps, are given to each
+ * call to {@link #parse(String, ParseOptions)} instead.
+ * 
+ * @author Sylvain Hallé
+ */
+public final class CompiledGrammar
+{
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The start rule of the grammar, or <tt>null</tt> if the grammar has
+	 * no rule
+	 */
+	private final BnfRule m_startRule;
+
+	/**
+	 * The ID of the start rule in the symbol table
+	 */
+	private final int m_startId;
+
+	/**
+	 * The parser generated for the grammar, or <tt>null</tt> if the grammar
+	 * is interpreted
+	 */
+	private final GeneratedParser m_generated;
+
+	/**
+	 * Creates a new compiled grammar
+	 * @param symbols The symbol table of the grammar
+	 * @param start_rule The start rule of the grammar, or <tt>null</tt> if
+	 *   the grammar has no rule
+	 */
+	CompiledGrammar(/*@NonNull*/ SymbolTable symbols, /*@Nullable*/ BnfRule start_rule)
+	{
+		this(symbols, start_rule, false);
+	}
+
+	/**
+	 * Creates a new compiled grammar
+	 * @param symbols The symbol table of the grammar
+	 * @param start_rule The start rule of the grammar, or <tt>null</tt> if
+	 *   the grammar has no rule
+	 * @param generate Whether to generate a parser specialized for the
+	 *   grammar
+	 */
+	CompiledGrammar(/*@NonNull*/ SymbolTable symbols, /*@Nullable*/ BnfRule start_rule, boolean generate)
+	{
+		super();
+		m_symbols = symbols;
+		m_startRule = start_rule;
+		m_startId = start_rule == null ? SymbolTable.UNDEFINED : symbols.getId(start_rule.getLeftHandSide().toString());
+		// Build now everything the parsers could need, so that parsing
+		// never modifies the symbol table
+		symbols.getLl1Parser();
+		symbols.getEarleyParser();
+		symbols.getLexer();
+		m_generated = generate ? symbols.getGeneratedParser() : null;
+	}
+
+	/**
+	 * Parses a string with the default options
+	 * @param input The string to parse
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ String input) throws ParseException
+	{
+		return parse(input, new ParseOptions());
+	}
+
+	/**
+	 * Parses a string
+	 * @param input The string to parse
+	 * @param options The options of the parsing
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ String input, /*@NonNull*/ ParseOptions options) throws ParseException
+	{
+		return parse(newBuffer(input), options, null);
+	}
+
+	/**
+	 * Parses a sequence of characters, such as a {@link StringBuilder} or a
+	 * {@link java.nio.CharBuffer}, without copying it into a string. The
+	 * tokens of the nodes of the resulting tree are copied out of the
+	 * sequence the first time they are read; until then, the sequence must
+	 * not be modified.
+	 * @param input The sequence to parse
+	 * @param options The options of the parsing
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the sequence does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 * @see BnfParser#parse(CharSequence)
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ CharSequence input, /*@NonNull*/ ParseOptions options) throws ParseException
+	{
+		return parse(newBuffer(input), options, null);
+	}
+
+	/**
+	 * Parses a sequence of characters without building its parse tree,
+	 * giving its structure to a handler instead
+	 * @param input The sequence to parse
+	 * @param options The options of the parsing; only partial parsing and
+	 *   the maximum number of recursion steps are taken into account,
+	 *   since the parsing is always done in the default mode
+	 * @param handler The handler receiving the events of the parsing
+	 * @return {@code true} if the sequence follows the grammar,
+	 *   {@code false} otherwise
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 * @see BnfParser#parse(CharSequence, ParseEventHandler)
+	 */
+	public boolean parse(/*@NonNull*/ CharSequence input, /*@NonNull*/ ParseOptions options, /*@NonNull*/ ParseEventHandler handler) throws ParseException
+	{
+		if (m_startRule == null)
+		{
+			throw new ParseException("No start rule could be found");
+		}
+		InputBuffer buffer = newBuffer(input);
+		if (m_symbols.isIgnoreCase())
+		{
+			// Terminals are matched against folded input
+			buffer = buffer.fold();
+		}
+		try
+		{
+			return new EventParser(m_symbols, buffer, options, handler).parse(m_startId);
+		}
+		finally
+		{
+			m_symbols.releaseMatchers();
+		}
+	}
+
+	/**
+	 * Parses a part of an array of characters, without copying it into a
+	 * string. The tokens of the nodes of the resulting tree are copied out
+	 * of the array the first time they are read; until then, the array
+	 * must not be modified.
+	 * @param input The array
+	 * @param offset The position of the first character to parse
+	 * @param length The number of characters to parse
+	 * @param options The options of the parsing
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the characters do not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 * @see BnfParser#parse(char[], int, int)
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ char[] input, int offset, int length, /*@NonNull*/ ParseOptions options) throws ParseException
+	{
+		return parse(new CharArraySequence(input, offset, length), options);
+	}
+
+	/**
+	 * Parses the contents of a file, which are read through a memory
+	 * mapping instead of being loaded into a string
+	 * @param path The path of the file
+	 * @param charset The encoding of the file
+	 * @param options The options of the parsing
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the file does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 * @throws IOException Thrown if the file cannot be read, or if it is
+	 *   larger than 2 GiB
+	 * @see BnfParser#parse(Path, Charset)
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ Path path, /*@NonNull*/ Charset charset, /*@NonNull*/ ParseOptions options) throws ParseException, IOException
+	{
+		return parse(MappedCharSequence.map(path, charset), options);
+	}
+
+	/**
+	 * Parses, one after the other, the documents read from a source of
+	 * characters that holds many documents separated by a delimiter. The
+	 * source is read through a buffer that holds one document at a time.
+	 * @param reader The source of the documents
+	 * @param delimiter The string that separates two documents
+	 * @param options The options used to parse each document
+	 * @return A reader that gives the parse tree of each document
+	 * @see DocumentReader
+	 */
+	public /*@NonNull*/ DocumentReader documents(/*@NonNull*/ Reader reader, /*@NonNull*/ String delimiter, /*@NonNull*/ ParseOptions options)
+	{
+		return new DocumentReader(this, reader, delimiter, options, DocumentReader.DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Parses, one after the other, the documents read from a channel of
+	 * bytes that holds many documents separated by a delimiter
+	 * @param channel The source of the documents
+	 * @param charset The encoding of the bytes
+	 * @param delimiter The string that separates two documents
+	 * @param options The options used to parse each document
+	 * @return A reader that gives the parse tree of each document
+	 * @see DocumentReader
+	 */
+	public /*@NonNull*/ DocumentReader documents(/*@NonNull*/ ReadableByteChannel channel, /*@NonNull*/ Charset charset, /*@NonNull*/ String delimiter, /*@NonNull*/ ParseOptions options)
+	{
+		return documents(Channels.newReader(channel, charset), delimiter, options);
+	}
+
+	/**
+	 * Creates a parser to which a string is given in chunks, which parses
+	 * each chunk as soon as it arrives
+	 * @param options The options of the parsing; only the attachment of
+	 *   numbers to the nodes is taken into account, since the parsing is
+	 *   always done in Earley mode
+	 * @return The parser
+	 * @throws ParseException Thrown if the grammar has no rule, or if
+	 *   partial parsing is enabled
+	 * @see PushParser
+	 */
+	public /*@NonNull*/ PushParser newPushParser(/*@NonNull*/ ParseOptions options) throws ParseException
+	{
+		if (m_startRule == null)
+		{
+			throw new ParseException("No start rule could be found");
+		}
+		if (options.isPartialParsing())
+		{
+			throw new ParseException("Partial parsing is not supported when the input is given in chunks");
+		}
+		return new PushParser(m_symbols, m_startId, options.isNumberValues());
+	}
+
+	/**
+	 * Creates a parser for a string that is edited, which reuses the
+	 * outcome of the parts of the string that an edit does not change
+	 * @param options The options of the parsing; only partial parsing,
+	 *   the maximum number of recursion steps, the attachment of numbers
+	 *   to the nodes and the tracer are taken into account, since the
+	 *   parsing is always done in packrat mode
+	 * @return The parser, for an empty string
+	 * @throws ParseException Thrown if the grammar has no rule
+	 * @see IncrementalParser
+	 */
+	public /*@NonNull*/ IncrementalParser newIncrementalParser(/*@NonNull*/ ParseOptions options) throws ParseException
+	{
+		if (m_startRule == null)
+		{
+			throw new ParseException("No start rule could be found");
+		}
+		return new IncrementalParser(m_symbols, m_startId, options);
+	}
+
+	/**
+	 * Creates a buffer for a string to parse with this grammar
+	 * @param input The string
+	 * @return The buffer
+	 */
+	/*@ pure @*/ InputBuffer newBuffer(/*@NonNull*/ CharSequence input)
+	{
+		return new InputBuffer(input, m_symbols.getSkipper());
+	}
+
+	/**
+	 * Parses a string
+	 * @param buffer The string to parse
+	 * @param options The options of the parsing
+	 * @param counts If not <tt>null</tt>, an array where the number of
+	 *   memo hits and misses of the parsing, then the number of terminal
+	 *   cache hits and misses, are written, in this order
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 */
+	ParseNode parse(/*@NonNull*/ InputBuffer buffer, /*@NonNull*/ ParseOptions options, /*@Nullable*/ int[] counts) throws ParseException
+	{
+		try
+		{
+			return parseBuffer(buffer, options, counts);
+		}
+		finally
+		{
+			// The matchers of the regular expressions must not keep the
+			// string once it is parsed
+			m_symbols.releaseMatchers();
+		}
+	}
+
+	/**
+	 * Parses the contents of an input buffer with the parser selected by
+	 * the options
+	 * @param buffer The buffer
+	 * @param options The options of the parsing
+	 * @param counts If not <tt>null</tt>, an array where the counts of the
+	 *   parsing are written
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not follow the grammar
+	 * @throws ParseException Thrown if the grammar has no rule, if the
+	 *   maximum number of recursion steps is reached, or if the parsing
+	 *   reaches a non-terminal token that has no rule
+	 */
+	private ParseNode parseBuffer(/*@NonNull*/ InputBuffer buffer, /*@NonNull*/ ParseOptions options, /*@Nullable*/ int[] counts) throws ParseException
+	{
+		if (m_startRule == null)
+		{
+			throw new ParseException("No start rule could be found");
+		}
+		if (m_symbols.isIgnoreCase())
+		{
+			// Terminals are matched against folded input
+			buffer = buffer.fold();
+		}
+		ParseTracer tracer = options.getTracer();
+		if (options.isLl1Mode() && !options.isPartialParsing() && !options.isPackratMode() && !options.isLeftRecursionMode() && !options.isLexerMode() && tracer == null)
+		{
+			Ll1Parser ll1 = m_symbols.getLl1Parser();
+			if (ll1.isLl1())
+			{
+				ParseNode node = ll1.parse(buffer, m_startId, options.getMaxRecursionSteps(), options.isNumberValues());
+				if (node != null)
+				{
+					return node;
+				}
+				// Let the general parser determine the outcome
+			}
+		}
+		if (options.isEarleyMode())
+		{
+			if (tracer != null)
+			{
+				tracer.startParse(buffer.getText());
+			}
+			ParseNode node = m_symbols.getEarleyParser().parse(buffer, m_startId, options.isPartialParsing(), options.isNumberValues());
+			if (tracer != null)
+			{
+				tracer.endParse(node != null);
+			}
+			return node;
+		}
+		if (m_generated != null && !options.isPackratMode() && !options.isLeftRecursionMode() && !options.isLexerMode() && !options.isTerminalCache() && tracer == null)
+		{
+			return m_generated.newParser(buffer, options).parse(m_startId);
+		}
+		BacktrackingParser parser = new BacktrackingParser(m_symbols, buffer, options);
+		try
+		{
+			return parser.parse(m_startId);
+		}
+		finally
+		{
+			if (counts != null)
+			{
+				counts[0] = parser.getMemoHits();
+				counts[1] = parser.getMemoMisses();
+				counts[2] = parser.getTerminalCacheHits();
+				counts[3] = parser.getTerminalCacheMisses();
+			}
+		}
+	}
+
+	/**
+	 * Determines if the grammar is LL(1)
+	 * @return {@code true} if the grammar is LL(1), {@code false} otherwise
+	 * @see BnfParser#isLl1()
+	 */
+	/*@ pure @*/ public boolean isLl1()
+	{
+		return m_symbols.getLl1Parser().isLl1();
+	}
+
+	/**
+	 * Gets a description of each conflict that prevents the grammar from
+	 * being LL(1)
+	 * @return The list of conflicts, which is empty if the grammar is LL(1)
+	 * @see BnfParser#getLl1Conflicts()
+	 */
+	/*@ pure @*/ public /*@NonNull*/ List<String> getLl1Conflicts()
+	{
+		return new ArrayList<String>(m_symbols.getLl1Parser().getConflicts());
+	}
+
+	/**
+	 * Determines if the grammar is parsed by a parser generated for it.
+	 * This is the case if code generation was enabled when the grammar was
+	 * compiled, and if the platform provides a Java compiler.
+	 * @return {@code true} if the grammar has a generated parser,
+	 *   {@code false} if it is interpreted
+	 * @see BnfParser#setCodeGeneration(boolean)
+	 */
+	/*@ pure @*/ public boolean isGenerated()
+	{
+		return m_generated != null;
+	}
+
+	/**
+	 * Gets the start rule of the grammar
+	 * @return The start rule, or <tt>null</tt> if the grammar has no rule
+	 */
+	/*@ pure @*/ BnfRule getStartRule()
+	{
+		return m_startRule;
+	}
+
+	/**
+	 * Gets the symbol table of the grammar
+	 * @return The symbol table
+	 */
+	/*@ pure @*/ SymbolTable getSymbols()
+	{
+		return m_symbols;
+	}
+}
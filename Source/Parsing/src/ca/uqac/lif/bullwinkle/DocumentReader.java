@@ -0,0 +1,545 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * Parses, one after the other, the documents read from a source of
+ * characters that holds many independent documents of the same grammar,
+ * such as a file with one expression per line. The documents are
+ * separated by a delimiter, and are read through a buffer that only needs
+ * to hold one document at a time, so that the memory used does not depend
+ * on the size of the source. A document that is only made of whitespace,
+ * such as what follows a delimiter at the end of the source, is ignored.
+ * <p>
+ * The documents are given by an {@link Iterator}, or by a {@link Stream}
+ * obtained from {@link #stream()}:
+ * <pre>
+ * try (DocumentReader documents = grammar.documents(reader, "\n", options))
+ * {
+ *   documents.stream().forEach(node -&gt; ...);
+ * }
+ * </pre>
+ * When a document does not follow the grammar, or is longer than the
+ * maximum length of a document, {@link #next()} throws a
+ * {@link DocumentException}; the iteration can then go on with the next
+ * document. An error reading the source is thrown as an
+ * {@link UncheckedIOException}.
+ * <p>
+ * Each document is copied out of the buffer into a string before it is
+ * parsed, so that the parse trees returned remain valid after the buffer
+ * is reused. A reader is meant to be used by a single thread.
+ * 
+ * @author Sylvain Hallé
+ */
+public class DocumentReader implements Iterator<ParseNode>, Closeable
+{
+	/**
+	 * The default maximum number of characters of a document
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 1 << 20;
+
+	/**
+	 * The initial number of characters of the buffer
+	 */
+	private static final int INITIAL_CAPACITY = 8192;
+
+	/**
+	 * The grammar used to parse the documents
+	 */
+	private final CompiledGrammar m_grammar;
+
+	/**
+	 * The options used to parse the documents
+	 */
+	private final ParseOptions m_options;
+
+	/**
+	 * The source of the documents
+	 */
+	private final Reader m_reader;
+
+	/**
+	 * The string that separates two documents
+	 */
+	private final String m_delimiter;
+
+	/**
+	 * The maximum number of characters of a document
+	 */
+	private final int m_maxLength;
+
+	/**
+	 * The characters read from the source and not yet consumed
+	 */
+	private char[] m_buffer;
+
+	/**
+	 * The position in the buffer where the current document starts
+	 */
+	private int m_start = 0;
+
+	/**
+	 * The position in the buffer from which the delimiter is searched
+	 */
+	private int m_scan = 0;
+
+	/**
+	 * The position in the buffer that follows the last character read
+	 */
+	private int m_limit = 0;
+
+	/**
+	 * Whether the end of the source has been reached
+	 */
+	private boolean m_endOfInput = false;
+
+	/**
+	 * Whether the rest of the current document is discarded, because it is
+	 * too long
+	 */
+	private boolean m_discarding = false;
+
+	/**
+	 * Whether the next document is too long
+	 */
+	private boolean m_tooLong = false;
+
+	/**
+	 * The next document to parse, or <tt>null</tt> if it has not been read
+	 * yet
+	 */
+	private String m_next = null;
+
+	/**
+	 * The number of documents read so far, including the next one
+	 */
+	private int m_count = 0;
+
+	/**
+	 * Creates a new reader of documents
+	 * @param grammar The grammar used to parse the documents
+	 * @param reader The source of the documents
+	 * @param delimiter The string that separates two documents
+	 * @param options The options used to parse the documents
+	 * @param max_length The maximum number of characters of a document
+	 * @see CompiledGrammar#documents(Reader, String, ParseOptions)
+	 */
+	public DocumentReader(/*@NonNull*/ CompiledGrammar grammar, /*@NonNull*/ Reader reader, /*@NonNull*/ String delimiter, /*@NonNull*/ ParseOptions options, int max_length)
+	{
+		super();
+		if (delimiter.isEmpty())
+		{
+			throw new IllegalArgumentException("The delimiter cannot be empty");
+		}
+		if (max_length <= 0)
+		{
+			throw new IllegalArgumentException("The maximum length of a document must be positive");
+		}
+		m_grammar = grammar;
+		m_reader = reader;
+		m_delimiter = delimiter;
+		m_options = options;
+		m_maxLength = max_length;
+		m_buffer = new char[Math.min(INITIAL_CAPACITY, max_length + delimiter.length())];
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (m_next == null)
+		{
+			try
+			{
+				m_next = readDocument();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		return m_next != null;
+	}
+
+	/**
+	 * Parses the next document
+	 * @return The root of the parse tree of the document
+	 * @throws DocumentException Thrown if the document does not follow the
+	 *   grammar, or is too long
+	 * @throws NoSuchElementException Thrown if there is no document left
+	 */
+	@Override
+	public /*@NonNull*/ ParseNode next()
+	{
+		String document = nextDocument();
+		if (document == null)
+		{
+			throw new NoSuchElementException();
+		}
+		ParseNode node;
+		try
+		{
+			node = m_grammar.parse(document, m_options);
+		}
+		catch (ParseException e)
+		{
+			throw new DocumentException(m_count, document, "Document " + m_count + ": " + e.getMessage(), e);
+		}
+		if (node == null)
+		{
+			throw new DocumentException(m_count, document, "Document " + m_count + " does not follow the grammar", null);
+		}
+		return node;
+	}
+
+	/**
+	 * Reads the next document without parsing it, so that it can be parsed
+	 * elsewhere, such as by another thread
+	 * @return The document, or <tt>null</tt> if there is none left
+	 * @throws DocumentException Thrown if the document is too long; the
+	 *   iteration can then go on with the next document
+	 */
+	/*@Nullable*/ String nextDocument()
+	{
+		if (!hasNext())
+		{
+			return null;
+		}
+		String document = m_next;
+		m_next = null;
+		if (m_tooLong)
+		{
+			// The document is only the beginning of a document that is too long
+			throw new DocumentException(m_count, document, getTooLongMessage("Document", m_count, m_maxLength), null);
+		}
+		return document;
+	}
+
+	/**
+	 * Gets the number of documents read so far
+	 * @return The number of documents
+	 */
+	/*@ pure @*/ public int getCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Gets the maximum number of characters of a document
+	 * @return The number of characters
+	 */
+	/*@ pure @*/ public int getMaxLength()
+	{
+		return m_maxLength;
+	}
+
+	/**
+	 * Describes a document that is longer than the maximum length
+	 * @param kind The word that designates a document in the description
+	 * @param number The number of the document, starting at 1
+	 * @param max_length The maximum number of characters of a document
+	 * @return The description
+	 */
+	static String getTooLongMessage(String kind, int number, int max_length)
+	{
+		return kind + " " + number + " is longer than " + max_length + " characters";
+	}
+
+	/**
+	 * Gets a sequential stream of the parse trees of the documents. Closing
+	 * the stream closes this reader.
+	 * @return The stream
+	 */
+	public /*@NonNull*/ Stream<ParseNode> stream()
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+			try
+			{
+				close();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		m_reader.close();
+	}
+
+	/**
+	 * Reads the next document that is not only made of whitespace
+	 * @return The document, or <tt>null</tt> if there is none left
+	 * @throws IOException Thrown if the source cannot be read
+	 */
+	private String readDocument() throws IOException
+	{
+		if (m_discarding)
+		{
+			// Skip what is left of the document that was too long
+			m_discarding = false;
+			if (findDelimiter(true) < 0)
+			{
+				return null;
+			}
+		}
+		while (true)
+		{
+			int end = findDelimiter(false);
+			if (end < 0)
+			{
+				return null;
+			}
+			int start = m_start;
+			if (!m_discarding)
+			{
+				m_start = end == m_limit ? end : end + m_delimiter.length();
+				m_scan = m_start;
+			}
+			if (end - start > m_maxLength)
+			{
+				// Only the beginning of a document that is too long is kept
+				m_tooLong = true;
+				m_count++;
+				return new String(m_buffer, start, Math.min(end - start, 80));
+			}
+			if (!isBlank(start, end))
+			{
+				m_tooLong = false;
+				m_count++;
+				return new String(m_buffer, start, end - start);
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of the current document, reading the source as needed.
+	 * If the document is longer than the maximum length, the search stops
+	 * and {@link #m_discarding} is set, so that the rest of the document is
+	 * skipped when the next one is read.
+	 * @param discard Whether the current document is discarded, in which
+	 *   case the characters read are dropped and the search goes on past
+	 *   the maximum length
+	 * @return The position in the buffer where the document ends, or
+	 *   where the search stopped, or -1 if the source has no characters left
+	 * @throws IOException Thrown if the source cannot be read
+	 */
+	private int findDelimiter(boolean discard) throws IOException
+	{
+		int d_len = m_delimiter.length();
+		char first = m_delimiter.charAt(0);
+		while (true)
+		{
+			for (int i = m_scan; i <= m_limit - d_len; i++)
+			{
+				if (m_buffer[i] == first && matchesDelimiter(i + 1))
+				{
+					if (discard)
+					{
+						m_start = i + d_len;
+						m_scan = m_start;
+					}
+					return i;
+				}
+			}
+			// Part of the delimiter may be at the end of the buffer
+			m_scan = Math.max(m_start, m_limit - d_len + 1);
+			if (m_endOfInput)
+			{
+				if (m_start == m_limit)
+				{
+					return -1;
+				}
+				if (discard)
+				{
+					m_start = m_limit;
+					m_scan = m_limit;
+					return -1;
+				}
+				return m_limit;
+			}
+			if (discard)
+			{
+				// Drop the characters that cannot be part of a delimiter
+				m_start = m_scan;
+			}
+			else if (m_scan - m_start > m_maxLength)
+			{
+				m_discarding = true;
+				return m_scan;
+			}
+			fill();
+		}
+	}
+
+	/**
+	 * Determines if the characters of the buffer at some position are the
+	 * ones that follow the first character of the delimiter
+	 * @param position The position
+	 * @return <tt>true</tt> if the characters match
+	 */
+	/*@ pure @*/ private boolean matchesDelimiter(int position)
+	{
+		for (int j = 1; j < m_delimiter.length(); j++)
+		{
+			if (m_buffer[position + j - 1] != m_delimiter.charAt(j))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads more characters from the source into the buffer, moving the
+	 * current document to the start of the buffer, and making the buffer
+	 * larger if it is full
+	 * @throws IOException Thrown if the source cannot be read
+	 */
+	private void fill() throws IOException
+	{
+		if (m_start > 0)
+		{
+			System.arraycopy(m_buffer, m_start, m_buffer, 0, m_limit - m_start);
+			m_limit -= m_start;
+			m_scan -= m_start;
+			m_start = 0;
+		}
+		if (m_limit == m_buffer.length)
+		{
+			// The buffer never needs to hold more than a document and a delimiter
+			char[] buffer = new char[Math.min(m_buffer.length * 2, m_maxLength + m_delimiter.length() + 1)];
+			System.arraycopy(m_buffer, 0, buffer, 0, m_limit);
+			m_buffer = buffer;
+		}
+		int read = m_reader.read(m_buffer, m_limit, m_buffer.length - m_limit);
+		if (read < 0)
+		{
+			m_endOfInput = true;
+		}
+		else
+		{
+			m_limit += read;
+		}
+	}
+
+	/**
+	 * Determines if a part of the buffer is only made of whitespace
+	 * @param start The start of the part
+	 * @param end The end of the part
+	 * @return <tt>true</tt> if the part is blank
+	 */
+	/*@ pure @*/ private boolean isBlank(int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (!Character.isWhitespace(m_buffer[i]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Exception thrown when a document cannot be parsed. It is unchecked,
+	 * since it is thrown by the methods of {@link Iterator}.
+	 */
+	public static class DocumentException extends RuntimeException
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final transient long serialVersionUID = 1L;
+
+		/**
+		 * The number of the document, starting at 1
+		 */
+		private final int m_number;
+
+		/**
+		 * The text of the document
+		 */
+		private final String m_document;
+
+		/**
+		 * Creates a new exception
+		 * @param number The number of the document, starting at 1
+		 * @param document The text of the document, or its beginning if it
+		 *   is too long
+		 * @param message The message of the exception
+		 * @param cause The exception thrown by the parser, if any
+		 */
+		public DocumentException(int number, String document, String message, ParseException cause)
+		{
+			super(message, cause);
+			m_number = number;
+			m_document = document;
+		}
+
+		/**
+		 * Gets the number of the document that cannot be parsed, counting
+		 * the documents that are not blank from 1
+		 * @return The number
+		 */
+		/*@ pure @*/ public int getNumber()
+		{
+			return m_number;
+		}
+
+		/**
+		 * Gets the text of the document that cannot be parsed. For a
+		 * document that is too long, only its beginning is kept.
+		 * @return The text
+		 */
+		/*@ pure @*/ public String getDocument()
+		{
+			return m_document;
+		}
+	}
+}
@@ -0,0 +1,1374 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * A parser based on Earley's algorithm. Contrary to the general parser,
+ * which backtracks over the alternatives of each rule, this parser
+ * considers all the alternatives at the same time, and records in a
+ * <em>chart</em> which parts of which alternatives match which parts of
+ * the input. Its running time is therefore at most cubic in the length
+ * of the input for any grammar, including ambiguous and left-recursive
+ * ones, and is close to linear for grammars that are nearly
+ * deterministic. It does not recurse while building the chart, and is
+ * not subject to the maximum number of recursion steps of the general
+ * parser.
+ * <p>
+ * Since it does not commit to the first alternative of a rule that
+ * matches, this parser accepts every string of the language of the
+ * grammar, including some that the general parser rejects. When a
+ * string has more than one parse tree, the tree that is returned is
+ * chosen in the same spirit as the general parser: going through the
+ * tree from the root and from left to right, each rule uses its first
+ * alternative (in the order of the grammar, try-last alternatives
+ * included) for which the rest of the string can still be parsed. When
+ * the same alternative of a rule can match parts of the input of
+ * different lengths, the longest part is preferred.
+ * <p>
+ * Terminal symbols are matched exactly as in the general parser:
+ * whitespace is skipped before each of them, and epsilon is only allowed
+ * as the last symbol of an alternative. As in the general parser, a
+ * rule can only match the empty string through an alternative that ends
+ * with epsilon.
+ * 
+ * @author Sylvain Hallé
+ */
+final class EarleyParser
+{
+	/**
+	 * The value indicating the absence of a link or of an item
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The number of dotted alternatives (or "slots") in the grammar. An
+	 * alternative with <i>n</i> tokens has <i>n</i>+1 slots, one for each
+	 * possible position of the dot.
+	 */
+	private final int m_slotCount;
+
+	/**
+	 * For each rule and each alternative, the slot where the dot is
+	 * before the first token of the alternative; the next slots of the
+	 * alternative follow it
+	 */
+	private final int[][] m_slots;
+
+	/**
+	 * For each slot, the ID of the rule it belongs to
+	 */
+	private final int[] m_slotRule;
+
+	/**
+	 * For each slot, the index of the alternative it belongs to
+	 */
+	private final int[] m_slotAlternative;
+
+	/**
+	 * For each slot, the ID of the rule of the non-terminal token that
+	 * follows the dot, or {@link #NONE} if the dot is not followed by a
+	 * defined non-terminal token
+	 */
+	private final int[] m_slotNext;
+
+	/**
+	 * For each rule, which alternatives can match at all; an alternative
+	 * where epsilon is not the last token never matches
+	 */
+	private final boolean[][] m_usable;
+
+	/**
+	 * For each rule, which alternatives end with epsilon
+	 */
+	private final boolean[][] m_endsWithEpsilon;
+
+	/**
+	 * For each rule, whether it can match the empty string
+	 */
+	private final boolean[] m_nullable;
+
+	/**
+	 * Creates a new Earley parser for a grammar
+	 * @param symbols The symbol table of the grammar
+	 */
+	EarleyParser(/*@NonNull*/ SymbolTable symbols)
+	{
+		super();
+		m_symbols = symbols;
+		int size = symbols.size();
+		m_slots = new int[size][];
+		m_usable = new boolean[size][];
+		m_endsWithEpsilon = new boolean[size][];
+		int slot_count = 0;
+		for (int id = 0; id < size; id++)
+		{
+			Token[][] alternatives = symbols.getTokens(id);
+			m_slots[id] = new int[alternatives.length];
+			m_usable[id] = new boolean[alternatives.length];
+			m_endsWithEpsilon[id] = new boolean[alternatives.length];
+			for (int j = 0; j < alternatives.length; j++)
+			{
+				Token[] tokens = alternatives[j];
+				m_slots[id][j] = slot_count;
+				slot_count += tokens.length + 1;
+				m_usable[id][j] = true;
+				for (int k = 0; k < tokens.length - 1; k++)
+				{
+					if (tokens[k] instanceof EpsilonTerminalToken)
+					{
+						m_usable[id][j] = false;
+					}
+				}
+				m_endsWithEpsilon[id][j] = tokens.length > 0 && tokens[tokens.length - 1] instanceof EpsilonTerminalToken;
+			}
+		}
+		m_slotCount = slot_count;
+		m_slotRule = new int[slot_count];
+		m_slotAlternative = new int[slot_count];
+		m_slotNext = new int[slot_count];
+		for (int id = 0; id < size; id++)
+		{
+			Token[][] alternatives = symbols.getTokens(id);
+			int[][] links = symbols.getLinks(id);
+			for (int j = 0; j < alternatives.length; j++)
+			{
+				for (int k = 0; k <= alternatives[j].length; k++)
+				{
+					int slot = m_slots[id][j] + k;
+					m_slotRule[slot] = id;
+					m_slotAlternative[slot] = j;
+					m_slotNext[slot] = NONE;
+					if (k < alternatives[j].length && alternatives[j][k] instanceof NonTerminalToken)
+					{
+						m_slotNext[slot] = links[j][k];
+					}
+				}
+			}
+		}
+		m_nullable = computeNullable();
+	}
+
+	/**
+	 * Determines which rules can match the empty string. This is the case
+	 * of a rule having an alternative made of rules that can match the
+	 * empty string, followed by epsilon.
+	 * @return An array indicating, for each rule, whether it can match the
+	 *   empty string
+	 */
+	private boolean[] computeNullable()
+	{
+		int size = m_symbols.size();
+		boolean[] nullable = new boolean[size];
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int id = 0; id < size; id++)
+			{
+				Token[][] alternatives = m_symbols.getTokens(id);
+				for (int j = 0; j < alternatives.length && !nullable[id]; j++)
+				{
+					if (!m_usable[id][j] || !m_endsWithEpsilon[id][j])
+					{
+						continue;
+					}
+					boolean empty = true;
+					for (int k = 0; k < alternatives[j].length - 1 && empty; k++)
+					{
+						int link = m_slotNext[m_slots[id][j] + k];
+						empty = link != NONE && nullable[link];
+					}
+					if (empty)
+					{
+						nullable[id] = true;
+						changed = true;
+					}
+				}
+			}
+		}
+		return nullable;
+	}
+
+	/**
+	 * Parses a string
+	 * @param input The string to parse
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @param partial_parsing Whether the string can contain non-terminal
+	 *   tokens, as in {@link BnfParser#setPartialParsing(boolean)}
+	 * @param number_values Whether numbers are attached to the nodes of
+	 *   the parse tree, as in {@link BnfParser#setNumberValues(boolean)}
+	 * @return The root of the parse tree, or <tt>null</tt> if the string
+	 *   does not parse
+	 * @throws ParseException Thrown if the parsing reaches a non-terminal
+	 *   token that has no rule
+	 */
+	ParseNode parse(/*@NonNull*/ InputBuffer input, int start_id, boolean partial_parsing, boolean number_values) throws ParseException
+	{
+		return new Chart(input, partial_parsing, number_values).parse(start_id);
+	}
+
+	/**
+	 * Creates a chart to which the string to parse is given in chunks,
+	 * with {@link Chart#feed(InputBuffer)} and {@link Chart#end(InputBuffer)}
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @param number_values Whether numbers are attached to the nodes of
+	 *   the parse tree, as in {@link BnfParser#setNumberValues(boolean)}
+	 * @return The chart
+	 */
+	/*@NonNull*/ Chart newChart(int start_id, boolean number_values)
+	{
+		return new Chart(start_id, number_values);
+	}
+
+	/**
+	 * The items found for the string being parsed. An item is made of a
+	 * slot (an alternative of a rule with a dot in it) and of the position
+	 * where the rule started to match; the set of items at some position
+	 * of the string indicates, for each alternative, which of its prefixes
+	 * match the input up to that position. Every position in a chart is
+	 * the position of a non-whitespace character (or the end of the
+	 * input).
+	 * <p>
+	 * The positions of the string are processed in order, and processing a
+	 * position only adds items at that position and at the following ones.
+	 * The string can therefore be given in chunks: the positions are
+	 * processed as long as the terminal tokens matched there, and the
+	 * whitespace skipped after them, cannot change when the next chunks
+	 * arrive; the processing then resumes from the same position when the
+	 * next chunk is given.
+	 */
+	final class Chart
+	{
+		/**
+		 * The string being parsed, or the part of it received so far
+		 */
+		private InputBuffer m_input;
+
+		/**
+		 * The contents of the string being parsed
+		 */
+		private CharSequence m_contents;
+
+		/**
+		 * The end of the string being parsed, excluding trailing whitespace
+		 */
+		private int m_end;
+
+		/**
+		 * Whether the whole string has been received
+		 */
+		private boolean m_complete;
+
+		/**
+		 * The ID of the start rule, or {@link #NONE} if the items of the
+		 * start rule have not been added yet
+		 */
+		private int m_startId = NONE;
+
+		/**
+		 * The position where the start rule starts
+		 */
+		private int m_start;
+
+		/**
+		 * The position being processed
+		 */
+		private int m_position;
+
+		/**
+		 * The last position whose set of items has been closed, by adding the
+		 * items predicted and completed there
+		 */
+		private int m_closed = NONE;
+
+		/**
+		 * The last position where an item has been added
+		 */
+		private int m_last = NONE;
+
+		/**
+		 * Whether the string can contain non-terminal tokens
+		 */
+		private final boolean m_partialParsing;
+
+		/**
+		 * Whether numbers are attached to the nodes of the parse tree
+		 */
+		private final boolean m_numberValues;
+
+		/**
+		 * The set of items at each position of the string, or <tt>null</tt>
+		 * if there is no item at that position
+		 */
+		private ItemSet[] m_sets;
+
+		/**
+		 * The length of the string matched by each terminal token at the
+		 * position being processed
+		 */
+		private final Map<Token,Integer> m_matches = new IdentityHashMap<Token,Integer>();
+
+		/**
+		 * The terminal tokens whose match at the position being processed
+		 * cannot change when more of the string is received
+		 */
+		private final Map<Token,Boolean> m_decided = new IdentityHashMap<Token,Boolean>();
+
+		/**
+		 * For each part of the string, the rules whose tree is being built
+		 * for that part; used to avoid building a tree that contains itself
+		 */
+		private final Map<Long,BitSet> m_building = new HashMap<Long,BitSet>();
+
+		Chart(InputBuffer input, boolean partial_parsing, boolean number_values)
+		{
+			super();
+			m_input = input;
+			m_contents = input.getContents();
+			m_end = input.getEnd();
+			m_complete = true;
+			m_partialParsing = partial_parsing;
+			m_numberValues = number_values;
+			m_sets = new ItemSet[m_end + 1];
+		}
+
+		Chart(int start_id, boolean number_values)
+		{
+			super();
+			m_complete = false;
+			m_partialParsing = false;
+			m_numberValues = number_values;
+			m_sets = new ItemSet[16];
+			m_startId = start_id;
+		}
+
+		ParseNode parse(int start_id) throws ParseException
+		{
+			start(start_id, m_input.skip(0));
+			run();
+			return derive(start_id, m_start, m_end);
+		}
+
+		/**
+		 * Processes the string received so far, as far as possible
+		 * @param input The string received so far
+		 * @return {@code false} if the string cannot follow the grammar,
+		 *   whatever the chunks that come next, {@code true} otherwise
+		 * @throws ParseException Thrown if the parsing reaches a non-terminal
+		 *   token that has no rule
+		 */
+		boolean feed(/*@NonNull*/ InputBuffer input) throws ParseException
+		{
+			setInput(input);
+			if (m_last == NONE)
+			{
+				int start = input.skip(0);
+				if (!input.isSkipDecided(start))
+				{
+					return true;
+				}
+				start(m_startId, start);
+			}
+			return run();
+		}
+
+		/**
+		 * Processes the rest of the string, once it has been received in
+		 * full
+		 * @param input The whole string
+		 * @return The root of the parse tree, or <tt>null</tt> if the string
+		 *   does not parse
+		 * @throws ParseException Thrown if the parsing reaches a non-terminal
+		 *   token that has no rule
+		 */
+		ParseNode end(/*@NonNull*/ InputBuffer input) throws ParseException
+		{
+			setInput(input);
+			m_complete = true;
+			if (m_last == NONE)
+			{
+				start(m_startId, input.skip(0));
+			}
+			run();
+			return derive(m_startId, m_start, m_end);
+		}
+
+		/**
+		 * Gets the position up to which the string has been processed
+		 * @return The position
+		 */
+		/*@ pure @*/ int getPosition()
+		{
+			return m_last == NONE ? 0 : m_position;
+		}
+
+		/**
+		 * Sets the part of the string received so far
+		 * @param input The string
+		 */
+		private void setInput(InputBuffer input)
+		{
+			m_input = input;
+			m_contents = input.getContents();
+			m_end = input.getEnd();
+			if (m_sets.length <= m_end)
+			{
+				m_sets = Arrays.copyOf(m_sets, Math.max(m_end + 1, m_sets.length * 2));
+			}
+		}
+
+		/**
+		 * Adds the items of the start rule
+		 * @param start_id The ID of the start rule
+		 * @param start The position of the first token of the string
+		 */
+		private void start(int start_id, int start)
+		{
+			m_start = start;
+			m_position = start;
+			for (int j = 0; j < m_slots[start_id].length; j++)
+			{
+				if (m_usable[start_id][j])
+				{
+					add(start, m_slots[start_id][j], start, NONE);
+				}
+			}
+		}
+
+		/**
+		 * Processes the positions of the string in order, until the end of
+		 * the string, or until a position whose terminal tokens depend on
+		 * the part of the string that has not been received
+		 * @return {@code false} if no item remains after the position being
+		 *   processed, in which case the string does not parse,
+		 *   {@code true} otherwise
+		 * @throws ParseException Thrown if an item expects a non-terminal
+		 *   token that has no rule
+		 */
+		private boolean run() throws ParseException
+		{
+			for (; m_position <= m_end; m_position++)
+			{
+				if (!m_complete && m_position > m_last)
+				{
+					// Nothing that comes next can match
+					return false;
+				}
+				ItemSet set = m_sets[m_position];
+				if (set != null && !step(m_position, set))
+				{
+					// Wait for the next chunk
+					return true;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Processes the set of items at some position: the set is first
+		 * closed, and the terminal tokens expected by its items are then
+		 * matched
+		 * @param position The position
+		 * @param set The set of items at that position
+		 * @return {@code false} if the terminal tokens cannot be matched yet,
+		 *   because their match could change when more of the string is
+		 *   received, {@code true} otherwise
+		 * @throws ParseException Thrown if an item expects a non-terminal
+		 *   token that has no rule
+		 */
+		private boolean step(int position, ItemSet set) throws ParseException
+		{
+			if (m_closed < position)
+			{
+				// New items can be added to the set while it is processed
+				for (int i = 0; i < set.m_size; i++)
+				{
+					process(position, set, i);
+				}
+				m_closed = position;
+			}
+			m_matches.clear();
+			m_decided.clear();
+			if (!m_complete)
+			{
+				for (int i = 0; i < set.m_size; i++)
+				{
+					Token tok = getScanned(set.m_itemSlots[i]);
+					if (tok != null && !isDecided(tok, position))
+					{
+						return false;
+					}
+				}
+			}
+			for (int i = 0; i < set.m_size; i++)
+			{
+				int slot = set.m_itemSlots[i];
+				Token tok = getScanned(slot);
+				if (tok != null)
+				{
+					int length = match(tok, position);
+					if (length > 0)
+					{
+						add(m_input.skip(position + length), slot + 1, set.m_itemOrigins[i], position);
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Gets the terminal token that follows the dot of a slot, if it is
+		 * matched against the string
+		 * @param slot The slot
+		 * @return The token, or <tt>null</tt> if the dot is not followed by
+		 *   such a token
+		 */
+		private Token getScanned(int slot)
+		{
+			int id = m_slotRule[slot];
+			int alt = m_slotAlternative[slot];
+			Token[] tokens = m_symbols.getTokens(id)[alt];
+			int dot = slot - m_slots[id][alt];
+			if (dot == tokens.length)
+			{
+				return null;
+			}
+			Token tok = tokens[dot];
+			if (tok instanceof TerminalToken && !(tok instanceof EpsilonTerminalToken))
+			{
+				return tok;
+			}
+			return null;
+		}
+
+		/**
+		 * Determines if what a terminal token matches at some position, and
+		 * the position of the token that follows, cannot change when more of
+		 * the string is received
+		 * @param tok The token
+		 * @param position The position
+		 * @return {@code true} if they cannot change, {@code false} otherwise
+		 */
+		private boolean isDecided(Token tok, int position)
+		{
+			Boolean decided = m_decided.get(tok);
+			if (decided == null)
+			{
+				int length = match(tok, position);
+				decided = !tok.needsMore(m_contents, position, m_end) && (length <= 0 || m_input.isSkipDecided(m_input.skip(position + length)));
+				m_decided.put(tok, decided);
+			}
+			return decided;
+		}
+
+		/**
+		 * Processes an item of the chart
+		 * @param position The position of the item
+		 * @param set The set of items at that position
+		 * @param index The index of the item in the set
+		 * @throws ParseException Thrown if the item expects a non-terminal
+		 *   token that has no rule
+		 */
+		private void process(int position, ItemSet set, int index) throws ParseException
+		{
+			int slot = set.m_itemSlots[index];
+			int origin = set.m_itemOrigins[index];
+			int id = m_slotRule[slot];
+			int alt = m_slotAlternative[slot];
+			Token[] tokens = m_symbols.getTokens(id)[alt];
+			int dot = slot - m_slots[id][alt];
+			if (dot == tokens.length)
+			{
+				complete(position, set, id, alt, origin);
+				return;
+			}
+			Token tok = tokens[dot];
+			if (tok instanceof EpsilonTerminalToken)
+			{
+				add(position, slot + 1, origin, position);
+			}
+			else if (!(tok instanceof TerminalToken))
+			{
+				predict(position, set, slot, origin, tok);
+			}
+			// Terminal tokens are matched once the set is closed
+		}
+
+		/**
+		 * Processes an item whose dot is before a non-terminal token, by
+		 * adding the items for each alternative of the token's rule
+		 * @param position The position of the item
+		 * @param set The set of items at that position
+		 * @param slot The slot of the item
+		 * @param origin The origin of the item
+		 * @param tok The non-terminal token
+		 * @throws ParseException Thrown if the token has no rule
+		 */
+		private void predict(int position, ItemSet set, int slot, int origin, Token tok) throws ParseException
+		{
+			String name = tok.toString();
+			boolean placeholder = m_partialParsing && m_input.startsWith(name, position);
+			if (placeholder)
+			{
+				add(m_input.skip(position + name.length()), slot + 1, origin, position);
+			}
+			int link = m_slotNext[slot];
+			if (link == NONE)
+			{
+				if (placeholder)
+				{
+					return;
+				}
+				// No rule found for non-terminal symbol: there is an error in
+				// the grammar
+				throw new ParseException("Cannot find rule for token " + tok);
+			}
+			if (set.mark(m_slotCount + m_symbols.size() + link, position))
+			{
+				for (int j = 0; j < m_slots[link].length; j++)
+				{
+					if (m_usable[link][j])
+					{
+						add(position, m_slots[link][j], position, NONE);
+					}
+				}
+			}
+			if (m_nullable[link])
+			{
+				// The rule may already have matched the empty string here, before
+				// this item was added
+				add(position, slot + 1, origin, position);
+			}
+		}
+
+		/**
+		 * Processes an item whose dot is at the end of its alternative, by
+		 * advancing the items that were waiting for its rule
+		 * @param position The position of the item
+		 * @param set The set of items at that position
+		 * @param id The ID of the rule of the item
+		 * @param alt The index of the alternative of the item
+		 * @param origin The origin of the item
+		 */
+		private void complete(int position, ItemSet set, int id, int alt, int origin)
+		{
+			if (origin == position && !m_endsWithEpsilon[id][alt])
+			{
+				// Only epsilon can make a rule match the empty string
+				return;
+			}
+			if (!set.mark(m_slotCount + id, origin))
+			{
+				// Another alternative already did it
+				return;
+			}
+			ItemSet origin_set = m_sets[origin];
+			for (int i = 0; i < origin_set.m_size; i++)
+			{
+				int slot = origin_set.m_itemSlots[i];
+				if (m_slotNext[slot] == id)
+				{
+					add(position, slot + 1, origin_set.m_itemOrigins[i], origin);
+				}
+			}
+		}
+
+		/**
+		 * Gets the length of the string that a terminal token matches at
+		 * some position
+		 * @param tok The token
+		 * @param position The position
+		 * @return The length, or a value of at most 0 if the token does not
+		 *   match
+		 */
+		private int match(Token tok, int position)
+		{
+			if (position >= m_end)
+			{
+				return NONE;
+			}
+			Integer length = m_matches.get(tok);
+			if (length == null)
+			{
+				length = tok.match(m_contents, position, m_end);
+				m_matches.put(tok, length);
+			}
+			return length;
+		}
+
+		/**
+		 * Adds an item to the chart, if it is not already there
+		 * @param position The position of the item
+		 * @param slot The slot of the item
+		 * @param origin The origin of the item
+		 * @param link The position of the item this one was obtained from by
+		 *   moving the dot, or {@link #NONE} if there is none
+		 */
+		private void add(int position, int slot, int origin, int link)
+		{
+			ItemSet set = m_sets[position];
+			if (set == null)
+			{
+				set = new ItemSet();
+				m_sets[position] = set;
+				m_last = Math.max(m_last, position);
+			}
+			set.add(slot, origin, link);
+		}
+
+		/**
+		 * Determines if an alternative of a rule matches a part of the input
+		 * @param id The ID of the rule
+		 * @param alt The index of the alternative
+		 * @param start The position where the part starts
+		 * @param end The position where the part ends
+		 * @return {@code true} if the alternative matches, {@code false}
+		 *   otherwise
+		 */
+		private boolean matches(int id, int alt, int start, int end)
+		{
+			if (!m_usable[id][alt] || (start == end && !m_endsWithEpsilon[id][alt]))
+			{
+				return false;
+			}
+			ItemSet set = m_sets[end];
+			int length = m_symbols.getTokens(id)[alt].length;
+			return set != null && set.indexOf(m_slots[id][alt] + length, start) != NONE;
+		}
+
+		/**
+		 * Builds the parse tree of a rule for a part of the input. The tree
+		 * is built without recursion, so that deep trees do not exhaust the
+		 * stack.
+		 * @param id The ID of the rule
+		 * @param start The position where the part starts
+		 * @param end The position where the part ends
+		 * @return The root of the tree, or <tt>null</tt> if the rule does not
+		 *   match that part of the input
+		 */
+		private ParseNode derive(int id, int start, int end)
+		{
+			ArrayDeque<Derivation> stack = new ArrayDeque<Derivation>();
+			stack.push(new Derivation(id, start, end));
+			setBuilding(id, start, end, true);
+			ParseNode result = null;
+			while (true)
+			{
+				Derivation d = stack.peek();
+				if (d.m_waiting)
+				{
+					// The tree of the token at index k was just built
+					d.m_waiting = false;
+					if (result == null)
+					{
+						d.m_choices[d.m_k]++;
+					}
+					else
+					{
+						d.m_children.add(result);
+						d.m_k++;
+					}
+				}
+				Derivation child = advance(d);
+				if (child != null)
+				{
+					d.m_waiting = true;
+					setBuilding(child.m_id, child.m_start, child.m_end, true);
+					stack.push(child);
+					continue;
+				}
+				stack.pop();
+				setBuilding(d.m_id, d.m_start, d.m_end, false);
+				result = d.m_node;
+				if (stack.isEmpty())
+				{
+					return result;
+				}
+			}
+		}
+
+		/**
+		 * Builds the trees of the tokens of an alternative, until the tree of
+		 * a non-terminal token has to be built, or until the tree of the
+		 * rule is complete
+		 * @param d The tree being built
+		 * @return The tree of the non-terminal token that has to be built
+		 *   first, or <tt>null</tt> if the tree of the rule is complete; in
+		 *   that case, its root is in {@link Derivation#m_node}, which is
+		 *   <tt>null</tt> if no tree could be built
+		 */
+		private Derivation advance(Derivation d)
+		{
+			while (true)
+			{
+				if (d.m_next == null && !nextAlternative(d))
+				{
+					return null;
+				}
+				int k = d.m_k;
+				Token[] tokens = d.m_tokens;
+				if (k == tokens.length)
+				{
+					String left_hand_side = m_symbols.getName(d.m_id);
+					ParseNode node = new ParseNode();
+					node.setToken(left_hand_side);
+					node.setValue(left_hand_side);
+					for (ParseNode child : d.m_children)
+					{
+						node.addChild(child);
+					}
+					d.m_node = node;
+					return null;
+				}
+				int position = d.m_positions[k];
+				int link = m_slotNext[m_slots[d.m_id][d.m_alternative] + k];
+				Token tok = tokens[k];
+				if (d.m_ends[k] == null)
+				{
+					d.m_ends[k] = sortEnds(tok, link, position, d.m_next.get(k).get(position));
+					d.m_choices[k] = 0;
+				}
+				if (d.m_choices[k] >= d.m_ends[k].length)
+				{
+					// No tree for this token: go back to the previous one
+					d.m_ends[k] = null;
+					if (k == 0)
+					{
+						d.m_next = null;
+					}
+					else
+					{
+						d.m_k--;
+						d.m_children.remove(d.m_children.size() - 1);
+						d.m_choices[d.m_k]++;
+					}
+					continue;
+				}
+				int end = d.m_ends[k][d.m_choices[k]];
+				d.m_positions[k + 1] = end;
+				if (tok instanceof TerminalToken)
+				{
+					d.m_children.add(getTerminalNode(tok, position));
+					d.m_k++;
+				}
+				else if (isPlaceholder(tok.toString(), position, end))
+				{
+					d.m_children.add(new ParseNode(tok.toString()));
+					d.m_k++;
+				}
+				else if (isBuilding(link, position, end))
+				{
+					// The rule would contain itself for the same part of the input
+					d.m_choices[k]++;
+				}
+				else
+				{
+					return new Derivation(link, position, end);
+				}
+			}
+		}
+
+		/**
+		 * Moves a tree being built to the next alternative of its rule that
+		 * matches its part of the input
+		 * @param d The tree being built
+		 * @return {@code true} if there is such an alternative,
+		 *   {@code false} otherwise
+		 */
+		private boolean nextAlternative(Derivation d)
+		{
+			int alt = d.m_alternative + 1;
+			while (alt < m_slots[d.m_id].length && !matches(d.m_id, alt, d.m_start, d.m_end))
+			{
+				alt++;
+			}
+			d.m_alternative = alt;
+			if (alt == m_slots[d.m_id].length)
+			{
+				return false;
+			}
+			Token[] tokens = m_symbols.getTokens(d.m_id)[alt];
+			int first_slot = m_slots[d.m_id][alt];
+			// Go back from the complete item to find, for each number k of
+			// tokens and each position where the first k tokens can end,
+			// the positions where the first k+1 tokens can end
+			List<Map<Integer,List<Integer>>> next = new ArrayList<Map<Integer,List<Integer>>>(tokens.length);
+			for (int k = 0; k < tokens.length; k++)
+			{
+				next.add(new HashMap<Integer,List<Integer>>());
+			}
+			List<Integer> ends = Collections.singletonList(d.m_end);
+			for (int k = tokens.length; k > 0; k--)
+			{
+				Map<Integer,List<Integer>> previous = next.get(k - 1);
+				for (int position : ends)
+				{
+					ItemSet set = m_sets[position];
+					int index = set.indexOf(first_slot + k, d.m_start);
+					for (int l = set.m_itemLinks[index]; l != NONE; l = set.m_linkNext[l])
+					{
+						int link = set.m_linkPositions[l];
+						List<Integer> successors = previous.get(link);
+						if (successors == null)
+						{
+							successors = new ArrayList<Integer>(1);
+							previous.put(link, successors);
+						}
+						if (!successors.contains(position))
+						{
+							successors.add(position);
+						}
+					}
+				}
+				ends = new ArrayList<Integer>(previous.keySet());
+			}
+			d.m_tokens = tokens;
+			d.m_next = next;
+			d.m_children.clear();
+			d.m_k = 0;
+			d.m_positions = new int[tokens.length + 1];
+			d.m_positions[0] = d.m_start;
+			d.m_ends = new int[tokens.length][];
+			d.m_choices = new int[tokens.length];
+			return true;
+		}
+
+		private boolean isBuilding(int id, int start, int end)
+		{
+			BitSet building = m_building.get(((long) start << 32) | end);
+			return building != null && building.get(id);
+		}
+
+		private void setBuilding(int id, int start, int end, boolean b)
+		{
+			long span = ((long) start << 32) | end;
+			BitSet building = m_building.get(span);
+			if (building == null)
+			{
+				building = new BitSet();
+				m_building.put(span, building);
+			}
+			building.set(id, b);
+		}
+
+		/**
+		 * Sorts the possible ends of the string matched by a token, by order
+		 * of preference. For a non-terminal token, the preferred end is the
+		 * one that the first alternative of the token's rule can reach, and
+		 * among ends that the same alternative can reach, the farthest one.
+		 * A terminal token has only one possible end.
+		 * @param tok The token
+		 * @param link The ID of the token's rule, if it is a non-terminal
+		 *   token
+		 * @param position The position where the token starts
+		 * @param ends The possible ends
+		 * @return The ends, by order of preference
+		 */
+		private int[] sortEnds(Token tok, int link, int position, List<Integer> ends)
+		{
+			long[] keys = new long[ends.size()];
+			String name = tok.toString();
+			for (int i = 0; i < keys.length; i++)
+			{
+				int end = ends.get(i);
+				int rank = Integer.MAX_VALUE - 1;
+				if (tok instanceof TerminalToken || isPlaceholder(name, position, end))
+				{
+					rank = 0;
+				}
+				else if (link != NONE)
+				{
+					for (int j = 0; j < m_slots[link].length; j++)
+					{
+						if (matches(link, j, position, end))
+						{
+							rank = j + 1;
+							break;
+						}
+					}
+				}
+				keys[i] = ((long) rank << 32) | (Integer.MAX_VALUE - end);
+			}
+			Arrays.sort(keys);
+			int[] sorted = new int[keys.length];
+			for (int i = 0; i < keys.length; i++)
+			{
+				sorted[i] = Integer.MAX_VALUE - (int) keys[i];
+			}
+			return sorted;
+		}
+
+		/**
+		 * Determines if a part of the input is a non-terminal token, in
+		 * partial parsing
+		 * @param name The name of the token
+		 * @param start The position where the part starts
+		 * @param end The position where the part ends
+		 * @return {@code true} if the part is the token, {@code false}
+		 *   otherwise
+		 */
+		private boolean isPlaceholder(String name, int start, int end)
+		{
+			return m_partialParsing && m_input.startsWith(name, start) && m_input.skip(start + name.length()) == end;
+		}
+
+		/**
+		 * Creates the parse node for a terminal token
+		 * @param tok The token
+		 * @param position The position where the token starts
+		 * @return The parse node
+		 */
+		private ParseNode getTerminalNode(Token tok, int position)
+		{
+			ParseNode child = new ParseNode();
+			if (tok instanceof EpsilonTerminalToken)
+			{
+				child.setToken("");
+				return child;
+			}
+			int length = tok.match(m_contents, position, m_end);
+			if (tok instanceof RegexTerminalToken)
+			{
+				// In the case of a regex, create children with each capture block
+				child = BnfParser.appendRegexChildren(child, (RegexTerminalToken) tok, m_input);
+			}
+			else if (m_numberValues && tok instanceof NumberTerminalToken)
+			{
+				((NumberTerminalToken) tok).setValue(child, m_input.substring(position, position + length));
+			}
+			m_input.setToken(child, position, position + length);
+			return child;
+		}
+	}
+
+	/**
+	 * The state of the construction of the parse tree of a rule, for a
+	 * part of the input
+	 */
+	private static final class Derivation
+	{
+		/**
+		 * The ID of the rule
+		 */
+		final int m_id;
+
+		/**
+		 * The position where the part of the input starts
+		 */
+		final int m_start;
+
+		/**
+		 * The position where the part of the input ends
+		 */
+		final int m_end;
+
+		/**
+		 * The index of the alternative being tried
+		 */
+		int m_alternative = NONE;
+
+		/**
+		 * The tokens of the alternative
+		 */
+		Token[] m_tokens;
+
+		/**
+		 * For each number k of tokens of the alternative, and each position
+		 * where these tokens can end, the positions where the first k+1
+		 * tokens can end; <tt>null</tt> when no alternative is being tried
+		 */
+		List<Map<Integer,List<Integer>>> m_next = null;
+
+		/**
+		 * The index of the token of the alternative whose tree is being built
+		 */
+		int m_k;
+
+		/**
+		 * The position where each token of the alternative starts
+		 */
+		int[] m_positions;
+
+		/**
+		 * For each token, the possible ends of its string by order of
+		 * preference, or <tt>null</tt> if they have not been computed
+		 */
+		int[][] m_ends;
+
+		/**
+		 * For each token, the index of the end being tried
+		 */
+		int[] m_choices;
+
+		/**
+		 * The trees of the tokens built so far
+		 */
+		final List<ParseNode> m_children = new ArrayList<ParseNode>();
+
+		/**
+		 * Whether the tree of a token is being built before this one can
+		 * continue
+		 */
+		boolean m_waiting = false;
+
+		/**
+		 * The root of the tree, once it is built
+		 */
+		ParseNode m_node = null;
+
+		Derivation(int id, int start, int end)
+		{
+			super();
+			m_id = id;
+			m_start = start;
+			m_end = end;
+		}
+	}
+
+	/**
+	 * The items of the chart at some position of the input. For each item,
+	 * the set also records the positions of the items it was obtained from
+	 * by moving the dot over one token, which are used to build the parse
+	 * tree.
+	 */
+	private static final class ItemSet
+	{
+		/**
+		 * The value of an empty entry of the hash table
+		 */
+		private static final long EMPTY = -1L;
+
+		/**
+		 * The slot of each item
+		 */
+		int[] m_itemSlots = new int[8];
+
+		/**
+		 * The origin of each item
+		 */
+		int[] m_itemOrigins = new int[8];
+
+		/**
+		 * The index of the first link of each item, or {@link #NONE} if the
+		 * item has no link
+		 */
+		int[] m_itemLinks = new int[8];
+
+		/**
+		 * The number of items
+		 */
+		int m_size = 0;
+
+		/**
+		 * The position of each link
+		 */
+		int[] m_linkPositions = new int[8];
+
+		/**
+		 * The index of the link that follows each link for the same item, or
+		 * {@link #NONE} if it is the last
+		 */
+		int[] m_linkNext = new int[8];
+
+		/**
+		 * The number of links
+		 */
+		private int m_linkCount = 0;
+
+		/**
+		 * The keys of an open addressing hash table, which contains the
+		 * items and some marks
+		 */
+		private long[] m_keys = newKeys(16);
+
+		/**
+		 * For each key of the hash table, the index of the item, or
+		 * {@link #NONE} for a mark
+		 */
+		private int[] m_values = new int[16];
+
+		/**
+		 * The number of keys in the hash table
+		 */
+		private int m_keyCount = 0;
+
+		/**
+		 * Adds an item to the set, or a link to an item already in the set
+		 * @param slot The slot of the item
+		 * @param origin The origin of the item
+		 * @param link The position of the link, or {@link #NONE}
+		 */
+		void add(int slot, int origin, int link)
+		{
+			int index = indexOf(slot, origin);
+			if (index == NONE)
+			{
+				if (m_size == m_itemSlots.length)
+				{
+					m_itemSlots = Arrays.copyOf(m_itemSlots, m_size * 2);
+					m_itemOrigins = Arrays.copyOf(m_itemOrigins, m_size * 2);
+					m_itemLinks = Arrays.copyOf(m_itemLinks, m_size * 2);
+				}
+				index = m_size++;
+				m_itemSlots[index] = slot;
+				m_itemOrigins[index] = origin;
+				m_itemLinks[index] = NONE;
+				put(key(slot, origin), index);
+			}
+			if (link == NONE || (m_itemLinks[index] != NONE && m_linkPositions[m_itemLinks[index]] == link))
+			{
+				return;
+			}
+			if (m_linkCount == m_linkPositions.length)
+			{
+				m_linkPositions = Arrays.copyOf(m_linkPositions, m_linkCount * 2);
+				m_linkNext = Arrays.copyOf(m_linkNext, m_linkCount * 2);
+			}
+			m_linkPositions[m_linkCount] = link;
+			m_linkNext[m_linkCount] = m_itemLinks[index];
+			m_itemLinks[index] = m_linkCount++;
+		}
+
+		/**
+		 * Adds a mark to the set, which is not an item
+		 * @param slot A number that is not the slot of an item
+		 * @param origin A position
+		 * @return {@code true} if the mark was added, {@code false} if it
+		 *   was already in the set
+		 */
+		boolean mark(int slot, int origin)
+		{
+			long key = key(slot, origin);
+			if (find(key) >= 0)
+			{
+				return false;
+			}
+			put(key, NONE);
+			return true;
+		}
+
+		/**
+		 * Gets the index of an item in the set
+		 * @param slot The slot of the item
+		 * @param origin The origin of the item
+		 * @return The index, or {@link #NONE} if the item is not in the set
+		 */
+		int indexOf(int slot, int origin)
+		{
+			int i = find(key(slot, origin));
+			return i < 0 ? NONE : m_values[i];
+		}
+
+		private int find(long key)
+		{
+			int mask = m_keys.length - 1;
+			int i = hash(key) & mask;
+			while (m_keys[i] != EMPTY)
+			{
+				if (m_keys[i] == key)
+				{
+					return i;
+				}
+				i = (i + 1) & mask;
+			}
+			return -1;
+		}
+
+		private void put(long key, int value)
+		{
+			if (2 * (m_keyCount + 1) > m_keys.length)
+			{
+				long[] keys = m_keys;
+				int[] values = m_values;
+				m_keys = newKeys(keys.length * 2);
+				m_values = new int[keys.length * 2];
+				for (int i = 0; i < keys.length; i++)
+				{
+					if (keys[i] != EMPTY)
+					{
+						insert(keys[i], values[i]);
+					}
+				}
+			}
+			insert(key, value);
+			m_keyCount++;
+		}
+
+		private void insert(long key, int value)
+		{
+			int mask = m_keys.length - 1;
+			int i = hash(key) & mask;
+			while (m_keys[i] != EMPTY)
+			{
+				i = (i + 1) & mask;
+			}
+			m_keys[i] = key;
+			m_values[i] = value;
+		}
+
+		private static long key(int slot, int origin)
+		{
+			return ((long) slot << 32) | origin;
+		}
+
+		private static int hash(long key)
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		private static long[] newKeys(int size)
+		{
+			long[] keys = new long[size];
+			Arrays.fill(keys, EMPTY);
+			return keys;
+		}
+	}
+}
@@ -66,6 +66,18 @@ public class EpsilonTerminalToken extends TerminalToken
 		return 0;
 	}
 
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		return 0;
+	}
+
+	@Override
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		return false;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,409 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.Arrays;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * Parses a string like {@link BacktrackingParser} does in its default
+ * mode, but gives the structure of the string to a
+ * {@link ParseEventHandler} instead of building a parse tree.
+ * <p>
+ * The parser writes the events in a log, three integers per event. When
+ * an alternative is abandoned, the log is truncated back to where it was
+ * when the alternative was entered. The log is emptied into the handler
+ * whenever no rule being parsed has an alternative left to try, since
+ * nothing written so far can then be taken back, except if the whole
+ * parsing fails.
+ * 
+ * @author Sylvain Hallé
+ */
+final class EventParser
+{
+	/**
+	 * Value returned for a rule that does not match the input
+	 */
+	private static final int NO_MATCH = ParseTracer.NO_MATCH;
+
+	/**
+	 * Kind of the event for the start of a rule
+	 */
+	private static final int ENTER = 0;
+
+	/**
+	 * Kind of the event for the end of a rule
+	 */
+	private static final int EXIT = 1;
+
+	/**
+	 * Kind of the event for a terminal token
+	 */
+	private static final int TERMINAL = 2;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The string to parse
+	 */
+	private final InputBuffer m_input;
+
+	/**
+	 * The handler receiving the events
+	 */
+	private final ParseEventHandler m_handler;
+
+	/**
+	 * Whether partial parsing is enabled
+	 */
+	private final boolean m_partialParsing;
+
+	/**
+	 * The maximum number of recursion steps
+	 */
+	private final int m_maxRecursionSteps;
+
+	/**
+	 * The events not given to the handler yet. Each event takes three
+	 * integers: the ID of the rule shifted left by two bits together with
+	 * the kind of the event, then its start and end positions.
+	 */
+	private int[] m_log = new int[3 * 64];
+
+	/**
+	 * The number of integers used in the log
+	 */
+	private int m_size = 0;
+
+	/**
+	 * The number of events already given to the handler
+	 */
+	private int m_delivered = 0;
+
+	/**
+	 * The number of rules being parsed that still have an alternative left
+	 * to try
+	 */
+	private int m_choices = 0;
+
+	/**
+	 * Creates a new event parser
+	 * @param symbols The symbol table of the grammar
+	 * @param input The string to parse
+	 * @param options The options of the parsing
+	 * @param handler The handler receiving the events
+	 */
+	EventParser(/*@NonNull*/ SymbolTable symbols, /*@NonNull*/ InputBuffer input, /*@NonNull*/ ParseOptions options, /*@NonNull*/ ParseEventHandler handler)
+	{
+		super();
+		m_symbols = symbols;
+		m_input = input;
+		m_handler = handler;
+		m_partialParsing = options.isPartialParsing();
+		m_maxRecursionSteps = options.getMaxRecursionSteps();
+	}
+
+	/**
+	 * Parses the string, starting from a rule
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @return {@code true} if the string follows the grammar,
+	 *   {@code false} otherwise
+	 * @throws ParseException Thrown if the maximum number of recursion
+	 *   steps is reached, or if the parsing reaches a non-terminal token
+	 *   that has no rule
+	 */
+	boolean parse(int start_id) throws ParseException
+	{
+		if (parse(start_id, 0, 0) == NO_MATCH)
+		{
+			m_size = 0;
+			return false;
+		}
+		deliver();
+		return true;
+	}
+
+	private int parse(final int rule_id, final int position, int level) throws ParseException
+	{
+		if (level > m_maxRecursionSteps)
+		{
+			throw new ParseException("Maximum number of recursion steps reached. If the input string is indeed valid, try increasing the limit.");
+		}
+		final InputBuffer input = m_input;
+		final int input_end = input.getEnd();
+		final SymbolTable symbols = m_symbols;
+		final TokenString[] alternatives = symbols.getAlternatives(rule_id);
+		final Token[][] alternative_tokens = symbols.getTokens(rule_id);
+		final int[][] alternative_links = symbols.getLinks(rule_id);
+		final FirstSets first_sets = symbols.getFirstSets();
+		final int first_position = input.skip(position);
+		final int first_char = first_position < input_end ? input.charAt(first_position) : -1;
+		final boolean skip_alternatives = !m_partialParsing || first_char != '<';
+		final LiteralTrie trie = symbols.getLiteralTrie(rule_id);
+		final int[] candidates = trie == null ? null : trie.getCandidates(input.getContents(), first_position, input_end);
+		final int num_candidates = candidates == null ? alternatives.length : candidates.length;
+		final int mark = getMark();
+		int n_position = position;
+		boolean wrong_symbol = true;
+		boolean read_epsilon = false;
+		for (int candidate = 0; candidate < num_candidates; candidate++)
+		{
+			int alt_number = candidates == null ? candidate : candidates[candidate];
+			if (skip_alternatives && first_sets.canSkip(rule_id, alt_number, first_char, level, m_maxRecursionSteps))
+			{
+				// The alternative fails for sure
+				wrong_symbol = true;
+				continue;
+			}
+			Token[] alt_tokens = alternative_tokens[alt_number];
+			int[] alt_links = alternative_links[alt_number];
+			// Forget the events of the previous alternative, if any
+			rollback(mark);
+			boolean choice = hasChoice(rule_id, candidate + 1, candidates, num_candidates, first_char, level, skip_alternatives);
+			if (choice)
+			{
+				m_choices++;
+			}
+			log(ENTER, rule_id, position, position);
+			int alt_size = alt_tokens.length;
+			int alt_index = 0;
+			n_position = position;
+			wrong_symbol = false;
+			while (alt_index < alt_size && !wrong_symbol)
+			{
+				n_position = input.skip(n_position);
+				int token_link = alt_links[alt_index];
+				Token alt_tok = alt_tokens[alt_index++];
+				if (alt_tok instanceof TerminalToken)
+				{
+					if (alt_tok instanceof EpsilonTerminalToken)
+					{
+						// Epsilon always works
+						log(TERMINAL, 0, n_position, n_position);
+						read_epsilon = true;
+						break;
+					}
+					if (n_position >= input_end)
+					{
+						// Rule expects a token, string has no more: NO MATCH
+						wrong_symbol = true;
+						break;
+					}
+					int match_prefix_size = alt_tok.match(input.getContents(), n_position, input_end);
+					if (match_prefix_size > 0)
+					{
+						log(TERMINAL, 0, n_position, n_position + match_prefix_size);
+						n_position += match_prefix_size;
+					}
+					else
+					{
+						// Rule expects a token, token in string does not match: NO MATCH
+						wrong_symbol = true;
+						break;
+					}
+				}
+				else
+				{
+					// Non-terminal token: recursively try to parse it
+					String alt_tok_string = alt_tok.toString();
+					if (m_partialParsing && input.startsWith(alt_tok_string, n_position))
+					{
+						log(TERMINAL, 0, n_position, n_position + alt_tok_string.length());
+						n_position += alt_tok_string.length();
+					}
+					else
+					{
+						if (token_link == SymbolTable.UNDEFINED)
+						{
+							// No rule found for non-terminal symbol:
+							// there is an error in the grammar
+							throw new ParseException("Cannot find rule for token " + alt_tok);
+						}
+						int child_end = parse(token_link, n_position, level + 1);
+						if (child_end == NO_MATCH)
+						{
+							// Parsing failed
+							wrong_symbol = true;
+							break;
+						}
+						n_position = child_end;
+					}
+				}
+			}
+			if (choice)
+			{
+				m_choices--;
+			}
+			boolean done = false;
+			boolean give_up = false;
+			if (!wrong_symbol)
+			{
+				if (alt_index == alt_size)
+				{
+					// We succeeded in parsing the complete string: done
+					done = level > 0 || input.isAtEnd(n_position);
+				}
+				else
+				{
+					// The rule expects more symbols, but there are none
+					// left in the input
+					wrong_symbol = true;
+					give_up = true;
+					n_position = position;
+				}
+			}
+			if (done || give_up)
+			{
+				break;
+			}
+		}
+		int chars_consumed = level == 0 ? input.length() - (input_end - input.skip(n_position)) : n_position - position;
+		if (wrong_symbol || (chars_consumed == 0 && !read_epsilon) || (level == 0 && !input.isAtEnd(n_position)))
+		{
+			rollback(mark);
+			return NO_MATCH;
+		}
+		log(EXIT, rule_id, position, n_position);
+		return n_position;
+	}
+
+	/**
+	 * Determines if a rule has an alternative left to try after the
+	 * current one, which may succeed
+	 * @param rule_id The ID of the rule
+	 * @param from The index of the next candidate alternative
+	 * @param candidates The candidate alternatives, or <tt>null</tt> if all
+	 *   alternatives are candidates
+	 * @param num_candidates The number of candidate alternatives
+	 * @param first_char The first character the alternatives would read
+	 * @param level The level of the rule
+	 * @param skip_alternatives Whether alternatives that cannot start with
+	 *   this character are skipped
+	 * @return {@code true} if an alternative is left, {@code false}
+	 *   otherwise
+	 */
+	/*@ pure @*/ private boolean hasChoice(int rule_id, int from, int[] candidates, int num_candidates, int first_char, int level, boolean skip_alternatives)
+	{
+		FirstSets first_sets = m_symbols.getFirstSets();
+		for (int candidate = from; candidate < num_candidates; candidate++)
+		{
+			int alt_number = candidates == null ? candidate : candidates[candidate];
+			if (!skip_alternatives || !first_sets.canSkip(rule_id, alt_number, first_char, level, m_maxRecursionSteps))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of events produced so far, including those that have
+	 * been given to the handler
+	 * @return The number of events
+	 */
+	/*@ pure @*/ private int getMark()
+	{
+		return m_delivered + m_size / 3;
+	}
+
+	/**
+	 * Forgets the events produced after some point. Events that have been
+	 * given to the handler cannot be forgotten; this only happens when the
+	 * whole parsing fails.
+	 * @param mark The number of events to keep, as returned by
+	 *   {@link #getMark()}
+	 */
+	private void rollback(int mark)
+	{
+		int kept = Math.max(0, mark - m_delivered) * 3;
+		if (kept < m_size)
+		{
+			m_size = kept;
+		}
+	}
+
+	/**
+	 * Writes an event in the log, and gives the log to the handler if no
+	 * rule has an alternative left to try
+	 * @param kind The kind of event
+	 * @param rule_id The ID of the rule, for the start and end of a rule
+	 * @param start The start position of the event
+	 * @param end The end position of the event
+	 */
+	private void log(int kind, int rule_id, int start, int end)
+	{
+		if (m_size + 3 > m_log.length)
+		{
+			m_log = Arrays.copyOf(m_log, m_log.length * 2);
+		}
+		m_log[m_size++] = (rule_id << 2) | kind;
+		m_log[m_size++] = start;
+		m_log[m_size++] = end;
+		if (m_choices == 0)
+		{
+			deliver();
+		}
+	}
+
+	/**
+	 * Gives the events of the log to the handler, and empties the log
+	 */
+	private void deliver()
+	{
+		final ParseEventHandler handler = m_handler;
+		final int[] log = m_log;
+		final CharSequence text = m_input.getText();
+		for (int i = 0; i < m_size; i += 3)
+		{
+			int code = log[i];
+			switch (code & 3)
+			{
+			case ENTER:
+				handler.enterRule(m_symbols.getName(code >>> 2), log[i + 1]);
+				break;
+			case EXIT:
+				handler.exitRule(m_symbols.getName(code >>> 2), log[i + 1], log[i + 2]);
+				break;
+			default:
+				handler.terminal(text, log[i + 1], log[i + 2]);
+				break;
+			}
+		}
+		m_delivered += m_size / 3;
+		m_size = 0;
+	}
+}
@@ -0,0 +1,700 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.BitSet;
+
+/**
+ * The result of an analysis of the rules of a grammar, which determines
+ * for each alternative of each rule the set of characters it can start
+ * with (its FIRST set) and whether it can match the empty string. The
+ * parser uses these sets to skip the alternatives that cannot possibly
+ * match at the current position of the input, without descending into
+ * them.
+ * <p>
+ * The analysis is conservative: a character is left out of a FIRST set
+ * only when it is certain that the alternative fails on an input that
+ * starts with it. The first characters of a literal token are known
+ * exactly; for a regular expression, they are inferred when it starts
+ * with simple character classes, and any character is assumed
+ * otherwise. An alternative is never
+ * skipped if it can match the empty string, or if trying it could make
+ * the parser exceed its maximum number of recursion steps, so that
+ * skipping alternatives never changes the outcome of a parsing.
+ * 
+ * @author Sylvain Hallé
+ */
+final class FirstSets
+{
+	/**
+	 * The recursion depth of an alternative whose exploration can go
+	 * through a cycle of non-terminal symbols without reading anything
+	 */
+	static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	/**
+	 * Value indicating that an alternative cannot match the empty string,
+	 * and that its FIRST set is known
+	 */
+	static final int DEFINITE = 0;
+
+	/**
+	 * Value indicating that an alternative can match the empty string
+	 */
+	static final int NULLABLE = 1;
+
+	/**
+	 * Value indicating that an alternative can start with any character,
+	 * or must never be skipped for some other reason
+	 */
+	static final int ANY = 2;
+
+	/**
+	 * Whether each rule can match the empty string, indexed by rule ID
+	 */
+	private final boolean[] m_nullable;
+
+	/**
+	 * The FIRST set of each rule, indexed by rule ID, or <tt>null</tt> if
+	 * the rule can start with any character
+	 */
+	private final BitSet[] m_first;
+
+	/**
+	 * The FIRST set of each alternative of each rule, or <tt>null</tt> if
+	 * the alternative must never be skipped
+	 */
+	private final BitSet[][] m_alternativeFirst;
+
+	/**
+	 * The kind of FIRST set of each alternative of each rule:
+	 * {@link #DEFINITE}, {@link #NULLABLE} or {@link #ANY}
+	 */
+	private final int[][] m_kinds;
+
+	/**
+	 * The number of recursion levels the parser can go through when trying
+	 * each alternative of each rule on an input that the alternative does
+	 * not match, or {@link #UNBOUNDED}
+	 */
+	private final int[][] m_depth;
+
+	/**
+	 * Computes the FIRST sets of the rules of a symbol table
+	 * @param symbols The symbol table
+	 */
+	FirstSets(/*@NonNull*/ SymbolTable symbols)
+	{
+		super();
+		int size = symbols.size();
+		m_nullable = new boolean[size];
+		m_first = new BitSet[size];
+		m_alternativeFirst = new BitSet[size][];
+		m_kinds = new int[size][];
+		m_depth = new int[size][];
+		computeNullable(symbols);
+		computeFirst(symbols);
+		int[] rule_depth = new int[size];
+		int[] state = new int[size];
+		for (int id = 0; id < size; id++)
+		{
+			computeDepth(symbols, id, rule_depth, state);
+		}
+		for (int id = 0; id < size; id++)
+		{
+			Token[][] alternatives = symbols.getTokens(id);
+			m_alternativeFirst[id] = new BitSet[alternatives.length];
+			m_kinds[id] = new int[alternatives.length];
+			for (int j = 0; j < alternatives.length; j++)
+			{
+				BitSet first = new BitSet();
+				m_kinds[id][j] = getFirst(alternatives[j], symbols.getLinks(id)[j], first);
+				if (m_depth[id][j] != UNBOUNDED && m_kinds[id][j] == DEFINITE)
+				{
+					m_alternativeFirst[id][j] = first;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines if a rule can match the empty string
+	 * @param id The ID of the rule
+	 * @return {@code false} if the rule certainly cannot match the empty
+	 *   string, {@code true} otherwise
+	 */
+	/*@ pure @*/ boolean isNullable(int id)
+	{
+		return m_nullable[id];
+	}
+
+	/**
+	 * Gets the FIRST set of a rule
+	 * @param id The ID of the rule
+	 * @return The set of characters, or <tt>null</tt> if the rule can start
+	 *   with any character
+	 */
+	/*@ pure @*/ BitSet getFirst(int id)
+	{
+		return m_first[id];
+	}
+
+	/**
+	 * Gets the FIRST set of an alternative of a rule
+	 * @param id The ID of the rule
+	 * @param alternative The index of the alternative
+	 * @return The set of characters, or <tt>null</tt> if the alternative
+	 *   must never be skipped
+	 */
+	/*@ pure @*/ BitSet getFirst(int id, int alternative)
+	{
+		return m_alternativeFirst[id][alternative];
+	}
+
+	/**
+	 * Gets the kind of FIRST set of an alternative of a rule
+	 * @param id The ID of the rule
+	 * @param alternative The index of the alternative
+	 * @return {@link #DEFINITE} if the alternative cannot match the empty
+	 *   string and its FIRST set is known, {@link #NULLABLE} if it can
+	 *   match the empty string, and {@link #ANY} otherwise
+	 */
+	/*@ pure @*/ int getKind(int id, int alternative)
+	{
+		return m_kinds[id][alternative];
+	}
+
+	/**
+	 * Gets the number of recursion levels the parser can go through when
+	 * trying an alternative of a rule on an input it does not match
+	 * @param id The ID of the rule
+	 * @param alternative The index of the alternative
+	 * @return The depth, or {@link #UNBOUNDED}
+	 */
+	/*@ pure @*/ int getDepth(int id, int alternative)
+	{
+		return m_depth[id][alternative];
+	}
+
+	/**
+	 * Determines if an alternative of a rule can be skipped, because it
+	 * certainly does not match the input at the current position
+	 * @param id The ID of the rule
+	 * @param alternative The index of the alternative
+	 * @param c The first non-whitespace character of the input at the
+	 *   current position, or -1 if the end of the input is reached
+	 * @param level The recursion level of the rule
+	 * @param max_level The maximum recursion level of the parser
+	 * @return {@code true} if the alternative can be skipped
+	 */
+	/*@ pure @*/ boolean canSkip(int id, int alternative, int c, int level, int max_level)
+	{
+		BitSet first = m_alternativeFirst[id][alternative];
+		if (first == null || m_depth[id][alternative] > max_level - level)
+		{
+			return false;
+		}
+		return c < 0 || !first.get(c);
+	}
+
+	/**
+	 * Computes which rules can match the empty string. This is computed as
+	 * a fixed point, starting from the alternatives made only of
+	 * epsilon tokens.
+	 * @param symbols The symbol table
+	 */
+	private void computeNullable(SymbolTable symbols)
+	{
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int id = 0; id < symbols.size(); id++)
+			{
+				if (m_nullable[id])
+				{
+					continue;
+				}
+				Token[][] alternatives = symbols.getTokens(id);
+				int[][] links = symbols.getLinks(id);
+				for (int j = 0; j < alternatives.length && !m_nullable[id]; j++)
+				{
+					boolean nullable = true;
+					for (int k = 0; k < alternatives[j].length && nullable; k++)
+					{
+						nullable = isNullable(alternatives[j][k], links[j][k]);
+					}
+					if (nullable)
+					{
+						m_nullable[id] = true;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the FIRST set of each rule. This is computed as a fixed
+	 * point, since rules can refer to each other.
+	 * @param symbols The symbol table
+	 */
+	private void computeFirst(SymbolTable symbols)
+	{
+		boolean[] any = new boolean[symbols.size()];
+		for (int id = 0; id < symbols.size(); id++)
+		{
+			m_first[id] = new BitSet();
+		}
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int id = 0; id < symbols.size(); id++)
+			{
+				if (any[id])
+				{
+					continue;
+				}
+				Token[][] alternatives = symbols.getTokens(id);
+				int[][] links = symbols.getLinks(id);
+				BitSet first = m_first[id];
+				int cardinality = first.cardinality();
+				for (int j = 0; j < alternatives.length; j++)
+				{
+					if (getFirst(alternatives[j], links[j], first) == ANY)
+					{
+						any[id] = true;
+						m_first[id] = null;
+						changed = true;
+						break;
+					}
+				}
+				if (!any[id] && first.cardinality() != cardinality)
+				{
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the depth of recursion that the parser can reach when trying
+	 * each alternative of a rule on an input that the alternative does not
+	 * match. On such an input, the parser only ever explores the
+	 * non-terminal symbols that can be reached without reading anything.
+	 * @param symbols The symbol table
+	 * @param id The ID of the rule
+	 * @param rule_depth The depth of each rule computed so far
+	 * @param state For each rule, 0 if its depth has not been computed,
+	 *   1 if it is being computed, and 2 if it has been computed
+	 * @return The depth of the rule
+	 */
+	private int computeDepth(SymbolTable symbols, int id, int[] rule_depth, int[] state)
+	{
+		if (state[id] == 2)
+		{
+			return rule_depth[id];
+		}
+		if (state[id] == 1)
+		{
+			// The rule can be reached from itself without reading anything
+			return UNBOUNDED;
+		}
+		state[id] = 1;
+		Token[][] alternatives = symbols.getTokens(id);
+		int[][] links = symbols.getLinks(id);
+		m_depth[id] = new int[alternatives.length];
+		int depth = 0;
+		for (int j = 0; j < alternatives.length; j++)
+		{
+			int alt_depth = 0;
+			for (int k = 0; k < alternatives[j].length; k++)
+			{
+				Token tok = alternatives[j][k];
+				int link = links[j][k];
+				if (link != SymbolTable.UNDEFINED)
+				{
+					int child_depth = computeDepth(symbols, link, rule_depth, state);
+					alt_depth = child_depth == UNBOUNDED ? UNBOUNDED : Math.max(alt_depth, child_depth + 1);
+				}
+				if (alt_depth == UNBOUNDED || !isNullable(tok, link))
+				{
+					break;
+				}
+			}
+			m_depth[id][j] = alt_depth;
+			depth = Math.max(depth, alt_depth);
+		}
+		state[id] = 2;
+		rule_depth[id] = depth;
+		return depth;
+	}
+
+	/**
+	 * Adds the FIRST set of an alternative to a set of characters
+	 * @param tokens The tokens of the alternative
+	 * @param links The IDs of the non-terminal symbols in the alternative
+	 * @param first The set of characters to add to
+	 * @return {@link #DEFINITE}, {@link #NULLABLE} or {@link #ANY}
+	 */
+	private int getFirst(Token[] tokens, int[] links, BitSet first)
+	{
+		for (int k = 0; k < tokens.length; k++)
+		{
+			Token tok = tokens[k];
+			if (tok instanceof EpsilonTerminalToken)
+			{
+				// An epsilon that is not the last token of an alternative makes
+				// the whole rule fail; this must not be skipped
+				return k < tokens.length - 1 ? ANY : NULLABLE;
+			}
+			if (tok instanceof NonTerminalToken)
+			{
+				int link = links[k];
+				if (link == SymbolTable.UNDEFINED || m_first[link] == null)
+				{
+					return ANY;
+				}
+				first.or(m_first[link]);
+				if (!m_nullable[link])
+				{
+					return DEFINITE;
+				}
+			}
+			else
+			{
+				BitSet token_first = getFirst(tok);
+				if (token_first == null)
+				{
+					return ANY;
+				}
+				first.or(token_first);
+				return DEFINITE;
+			}
+		}
+		return NULLABLE;
+	}
+
+	/**
+	 * Determines if a token can match the empty string
+	 * @param tok The token
+	 * @param link The ID of the non-terminal symbol the token refers to
+	 * @return {@code false} if the token certainly cannot match the empty
+	 *   string, {@code true} otherwise
+	 */
+	private boolean isNullable(Token tok, int link)
+	{
+		if (tok instanceof EpsilonTerminalToken)
+		{
+			return true;
+		}
+		if (tok instanceof NonTerminalToken)
+		{
+			// An undefined symbol makes the parsing fail with an exception
+			return link == SymbolTable.UNDEFINED || m_nullable[link];
+		}
+		// A terminal token must read at least one character
+		return false;
+	}
+
+	/**
+	 * Gets the set of characters a terminal token can start with
+	 * @param tok The token
+	 * @return The set of characters, or <tt>null</tt> if the token can start
+	 *   with any character
+	 */
+	/*@ pure @*/ static BitSet getFirst(Token tok)
+	{
+		// Only the tokens whose matching is known are analyzed; a descendant
+		// of these classes may match the input in any way
+		Class<?> c = tok.getClass();
+		if (c == NumberTerminalToken.class && ((NumberTerminalToken) tok).getFormat() != null)
+		{
+			BitSet first = new BitSet();
+			first.set('0', '9' + 1);
+			if (((NumberTerminalToken) tok).getFormat() != NumberTerminalToken.Format.HEX)
+			{
+				first.set('-');
+				first.set('+');
+				first.set('.');
+			}
+			return first;
+		}
+		if (c == TerminalToken.class || c == NumberTerminalToken.class)
+		{
+			String name = tok.getName();
+			if (name.isEmpty())
+			{
+				return null;
+			}
+			BitSet first = new BitSet();
+			first.set(name.charAt(0));
+			return first;
+		}
+		if (c == RegexTerminalToken.class)
+		{
+			return getRegexFirst((RegexTerminalToken) tok);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the set of characters a regex terminal can start with. If the
+	 * token ignores case, it is matched against folded input, and the set
+	 * is made of the folded form of each character of its expression.
+	 * @param tok The token
+	 * @return The set of characters, or <tt>null</tt> if the token can
+	 *   start with any character or is too complex to be analyzed
+	 * @see InputBuffer#fold(char)
+	 */
+	/*@ pure @*/ static BitSet getRegexFirst(RegexTerminalToken tok)
+	{
+		BitSet first = getRegexFirst(tok.getName());
+		if (first == null || !tok.isCaseInsensitive())
+		{
+			return first;
+		}
+		BitSet folded = new BitSet();
+		for (int c = first.nextSetBit(0); c >= 0; c = first.nextSetBit(c + 1))
+		{
+			if (c >= 128 && (Character.toUpperCase((char) c) != c || Character.toLowerCase((char) c) != c))
+			{
+				// Unicode case rules are not worth replicating here
+				return null;
+			}
+			folded.set(c);
+			folded.set(InputBuffer.fold((char) c));
+		}
+		return folded;
+	}
+
+	/**
+	 * Gets the set of characters a regular expression can start with. Since
+	 * a regular expression is always matched at the current position of the
+	 * input, the leading <tt>^</tt> is optional. Only regular expressions
+	 * starting with a sequence of literal characters or character classes,
+	 * possibly quantified, are analyzed.
+	 * @param regex The regular expression
+	 * @return The set of characters, or <tt>null</tt> if the expression can
+	 *   start with any character or is too complex to be analyzed
+	 */
+	/*@ pure @*/ static BitSet getRegexFirst(String regex)
+	{
+		if (regex.indexOf('|') >= 0)
+		{
+			return null;
+		}
+		BitSet first = new BitSet();
+		int i = regex.startsWith("^") ? 1 : 0;
+		while (i < regex.length())
+		{
+			char ch = regex.charAt(i);
+			if (ch == '$')
+			{
+				break;
+			}
+			BitSet atom = new BitSet();
+			if (ch == '[')
+			{
+				i = getClassFirst(regex, i + 1, atom);
+			}
+			else if (ch == '\\')
+			{
+				i = getEscapeFirst(regex, i + 1, atom);
+			}
+			else if ("().*+?{}^".indexOf(ch) < 0)
+			{
+				atom.set(ch);
+				i++;
+			}
+			else
+			{
+				return null;
+			}
+			if (i < 0)
+			{
+				return null;
+			}
+			first.or(atom);
+			// Look for a quantifier that makes the atom optional
+			boolean optional = false;
+			boolean quantified = true;
+			if (i < regex.length())
+			{
+				char q = regex.charAt(i);
+				if (q == '*' || q == '?')
+				{
+					optional = true;
+					i++;
+				}
+				else if (q == '+')
+				{
+					i++;
+				}
+				else if (q == '{')
+				{
+					int close = regex.indexOf('}', i);
+					if (close < 0)
+					{
+						return null;
+					}
+					int j = i + 1;
+					while (j < close && Character.isDigit(regex.charAt(j)))
+					{
+						j++;
+					}
+					if (j == i + 1)
+					{
+						return null;
+					}
+					// The atom is optional if the minimum number of repetitions is 0
+					optional = regex.substring(i + 1, j).replace("0", "").isEmpty();
+					i = close + 1;
+				}
+				else
+				{
+					quantified = false;
+				}
+				if (quantified && i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+				{
+					// Reluctant or possessive quantifier
+					i++;
+				}
+			}
+			if (!optional)
+			{
+				return first;
+			}
+		}
+		// Since the token must read at least one character, the first
+		// character belongs to one of the optional atoms read so far
+		return first;
+	}
+
+	/**
+	 * Adds the characters of a character class to a set
+	 * @param regex The regular expression
+	 * @param i The position following the opening bracket of the class
+	 * @param set The set
+	 * @return The position following the closing bracket of the class, or
+	 *   -1 if the class is too complex to be analyzed
+	 */
+	private static int getClassFirst(String regex, int i, BitSet set)
+	{
+		if (i >= regex.length() || regex.charAt(i) == '^' || regex.charAt(i) == ']')
+		{
+			return -1;
+		}
+		while (i < regex.length())
+		{
+			char ch = regex.charAt(i);
+			if (ch == ']')
+			{
+				return i + 1;
+			}
+			if (ch == '[' || (ch == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&'))
+			{
+				return -1;
+			}
+			if (ch == '\\')
+			{
+				i = getEscapeFirst(regex, i + 1, set);
+				if (i < 0)
+				{
+					return -1;
+				}
+				continue;
+			}
+			if (i + 2 < regex.length() && regex.charAt(i + 1) == '-' && regex.charAt(i + 2) != ']')
+			{
+				char to = regex.charAt(i + 2);
+				if (to == '\\' || to == '[' || to < ch)
+				{
+					return -1;
+				}
+				set.set(ch, to + 1);
+				i += 3;
+				continue;
+			}
+			set.set(ch);
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds the characters matched by an escape sequence to a set
+	 * @param regex The regular expression
+	 * @param i The position following the backslash
+	 * @param set The set
+	 * @return The position following the escape sequence, or -1 if the
+	 *   sequence is not supported
+	 */
+	private static int getEscapeFirst(String regex, int i, BitSet set)
+	{
+		if (i >= regex.length())
+		{
+			return -1;
+		}
+		char ch = regex.charAt(i);
+		switch (ch)
+		{
+		case 'd':
+			set.set('0', '9' + 1);
+			break;
+		case 'w':
+			set.set('0', '9' + 1);
+			set.set('a', 'z' + 1);
+			set.set('A', 'Z' + 1);
+			set.set('_');
+			break;
+		case 's':
+			set.set(' ');
+			set.set('\t');
+			set.set('\n');
+			set.set(0x0B);
+			set.set('\f');
+			set.set('\r');
+			break;
+		default:
+			if (Character.isLetterOrDigit(ch))
+			{
+				return -1;
+			}
+			// An escaped character that is not a letter stands for itself
+			set.set(ch);
+		}
+		return i + 1;
+	}
+}
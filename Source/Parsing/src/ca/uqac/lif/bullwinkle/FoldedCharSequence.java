@@ -0,0 +1,92 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * A view of a sequence of characters where each character is folded to
+ * lowercase, as by {@link InputBuffer#fold(char)}. Characters are folded
+ * when they are read, so that a grammar that ignores case can match its
+ * terminals against a large input, such as a
+ * {@link MappedCharSequence}, without making a folded copy of it.
+ * 
+ * @author Sylvain Hallé
+ */
+final class FoldedCharSequence implements CharSequence
+{
+	/**
+	 * The sequence whose characters are folded
+	 */
+	private final CharSequence m_sequence;
+
+	/**
+	 * The same sequence if it is a string, which is read directly;
+	 * otherwise <tt>null</tt>
+	 */
+	private final String m_string;
+
+	/**
+	 * Creates a new folded view
+	 * @param sequence The sequence whose characters are folded
+	 */
+	FoldedCharSequence(/*@NonNull*/ CharSequence sequence)
+	{
+		super();
+		m_sequence = sequence;
+		m_string = sequence instanceof String ? (String) sequence : null;
+	}
+
+	@Override
+	public int length()
+	{
+		return m_sequence.length();
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		String string = m_string;
+		return InputBuffer.fold(string != null ? string.charAt(index) : m_sequence.charAt(index));
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return new FoldedCharSequence(m_sequence.subSequence(start, end));
+	}
+
+	@Override
+	public String toString()
+	{
+		return InputBuffer.fold(m_sequence).toString();
+	}
+}
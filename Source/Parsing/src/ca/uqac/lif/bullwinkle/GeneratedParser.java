@@ -0,0 +1,337 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * The ancestor of the parsers generated by {@link ParserGenerator}. A
+ * generated parser has one method per rule of the grammar, in which the
+ * alternatives of the rule, the matching of literal terminal tokens and
+ * the calls to the methods of other rules are written out. It parses
+ * exactly like {@link BacktrackingParser}, and produces the same trees.
+ * <p>
+ * The instance created by the generator holds no input, and is only used
+ * to create, with {@link #newParser(InputBuffer, ParseOptions)}, a new
+ * instance for each string to parse.
+ * <p>
+ * Each generated class is defined by a class loader of its own, so that
+ * it can be unloaded once its grammar is no longer used. It therefore
+ * belongs to a different runtime package than this class, and can only
+ * call the public members of the library and the protected members of
+ * this class; this is why this class is public, although it is not meant to be
+ * extended outside of the library.
+ * 
+ * @author Sylvain Hallé
+ */
+public abstract class GeneratedParser
+{
+	/**
+	 * The value returned by the parsing methods to indicate that a rule
+	 * does not match the input at a given position
+	 */
+	protected static final int NO_MATCH = ParseTracer.NO_MATCH;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	protected final SymbolTable m_symbols;
+
+	/**
+	 * The terminal tokens whose matching is not written out in the
+	 * generated code
+	 */
+	protected final Token[] m_tokens;
+
+	/**
+	 * The string being parsed
+	 */
+	private final InputBuffer m_input;
+
+	/**
+	 * The contents of the string being parsed
+	 */
+	protected final CharSequence m_contents;
+
+	/**
+	 * The end of the string being parsed, excluding trailing whitespace
+	 */
+	protected final int m_end;
+
+	/**
+	 * The length of the string being parsed
+	 */
+	protected final int m_length;
+
+	/**
+	 * Whether partial parsing is enabled
+	 */
+	protected final boolean m_partialParsing;
+
+	/**
+	 * Maximum number of recursion steps when parsing the string
+	 */
+	protected final int m_maxRecursionSteps;
+
+	/**
+	 * Whether numbers are attached to the nodes of the parse tree
+	 */
+	private final boolean m_numberValues;
+
+	/**
+	 * The options of the parsing
+	 */
+	private final ParseOptions m_options;
+
+	/**
+	 * The interpreter used for the rules that are not generated, created
+	 * the first time one of them is parsed
+	 */
+	private BacktrackingParser m_interpreter = null;
+
+	/**
+	 * Creates a new generated parser
+	 * @param symbols The symbol table of the grammar
+	 * @param tokens The terminal tokens whose matching is not written out
+	 * @param input The string to parse, or <tt>null</tt> for the instance
+	 *   created by the generator
+	 * @param options The options of the parsing, or <tt>null</tt> for the
+	 *   instance created by the generator
+	 */
+	protected GeneratedParser(SymbolTable symbols, Token[] tokens, InputBuffer input, ParseOptions options)
+	{
+		super();
+		m_symbols = symbols;
+		m_tokens = tokens;
+		m_input = input;
+		m_options = options;
+		m_contents = input == null ? null : input.getContents();
+		m_end = input == null ? 0 : input.getEnd();
+		m_length = input == null ? 0 : input.length();
+		m_partialParsing = options != null && options.isPartialParsing();
+		m_maxRecursionSteps = options == null ? 0 : options.getMaxRecursionSteps();
+		m_numberValues = options != null && options.isNumberValues();
+	}
+
+	/**
+	 * Creates a new instance of this parser for a string
+	 * @param input The string to parse
+	 * @param options The options of the parsing
+	 * @return The parser
+	 */
+	protected abstract GeneratedParser newParser(InputBuffer input, ParseOptions options);
+
+	/**
+	 * Parses the input string from a given position with a rule
+	 * @param rule_id The ID of the rule to parse in the symbol table
+	 * @param position The position in the input string where parsing starts
+	 * @param level The recursion level
+	 * @param parent The node to which the parse node produced by the rule
+	 *   is appended if parsing succeeds
+	 * @return The position that follows the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if the rule does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached, or if the parsing reaches a non-terminal token that has
+	 *   no rule
+	 */
+	protected abstract int parse(int rule_id, int position, int level, ParseNode parent) throws ParseException;
+
+	/**
+	 * Parses the string
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached, or if the parsing reaches a non-terminal token that has
+	 *   no rule
+	 */
+	ParseNode parse(int start_id) throws ParseException
+	{
+		// The root of the tree is attached to a placeholder parent node
+		ParseNode parent = new ParseNode();
+		if (parse(start_id, 0, 0, parent) == NO_MATCH)
+		{
+			return null;
+		}
+		return parent.getChildren().get(0);
+	}
+
+	/**
+	 * Parses the input string from a given position with a rule for which
+	 * no code was generated, using the interpreter
+	 * @param rule_id The ID of the rule to parse in the symbol table
+	 * @param position The position in the input string where parsing starts
+	 * @param level The recursion level
+	 * @param parent The node to which the parse node produced by the rule
+	 *   is appended if parsing succeeds
+	 * @return The position that follows the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if the rule does not parse
+	 * @throws ParseException Thrown if the maximum number of recursion steps
+	 *   is reached, or if the parsing reaches a non-terminal token that has
+	 *   no rule
+	 */
+	protected final int interpret(int rule_id, int position, int level, ParseNode parent) throws ParseException
+	{
+		if (m_interpreter == null)
+		{
+			m_interpreter = new BacktrackingParser(m_symbols, m_input, m_options);
+		}
+		return m_interpreter.parse(rule_id, position, level, parent);
+	}
+
+	/**
+	 * Skips the characters ignored by the grammar from a position
+	 * @param position The position
+	 * @return The position of the next character that is not ignored
+	 */
+	protected final int skip(int position)
+	{
+		return m_input.skip(position);
+	}
+
+	/**
+	 * Determines if only characters ignored by the grammar follow a
+	 * position
+	 * @param position The position
+	 * @return <tt>true</tt> if the rest of the string is ignored,
+	 *   <tt>false</tt> otherwise
+	 */
+	protected final boolean isAtEnd(int position)
+	{
+		return m_input.isAtEnd(position);
+	}
+
+	/**
+	 * Determines if the string being parsed contains a string at a position,
+	 * in the case in which terminal tokens are matched
+	 * @param position The position
+	 * @param s The string
+	 * @return <tt>true</tt> if the string is found, <tt>false</tt> otherwise
+	 */
+	protected final boolean regionMatches(int position, String s)
+	{
+		return m_input.regionMatches(position, s);
+	}
+
+	/**
+	 * Determines if the original text of the string being parsed contains
+	 * a string at a position
+	 * @param s The string
+	 * @param position The position
+	 * @return <tt>true</tt> if the string is found, <tt>false</tt> otherwise
+	 */
+	protected final boolean startsWith(String s, int position)
+	{
+		return m_input.startsWith(s, position);
+	}
+
+	/**
+	 * Creates the parse node of a rule
+	 * @param name The name of the rule
+	 * @return The node
+	 */
+	protected static ParseNode newRuleNode(String name)
+	{
+		ParseNode node = new ParseNode(name);
+		node.setValue(name);
+		return node;
+	}
+
+	/**
+	 * Creates a parse node for a token
+	 * @param token The token
+	 * @return The node
+	 */
+	protected static ParseNode newNode(String token)
+	{
+		return new ParseNode(token);
+	}
+
+	/**
+	 * Creates a parse node whose token is the original text of a part of
+	 * the string being parsed
+	 * @param start The position of the first character of the token
+	 * @param end The position that follows the last character of the token
+	 * @return The node
+	 */
+	protected final ParseNode newNode(int start, int end)
+	{
+		ParseNode node = new ParseNode();
+		m_input.setToken(node, start, end);
+		return node;
+	}
+
+	/**
+	 * Creates the parse node of a terminal token whose matching is not
+	 * written out in the generated code
+	 * @param index The index of the token in {@link #m_tokens}
+	 * @param start The position of the first character matched by the token
+	 * @param end The position that follows the last character matched
+	 * @return The node
+	 */
+	protected final ParseNode newTerminalNode(int index, int start, int end)
+	{
+		Token tok = m_tokens[index];
+		ParseNode node = new ParseNode();
+		if (tok instanceof RegexTerminalToken)
+		{
+			node = BnfParser.appendRegexChildren(node, (RegexTerminalToken) tok, m_input);
+		}
+		else if (m_numberValues && tok instanceof NumberTerminalToken)
+		{
+			((NumberTerminalToken) tok).setValue(node, m_input.substring(start, end));
+		}
+		m_input.setToken(node, start, end);
+		return node;
+	}
+
+	/**
+	 * Adds a child to a parse node
+	 * @param parent The node
+	 * @param child The child
+	 */
+	protected static void addChild(ParseNode parent, ParseNode child)
+	{
+		parent.addChild(child);
+	}
+
+	/**
+	 * Creates the exception thrown when the maximum number of recursion
+	 * steps is reached
+	 * @return The exception
+	 */
+	protected static ParseException tooDeep()
+	{
+		return new ParseException("Maximum number of recursion steps reached. If the input string is indeed valid, try increasing the limit.");
+	}
+}
@@ -0,0 +1,345 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import ca.uqac.lif.bullwinkle.BacktrackingParser.MemoEntry;
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * A parser for a string that is edited, such as the contents of a text
+ * editor, which parses it again after each edit without starting from
+ * scratch:
+ * <pre>
+ * IncrementalParser parser = grammar.newIncrementalParser(options);
+ * ParseNode tree = parser.parse(text);
+ * ...
+ * // The user types "x" at position 42
+ * tree = parser.edit(42, 42, "x");
+ * </pre>
+ * The parsing is done in {@linkplain BnfParser#setPackratMode(boolean)
+ * packrat mode}, and the outcome of each rule at each position is kept
+ * from one version of the string to the next, along with the part of the
+ * string this outcome depends on. An edit only discards the outcomes that
+ * depend on the part of the string it changes, and shifts the position of
+ * those that follow it. Parsing the new version then reuses the others,
+ * including their parse nodes, so that the parsing work grows with the
+ * size of the edit rather than with the size of the string; only copying
+ * the new version of the string and shifting the positions of the
+ * outcomes are proportional to its size. The trees of successive
+ * versions share the nodes of the parts that did not change, and should
+ * therefore not be modified.
+ * <p>
+ * The tree obtained is the same as packrat mode would produce for the
+ * whole string. Left recursion mode and lexer mode are not supported. An
+ * incremental parser is meant to be used by a single thread.
+ * 
+ * @author Sylvain Hallé
+ */
+public class IncrementalParser
+{
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The ID of the start rule in the symbol table
+	 */
+	private final int m_startId;
+
+	/**
+	 * The options of the parsing
+	 */
+	private final ParseOptions m_options;
+
+	/**
+	 * The number of characters past the last one it has read that the
+	 * outcome of a rule may depend on. A literal fails without reading any
+	 * character if fewer characters than its length are left before the
+	 * end of the string, and a number looks at most two characters ahead.
+	 */
+	private final int m_lookahead;
+
+	/**
+	 * The current version of the string
+	 */
+	private String m_text = "";
+
+	/**
+	 * The position that follows the last non-whitespace character of the
+	 * string when it was last parsed
+	 */
+	private int m_end = 0;
+
+	/**
+	 * The memo table of the last parsing, whose entries record the part
+	 * of the string they depend on
+	 */
+	private MemoTable m_memo;
+
+	/**
+	 * The number of memoized outcomes reused by the last parsing
+	 */
+	private int m_memoHits = 0;
+
+	/**
+	 * The number of outcomes computed by the last parsing
+	 */
+	private int m_memoMisses = 0;
+
+	/**
+	 * Creates a new incremental parser, for an empty string
+	 * @param symbols The symbol table of the grammar
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @param options The options of the parsing; only partial parsing, the
+	 *   maximum number of recursion steps, the attachment of numbers to
+	 *   the nodes and the tracer are taken into account
+	 * @see CompiledGrammar#newIncrementalParser(ParseOptions)
+	 */
+	IncrementalParser(/*@NonNull*/ SymbolTable symbols, int start_id, /*@NonNull*/ ParseOptions options)
+	{
+		super();
+		m_symbols = symbols;
+		m_startId = start_id;
+		m_options = new ParseOptions()
+				.setPartialParsing(options.isPartialParsing())
+				.setMaxRecursionSteps(options.getMaxRecursionSteps())
+				.setNumberValues(options.isNumberValues())
+				.setTracer(options.getTracer())
+				.setPackratMode(true);
+		m_memo = new MemoTable();
+		int lookahead = 2;
+		for (int id = 0; id < symbols.size(); id++)
+		{
+			for (Token[] tokens : symbols.getTokens(id))
+			{
+				for (Token tok : tokens)
+				{
+					if (tok.getClass() == TerminalToken.class || tok instanceof NumberTerminalToken || (tok instanceof NonTerminalToken && options.isPartialParsing()))
+					{
+						lookahead = Math.max(lookahead, tok.getName().length());
+					}
+				}
+			}
+		}
+		m_lookahead = lookahead;
+	}
+
+	/**
+	 * Replaces the whole string, and parses it from scratch
+	 * @param text The new string
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the string does not follow the grammar
+	 * @throws ParseException Thrown if the maximum number of recursion
+	 *   steps is reached, or if the parsing reaches a non-terminal token
+	 *   that has no rule
+	 */
+	public /*@Nullable*/ ParseNode parse(/*@NonNull*/ CharSequence text) throws ParseException
+	{
+		m_text = text.toString();
+		m_memo = new MemoTable();
+		return parse();
+	}
+
+	/**
+	 * Replaces a part of the string, and parses the new string
+	 * @param start The position of the first character replaced
+	 * @param end The position that follows the last character replaced;
+	 *   it is equal to <tt>start</tt> for an insertion
+	 * @param replacement The characters that replace that part; it is
+	 *   empty for a deletion
+	 * @return The root of the resulting parsing tree, or <tt>null</tt> if
+	 *   the new string does not follow the grammar
+	 * @throws ParseException Thrown if the maximum number of recursion
+	 *   steps is reached, or if the parsing reaches a non-terminal token
+	 *   that has no rule
+	 * @throws IndexOutOfBoundsException Thrown if the part replaced is not
+	 *   inside the string
+	 */
+	public /*@Nullable*/ ParseNode edit(int start, int end, /*@NonNull*/ CharSequence replacement) throws ParseException
+	{
+		String text = m_text;
+		if (start < 0 || end > text.length() || start > end)
+		{
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + text.length());
+		}
+		StringBuilder out = new StringBuilder(text.length() - (end - start) + replacement.length());
+		out.append(text, 0, start).append(replacement).append(text, end, text.length());
+		m_text = out.toString();
+		int shift = replacement.length() - (end - start);
+		m_memo = update(m_memo, start, end, shift);
+		return parse();
+	}
+
+	/**
+	 * Gets the current version of the string
+	 * @return The string
+	 */
+	/*@ pure @*/ public /*@NonNull*/ String getText()
+	{
+		return m_text;
+	}
+
+	/**
+	 * Gets the number of outcomes of a rule at some position that the
+	 * last parsing reused instead of computing them
+	 * @return The number of memo hits
+	 */
+	/*@ pure @*/ public int getMemoHits()
+	{
+		return m_memoHits;
+	}
+
+	/**
+	 * Gets the number of outcomes of a rule at some position that the
+	 * last parsing had to compute
+	 * @return The number of memo misses
+	 */
+	/*@ pure @*/ public int getMemoMisses()
+	{
+		return m_memoMisses;
+	}
+
+	/**
+	 * Parses the current version of the string, reusing the entries of the
+	 * memo table
+	 * @return The root of the resulting parsing tree, or <tt>null</tt>
+	 * @throws ParseException Thrown if the parsing fails with an error
+	 */
+	private ParseNode parse() throws ParseException
+	{
+		TrackedCharSequence text = new TrackedCharSequence(m_text);
+		InputBuffer buffer = new InputBuffer(text, m_symbols.getSkipper());
+		if (m_symbols.isIgnoreCase())
+		{
+			// Terminals are matched against a folded view of the text, whose
+			// characters are recorded as read by the text itself
+			buffer = buffer.fold();
+		}
+		m_end = buffer.getEnd();
+		BacktrackingParser parser = new BacktrackingParser(m_symbols, buffer, m_options, m_memo, text);
+		boolean complete = false;
+		try
+		{
+			ParseNode node = parser.parse(m_startId);
+			complete = true;
+			return node;
+		}
+		finally
+		{
+			m_symbols.releaseMatchers();
+			m_memoHits = parser.getMemoHits();
+			m_memoMisses = parser.getMemoMisses();
+			if (!complete)
+			{
+				// The entries of an interrupted parsing may be incomplete
+				m_memo = new MemoTable();
+			}
+		}
+	}
+
+	/**
+	 * Updates the memo table after an edit
+	 * @param memo The memo table
+	 * @param start The position of the first character replaced
+	 * @param end The position that follows the last character replaced
+	 * @param shift The difference between the length of the replacement
+	 *   and the length of the part replaced
+	 * @return A table with the entries that are still valid, at their
+	 *   position in the new string
+	 */
+	private MemoTable update(MemoTable memo, int start, int end, int shift)
+	{
+		if (shift == 0)
+		{
+			// No position changes: only forget the entries that are no
+			// longer valid
+			for (int slot = 0; slot < memo.getCapacity(); slot++)
+			{
+				MemoEntry entry = memo.getEntry(slot);
+				if (entry != null && !isValid(memo.getPosition(slot), entry, start, end))
+				{
+					memo.forget(slot);
+				}
+			}
+			return memo;
+		}
+		MemoTable updated = new MemoTable(memo.size());
+		for (int slot = 0; slot < memo.getCapacity(); slot++)
+		{
+			MemoEntry entry = memo.getEntry(slot);
+			if (entry == null)
+			{
+				continue;
+			}
+			int position = memo.getPosition(slot);
+			if (!isValid(position, entry, start, end))
+			{
+				continue;
+			}
+			if (position >= end)
+			{
+				if (entry.m_end != ParseTracer.NO_MATCH)
+				{
+					entry.m_end += shift;
+				}
+				entry.m_read += shift;
+				position += shift;
+			}
+			updated.put(memo.getRuleId(slot), position, entry);
+		}
+		return updated;
+	}
+
+	/**
+	 * Determines if a memo entry is still valid after an edit. This is the
+	 * case if the characters it depends on are all before the edit, or all
+	 * after it. An entry that depends on where the string ends, because it
+	 * read up to the last non-whitespace character or close to it, is only
+	 * valid if that character is after the edit.
+	 * @param position The position of the entry before the edit
+	 * @param entry The entry
+	 * @param start The position of the first character replaced
+	 * @param end The position that follows the last character replaced
+	 * @return {@code true} if the entry is valid, {@code false} otherwise
+	 */
+	/*@ pure @*/ private boolean isValid(int position, MemoEntry entry, int start, int end)
+	{
+		boolean at_end = Math.max(entry.m_read, position) + m_lookahead > m_end;
+		if (position < start)
+		{
+			return entry.m_read <= start && !at_end;
+		}
+		return position >= end && (!at_end || m_end > end);
+	}
+}
@@ -0,0 +1,388 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * An immutable view of the string being parsed. Rather than making a
+ * copy of the remainder of the input every time a token is read, the
+ * parser designates a part of the input by an integer position inside
+ * this buffer. The input can be any {@link CharSequence}, such as a
+ * {@link StringBuilder} or a {@link CharArraySequence}; it is read in
+ * place, and must not be modified while it is parsed.
+ * <p>
+ * The content that the grammar skips before each token, such as
+ * whitespace and comments, is skipped by moving a position forward with a
+ * {@link Skipper}; trailing whitespace is excluded once and for all by the
+ * buffer, whose {@linkplain #getEnd() end} is the position that follows
+ * the last non-whitespace character of the input.
+ * <p>
+ * For a grammar that ignores case, terminals are matched against a
+ * {@linkplain #fold() folded} view of the input, where each character is
+ * replaced by its lowercase form when it is read; the parts of the input
+ * copied into the parse tree are still taken from the original text.
+ * 
+ * @author Sylvain Hallé
+ */
+final class InputBuffer
+{
+	/**
+	 * The contents of the buffer, against which terminals are matched
+	 */
+	private final CharSequence m_contents;
+
+	/**
+	 * The original text of the buffer, which differs from
+	 * {@link #m_contents} if the buffer is folded
+	 */
+	private final CharSequence m_text;
+
+	/**
+	 * The skipper for the content skipped before each token
+	 */
+	private final Skipper m_skipper;
+
+	/**
+	 * The position that follows the last non-whitespace character of the
+	 * contents
+	 */
+	private final int m_end;
+
+	/**
+	 * Creates a new input buffer that skips whitespace
+	 * @param contents The contents of the buffer
+	 */
+	InputBuffer(/*@NonNull*/ CharSequence contents)
+	{
+		this(contents, Skipper.WHITESPACE);
+	}
+
+	/**
+	 * Creates a new input buffer
+	 * @param contents The contents of the buffer
+	 * @param skipper The skipper for the content skipped before each token
+	 */
+	InputBuffer(/*@NonNull*/ CharSequence contents, /*@NonNull*/ Skipper skipper)
+	{
+		this(contents, contents, skipper);
+	}
+
+	/**
+	 * Creates a new input buffer
+	 * @param text The original text of the buffer
+	 * @param contents The contents against which terminals are matched,
+	 *   which has the same length and whitespace as the text
+	 * @param skipper The skipper for the content skipped before each token
+	 */
+	InputBuffer(/*@NonNull*/ CharSequence text, /*@NonNull*/ CharSequence contents, /*@NonNull*/ Skipper skipper)
+	{
+		super();
+		m_text = text;
+		m_contents = contents;
+		m_skipper = skipper;
+		int end = text.length();
+		while (end > 0 && skipper.isSpace(text.charAt(end - 1)))
+		{
+			end--;
+		}
+		m_end = end;
+	}
+
+	/**
+	 * Gets the contents of the buffer, against which terminals are matched
+	 * @return The contents
+	 */
+	/*@ pure @*/ CharSequence getContents()
+	{
+		return m_contents;
+	}
+
+	/**
+	 * Gets the original text of the buffer
+	 * @return The text
+	 */
+	/*@ pure @*/ CharSequence getText()
+	{
+		return m_text;
+	}
+
+	/**
+	 * Gets a buffer with the same text as this one, whose contents are
+	 * folded to lowercase. The text is not copied: its characters are
+	 * folded as they are read.
+	 * @return The buffer
+	 * @see FoldedCharSequence
+	 */
+	/*@ pure @*/ InputBuffer fold()
+	{
+		return new InputBuffer(m_text, new FoldedCharSequence(m_text), m_skipper);
+	}
+
+	/**
+	 * Folds the case of a character, so that two characters that are equal
+	 * when case is ignored have the same folded form. As in
+	 * {@link String#equalsIgnoreCase(String)}, the character is converted to
+	 * uppercase, then to lowercase.
+	 * @param c The character
+	 * @return The folded character
+	 */
+	/*@ pure @*/ static char fold(char c)
+	{
+		if (c < 128)
+		{
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Folds the case of each character of a string. The folded string has
+	 * the same length as the original.
+	 * @param s The string
+	 * @return The folded string, which is <tt>s</tt> itself if no character
+	 *   changes
+	 */
+	/*@ pure @*/ static String fold(String s)
+	{
+		return fold((CharSequence) s).toString();
+	}
+
+	/**
+	 * Folds the case of each character of a sequence. The folded sequence
+	 * has the same length as the original.
+	 * @param s The sequence
+	 * @return The folded sequence, which is <tt>s</tt> itself if no
+	 *   character changes
+	 */
+	/*@ pure @*/ static CharSequence fold(CharSequence s)
+	{
+		int length = s.length();
+		char[] chars = null;
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			char folded = fold(c);
+			if (folded != c && chars == null)
+			{
+				// Copy the characters read so far, which are unchanged
+				chars = new char[length];
+				for (int j = 0; j < i; j++)
+				{
+					chars[j] = s.charAt(j);
+				}
+			}
+			if (chars != null)
+			{
+				chars[i] = folded;
+			}
+		}
+		return chars == null ? s : new String(chars);
+	}
+
+	/**
+	 * Gets the length of the contents, including trailing whitespace
+	 * @return The length
+	 */
+	/*@ pure @*/ int length()
+	{
+		return m_contents.length();
+	}
+
+	/**
+	 * Gets the position that follows the last non-whitespace character of
+	 * the contents
+	 * @return The position
+	 */
+	/*@ pure @*/ int getEnd()
+	{
+		return m_end;
+	}
+
+	/**
+	 * Gets the character at some position
+	 * @param position The position
+	 * @return The character
+	 */
+	/*@ pure @*/ char charAt(int position)
+	{
+		return m_contents.charAt(position);
+	}
+
+	/**
+	 * Gets the position of the first character at or after some position
+	 * that is not skipped, such as whitespace or a comment. Comment
+	 * delimiters are looked for in the original text.
+	 * @param position The position
+	 * @return The position of the character, or the
+	 *   {@linkplain #getEnd() end} of the buffer if there is none
+	 */
+	/*@ pure @*/ int skip(int position)
+	{
+		return m_skipper.skip(m_text, position, m_end);
+	}
+
+	/**
+	 * Determines if a position returned by {@link #skip(int)} remains the
+	 * same when characters are appended to the input. This is not the case
+	 * if the position is the end of the input, or if a comment could start
+	 * there.
+	 * @param position The position
+	 * @return <tt>true</tt> if the position cannot change, <tt>false</tt>
+	 *   otherwise
+	 */
+	/*@ pure @*/ boolean isSkipDecided(int position)
+	{
+		return position < m_end && !m_skipper.mayStartComment(m_text, position);
+	}
+
+	/**
+	 * Determines if only skipped content follows some position
+	 * @param position The position
+	 * @return <tt>true</tt> if nothing remains to be parsed after the
+	 *   position, <tt>false</tt> otherwise
+	 */
+	/*@ pure @*/ boolean isAtEnd(int position)
+	{
+		return position >= m_end || skip(position) >= m_end;
+	}
+
+	/**
+	 * Determines if the original text of the buffer contains some string at
+	 * a given position,
+	 * without going past the end of the buffer
+	 * @param s The string
+	 * @param position The position
+	 * @return {@code true} if the string occurs at that position,
+	 *   {@code false} otherwise
+	 */
+	/*@ pure @*/ boolean startsWith(/*@NonNull*/ String s, int position)
+	{
+		return position + s.length() <= m_end && startsWith(m_text, s, position);
+	}
+
+	/**
+	 * Determines if the contents of the buffer, against which terminals are
+	 * matched, contain some string at a given position
+	 * @param s The string
+	 * @param position The position
+	 * @return {@code true} if the string occurs at that position,
+	 *   {@code false} otherwise
+	 */
+	/*@ pure @*/ boolean regionMatches(int position, /*@NonNull*/ String s)
+	{
+		return startsWith(m_contents, s, position);
+	}
+
+	/**
+	 * Determines if a sequence contains some string at a given position
+	 * @param s The sequence
+	 * @param prefix The string
+	 * @param position The position
+	 * @return {@code true} if the string occurs at that position,
+	 *   {@code false} otherwise
+	 */
+	/*@ pure @*/ static boolean startsWith(/*@NonNull*/ CharSequence s, /*@NonNull*/ String prefix, int position)
+	{
+		if (s instanceof String)
+		{
+			return ((String) s).startsWith(prefix, position);
+		}
+		int length = prefix.length();
+		if (position < 0 || position + length > s.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (s.charAt(position + i) != prefix.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the first occurrence of a string in a sequence, at or after
+	 * some position
+	 * @param s The sequence
+	 * @param target The string
+	 * @param from The position where the search starts
+	 * @return The position of the occurrence, or -1 if there is none
+	 */
+	/*@ pure @*/ static int indexOf(/*@NonNull*/ CharSequence s, /*@NonNull*/ String target, int from)
+	{
+		if (s instanceof String)
+		{
+			return ((String) s).indexOf(target, from);
+		}
+		int last = s.length() - target.length();
+		for (int i = Math.max(from, 0); i <= last; i++)
+		{
+			if (startsWith(s, target, i))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets a part of the original text of the buffer
+	 * @param start The position of the first character
+	 * @param end The position that follows the last character
+	 * @return The string
+	 */
+	/*@ pure @*/ String substring(int start, int end)
+	{
+		return m_text.subSequence(start, end).toString();
+	}
+
+	/**
+	 * Sets the token of a node to a part of the original text of the
+	 * buffer. The text is only copied out of the buffer when the token of
+	 * the node is read.
+	 * @param node The node
+	 * @param start The position of the first character
+	 * @param end The position that follows the last character
+	 */
+	void setToken(/*@NonNull*/ ParseNode node, int start, int end)
+	{
+		node.setToken(m_text, start, end);
+	}
+
+	@Override
+	public String toString()
+	{
+		return m_text.toString();
+	}
+}
@@ -0,0 +1,329 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lexer that splits the input into tokens before it is parsed. The
+ * lexer knows every terminal token of a grammar, and reads the input from
+ * left to right, skipping whitespace; at each position, the token it
+ * produces is the terminal that matches the longest prefix of the input.
+ * When several terminals match a prefix of the same length, a literal is
+ * preferred over a regular expression, and otherwise the terminal that
+ * appears first in the grammar is preferred. The parser then only needs
+ * to check the kind of token found at a position to know whether a
+ * terminal matches there, rather than matching the terminal again each
+ * time an alternative is retried.
+ * <p>
+ * Tokenizing the input first changes the language a grammar accepts: a
+ * terminal only matches the input where the lexer has produced a token of
+ * that terminal. For example, with terminals <tt>a</tt>, <tt>b</tt> and
+ * <tt>^[a-z]+</tt>, the string <tt>ab</tt> is a single token of the
+ * regular expression, and is no longer read as <tt>a</tt> followed by
+ * <tt>b</tt>.
+ * <p>
+ * All the literals of the grammar are merged into a single
+ * {@link LiteralTrie}, so that the longest literal at a position is found
+ * in a single pass. The other terminals are matched one after the other,
+ * skipping those whose FIRST set does not contain the next character.
+ * 
+ * @author Sylvain Hallé
+ */
+final class Lexer
+{
+	/**
+	 * The value indicating that a token is not a terminal known by the
+	 * lexer
+	 */
+	static final int NO_TYPE = -1;
+
+	/**
+	 * The distinct terminal tokens of the grammar, in the order they first
+	 * appear; the index of a terminal in this array is its type
+	 */
+	private final TerminalToken[] m_types;
+
+	/**
+	 * The trie of the literal terminals, or <tt>null</tt> if the grammar has
+	 * no literal
+	 */
+	private final LiteralTrie m_literals;
+
+	/**
+	 * The type of each literal terminal, indexed like the alternatives of
+	 * {@link #m_literals}
+	 */
+	private final int[] m_literalTypes;
+
+	/**
+	 * The types of the terminals that are not literals
+	 */
+	private final int[] m_others;
+
+	/**
+	 * The FIRST set of each terminal that is not a literal, indexed like
+	 * {@link #m_others}, or <tt>null</tt> if the terminal can start with
+	 * any character
+	 */
+	private final BitSet[] m_othersFirst;
+
+	/**
+	 * Whether each terminal is a regular expression with capture blocks,
+	 * indexed by type
+	 */
+	private final boolean[] m_captures;
+
+	/**
+	 * The type of each token of each alternative of each rule, or
+	 * {@link #NO_TYPE}
+	 */
+	private final int[][][] m_tokenTypes;
+
+	/**
+	 * Creates a lexer for the terminals of a symbol table
+	 * @param symbols The symbol table
+	 */
+	Lexer(/*@NonNull*/ SymbolTable symbols)
+	{
+		super();
+		Map<String,Integer> type_ids = new HashMap<String,Integer>();
+		List<TerminalToken> types = new ArrayList<TerminalToken>();
+		int size = symbols.size();
+		m_tokenTypes = new int[size][][];
+		for (int id = 0; id < size; id++)
+		{
+			Token[][] alternatives = symbols.getTokens(id);
+			m_tokenTypes[id] = new int[alternatives.length][];
+			for (int j = 0; j < alternatives.length; j++)
+			{
+				Token[] tokens = alternatives[j];
+				int[] token_types = new int[tokens.length];
+				for (int k = 0; k < tokens.length; k++)
+				{
+					token_types[k] = NO_TYPE;
+					if (!(tokens[k] instanceof TerminalToken) || tokens[k] instanceof EpsilonTerminalToken)
+					{
+						continue;
+					}
+					// Two terminals are the same if they are of the same class and
+					// have the same name
+					String key = tokens[k].getClass().getName() + ":" + tokens[k].getName();
+					Integer type = type_ids.get(key);
+					if (type == null)
+					{
+						type = types.size();
+						type_ids.put(key, type);
+						types.add((TerminalToken) tokens[k]);
+					}
+					token_types[k] = type;
+				}
+				m_tokenTypes[id][j] = token_types;
+			}
+		}
+		m_types = types.toArray(new TerminalToken[types.size()]);
+		List<Token[]> literals = new ArrayList<Token[]>();
+		List<Integer> literal_types = new ArrayList<Integer>();
+		List<Integer> others = new ArrayList<Integer>();
+		for (int type = 0; type < m_types.length; type++)
+		{
+			if (isLiteral(type))
+			{
+				literals.add(new Token[] {m_types[type]});
+				literal_types.add(type);
+			}
+			else
+			{
+				others.add(type);
+			}
+		}
+		m_literals = LiteralTrie.build(literals.toArray(new Token[literals.size()][]), 1);
+		m_literalTypes = new int[literal_types.size()];
+		for (int i = 0; i < m_literalTypes.length; i++)
+		{
+			m_literalTypes[i] = literal_types.get(i);
+		}
+		m_captures = new boolean[m_types.length];
+		m_others = new int[others.size()];
+		m_othersFirst = new BitSet[others.size()];
+		for (int i = 0; i < m_others.length; i++)
+		{
+			m_others[i] = others.get(i);
+			TerminalToken tok = m_types[m_others[i]];
+			if (tok instanceof RegexTerminalToken)
+			{
+				m_othersFirst[i] = FirstSets.getRegexFirst((RegexTerminalToken) tok);
+				m_captures[m_others[i]] = ((RegexTerminalToken) tok).getCaptureBlockCount() > 0;
+			}
+		}
+	}
+
+	/**
+	 * Gets the type of each token of each alternative of the rule defining
+	 * a non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return An array containing, for each alternative, the type of each
+	 *   token, or {@link #NO_TYPE} for a token that is not a terminal
+	 */
+	/*@ pure @*/ int[][] getTypes(int id)
+	{
+		return m_tokenTypes[id];
+	}
+
+	/**
+	 * Determines if a terminal is a regular expression with capture blocks.
+	 * Since the lexer matches the regular expression before parsing starts,
+	 * it must be matched again to get the contents of these blocks.
+	 * @param type The type of the terminal
+	 * @return {@code true} if the terminal has capture blocks
+	 */
+	/*@ pure @*/ boolean hasCaptureBlocks(int type)
+	{
+		return m_captures[type];
+	}
+
+	/**
+	 * Splits a string into tokens
+	 * @param input The string
+	 * @return The tokens, or <tt>null</tt> if some part of the string is not
+	 *   matched by any terminal
+	 */
+	/*@Nullable*/ Lexemes tokenize(/*@NonNull*/ InputBuffer input)
+	{
+		CharSequence contents = input.getContents();
+		int end = input.getEnd();
+		Lexemes lexemes = new Lexemes(input.length());
+		int position = input.skip(0);
+		while (position < end)
+		{
+			int best_type = NO_TYPE;
+			int best_length = 0;
+			if (m_literals != null)
+			{
+				for (int literal : m_literals.getCandidates(contents, position, end))
+				{
+					int type = m_literalTypes[literal];
+					int length = m_types[type].getName().length();
+					if (length > best_length)
+					{
+						best_type = type;
+						best_length = length;
+					}
+				}
+			}
+			char c = contents.charAt(position);
+			for (int i = 0; i < m_others.length; i++)
+			{
+				BitSet first = m_othersFirst[i];
+				if (first != null && !first.get(c))
+				{
+					continue;
+				}
+				int length = m_types[m_others[i]].match(contents, position, end);
+				if (length > best_length)
+				{
+					best_type = m_others[i];
+					best_length = length;
+				}
+			}
+			if (best_type == NO_TYPE)
+			{
+				return null;
+			}
+			lexemes.m_types[position] = best_type;
+			lexemes.m_lengths[position] = best_length;
+			position = input.skip(position + best_length);
+		}
+		return lexemes;
+	}
+
+	/**
+	 * Determines if a terminal is a literal
+	 * @param type The type of the terminal
+	 * @return {@code true} if the terminal is a literal
+	 */
+	private /*@ pure @*/ boolean isLiteral(int type)
+	{
+		return m_types[type].getClass() == TerminalToken.class && !m_types[type].getName().isEmpty();
+	}
+
+	/**
+	 * The tokens found by the lexer in a string
+	 */
+	static final class Lexemes
+	{
+		/**
+		 * The type of the token starting at each position of the string, or
+		 * {@link Lexer#NO_TYPE}
+		 */
+		private final int[] m_types;
+
+		/**
+		 * The length of the token starting at each position of the string
+		 */
+		private final int[] m_lengths;
+
+		/**
+		 * Creates an empty list of tokens
+		 * @param length The length of the string
+		 */
+		private Lexemes(int length)
+		{
+			super();
+			m_types = new int[length];
+			m_lengths = new int[length];
+			Arrays.fill(m_types, NO_TYPE);
+		}
+
+		/**
+		 * Matches a terminal at some position of the string
+		 * @param type The type of the terminal
+		 * @param position The position
+		 * @return The number of characters of the token at this position if
+		 *   it is of the given type, -1 otherwise
+		 */
+		/*@ pure @*/ int match(int type, int position)
+		{
+			if (type == NO_TYPE || m_types[position] != type)
+			{
+				return -1;
+			}
+			return m_lengths[position];
+		}
+	}
+}
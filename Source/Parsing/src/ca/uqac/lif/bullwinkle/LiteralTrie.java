@@ -0,0 +1,313 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The literal terminal tokens that start the alternatives of a rule,
+ * merged into a trie. Rather than matching these literals one after the
+ * other, the parser follows the input once from the root of the trie,
+ * which gives all the alternatives whose first literal matches the input;
+ * the other alternatives starting with a literal certainly fail, and are
+ * not tried. This is worthwhile for rules that list many keywords, such
+ * as <tt>&lt;op&gt; := AND | OR | XOR | NAND | ...</tt>
+ * <p>
+ * The trie is stored in arrays: the children of node <i>i</i> are at
+ * indices {@link #m_childStart}[<i>i</i>] to
+ * {@link #m_childStart}[<i>i</i>+1] of {@link #m_labels} and
+ * {@link #m_targets}, sorted by character.
+ * 
+ * @author Sylvain Hallé
+ */
+final class LiteralTrie
+{
+	/**
+	 * The minimum number of alternatives of a rule that must start with a
+	 * literal for the rule to be given a trie
+	 */
+	static final int MIN_LITERALS = 4;
+
+	/**
+	 * The alternatives that do not start with a literal, in the order they
+	 * must be tried
+	 */
+	private final int[] m_others;
+
+	/**
+	 * For each node, the index of its first child in {@link #m_labels} and
+	 * {@link #m_targets}; the last element is the total number of children
+	 */
+	private final int[] m_childStart;
+
+	/**
+	 * The character labelling the edge to each child
+	 */
+	private final char[] m_labels;
+
+	/**
+	 * The node each child corresponds to
+	 */
+	private final int[] m_targets;
+
+	/**
+	 * For each node, the alternatives whose first literal ends at this node,
+	 * or <tt>null</tt>
+	 */
+	private final int[][] m_accept;
+
+	/**
+	 * Builds the trie for the alternatives of a rule
+	 * @param alternatives The tokens of each alternative of the rule
+	 * @return The trie, or <tt>null</tt> if fewer than
+	 *   {@link #MIN_LITERALS} alternatives start with a literal
+	 */
+	static /*@Nullable*/ LiteralTrie build(/*@NonNull*/ Token[][] alternatives)
+	{
+		return build(alternatives, MIN_LITERALS);
+	}
+
+	/**
+	 * Builds the trie for the alternatives of a rule
+	 * @param alternatives The tokens of each alternative of the rule
+	 * @param min_literals The minimum number of alternatives that must
+	 *   start with a literal
+	 * @return The trie, or <tt>null</tt> if fewer than
+	 *   <tt>min_literals</tt> alternatives start with a literal
+	 */
+	static /*@Nullable*/ LiteralTrie build(/*@NonNull*/ Token[][] alternatives, int min_literals)
+	{
+		int num_literals = 0;
+		for (Token[] tokens : alternatives)
+		{
+			if (getLiteral(tokens) != null)
+			{
+				num_literals++;
+			}
+		}
+		if (num_literals == 0 || num_literals < min_literals)
+		{
+			return null;
+		}
+		return new LiteralTrie(alternatives);
+	}
+
+	/**
+	 * Gets the literal an alternative starts with
+	 * @param tokens The tokens of the alternative
+	 * @return The literal, or <tt>null</tt> if the alternative does not
+	 *   start with a non-empty literal terminal token
+	 */
+	private static /*@Nullable*/ String getLiteral(Token[] tokens)
+	{
+		if (tokens.length == 0 || tokens[0].getClass() != TerminalToken.class)
+		{
+			return null;
+		}
+		String literal = tokens[0].getName();
+		return literal.isEmpty() ? null : literal;
+	}
+
+	/**
+	 * Creates a new trie
+	 * @param alternatives The tokens of each alternative of the rule
+	 */
+	private LiteralTrie(Token[][] alternatives)
+	{
+		super();
+		// Build the trie with maps, and store it in arrays afterwards
+		List<TreeMap<Character,Integer>> children = new ArrayList<TreeMap<Character,Integer>>();
+		List<List<Integer>> accept = new ArrayList<List<Integer>>();
+		children.add(new TreeMap<Character,Integer>());
+		accept.add(null);
+		List<Integer> others = new ArrayList<Integer>();
+		for (int j = 0; j < alternatives.length; j++)
+		{
+			String literal = getLiteral(alternatives[j]);
+			if (literal == null)
+			{
+				others.add(j);
+				continue;
+			}
+			int node = 0;
+			for (int i = 0; i < literal.length(); i++)
+			{
+				Integer child = children.get(node).get(literal.charAt(i));
+				if (child == null)
+				{
+					child = children.size();
+					children.add(new TreeMap<Character,Integer>());
+					accept.add(null);
+					children.get(node).put(literal.charAt(i), child);
+				}
+				node = child;
+			}
+			if (accept.get(node) == null)
+			{
+				accept.set(node, new ArrayList<Integer>());
+			}
+			accept.get(node).add(j);
+		}
+		m_others = toArray(others);
+		int num_nodes = children.size();
+		m_childStart = new int[num_nodes + 1];
+		m_labels = new char[num_nodes - 1];
+		m_targets = new int[num_nodes - 1];
+		m_accept = new int[num_nodes][];
+		int index = 0;
+		for (int node = 0; node < num_nodes; node++)
+		{
+			m_childStart[node] = index;
+			for (Map.Entry<Character,Integer> entry : children.get(node).entrySet())
+			{
+				m_labels[index] = entry.getKey();
+				m_targets[index] = entry.getValue();
+				index++;
+			}
+			if (accept.get(node) != null)
+			{
+				m_accept[node] = toArray(accept.get(node));
+			}
+		}
+		m_childStart[num_nodes] = index;
+	}
+
+	/**
+	 * Gets the alternatives of the rule that must be tried at some position
+	 * of the input: those whose first literal matches the input at this
+	 * position, and those that do not start with a literal
+	 * @param s The input
+	 * @param position The position of the first character of the input the
+	 *   alternatives would read
+	 * @param end The end of the input
+	 * @return The indices of the alternatives, in the order they must be
+	 *   tried. The array must not be modified.
+	 */
+	/*@ pure @*/ int[] getCandidates(/*@NonNull*/ CharSequence s, int position, int end)
+	{
+		int[] found = null;
+		int num_found = 0;
+		boolean merged = false;
+		int node = 0;
+		for (int i = position; i < end; i++)
+		{
+			node = getChild(node, s.charAt(i));
+			if (node < 0)
+			{
+				break;
+			}
+			int[] accepted = m_accept[node];
+			if (accepted != null)
+			{
+				if (found == null)
+				{
+					found = accepted;
+					num_found = accepted.length;
+				}
+				else
+				{
+					int[] merged_found = Arrays.copyOf(found, num_found + accepted.length);
+					System.arraycopy(accepted, 0, merged_found, num_found, accepted.length);
+					found = merged_found;
+					num_found = merged_found.length;
+					merged = true;
+				}
+			}
+		}
+		if (found == null)
+		{
+			return m_others;
+		}
+		if (m_others.length == 0 && !merged)
+		{
+			// Only one node of the trie matched; its alternatives are sorted
+			return found;
+		}
+		// Merge the matching alternatives with the others, preserving the
+		// order of the alternatives
+		int[] candidates = new int[m_others.length + num_found];
+		System.arraycopy(m_others, 0, candidates, 0, m_others.length);
+		System.arraycopy(found, 0, candidates, m_others.length, num_found);
+		Arrays.sort(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Gets the child of a node for a character
+	 * @param node The node
+	 * @param c The character
+	 * @return The child, or -1 if the node has no child for this character
+	 */
+	private /*@ pure @*/ int getChild(int node, char c)
+	{
+		int low = m_childStart[node];
+		int high = m_childStart[node + 1] - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			char label = m_labels[middle];
+			if (label < c)
+			{
+				low = middle + 1;
+			}
+			else if (label > c)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return m_targets[middle];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Converts a list of integers to an array
+	 * @param list The list
+	 * @return The array
+	 */
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
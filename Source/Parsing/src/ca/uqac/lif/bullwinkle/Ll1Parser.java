@@ -0,0 +1,568 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A table-driven parser for the grammars that are LL(1). Such a parser
+ * never backtracks: for each rule, the next character of the input
+ * determines the only alternative that can match. It also does not
+ * recurse; the rules being parsed are kept in an explicit stack.
+ * <p>
+ * The parse table associates each rule and each character with the first
+ * alternative of the rule that the general parser would not skip on
+ * this character (see {@link FirstSets}). Therefore, when the parsing
+ * succeeds, the tree produced is exactly the one the general parser
+ * would produce. When it fails, or when it reaches a situation where the
+ * general parser could behave differently (such as exceeding the
+ * maximum number of recursion steps), {@link #parse(InputBuffer, int, int)}
+ * returns <tt>null</tt>, and the string must be given to the general
+ * parser, which determines the final outcome.
+ * <p>
+ * The parser is only used for grammars that have no LL(1) conflict;
+ * method {@link #getConflicts()} describes the conflicts that prevent a
+ * grammar from being LL(1).
+ * 
+ * @author Sylvain Hallé
+ */
+final class Ll1Parser
+{
+	/**
+	 * The number of characters for which the parse table is stored in an
+	 * array; the alternative to use for other characters is looked up
+	 * in the FIRST sets
+	 */
+	private static final int TABLE_SIZE = 128;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The FIRST sets of the grammar
+	 */
+	private final FirstSets m_firstSets;
+
+	/**
+	 * The parse table. For each rule, it gives the index of the alternative
+	 * to use for each character below {@link #TABLE_SIZE}, and at index
+	 * {@link #TABLE_SIZE}, the alternative to use at the end of the input.
+	 * The value -1 indicates that no alternative can match.
+	 */
+	private final int[][] m_table;
+
+	/**
+	 * For each rule, the maximum number of recursion levels the general
+	 * parser can go through when trying one of its alternatives
+	 */
+	private final int[] m_maxDepth;
+
+	/**
+	 * A description of each LL(1) conflict in the grammar
+	 */
+	private final List<String> m_conflicts;
+
+	/**
+	 * Creates a new LL(1) parser for a grammar
+	 * @param symbols The symbol table of the grammar
+	 */
+	Ll1Parser(/*@NonNull*/ SymbolTable symbols)
+	{
+		super();
+		m_symbols = symbols;
+		m_firstSets = symbols.getFirstSets();
+		int size = symbols.size();
+		m_table = new int[size][TABLE_SIZE + 1];
+		m_maxDepth = new int[size];
+		for (int id = 0; id < size; id++)
+		{
+			for (int c = 0; c < TABLE_SIZE; c++)
+			{
+				m_table[id][c] = choose(id, c);
+			}
+			m_table[id][TABLE_SIZE] = choose(id, -1);
+			for (int j = 0; j < symbols.getTokens(id).length; j++)
+			{
+				m_maxDepth[id] = Math.max(m_maxDepth[id], m_firstSets.getDepth(id, j));
+			}
+		}
+		m_conflicts = findConflicts();
+	}
+
+	/**
+	 * Determines if the grammar is LL(1)
+	 * @return {@code true} if the grammar has no LL(1) conflict,
+	 *   {@code false} otherwise
+	 */
+	/*@ pure @*/ boolean isLl1()
+	{
+		return m_conflicts.isEmpty();
+	}
+
+	/**
+	 * Gets a description of each LL(1) conflict in the grammar
+	 * @return The list of conflicts, which is empty if the grammar is LL(1)
+	 */
+	/*@ pure @*/ List<String> getConflicts()
+	{
+		return m_conflicts;
+	}
+
+	/**
+	 * Parses a string
+	 * @param input The string to parse
+	 * @param start_id The ID of the start rule
+	 * @param max_level The maximum recursion level of the general parser
+	 * @param number_values Whether numbers are attached to the nodes of
+	 *   the parse tree
+	 * @return The root of the parse tree, or <tt>null</tt> if the string
+	 *   must be given to the general parser to determine the outcome
+	 */
+	/*@Nullable*/ ParseNode parse(/*@NonNull*/ InputBuffer input, int start_id, int max_level, boolean number_values)
+	{
+		final CharSequence contents = input.getContents();
+		final int input_end = input.getEnd();
+		List<Frame> stack = new ArrayList<Frame>();
+		Frame top = push(input, start_id, 0, 0, max_level);
+		if (top == null)
+		{
+			return null;
+		}
+		while (true)
+		{
+			if (top.m_index < top.m_tokens.length)
+			{
+				int position = input.skip(top.m_position);
+				Token tok = top.m_tokens[top.m_index];
+				int link = top.m_links[top.m_index];
+				top.m_index++;
+				top.m_position = position;
+				if (tok instanceof EpsilonTerminalToken)
+				{
+					ParseNode child = new ParseNode();
+					child.setToken("");
+					top.m_node.addChild(child);
+					top.m_readEpsilon = true;
+					if (top.m_index < top.m_tokens.length)
+					{
+						// An epsilon that is not the last token makes the rule fail
+						return null;
+					}
+				}
+				else if (tok instanceof TerminalToken)
+				{
+					if (position >= input_end)
+					{
+						return null;
+					}
+					int length = tok.match(contents, position, input_end);
+					if (length <= 0)
+					{
+						return null;
+					}
+					ParseNode child = new ParseNode();
+					if (tok instanceof RegexTerminalToken)
+					{
+						child = BnfParser.appendRegexChildren(child, (RegexTerminalToken) tok, input);
+					}
+					else if (number_values && tok instanceof NumberTerminalToken)
+					{
+						((NumberTerminalToken) tok).setValue(child, input.substring(position, position + length));
+					}
+					input.setToken(child, position, position + length);
+					top.m_node.addChild(child);
+					top.m_position = position + length;
+				}
+				else
+				{
+					if (link == SymbolTable.UNDEFINED)
+					{
+						// The general parser reports this error
+						return null;
+					}
+					Frame child = push(input, link, position, top.m_level + 1, max_level);
+					if (child == null)
+					{
+						return null;
+					}
+					stack.add(top);
+					top = child;
+				}
+			}
+			else
+			{
+				// All the tokens of the alternative have been read
+				if (top.m_level == 0)
+				{
+					// Leading and trailing skipped content count as consumed
+					int consumed = input.length() - (input_end - input.skip(top.m_position));
+					if (!input.isAtEnd(top.m_position) || (consumed == 0 && !top.m_readEpsilon))
+					{
+						return null;
+					}
+					return top.m_node;
+				}
+				if (top.m_position == top.m_start && !top.m_readEpsilon)
+				{
+					return null;
+				}
+				Frame parent = stack.remove(stack.size() - 1);
+				parent.m_node.addChild(top.m_node);
+				parent.m_position = top.m_position;
+				top = parent;
+			}
+		}
+	}
+
+	/**
+	 * Starts the parsing of a rule, by choosing the alternative to use
+	 * @param input The string to parse
+	 * @param id The ID of the rule
+	 * @param position The position where the rule starts
+	 * @param level The recursion level of the rule
+	 * @param max_level The maximum recursion level of the general parser
+	 * @return The new stack frame, or <tt>null</tt> if no alternative can
+	 *   be chosen
+	 */
+	private Frame push(InputBuffer input, int id, int position, int level, int max_level)
+	{
+		if (m_maxDepth[id] > max_level - level)
+		{
+			// The general parser would not skip the same alternatives, or
+			// would stop with an exception
+			return null;
+		}
+		int first_position = input.skip(position);
+		int alternative;
+		if (first_position >= input.getEnd())
+		{
+			alternative = m_table[id][TABLE_SIZE];
+		}
+		else
+		{
+			char c = input.charAt(first_position);
+			alternative = c < TABLE_SIZE ? m_table[id][c] : choose(id, c);
+		}
+		if (alternative < 0)
+		{
+			return null;
+		}
+		String left_hand_side = m_symbols.getName(id);
+		ParseNode node = new ParseNode();
+		node.setToken(left_hand_side);
+		node.setValue(left_hand_side);
+		return new Frame(m_symbols.getTokens(id)[alternative], m_symbols.getLinks(id)[alternative], node, position, level);
+	}
+
+	/**
+	 * Finds the first alternative of a rule that cannot be skipped on a
+	 * given character
+	 * @param id The ID of the rule
+	 * @param c The character, or -1 for the end of the input
+	 * @return The index of the alternative, or -1 if all can be skipped
+	 */
+	private int choose(int id, int c)
+	{
+		int num_alternatives = m_symbols.getTokens(id).length;
+		for (int j = 0; j < num_alternatives; j++)
+		{
+			BitSet first = m_firstSets.getFirst(id, j);
+			if (first == null || (c >= 0 && first.get(c)))
+			{
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the LL(1) conflicts in the grammar
+	 * @return A description of each conflict
+	 */
+	private List<String> findConflicts()
+	{
+		List<String> conflicts = new ArrayList<String>();
+		int size = m_symbols.size();
+		BitSet[] follow = new BitSet[size];
+		boolean[] follow_any = new boolean[size];
+		computeFollow(follow, follow_any);
+		for (int id = 0; id < size; id++)
+		{
+			String name = m_symbols.getName(id);
+			TokenString[] alternatives = m_symbols.getAlternatives(id);
+			int n = alternatives.length;
+			for (int i = 0; i < n; i++)
+			{
+				Token[] tokens = m_symbols.getTokens(id)[i];
+				int[] links = m_symbols.getLinks(id)[i];
+				for (int k = 0; k < tokens.length; k++)
+				{
+					if (tokens[k] instanceof NonTerminalToken && links[k] == SymbolTable.UNDEFINED)
+					{
+						conflicts.add(name + ": no rule defines " + tokens[k]);
+					}
+				}
+				if (m_firstSets.getDepth(id, i) == FirstSets.UNBOUNDED)
+				{
+					conflicts.add(name + ": alternative '" + alternatives[i] + "' is left-recursive");
+					continue;
+				}
+				int kind = m_firstSets.getKind(id, i);
+				if (kind == FirstSets.ANY && n > 1)
+				{
+					conflicts.add(name + ": alternative '" + alternatives[i] + "' can start with any character");
+				}
+				else if (kind == FirstSets.NULLABLE && i < n - 1)
+				{
+					conflicts.add(name + ": alternative '" + alternatives[i] + "' can match the empty string but is not the last one");
+				}
+				else if (kind == FirstSets.DEFINITE)
+				{
+					BitSet first = m_firstSets.getFirst(id, i);
+					for (int j = i + 1; j < n; j++)
+					{
+						BitSet other = m_firstSets.getFirst(id, j);
+						if (m_firstSets.getKind(id, j) == FirstSets.DEFINITE && other != null && first.intersects(other))
+						{
+							BitSet common = (BitSet) first.clone();
+							common.and(other);
+							conflicts.add(name + ": alternatives '" + alternatives[i] + "' and '" + alternatives[j] + "' can both start with '" + (char) common.nextSetBit(0) + "'");
+						}
+					}
+					if (m_firstSets.getKind(id, n - 1) == FirstSets.NULLABLE && i < n - 1)
+					{
+						// The empty alternative is chosen on the characters that can
+						// follow the rule
+						if (follow_any[id])
+						{
+							conflicts.add(name + ": alternative '" + alternatives[i] + "' and the empty alternative '" + alternatives[n - 1] + "' cannot be distinguished, since any character can follow " + name);
+						}
+						else if (first.intersects(follow[id]))
+						{
+							BitSet common = (BitSet) first.clone();
+							common.and(follow[id]);
+							conflicts.add(name + ": alternative '" + alternatives[i] + "' and the empty alternative '" + alternatives[n - 1] + "' both apply to '" + (char) common.nextSetBit(0) + "'");
+						}
+					}
+				}
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Computes the FOLLOW set of each rule, that is, the set of characters
+	 * that can come after the rule in a string. This is computed as a fixed
+	 * point.
+	 * @param follow An array where the FOLLOW set of each rule is put
+	 * @param follow_any An array indicating for each rule if any character
+	 *   can follow it
+	 */
+	private void computeFollow(BitSet[] follow, boolean[] follow_any)
+	{
+		int size = m_symbols.size();
+		for (int id = 0; id < size; id++)
+		{
+			follow[id] = new BitSet();
+		}
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int id = 0; id < size; id++)
+			{
+				Token[][] alternatives = m_symbols.getTokens(id);
+				int[][] links = m_symbols.getLinks(id);
+				for (int j = 0; j < alternatives.length; j++)
+				{
+					for (int k = 0; k < alternatives[j].length; k++)
+					{
+						int target = links[j][k];
+						if (target == SymbolTable.UNDEFINED)
+						{
+							continue;
+						}
+						int cardinality = follow[target].cardinality();
+						boolean any = follow_any[target];
+						if (addFirst(alternatives[j], links[j], k + 1, follow[target]))
+						{
+							follow_any[target] = true;
+						}
+						else if (isNullable(alternatives[j], links[j], k + 1))
+						{
+							follow[target].or(follow[id]);
+							follow_any[target] |= follow_any[id];
+						}
+						if (follow[target].cardinality() != cardinality || follow_any[target] != any)
+						{
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the FIRST set of the suffix of an alternative to a set of
+	 * characters
+	 * @param tokens The tokens of the alternative
+	 * @param links The IDs of the non-terminal symbols in the alternative
+	 * @param start The index of the first token of the suffix
+	 * @param set The set of characters
+	 * @return {@code true} if the suffix can start with any character
+	 */
+	private boolean addFirst(Token[] tokens, int[] links, int start, BitSet set)
+	{
+		for (int k = start; k < tokens.length; k++)
+		{
+			Token tok = tokens[k];
+			if (tok instanceof EpsilonTerminalToken)
+			{
+				continue;
+			}
+			if (tok instanceof NonTerminalToken)
+			{
+				if (links[k] == SymbolTable.UNDEFINED || m_firstSets.getFirst(links[k]) == null)
+				{
+					return true;
+				}
+				set.or(m_firstSets.getFirst(links[k]));
+				if (!m_firstSets.isNullable(links[k]))
+				{
+					return false;
+				}
+			}
+			else
+			{
+				BitSet first = FirstSets.getFirst(tok);
+				if (first == null)
+				{
+					return true;
+				}
+				set.or(first);
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if the suffix of an alternative can match the empty string
+	 * @param tokens The tokens of the alternative
+	 * @param links The IDs of the non-terminal symbols in the alternative
+	 * @param start The index of the first token of the suffix
+	 * @return {@code false} if the suffix certainly cannot match the
+	 *   empty string, {@code true} otherwise
+	 */
+	private boolean isNullable(Token[] tokens, int[] links, int start)
+	{
+		for (int k = start; k < tokens.length; k++)
+		{
+			Token tok = tokens[k];
+			if (tok instanceof NonTerminalToken)
+			{
+				if (links[k] != SymbolTable.UNDEFINED && !m_firstSets.isNullable(links[k]))
+				{
+					return false;
+				}
+			}
+			else if (!(tok instanceof EpsilonTerminalToken))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The state of the parsing of a rule
+	 */
+	private static final class Frame
+	{
+		/**
+		 * The tokens of the alternative being parsed
+		 */
+		final Token[] m_tokens;
+
+		/**
+		 * The IDs of the non-terminal symbols in the alternative
+		 */
+		final int[] m_links;
+
+		/**
+		 * The parse node of the rule
+		 */
+		final ParseNode m_node;
+
+		/**
+		 * The position where the rule starts
+		 */
+		final int m_start;
+
+		/**
+		 * The recursion level of the rule
+		 */
+		final int m_level;
+
+		/**
+		 * The index of the next token of the alternative to read
+		 */
+		int m_index = 0;
+
+		/**
+		 * The current position in the input
+		 */
+		int m_position;
+
+		/**
+		 * Whether an epsilon token has been read
+		 */
+		boolean m_readEpsilon = false;
+
+		Frame(Token[] tokens, int[] links, ParseNode node, int start, int level)
+		{
+			super();
+			m_tokens = tokens;
+			m_links = links;
+			m_node = node;
+			m_start = start;
+			m_level = level;
+			m_position = start;
+		}
+	}
+}
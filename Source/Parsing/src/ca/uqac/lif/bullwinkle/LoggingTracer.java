@@ -0,0 +1,128 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracer that writes a description of each step of the parsing to a
+ * logger. This is the tracer used by a parser in debug mode.
+ * 
+ * @author Sylvain Hallé
+ */
+final class LoggingTracer implements ParseTracer
+{
+	/**
+	 * The logger where messages are written
+	 */
+	private final Logger m_logger;
+
+	/**
+	 * The string being parsed
+	 */
+	private CharSequence m_input = "";
+
+	/**
+	 * Creates a new logging tracer
+	 * @param logger The logger where messages are written
+	 */
+	LoggingTracer(/*@NonNull*/ Logger logger)
+	{
+		super();
+		m_logger = logger;
+	}
+
+	@Override
+	public void startParse(CharSequence input)
+	{
+		m_input = input;
+	}
+
+	@Override
+	public void endParse(boolean success)
+	{
+		if (!success)
+		{
+			log("FAILED: The input string does not follow the grammar", 0);
+		}
+		m_input = "";
+	}
+
+	@Override
+	public void enterRule(BnfRule rule, int position, int level)
+	{
+		log("Considering input '" + m_input.subSequence(position, m_input.length()) + "' with rule " + rule, level);
+	}
+
+	@Override
+	public void exitRule(BnfRule rule, int position, int end, int level)
+	{
+		if (end == NO_MATCH)
+		{
+			log("FAILED parsing input '" + m_input.subSequence(position, m_input.length()) + "' with rule " + rule, level);
+		}
+	}
+
+	@Override
+	public void enterAlternative(BnfRule rule, TokenString alternative, int position, int level)
+	{
+		log("Alternative " + alternative, level);
+	}
+
+	@Override
+	public void exitAlternative(BnfRule rule, TokenString alternative, int position, int end, int level)
+	{
+		if (end == NO_MATCH)
+		{
+			log("FAILED parsing with case " + alternative, level);
+		}
+	}
+
+	/**
+	 * Writes a message to the logger
+	 * @param message The message
+	 * @param level The level of the rule the message is about, which
+	 *   determines the indentation of the message
+	 */
+	private void log(String message, int level)
+	{
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < level; i++)
+		{
+			out.append("  ");
+		}
+		out.append(message);
+		m_logger.log(Level.INFO, "{0}", out.toString());
+	}
+}
@@ -0,0 +1,374 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The contents of a file, read as a sequence of characters through a
+ * memory mapping instead of being loaded into a string. The bytes of the
+ * file are only read from the mapping when the parser looks at them, so
+ * that the heap used to parse a file does not grow with its size.
+ * <p>
+ * When each byte of the file is a character, which is the case for a file
+ * encoded in ISO-8859-1, or for a file that only contains ASCII characters
+ * and is encoded in UTF-8 or US-ASCII, the character at some position is
+ * simply the byte at the same position. Otherwise, the file is decoded in
+ * blocks of characters: a first pass over the file records where each
+ * block starts, and a block is then decoded again whenever it is read. A
+ * few decoded blocks are kept, so that reading the characters of the file
+ * in order decodes each block once.
+ * <p>
+ * Since a {@link CharSequence} is indexed by an <tt>int</tt>, a file can
+ * be at most 2 GiB long. A file in an encoding that cannot be decoded from
+ * the middle, such as UTF-16 with a byte order mark, is decoded into a
+ * string at once.
+ * <p>
+ * The sequence can be read by multiple threads at the same time; the file
+ * must not be modified while it is read.
+ * 
+ * @author Sylvain Hallé
+ */
+final class MappedCharSequence implements CharSequence
+{
+	/**
+	 * The number of characters of a decoded block
+	 */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * The number of decoded blocks that are kept
+	 */
+	private static final int CACHED_BLOCKS = 16;
+
+	/**
+	 * The bytes of the file
+	 */
+	private final ByteBuffer m_bytes;
+
+	/**
+	 * The encoding of the file
+	 */
+	private final Charset m_charset;
+
+	/**
+	 * Whether each byte of the file is a character
+	 */
+	private final boolean m_singleByte;
+
+	/**
+	 * The number of characters of the file
+	 */
+	private final int m_length;
+
+	/**
+	 * The position in the file of the first byte of each block, or
+	 * <tt>null</tt> if each byte is a character
+	 */
+	private final int[] m_byteStarts;
+
+	/**
+	 * The index of the first character of each block, followed by the
+	 * length of the sequence, or <tt>null</tt> if each byte is a character
+	 */
+	private final int[] m_charStarts;
+
+	/**
+	 * The decoded blocks that are kept; block <i>k</i> can only be kept
+	 * in slot <i>k</i> modulo {@link #CACHED_BLOCKS}
+	 */
+	private final Block[] m_cache;
+
+	/**
+	 * The block where the last character was read
+	 */
+	private Block m_last = null;
+
+	/**
+	 * Creates a sequence over some bytes
+	 * @param bytes The bytes, from position 0 to the limit of the buffer
+	 * @param charset The encoding of the bytes
+	 */
+	MappedCharSequence(/*@NonNull*/ ByteBuffer bytes, /*@NonNull*/ Charset charset)
+	{
+		super();
+		m_bytes = bytes;
+		m_charset = charset;
+		m_singleByte = charset.equals(StandardCharsets.ISO_8859_1) || ((charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) && isAscii(bytes));
+		if (m_singleByte)
+		{
+			m_length = bytes.limit();
+			m_byteStarts = null;
+			m_charStarts = null;
+			m_cache = null;
+			return;
+		}
+		List<int[]> starts = new ArrayList<int[]>();
+		ByteBuffer in = bytes.duplicate();
+		in.position(0);
+		CharBuffer out = CharBuffer.allocate(BLOCK_SIZE);
+		CharsetDecoder decoder = newDecoder();
+		int length = 0;
+		while (in.hasRemaining())
+		{
+			starts.add(new int[] {in.position(), length});
+			out.clear();
+			decoder.decode(in, out, true);
+			length += out.position();
+		}
+		m_length = length;
+		m_byteStarts = new int[starts.size()];
+		m_charStarts = new int[starts.size() + 1];
+		for (int i = 0; i < m_byteStarts.length; i++)
+		{
+			m_byteStarts[i] = starts.get(i)[0];
+			m_charStarts[i] = starts.get(i)[1];
+		}
+		m_charStarts[m_byteStarts.length] = length;
+		m_cache = new Block[CACHED_BLOCKS];
+	}
+
+	/**
+	 * Reads the contents of a file through a memory mapping
+	 * @param path The path of the file
+	 * @param charset The encoding of the file
+	 * @return The contents of the file
+	 * @throws IOException Thrown if the file cannot be read, or if it is
+	 *   larger than 2 GiB
+	 */
+	static /*@NonNull*/ CharSequence map(/*@NonNull*/ Path path, /*@NonNull*/ Charset charset) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException("File " + path + " is too large to be parsed (" + size + " bytes)");
+			}
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (!isStateless(charset))
+			{
+				return charset.decode(bytes).toString();
+			}
+			return new MappedCharSequence(bytes, charset);
+		}
+	}
+
+	@Override
+	public int length()
+	{
+		return m_length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= m_length)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + m_length);
+		}
+		if (m_singleByte)
+		{
+			return (char) (m_bytes.get(index) & 0xFF);
+		}
+		Block block = m_last;
+		if (block == null || index < block.m_start || index >= block.m_start + block.m_chars.length)
+		{
+			block = getBlock(index);
+			m_last = block;
+		}
+		return block.m_chars[index - block.m_start];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		if (start < 0 || end > m_length || start > end)
+		{
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + m_length);
+		}
+		if (m_singleByte)
+		{
+			byte[] bytes = new byte[end - start];
+			ByteBuffer in = m_bytes.duplicate();
+			in.position(start);
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+		char[] chars = new char[end - start];
+		int position = start;
+		while (position < end)
+		{
+			Block block = getBlock(position);
+			int count = Math.min(end, block.m_start + block.m_chars.length) - position;
+			System.arraycopy(block.m_chars, position - block.m_start, chars, position - start, count);
+			position += count;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Copies the whole sequence into a string
+	 * @return The string
+	 */
+	@Override
+	public String toString()
+	{
+		return subSequence(0, m_length).toString();
+	}
+
+	/**
+	 * Gets the decoded block that contains some character
+	 * @param index The index of the character
+	 * @return The block
+	 */
+	private Block getBlock(int index)
+	{
+		int k = Arrays.binarySearch(m_charStarts, 0, m_byteStarts.length, index);
+		if (k < 0)
+		{
+			k = -k - 2;
+		}
+		int slot = k % CACHED_BLOCKS;
+		Block block = m_cache[slot];
+		if (block != null && block.m_index == k)
+		{
+			return block;
+		}
+		ByteBuffer in = m_bytes.duplicate();
+		in.limit(k + 1 < m_byteStarts.length ? m_byteStarts[k + 1] : m_bytes.limit());
+		in.position(m_byteStarts[k]);
+		char[] chars = new char[m_charStarts[k + 1] - m_charStarts[k]];
+		newDecoder().decode(in, CharBuffer.wrap(chars), true);
+		block = new Block(k, m_charStarts[k], chars);
+		// Threads may replace each other's blocks, but only with blocks that
+		// are equal
+		m_cache[slot] = block;
+		return block;
+	}
+
+	/**
+	 * Creates a decoder for the encoding of the file, which replaces the
+	 * bytes that are not valid, as when a string is created from bytes
+	 * @return The decoder
+	 */
+	private CharsetDecoder newDecoder()
+	{
+		return m_charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Determines if some bytes are all ASCII characters
+	 * @param bytes The bytes
+	 * @return <tt>true</tt> if no byte has its high bit set
+	 */
+	private static boolean isAscii(ByteBuffer bytes)
+	{
+		int limit = bytes.limit();
+		int i = 0;
+		for (; i + 8 <= limit; i += 8)
+		{
+			if ((bytes.getLong(i) & 0x8080808080808080L) != 0)
+			{
+				return false;
+			}
+		}
+		for (; i < limit; i++)
+		{
+			if (bytes.get(i) < 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if text in some encoding can be decoded starting from the
+	 * first byte of any character, without knowing the bytes that come
+	 * before
+	 * @param charset The encoding
+	 * @return <tt>true</tt> if the encoding can be decoded from the middle
+	 */
+	private static boolean isStateless(Charset charset)
+	{
+		if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE))
+		{
+			return true;
+		}
+		// Each byte of a single-byte encoding is a character
+		return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1;
+	}
+
+	/**
+	 * A decoded block of characters
+	 */
+	private static final class Block
+	{
+		/**
+		 * The index of the block
+		 */
+		final int m_index;
+
+		/**
+		 * The index of the first character of the block in the sequence
+		 */
+		final int m_start;
+
+		/**
+		 * The characters of the block
+		 */
+		final char[] m_chars;
+
+		Block(int index, int start, char[] chars)
+		{
+			super();
+			m_index = index;
+			m_start = start;
+			m_chars = chars;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.Arrays;
+
+import ca.uqac.lif.bullwinkle.BacktrackingParser.MemoEntry;
+
+/**
+ * The memoized outcomes of parsing rules at positions of the input, used
+ * in packrat and left recursion modes. A rule is designated by its ID in
+ * the {@link SymbolTable} of the grammar.
+ * <p>
+ * Like the {@link TerminalCache}, the pairs of a rule and a position are
+ * stored in an open-addressing table of primitive keys, so that looking up
+ * or recording an outcome does not box the position nor create a node of
+ * a hash map.
+ * 
+ * @author Sylvain Hallé
+ */
+final class MemoTable
+{
+	/**
+	 * The key of an empty slot of the table. It is distinct from every
+	 * valid key, since rule IDs and positions are never negative.
+	 */
+	private static final long EMPTY = -1L;
+
+	/**
+	 * The initial number of slots of the table
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * The key of each slot, made of a rule ID and a position
+	 */
+	private long[] m_keys;
+
+	/**
+	 * The entry recorded in each slot
+	 */
+	private MemoEntry[] m_entries;
+
+	/**
+	 * The number of occupied slots
+	 */
+	private int m_size = 0;
+
+	/**
+	 * Creates an empty table
+	 */
+	MemoTable()
+	{
+		this(0);
+	}
+
+	/**
+	 * Creates an empty table that holds a number of outcomes without
+	 * growing
+	 * @param expected The number of outcomes
+	 */
+	MemoTable(int expected)
+	{
+		super();
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < 2 * expected)
+		{
+			capacity *= 2;
+		}
+		m_keys = new long[capacity];
+		m_entries = new MemoEntry[capacity];
+		Arrays.fill(m_keys, EMPTY);
+	}
+
+	/**
+	 * Gets the outcome of parsing a rule at some position
+	 * @param rule_id The ID of the rule
+	 * @param position The position
+	 * @return The entry, or <tt>null</tt> if the outcome is not recorded
+	 */
+	/*@ pure @*/ /*@Nullable*/ MemoEntry get(int rule_id, int position)
+	{
+		long key = getKey(rule_id, position);
+		long[] keys = m_keys;
+		int mask = keys.length - 1;
+		for (int slot = getSlot(key, mask); ; slot = (slot + 1) & mask)
+		{
+			long k = keys[slot];
+			if (k == key)
+			{
+				return m_entries[slot];
+			}
+			if (k == EMPTY)
+			{
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Records the outcome of parsing a rule at some position
+	 * @param rule_id The ID of the rule
+	 * @param position The position
+	 * @param entry The entry
+	 */
+	void put(int rule_id, int position, /*@NonNull*/ MemoEntry entry)
+	{
+		if (2 * (m_size + 1) > m_keys.length)
+		{
+			grow();
+		}
+		if (insert(m_keys, m_entries, getKey(rule_id, position), entry))
+		{
+			m_size++;
+		}
+	}
+
+	/**
+	 * Forgets the outcome recorded in a slot. The slot keeps its key, so
+	 * that the outcome of the same rule at the same position can be
+	 * recorded there again.
+	 * @param slot The slot
+	 */
+	void forget(int slot)
+	{
+		m_entries[slot] = null;
+	}
+
+	/**
+	 * Gets the number of slots of the table that have a key, including
+	 * the slots whose outcome is forgotten
+	 * @return The number of slots
+	 */
+	/*@ pure @*/ int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Gets the number of slots of the table. Together with
+	 * {@link #getEntry(int)}, {@link #getRuleId(int)} and
+	 * {@link #getPosition(int)}, it allows to go through the contents of
+	 * the table.
+	 * @return The number of slots
+	 */
+	/*@ pure @*/ int getCapacity()
+	{
+		return m_keys.length;
+	}
+
+	/**
+	 * Gets the entry recorded in a slot
+	 * @param slot The slot
+	 * @return The entry, or <tt>null</tt> if the slot is empty or its
+	 *   outcome is forgotten
+	 */
+	/*@ pure @*/ /*@Nullable*/ MemoEntry getEntry(int slot)
+	{
+		return m_entries[slot];
+	}
+
+	/**
+	 * Gets the ID of the rule of the entry recorded in a slot
+	 * @param slot The slot, which must not be empty
+	 * @return The ID of the rule
+	 */
+	/*@ pure @*/ int getRuleId(int slot)
+	{
+		return (int) (m_keys[slot] >>> 32);
+	}
+
+	/**
+	 * Gets the position of the entry recorded in a slot
+	 * @param slot The slot, which must not be empty
+	 * @return The position
+	 */
+	/*@ pure @*/ int getPosition(int slot)
+	{
+		return (int) m_keys[slot];
+	}
+
+	/**
+	 * Doubles the number of slots of the table
+	 */
+	private void grow()
+	{
+		long[] keys = new long[2 * m_keys.length];
+		MemoEntry[] entries = new MemoEntry[keys.length];
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < m_keys.length; i++)
+		{
+			if (m_keys[i] != EMPTY)
+			{
+				insert(keys, entries, m_keys[i], m_entries[i]);
+			}
+		}
+		m_keys = keys;
+		m_entries = entries;
+	}
+
+	/**
+	 * Puts a key and its entry into a table
+	 * @param keys The keys of the table
+	 * @param entries The entries of the table
+	 * @param key The key
+	 * @param entry The entry
+	 * @return <tt>true</tt> if the key was not already in the table
+	 */
+	private static boolean insert(long[] keys, MemoEntry[] entries, long key, MemoEntry entry)
+	{
+		int mask = keys.length - 1;
+		int slot = getSlot(key, mask);
+		while (keys[slot] != EMPTY && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		boolean added = keys[slot] == EMPTY;
+		keys[slot] = key;
+		entries[slot] = entry;
+		return added;
+	}
+
+	/**
+	 * Gets the key of a rule at some position
+	 * @param rule_id The ID of the rule
+	 * @param position The position
+	 * @return The key
+	 */
+	private static long getKey(int rule_id, int position)
+	{
+		return ((long) rule_id << 32) | position;
+	}
+
+	/**
+	 * Gets the slot where the search for a key starts
+	 * @param key The key
+	 * @param mask The number of slots of the table, minus one
+	 * @return The slot
+	 */
+	private static int getSlot(long key, int mask)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
@@ -73,4 +73,10 @@ public class NonTerminalToken extends Token
 	{
 		return 0;
 	}
+
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		return 0;
+	}
 }
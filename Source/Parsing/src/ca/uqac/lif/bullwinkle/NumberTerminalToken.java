@@ -34,7 +34,33 @@
 package ca.uqac.lif.bullwinkle;
 
 /**
- * Represents a non-terminal token in a grammar rule
+ * Terminal token that matches a number. The token reads the characters
+ * of the input directly, according to one of the following
+ * {@linkplain Format formats}:
+ * <ul>
+ * <li>{@link Format#INTEGER}: an optional sign followed by digits, such as
+ * <tt>-42</tt></li>
+ * <li>{@link Format#DECIMAL}: an integer with an optional fractional part,
+ * such as <tt>3.14</tt> or <tt>.5</tt></li>
+ * <li>{@link Format#SCIENTIFIC}: a decimal number with an optional
+ * exponent, such as <tt>6.02e23</tt></li>
+ * <li>{@link Format#HEX}: <tt>0x</tt> followed by hexadecimal digits, such
+ * as <tt>0xFF</tt></li>
+ * </ul>
+ * In a grammar, a rule whose right-hand side is the name of a format
+ * defines a number, the same way a rule starting with <tt>^</tt> defines
+ * a regular expression:
+ * <pre>
+ * &lt;num&gt; := %decimal;
+ * </pre>
+ * A token created with {@link #NumberTerminalToken(String)} has no format,
+ * and matches its label literally, as any {@link TerminalToken}.
+ * <p>
+ * When the {@linkplain ParseOptions#setNumberValues(boolean) option} is
+ * enabled, the parser also attaches the value of the number to the node
+ * of the parse tree, which can then be read with
+ * {@link ParseNode#getLongValue()} or {@link ParseNode#getDoubleValue()}
+ * without parsing the text of the node again.
  * @author Sylvain Hallé
  */
 public class NumberTerminalToken extends TerminalToken
@@ -45,12 +71,101 @@ public class NumberTerminalToken extends TerminalToken
 	private static final transient long serialVersionUID = -5149336827915614205L;
 
 	/**
-	 * Creates a new non terminal token
+	 * The syntax of the numbers a token matches
+	 */
+	public enum Format
+	{
+		/**
+		 * An integer in base 10
+		 */
+		INTEGER("%integer"),
+
+		/**
+		 * A number in base 10 with an optional fractional part
+		 */
+		DECIMAL("%decimal"),
+
+		/**
+		 * A number in base 10 with an optional fractional part and an
+		 * optional exponent
+		 */
+		SCIENTIFIC("%scientific"),
+
+		/**
+		 * An integer in base 16
+		 */
+		HEX("%hex");
+
+		/**
+		 * The name of the format in a grammar
+		 */
+		private final String m_name;
+
+		private Format(String name)
+		{
+			m_name = name;
+		}
+
+		/**
+		 * Gets the name of the format in a grammar
+		 * @return The name
+		 */
+		public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the format with a given name
+		 * @param name The name
+		 * @return The format, or <tt>null</tt> if no format has this name
+		 */
+		public static /*@Nullable*/ Format forName(String name)
+		{
+			for (Format f : values())
+			{
+				if (f.m_name.equals(name))
+				{
+					return f;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * The format of the numbers this token matches, or <tt>null</tt> if
+	 * the token matches its label
+	 */
+	private final Format m_format;
+
+	/**
+	 * Creates a new number token that matches its label
 	 * @param label The token's label
 	 */
 	public NumberTerminalToken(String label)
 	{
 		super(label);
+		m_format = null;
+	}
+
+	/**
+	 * Creates a new number token that matches numbers of some format
+	 * @param format The format
+	 */
+	public NumberTerminalToken(/*@NonNull*/ Format format)
+	{
+		super(format.getName());
+		m_format = format;
+	}
+
+	/**
+	 * Gets the format of the numbers this token matches
+	 * @return The format, or <tt>null</tt> if the token matches its label
+	 */
+	/*@ pure @*/ public Format getFormat()
+	{
+		return m_format;
 	}
 
 	@Override
@@ -61,9 +176,229 @@ public class NumberTerminalToken extends TerminalToken
 			return false;
 		}
 		String val = tok.getName();
+		if (m_format != null)
+		{
+			return match(val, 0, val.length()) == val.length();
+		}
+		return isFloat(val);
+	}
+
+	@Override
+	public int match(final String s)
+	{
+		if (m_format == null)
+		{
+			return super.match(s);
+		}
+		return match(s, 0, s.length());
+	}
+
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		if (m_format == null)
+		{
+			return super.match(s, start, end);
+		}
+		int i = start;
+		if (m_format == Format.HEX)
+		{
+			if (end - i < 3 || s.charAt(i) != '0' || (s.charAt(i + 1) != 'x' && s.charAt(i + 1) != 'X'))
+			{
+				return -1;
+			}
+			i = skipDigits(s, i + 2, end, 16);
+			return i > start + 2 ? i - start : -1;
+		}
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+		{
+			i++;
+		}
+		int digits_start = i;
+		i = skipDigits(s, i, end, 10);
+		boolean has_digits = i > digits_start;
+		if (m_format != Format.INTEGER && i + 1 < end && s.charAt(i) == '.' && isDigit(s.charAt(i + 1), 10))
+		{
+			i = skipDigits(s, i + 1, end, 10);
+			has_digits = true;
+		}
+		if (!has_digits)
+		{
+			return -1;
+		}
+		if (m_format == Format.SCIENTIFIC && i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E'))
+		{
+			// The exponent is part of the number only if it has digits
+			int j = i + 1;
+			if (j < end && (s.charAt(j) == '-' || s.charAt(j) == '+'))
+			{
+				j++;
+			}
+			int exponent_end = skipDigits(s, j, end, 10);
+			if (exponent_end > j)
+			{
+				i = exponent_end;
+			}
+		}
+		return i - start;
+	}
+
+	@Override
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		if (m_format == null)
+		{
+			return super.needsMore(s, start, end);
+		}
+		// A number is decided by at most three characters after its end: a
+		// decimal point and a digit, or an exponent, its sign and a digit
+		int length = match(s, start, end);
+		return (length > 0 ? start + length : start) + 3 > end;
+	}
+
+	/**
+	 * Attaches to a parse node the value of the number this token has
+	 * matched
+	 * @param node The parse node
+	 * @param text The text matched by the token
+	 */
+	void setValue(/*@NonNull*/ ParseNode node, /*@NonNull*/ String text)
+	{
+		if (m_format == null)
+		{
+			return;
+		}
+		switch (m_format)
+		{
+		case INTEGER:
+		case HEX:
+		{
+			boolean hex = m_format == Format.HEX;
+			int radix = hex ? 16 : 10;
+			int i = hex ? 2 : 0;
+			boolean negative = text.charAt(0) == '-';
+			if (!hex && (negative || text.charAt(0) == '+'))
+			{
+				i++;
+			}
+			// The value is accumulated as a negative number, whose range
+			// includes Long.MIN_VALUE
+			long value = 0;
+			double approximation = 0;
+			boolean overflow = false;
+			for (; i < text.length(); i++)
+			{
+				int digit = Character.digit(text.charAt(i), radix);
+				approximation = approximation * radix + digit;
+				if (value < (Long.MIN_VALUE + digit) / radix)
+				{
+					overflow = true;
+				}
+				value = value * radix - digit;
+			}
+			if (overflow || (!negative && value == Long.MIN_VALUE))
+			{
+				node.setNumber(negative ? -approximation : approximation);
+			}
+			else
+			{
+				node.setNumber(negative ? value : -value);
+			}
+			break;
+		}
+		default:
+			node.setNumber(Double.parseDouble(text));
+		}
+	}
+
+	/**
+	 * Gets the position that follows the digits starting at some position
+	 * @param s The string
+	 * @param i The position
+	 * @param end The position at which reading stops
+	 * @param radix The base of the digits
+	 * @return The position
+	 */
+	private static int skipDigits(CharSequence s, int i, int end, int radix)
+	{
+		while (i < end && isDigit(s.charAt(i), radix))
+		{
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Determines if a character is a digit
+	 * @param c The character
+	 * @param radix The base, which is either 10 or 16
+	 * @return <tt>true</tt> if the character is a digit, <tt>false</tt>
+	 *   otherwise
+	 */
+	private static boolean isDigit(char c, int radix)
+	{
+		if (c >= '0' && c <= '9')
+		{
+			return true;
+		}
+		return radix == 16 && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'));
+	}
+
+	/**
+	 * Determines if a string is accepted by {@link Float#parseFloat(String)}.
+	 * Numbers written in decimal notation, which are by far the most common,
+	 * are recognized without calling the method, which throws an exception
+	 * for any other string.
+	 * @param val The string
+	 * @return <tt>true</tt> if the string is a number, <tt>false</tt>
+	 *   otherwise
+	 */
+	private static boolean isFloat(String val)
+	{
+		String s = val.trim();
+		int length = s.length();
+		int i = 0;
+		if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+		{
+			i++;
+		}
+		int mantissa_start = i;
+		i = skipDigits(s, i, length, 10);
+		int int_digits = i - mantissa_start;
+		int frac_digits = 0;
+		if (i < length && s.charAt(i) == '.')
+		{
+			int frac_start = i + 1;
+			i = skipDigits(s, frac_start, length, 10);
+			frac_digits = i - frac_start;
+		}
+		boolean ok = int_digits + frac_digits > 0;
+		if (ok && i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E'))
+		{
+			int j = i + 1;
+			if (j < length && (s.charAt(j) == '-' || s.charAt(j) == '+'))
+			{
+				j++;
+			}
+			i = skipDigits(s, j, length, 10);
+			ok = i > j;
+		}
+		if (ok && i < length && "fFdD".indexOf(s.charAt(i)) >= 0)
+		{
+			i++;
+		}
+		if (ok && i == length)
+		{
+			return true;
+		}
+		if (s.indexOf('N') < 0 && s.indexOf('I') < 0 && s.indexOf('x') < 0 && s.indexOf('X') < 0)
+		{
+			// Only NaN, Infinity and hexadecimal numbers remain, which
+			// contain one of these characters
+			return false;
+		}
 		try
 		{
-			// Try to parse token into a number
 			Float.parseFloat(val);
 		}
 		catch (NumberFormatException e)
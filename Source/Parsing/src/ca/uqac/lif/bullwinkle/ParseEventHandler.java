@@ -0,0 +1,92 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * Receives the structure of a string as it is parsed, instead of a parse
+ * tree. A handler can be given to
+ * {@link BnfParser#parse(CharSequence, ParseEventHandler)}; the parser
+ * then calls its methods in the order in which a depth-first traversal
+ * of the parse tree would visit the nodes, but without creating the
+ * tree.
+ * <p>
+ * The events of an alternative that the parser tries and later abandons
+ * are never given to the handler. To this end, the parser holds back the
+ * events produced while some rule still has other alternatives left to
+ * try, and gives them to the handler as soon as none has. If the parsing
+ * fails, the events given so far are followed by none, and the parsing
+ * method returns {@code false}.
+ * <p>
+ * Positions passed to the methods of this interface are indices in the
+ * string being parsed. All methods do nothing by default, so that an
+ * implementation only needs to override the ones it is interested in.
+ * 
+ * @author Sylvain Hallé
+ */
+public interface ParseEventHandler
+{
+	/**
+	 * Method called when the parse tree would have a node for a rule
+	 * @param rule The name of the rule, such as {@code <exp>}
+	 * @param position The position where the rule is applied
+	 */
+	public default void enterRule(String rule, int position)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parse tree would have a leaf for a terminal
+	 * token. The token is the part of the input between the two positions;
+	 * it is empty for the empty string.
+	 * @param input The string being parsed
+	 * @param start The position of the first character of the token
+	 * @param end The position following the last character of the token
+	 */
+	public default void terminal(CharSequence input, int start, int end)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called after all the children of the node of a rule
+	 * @param rule The name of the rule
+	 * @param position The position where the rule was applied
+	 * @param end The position following the last character consumed by the
+	 *   rule
+	 */
+	public default void exitRule(String rule, int position, int end)
+	{
+		// Do nothing
+	}
+}
@@ -54,11 +54,45 @@ public class ParseNode
 	 */
 	private String m_token = null;
 
+	/**
+	 * The sequence that contains the token of this parse node, if the token
+	 * is a part of the input that is copied out of it the first time it is
+	 * read; otherwise <tt>null</tt>
+	 */
+	private CharSequence m_source = null;
+
+	/**
+	 * The position of the first character of the token in
+	 * {@link #m_source}
+	 */
+	private int m_sourceStart = 0;
+
+	/**
+	 * The position that follows the last character of the token in
+	 * {@link #m_source}
+	 */
+	private int m_sourceEnd = 0;
+
 	/**
 	 * The value (if any) represented by this parse node
 	 */
 	private String m_value = null;
 
+	/**
+	 * Whether a number is attached to this parse node
+	 */
+	private boolean m_hasNumber = false;
+
+	/**
+	 * The number attached to this parse node, as an integer
+	 */
+	private long m_longValue = 0;
+
+	/**
+	 * The number attached to this parse node, as a floating-point number
+	 */
+	private double m_doubleValue = 0;
+
 	/**
 	 * Creates an empty parse node
 	 */
@@ -104,13 +138,53 @@ public class ParseNode
 		return m_value;
 	}
 
+	/**
+	 * Determines if a number is attached to this parse node. This is the
+	 * case for a node matched by a {@link NumberTerminalToken} when values
+	 * are {@linkplain ParseOptions#setNumberValues(boolean) enabled}.
+	 * @return <tt>true</tt> if a number is attached, <tt>false</tt>
+	 *   otherwise
+	 */
+	public boolean hasNumber()
+	{
+		return m_hasNumber;
+	}
+
+	/**
+	 * Gets the number attached to this parse node, as an integer. A
+	 * floating-point number is truncated.
+	 * @return The number, or 0 if no number is attached
+	 */
+	public long getLongValue()
+	{
+		return m_longValue;
+	}
+
+	/**
+	 * Gets the number attached to this parse node, as a floating-point
+	 * number
+	 * @return The number, or 0 if no number is attached
+	 */
+	public double getDoubleValue()
+	{
+		return m_doubleValue;
+	}
+
 	/**
 	 * Gets the token name associated to this parse node
 	 * @return The token name
 	 */
 	public String getToken()
 	{
-		return m_token;
+		String token = m_token;
+		if (token == null && m_source != null)
+		{
+			// Threads that read the token at the same time may each copy it,
+			// but always get the same string
+			token = m_source.subSequence(m_sourceStart, m_sourceEnd).toString();
+			m_token = token;
+		}
+		return token;
 	}
 
 	/**
@@ -122,6 +196,28 @@ public class ParseNode
 		m_value = value;
 	}
 
+	/**
+	 * Attaches an integer to this parse node
+	 * @param value The number
+	 */
+	void setNumber(final long value)
+	{
+		m_hasNumber = true;
+		m_longValue = value;
+		m_doubleValue = value;
+	}
+
+	/**
+	 * Attaches a floating-point number to this parse node
+	 * @param value The number
+	 */
+	void setNumber(final double value)
+	{
+		m_hasNumber = true;
+		m_longValue = (long) value;
+		m_doubleValue = value;
+	}
+
 	/**
 	 * Sets the token name for this parse node
 	 * @param token The token name
@@ -129,6 +225,40 @@ public class ParseNode
 	void setToken(final String token)
 	{
 		m_token = token;
+		m_source = null;
+	}
+
+	/**
+	 * Sets the token name for this parse node to a part of a sequence. The
+	 * characters are only copied out of the sequence the first time the
+	 * token of the node is read; until then, the sequence must not be
+	 * modified.
+	 * @param source The sequence
+	 * @param start The position of the first character of the token
+	 * @param end The position that follows the last character of the token
+	 */
+	void setToken(final CharSequence source, final int start, final int end)
+	{
+		m_token = null;
+		m_source = source;
+		m_sourceStart = start;
+		m_sourceEnd = end;
+	}
+
+	/**
+	 * Copies out of their sequence the tokens of the children of this node
+	 * that are parts of a sequence, so that these children no longer refer
+	 * to it
+	 */
+	void copyChildTokens()
+	{
+		for (ParseNode child : m_children)
+		{
+			if (child.m_source != null)
+			{
+				child.setToken(child.getToken());
+			}
+		}
 	}
 
 	/**
@@ -154,7 +284,7 @@ public class ParseNode
 	private String toString(String indent)
 	{
 		StringBuilder out = new StringBuilder();
-		out.append(indent).append(m_token).append("\n");
+		out.append(indent).append(getToken()).append("\n");
 		String n_indent = indent + " ";
 		for (ParseNode n : m_children)
 		{
@@ -215,8 +345,15 @@ public class ParseNode
 	 */
 	public ParseNode duplicate()
 	{
-		ParseNode new_n = new ParseNode(m_token);
+		ParseNode new_n = new ParseNode();
+		new_n.m_token = m_token;
+		new_n.m_source = m_source;
+		new_n.m_sourceStart = m_sourceStart;
+		new_n.m_sourceEnd = m_sourceEnd;
 		new_n.setValue(m_value);
+		new_n.m_hasNumber = m_hasNumber;
+		new_n.m_longValue = m_longValue;
+		new_n.m_doubleValue = m_doubleValue;
 		for (ParseNode child : m_children)
 		{
 			new_n.addChild(child.duplicate());
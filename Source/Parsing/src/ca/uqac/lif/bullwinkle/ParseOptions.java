@@ -0,0 +1,327 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * The options of a call to {@link CompiledGrammar#parse(String, ParseOptions)}.
+ * Each option has the same meaning as the corresponding setting of
+ * {@link BnfParser}, and the same default value. The setters return the
+ * object itself, so that options can be chained:
+ * <pre>
+ * ParseOptions options = new ParseOptions().setPartialParsing(true).setMaxRecursionSteps(100);
+ * </pre>
+ * The options are read when the parsing starts; an object that is no
+ * longer modified can therefore be shared by any number of threads.
+ * 
+ * @author Sylvain Hallé
+ */
+public class ParseOptions
+{
+	/**
+	 * Whether partial parsing is enabled
+	 */
+	private boolean m_partialParsing = false;
+
+	/**
+	 * The maximum number of recursion steps
+	 */
+	private int m_maxRecursionSteps = 50;
+
+	/**
+	 * Whether packrat parsing is enabled
+	 */
+	private boolean m_packratMode = false;
+
+	/**
+	 * Whether left-recursive rules are supported
+	 */
+	private boolean m_leftRecursionMode = false;
+
+	/**
+	 * Whether Earley's algorithm is used
+	 */
+	private boolean m_earleyMode = false;
+
+	/**
+	 * Whether a table-driven LL(1) parser is used when the grammar allows it
+	 */
+	private boolean m_ll1Mode = true;
+
+	/**
+	 * Whether the input is split into tokens before it is parsed
+	 */
+	private boolean m_lexerMode = false;
+
+	/**
+	 * Whether numbers are attached to the nodes of the parse tree
+	 */
+	private boolean m_numberValues = false;
+
+	/**
+	 * Whether the outcome of matching terminals is cached
+	 */
+	private boolean m_terminalCache = false;
+
+	/**
+	 * The tracer notified of the progress of the parsing, or <tt>null</tt>
+	 */
+	private ParseTracer m_tracer = null;
+
+	/**
+	 * Creates a new set of options with the default values
+	 */
+	public ParseOptions()
+	{
+		super();
+	}
+
+	/**
+	 * Sets whether partial parsing is enabled
+	 * @param b Set to true to enable partial parsing
+	 * @return This set of options
+	 * @see BnfParser#setPartialParsing(boolean)
+	 */
+	public ParseOptions setPartialParsing(boolean b)
+	{
+		m_partialParsing = b;
+		return this;
+	}
+
+	/**
+	 * Determines if partial parsing is enabled
+	 * @return {@code true} if partial parsing is enabled
+	 */
+	/*@ pure @*/ public boolean isPartialParsing()
+	{
+		return m_partialParsing;
+	}
+
+	/**
+	 * Sets the maximum number of recursion steps that the parsing will use
+	 * @param steps The maximum number of recursion steps. Must be positive;
+	 *   other values are ignored.
+	 * @return This set of options
+	 * @see BnfParser#setMaxRecursionSteps(int)
+	 */
+	public ParseOptions setMaxRecursionSteps(int steps)
+	{
+		if (steps > 0)
+		{
+			m_maxRecursionSteps = steps;
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the maximum number of recursion steps that the parsing will use
+	 * @return The number of steps
+	 */
+	/*@ pure @*/ public int getMaxRecursionSteps()
+	{
+		return m_maxRecursionSteps;
+	}
+
+	/**
+	 * Sets whether packrat parsing is enabled
+	 * @param b Set to true to enable packrat parsing
+	 * @return This set of options
+	 * @see BnfParser#setPackratMode(boolean)
+	 */
+	public ParseOptions setPackratMode(boolean b)
+	{
+		m_packratMode = b;
+		return this;
+	}
+
+	/**
+	 * Determines if packrat parsing is enabled
+	 * @return {@code true} if packrat parsing is enabled
+	 */
+	/*@ pure @*/ public boolean isPackratMode()
+	{
+		return m_packratMode;
+	}
+
+	/**
+	 * Sets whether left-recursive rules are supported
+	 * @param b Set to true to enable left recursion mode
+	 * @return This set of options
+	 * @see BnfParser#setLeftRecursionMode(boolean)
+	 */
+	public ParseOptions setLeftRecursionMode(boolean b)
+	{
+		m_leftRecursionMode = b;
+		return this;
+	}
+
+	/**
+	 * Determines if left-recursive rules are supported
+	 * @return {@code true} if left recursion mode is enabled
+	 */
+	/*@ pure @*/ public boolean isLeftRecursionMode()
+	{
+		return m_leftRecursionMode;
+	}
+
+	/**
+	 * Sets whether Earley's algorithm is used
+	 * @param b Set to true to use Earley's algorithm
+	 * @return This set of options
+	 * @see BnfParser#setEarleyMode(boolean)
+	 */
+	public ParseOptions setEarleyMode(boolean b)
+	{
+		m_earleyMode = b;
+		return this;
+	}
+
+	/**
+	 * Determines if Earley's algorithm is used
+	 * @return {@code true} if Earley mode is enabled
+	 */
+	/*@ pure @*/ public boolean isEarleyMode()
+	{
+		return m_earleyMode;
+	}
+
+	/**
+	 * Sets whether a table-driven LL(1) parser is used when the grammar
+	 * allows it
+	 * @param b Set to false to always use the general parser
+	 * @return This set of options
+	 * @see BnfParser#setLl1Mode(boolean)
+	 */
+	public ParseOptions setLl1Mode(boolean b)
+	{
+		m_ll1Mode = b;
+		return this;
+	}
+
+	/**
+	 * Determines if a table-driven LL(1) parser is used when the grammar
+	 * allows it
+	 * @return {@code true} if LL(1) mode is enabled
+	 */
+	/*@ pure @*/ public boolean isLl1Mode()
+	{
+		return m_ll1Mode;
+	}
+
+	/**
+	 * Sets whether the input is split into tokens before it is parsed
+	 * @param b Set to true to split the input into tokens
+	 * @return This set of options
+	 * @see BnfParser#setLexerMode(boolean)
+	 */
+	public ParseOptions setLexerMode(boolean b)
+	{
+		m_lexerMode = b;
+		return this;
+	}
+
+	/**
+	 * Determines if the input is split into tokens before it is parsed
+	 * @return {@code true} if lexer mode is enabled
+	 */
+	/*@ pure @*/ public boolean isLexerMode()
+	{
+		return m_lexerMode;
+	}
+
+	/**
+	 * Sets whether the value of each number matched by a
+	 * {@link NumberTerminalToken} is attached to its node
+	 * @param b Set to true to attach numbers
+	 * @return This set of options
+	 * @see BnfParser#setNumberValues(boolean)
+	 */
+	public ParseOptions setNumberValues(boolean b)
+	{
+		m_numberValues = b;
+		return this;
+	}
+
+	/**
+	 * Determines if numbers are attached to the nodes of the parse tree
+	 * @return {@code true} if numbers are attached
+	 */
+	/*@ pure @*/ public boolean isNumberValues()
+	{
+		return m_numberValues;
+	}
+
+	/**
+	 * Sets whether the outcome of matching each terminal at each position
+	 * is cached during the parsing
+	 * @param b Set to true to cache the outcome of matching terminals
+	 * @return This set of options
+	 * @see BnfParser#setTerminalCache(boolean)
+	 */
+	public ParseOptions setTerminalCache(boolean b)
+	{
+		m_terminalCache = b;
+		return this;
+	}
+
+	/**
+	 * Determines if the outcome of matching terminals is cached
+	 * @return {@code true} if terminal matches are cached
+	 */
+	/*@ pure @*/ public boolean isTerminalCache()
+	{
+		return m_terminalCache;
+	}
+
+	/**
+	 * Sets the tracer that is notified of each step of the parsing. Since
+	 * a tracer is called by the thread doing the parsing, a tracer shared
+	 * by multiple threads must be thread-safe.
+	 * @param tracer The tracer, or <tt>null</tt> to disable tracing
+	 * @return This set of options
+	 * @see BnfParser#setTracer(ParseTracer)
+	 */
+	public ParseOptions setTracer(/*@Nullable*/ ParseTracer tracer)
+	{
+		m_tracer = tracer;
+		return this;
+	}
+
+	/**
+	 * Gets the tracer that is notified of each step of the parsing
+	 * @return The tracer, or <tt>null</tt> if no tracing is done
+	 */
+	/*@ pure @*/ public /*@Nullable*/ ParseTracer getTracer()
+	{
+		return m_tracer;
+	}
+}
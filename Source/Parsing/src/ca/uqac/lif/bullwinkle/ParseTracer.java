@@ -0,0 +1,141 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * Receives notifications about the progress of a parser. A tracer can be
+ * given to a parser with {@link BnfParser#setTracer(ParseTracer)}, for
+ * example to log, count or profile the steps of the parsing. When no
+ * tracer is set, the parser does not produce any of these notifications,
+ * and tracing has no cost.
+ * <p>
+ * Positions passed to the methods of this interface are indices in the
+ * string given to {@link #startParse(CharSequence)}. The <em>level</em> is
+ * the depth of the rule in the tree of rules being parsed, the start rule
+ * being at level 0. All methods do nothing by default, so that an
+ * implementation only needs to override the ones it is interested in.
+ * 
+ * @author Sylvain Hallé
+ */
+public interface ParseTracer
+{
+	/**
+	 * Value passed as the end position of a rule, an alternative or a
+	 * terminal token that does not match the input
+	 */
+	public static final int NO_MATCH = -1;
+
+	/**
+	 * Method called when the parsing of a string starts
+	 * @param input The string to parse
+	 */
+	public default void startParse(CharSequence input)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parsing of a string ends
+	 * @param success {@code true} if the string has been parsed
+	 *   successfully, {@code false} otherwise
+	 */
+	public default void endParse(boolean success)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parser starts applying a rule
+	 * @param rule The rule
+	 * @param position The position where the rule is applied
+	 * @param level The level of the rule
+	 */
+	public default void enterRule(BnfRule rule, int position, int level)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parser has finished applying a rule
+	 * @param rule The rule
+	 * @param position The position where the rule was applied
+	 * @param end The position following the last character consumed by the
+	 *   rule, or {@link #NO_MATCH} if none of its alternatives matched
+	 * @param level The level of the rule
+	 */
+	public default void exitRule(BnfRule rule, int position, int end, int level)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parser starts trying an alternative of a rule
+	 * @param rule The rule
+	 * @param alternative The alternative
+	 * @param position The position where the alternative is tried
+	 * @param level The level of the rule
+	 */
+	public default void enterAlternative(BnfRule rule, TokenString alternative, int position, int level)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parser has finished trying an alternative of
+	 * a rule
+	 * @param rule The rule
+	 * @param alternative The alternative
+	 * @param position The position where the alternative was tried
+	 * @param end The position following the last character consumed by
+	 *   the alternative, or {@link #NO_MATCH} if the alternative is
+	 *   abandoned
+	 * @param level The level of the rule
+	 */
+	public default void exitAlternative(BnfRule rule, TokenString alternative, int position, int end, int level)
+	{
+		// Do nothing
+	}
+
+	/**
+	 * Method called when the parser attempts to read a terminal token
+	 * @param token The token
+	 * @param position The position where the token is read
+	 * @param end The position following the last character of the token,
+	 *   or {@link #NO_MATCH} if the token does not match the input
+	 * @param level The level of the rule the token belongs to
+	 */
+	public default void matchTerminal(TerminalToken token, int position, int end, int level)
+	{
+		// Do nothing
+	}
+}
@@ -0,0 +1,645 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates, at runtime, a parser specialized for the rules of a grammar.
+ * The generator writes the source code of a descendant of
+ * {@link GeneratedParser} with one method per rule, compiles it with the
+ * Java compiler of the running platform, and defines the resulting class
+ * with a class loader of its own, so that the class is unloaded with the
+ * last parser of its grammar. In the code of a rule, the alternatives are
+ * tried one after the other, literal terminal tokens are compared
+ * character by character with the input, the alternatives that cannot
+ * start with the next character are skipped using their FIRST set, and
+ * each non-terminal token is a direct call to the method of its rule.
+ * <p>
+ * The generation fails if the platform has no Java compiler, which is the
+ * case when running on a JRE; the parser must then be interpreted. A rule
+ * too large for the code of its method to fit in a class file is left to
+ * the interpreter as well.
+ * 
+ * @author Sylvain Hallé
+ */
+final class ParserGenerator
+{
+	/**
+	 * The package of the generated classes. The classes are compiled in the
+	 * package of this class, but since they are defined by another loader,
+	 * they can only use what {@link GeneratedParser} makes available to them.
+	 */
+	private static final String PACKAGE = ParserGenerator.class.getPackage().getName();
+
+	/**
+	 * The simple name of the generated classes. Each class has its own
+	 * loader, and the classes can therefore all have the same name.
+	 */
+	private static final String CLASS_NAME = "GrammarParser";
+
+	/**
+	 * The maximum number of tokens in a rule for which code is generated
+	 */
+	private static final int MAX_TOKENS = 400;
+
+	/**
+	 * The maximum number of ranges of characters in a FIRST set that is
+	 * tested with comparisons instead of a bit set
+	 */
+	private static final int MAX_RANGES = 4;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The terminal tokens whose matching is not written out in the code,
+	 * and which the generated parser receives in an array
+	 */
+	private final List<Token> m_tokens = new ArrayList<Token>();
+
+	/**
+	 * The FIRST sets that are tested with a bit set, which are declared as
+	 * constants of the generated class
+	 */
+	private final List<BitSet> m_firstSets = new ArrayList<BitSet>();
+
+	/**
+	 * Whether code is generated for each rule, indexed by rule ID
+	 */
+	private final boolean[] m_generated;
+
+	/**
+	 * Creates a new generator
+	 * @param symbols The symbol table of the grammar
+	 */
+	private ParserGenerator(/*@NonNull*/ SymbolTable symbols)
+	{
+		super();
+		m_symbols = symbols;
+		m_generated = new boolean[symbols.size()];
+		for (int id = 0; id < m_generated.length; id++)
+		{
+			int num_tokens = 0;
+			for (Token[] tokens : symbols.getTokens(id))
+			{
+				num_tokens += tokens.length;
+			}
+			m_generated[id] = num_tokens <= MAX_TOKENS;
+		}
+	}
+
+	/**
+	 * Generates a parser for the rules of a symbol table
+	 * @param symbols The symbol table
+	 * @return An instance of the generated parser, or <tt>null</tt> if the
+	 *   parser could not be generated
+	 */
+	static /*@Nullable*/ GeneratedParser generate(/*@NonNull*/ SymbolTable symbols)
+	{
+		ParserGenerator generator = new ParserGenerator(symbols);
+		String code = generator.getCode(CLASS_NAME);
+		try
+		{
+			byte[] bytes = compile(PACKAGE + "." + CLASS_NAME, code);
+			if (bytes == null)
+			{
+				return null;
+			}
+			Class<?> c = new GeneratedClassLoader().define(PACKAGE + "." + CLASS_NAME, bytes);
+			return (GeneratedParser) c.getDeclaredConstructor(SymbolTable.class, Token[].class, InputBuffer.class, ParseOptions.class)
+					.newInstance(symbols, generator.m_tokens.toArray(new Token[generator.m_tokens.size()]), null, null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+		catch (LinkageError e)
+		{
+			return null;
+		}
+		catch (RuntimeException e)
+		{
+			// The compiler can throw a runtime exception, for example if the
+			// class path cannot be read
+			return null;
+		}
+	}
+
+	/**
+	 * The class loader of a generated class. A class can only be unloaded
+	 * with its loader; each class therefore has a loader of its own, which
+	 * is only referenced by the class.
+	 */
+	private static final class GeneratedClassLoader extends ClassLoader
+	{
+		/**
+		 * Creates a new loader, which delegates to the loader of this class
+		 */
+		GeneratedClassLoader()
+		{
+			super(ParserGenerator.class.getClassLoader());
+		}
+
+		/**
+		 * Defines a generated class
+		 * @param name The fully qualified name of the class
+		 * @param bytes The bytes of the class file
+		 * @return The class
+		 */
+		Class<?> define(String name, byte[] bytes)
+		{
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Compiles the source code of a class
+	 * @param class_name The fully qualified name of the class
+	 * @param code The source code
+	 * @return The bytes of the class file, or <tt>null</tt> if the code
+	 *   could not be compiled
+	 */
+	private static /*@Nullable*/ byte[] compile(String class_name, final String code)
+	{
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+		{
+			return null;
+		}
+		final Map<String,ByteArrayOutputStream> outputs = new HashMap<String,ByteArrayOutputStream>();
+		Boolean success = null;
+		// The file manager opens the archives of the class path, which
+		// must be released after each compilation
+		try (StandardJavaFileManager standard_manager = compiler.getStandardFileManager(null, null, null))
+		{
+			JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(standard_manager)
+			{
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, final String name, Kind kind, FileObject sibling)
+				{
+					return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind)
+					{
+						@Override
+						public OutputStream openOutputStream()
+						{
+							ByteArrayOutputStream out = new ByteArrayOutputStream();
+							outputs.put(name, out);
+							return out;
+						}
+					};
+				}
+			};
+			JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///" + class_name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE)
+			{
+				@Override
+				public CharSequence getCharContent(boolean ignore_errors)
+				{
+					return code;
+				}
+			};
+			List<String> options = Arrays.asList("-classpath", getClassPath(), "-g:none", "-nowarn", "-proc:none");
+			success = compiler.getTask(new StringWriter(), manager, null, options, null, Arrays.asList(source)).call();
+		}
+		catch (IOException e)
+		{
+			// The class file is written in memory: it is complete even if
+			// the file manager could not be closed
+		}
+		ByteArrayOutputStream out = outputs.get(class_name);
+		if (success == null || !success || out == null)
+		{
+			return null;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Gets the class path with which the generated code is compiled, which
+	 * must contain the classes of this package
+	 * @return The class path
+	 */
+	private static String getClassPath()
+	{
+		String class_path = System.getProperty("java.class.path", "");
+		CodeSource code_source = ParserGenerator.class.getProtectionDomain().getCodeSource();
+		if (code_source != null && code_source.getLocation() != null)
+		{
+			try
+			{
+				class_path = new File(code_source.getLocation().toURI()).getPath() + File.pathSeparator + class_path;
+			}
+			catch (java.net.URISyntaxException e)
+			{
+				// Use the class path of the platform only
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Idem
+			}
+		}
+		return class_path;
+	}
+
+	/**
+	 * Writes the source code of the parser
+	 * @param class_name The simple name of the class
+	 * @return The source code
+	 */
+	private String getCode(String class_name)
+	{
+		StringBuilder methods = new StringBuilder();
+		for (int id = 0; id < m_generated.length; id++)
+		{
+			if (m_generated[id])
+			{
+				appendRule(methods, id);
+			}
+		}
+		StringBuilder out = new StringBuilder();
+		out.append("package ").append(PACKAGE).append(";\n\n");
+		out.append("import ca.uqac.lif.bullwinkle.BnfParser.ParseException;\n\n");
+		out.append("public final class ").append(class_name).append(" extends GeneratedParser\n{\n");
+		for (int i = 0; i < m_firstSets.size(); i++)
+		{
+			out.append("\tprivate static final java.util.BitSet FIRST_").append(i).append(" = java.util.BitSet.valueOf(new long[] {");
+			long[] words = m_firstSets.get(i).toLongArray();
+			for (int j = 0; j < words.length; j++)
+			{
+				out.append(j > 0 ? ", " : "").append(words[j]).append("L");
+			}
+			out.append("});\n\n");
+		}
+		out.append("\tpublic ").append(class_name).append("(SymbolTable symbols, Token[] tokens, InputBuffer input, ParseOptions options)\n\t{\n");
+		out.append("\t\tsuper(symbols, tokens, input, options);\n\t}\n\n");
+		out.append("\t@Override\n\tprotected GeneratedParser newParser(InputBuffer input, ParseOptions options)\n\t{\n");
+		out.append("\t\treturn new ").append(class_name).append("(m_symbols, m_tokens, input, options);\n\t}\n\n");
+		out.append("\t@Override\n\tprotected int parse(int rule_id, int position, int level, ParseNode parent) throws ParseException\n\t{\n");
+		out.append("\t\tswitch (rule_id)\n\t\t{\n");
+		for (int id = 0; id < m_generated.length; id++)
+		{
+			out.append("\t\tcase ").append(id).append(":\n\t\t\treturn ").append(getCall(id, "position", "level", "parent")).append(";\n");
+		}
+		out.append("\t\tdefault:\n\t\t\treturn interpret(rule_id, position, level, parent);\n\t\t}\n\t}\n");
+		out.append(methods);
+		out.append("}\n");
+		return out.toString();
+	}
+
+	/**
+	 * Writes a call to the method that parses a rule
+	 * @param id The ID of the rule
+	 * @param position The expression giving the position
+	 * @param level The expression giving the recursion level
+	 * @param parent The expression giving the parent node
+	 * @return The call
+	 */
+	private String getCall(int id, String position, String level, String parent)
+	{
+		if (m_generated[id])
+		{
+			return "rule" + id + "(" + position + ", " + level + ", " + parent + ")";
+		}
+		return "interpret(" + id + ", " + position + ", " + level + ", " + parent + ")";
+	}
+
+	/**
+	 * Writes the method that parses a rule. The method does the same thing
+	 * as the interpreter when it applies the rule, in the same order.
+	 * @param out The builder where the code is written
+	 * @param id The ID of the rule
+	 */
+	private void appendRule(StringBuilder out, int id)
+	{
+		FirstSets first_sets = m_symbols.getFirstSets();
+		Token[][] alternatives = m_symbols.getTokens(id);
+		int[][] links = m_symbols.getLinks(id);
+		String lhs = m_symbols.getName(id);
+		out.append("\n\t// ").append(escape(lhs)).append("\n");
+		out.append("\tprivate int rule").append(id).append("(final int position, final int level, final ParseNode parent) throws ParseException\n\t{\n");
+		out.append("\t\tif (level > m_maxRecursionSteps)\n\t\t{\n\t\t\tthrow tooDeep();\n\t\t}\n");
+		out.append("\t\tfinal int first_position = skip(position);\n");
+		out.append("\t\tfinal int c = first_position < m_end ? m_contents.charAt(first_position) : -1;\n");
+		out.append("\t\tfinal boolean skip = !m_partialParsing || c != '<';\n");
+		out.append("\t\tParseNode out_node = null;\n");
+		out.append("\t\tint n = position;\n");
+		out.append("\t\tboolean wrong_symbol = true;\n");
+		out.append("\t\tboolean read_epsilon = false;\n");
+		out.append("\t\talternatives:\n\t\t{\n");
+		for (int j = 0; j < alternatives.length; j++)
+		{
+			out.append("\t\t\t// ").append(escape(m_symbols.getAlternatives(id)[j].toString())).append("\n");
+			BitSet first = first_sets.getFirst(id, j);
+			String indent = "\t\t\t";
+			if (first != null)
+			{
+				out.append("\t\t\tif (skip && ").append(first_sets.getDepth(id, j)).append(" <= m_maxRecursionSteps - level && (c < 0 || !(").append(getTest(first)).append(")))\n");
+				out.append("\t\t\t{\n\t\t\t\twrong_symbol = true;\n\t\t\t}\n\t\t\telse\n\t\t\t{\n");
+				indent = "\t\t\t\t";
+			}
+			appendAlternative(out, indent, lhs, alternatives[j], links[j]);
+			if (first != null)
+			{
+				out.append("\t\t\t}\n");
+			}
+		}
+		out.append("\t\t}\n");
+		out.append("\t\tif (wrong_symbol)\n\t\t{\n\t\t\treturn NO_MATCH;\n\t\t}\n");
+		out.append("\t\tint chars_consumed = level == 0 ? m_length - (m_end - skip(n)) : n - position;\n");
+		out.append("\t\tif (chars_consumed == 0 && !read_epsilon)\n\t\t{\n\t\t\treturn NO_MATCH;\n\t\t}\n");
+		out.append("\t\tif (level == 0 && !isAtEnd(n))\n\t\t{\n\t\t\treturn NO_MATCH;\n\t\t}\n");
+		out.append("\t\taddChild(parent, out_node);\n");
+		out.append("\t\treturn n;\n");
+		out.append("\t}\n");
+	}
+
+	/**
+	 * Writes the code that tries an alternative of a rule
+	 * @param out The builder where the code is written
+	 * @param indent The indentation of the code
+	 * @param lhs The name of the rule
+	 * @param tokens The tokens of the alternative
+	 * @param links The ID of the rule each token refers to
+	 */
+	private void appendAlternative(StringBuilder out, String indent, String lhs, Token[] tokens, int[] links)
+	{
+		String in = indent + "\t";
+		out.append(indent).append("out_node = newRuleNode(").append(quote(lhs)).append(");\n");
+		out.append(indent).append("n = position;\n");
+		out.append(indent).append("wrong_symbol = false;\n");
+		out.append(indent).append("tokens:\n").append(indent).append("{\n");
+		int k = 0;
+		for (; k < tokens.length; k++)
+		{
+			Token tok = tokens[k];
+			out.append(in).append("n = skip(n);\n");
+			if (tok instanceof EpsilonTerminalToken)
+			{
+				out.append(in).append("addChild(out_node, newNode(\"\"));\n");
+				out.append(in).append("read_epsilon = true;\n");
+				break;
+			}
+			if (tok instanceof TerminalToken)
+			{
+				appendTerminal(out, in, (TerminalToken) tok);
+			}
+			else
+			{
+				appendNonTerminal(out, in, tok.toString(), links[k]);
+			}
+		}
+		out.append(indent).append("}\n");
+		if (k < tokens.length - 1)
+		{
+			// An epsilon token that is not the last of its alternative makes
+			// the rule give up
+			out.append(indent).append("if (!wrong_symbol)\n").append(indent).append("{\n");
+			out.append(in).append("wrong_symbol = true;\n");
+			out.append(in).append("n = position;\n");
+			out.append(in).append("break alternatives;\n");
+			out.append(indent).append("}\n");
+		}
+		else
+		{
+			out.append(indent).append("if (!wrong_symbol && (level > 0 || isAtEnd(n)))\n").append(indent).append("{\n");
+			out.append(in).append("break alternatives;\n");
+			out.append(indent).append("}\n");
+		}
+	}
+
+	/**
+	 * Writes the code that matches a terminal token
+	 * @param out The builder where the code is written
+	 * @param in The indentation of the code
+	 * @param tok The token
+	 */
+	private void appendTerminal(StringBuilder out, String in, TerminalToken tok)
+	{
+		out.append(in).append("if (n >= m_end)\n").append(in).append("{\n");
+		out.append(in).append("\twrong_symbol = true;\n");
+		out.append(in).append("\tbreak tokens;\n");
+		out.append(in).append("}\n");
+		String literal = tok.getName();
+		if (tok.getClass() == TerminalToken.class && !literal.isEmpty())
+		{
+			// A literal is compared with the input character by character
+			int length = literal.length();
+			out.append(in).append("if (m_end - n < ").append(length);
+			if (length <= 8)
+			{
+				for (int i = 0; i < length; i++)
+				{
+					out.append(" || m_contents.charAt(n");
+					if (i > 0)
+					{
+						out.append(" + ").append(i);
+					}
+					out.append(") != ").append((int) literal.charAt(i));
+				}
+			}
+			else
+			{
+				out.append(" || !regionMatches(n, ").append(quote(literal)).append(")");
+			}
+			out.append(")\n").append(in).append("{\n");
+			out.append(in).append("\twrong_symbol = true;\n");
+			out.append(in).append("\tout_node = null;\n");
+			out.append(in).append("\tbreak tokens;\n");
+			out.append(in).append("}\n");
+			if (m_symbols.isIgnoreCase())
+			{
+				// The text of the node is the original text of the input
+				out.append(in).append("addChild(out_node, newNode(n, n + ").append(length).append("));\n");
+			}
+			else
+			{
+				out.append(in).append("addChild(out_node, newNode(").append(quote(literal)).append("));\n");
+			}
+			out.append(in).append("n += ").append(length).append(";\n");
+			return;
+		}
+		int index = m_tokens.size();
+		m_tokens.add(tok);
+		out.append(in).append("{\n");
+		out.append(in).append("\tint size = m_tokens[").append(index).append("].match(m_contents, n, m_end);\n");
+		out.append(in).append("\tif (size <= 0)\n").append(in).append("\t{\n");
+		out.append(in).append("\t\twrong_symbol = true;\n");
+		out.append(in).append("\t\tout_node = null;\n");
+		out.append(in).append("\t\tbreak tokens;\n");
+		out.append(in).append("\t}\n");
+		out.append(in).append("\taddChild(out_node, newTerminalNode(").append(index).append(", n, n + size));\n");
+		out.append(in).append("\tn += size;\n");
+		out.append(in).append("}\n");
+	}
+
+	/**
+	 * Writes the code that parses a non-terminal token
+	 * @param out The builder where the code is written
+	 * @param in The indentation of the code
+	 * @param name The name of the token
+	 * @param link The ID of the rule of the token, or
+	 *   {@link SymbolTable#UNDEFINED}
+	 */
+	private void appendNonTerminal(StringBuilder out, String in, String name, int link)
+	{
+		out.append(in).append("if (m_partialParsing && startsWith(").append(quote(name)).append(", n))\n").append(in).append("{\n");
+		out.append(in).append("\tn += ").append(name.length()).append(";\n");
+		out.append(in).append("\taddChild(out_node, newNode(").append(quote(name)).append("));\n");
+		out.append(in).append("}\n").append(in).append("else\n").append(in).append("{\n");
+		if (link == SymbolTable.UNDEFINED)
+		{
+			out.append(in).append("\tthrow new ParseException(").append(quote("Cannot find rule for token " + name)).append(");\n");
+		}
+		else
+		{
+			out.append(in).append("\tint child_end = ").append(getCall(link, "n", "level + 1", "out_node")).append(";\n");
+			out.append(in).append("\tif (child_end == NO_MATCH)\n").append(in).append("\t{\n");
+			out.append(in).append("\t\twrong_symbol = true;\n");
+			out.append(in).append("\t\tout_node = null;\n");
+			out.append(in).append("\t\tbreak tokens;\n");
+			out.append(in).append("\t}\n");
+			out.append(in).append("\tn = child_end;\n");
+		}
+		out.append(in).append("}\n");
+	}
+
+	/**
+	 * Writes a test checking that character <tt>c</tt> is in a set
+	 * @param first The set of characters
+	 * @return The test
+	 */
+	private String getTest(BitSet first)
+	{
+		List<int[]> ranges = new ArrayList<int[]>();
+		for (int start = first.nextSetBit(0); start >= 0; start = first.nextSetBit(start))
+		{
+			int end = first.nextClearBit(start);
+			ranges.add(new int[] {start, end - 1});
+			start = end;
+		}
+		if (ranges.isEmpty())
+		{
+			return "false";
+		}
+		if (ranges.size() > MAX_RANGES)
+		{
+			m_firstSets.add(first);
+			return "FIRST_" + (m_firstSets.size() - 1) + ".get(c)";
+		}
+		StringBuilder test = new StringBuilder();
+		for (int[] range : ranges)
+		{
+			if (test.length() > 0)
+			{
+				test.append(" || ");
+			}
+			if (range[0] == range[1])
+			{
+				test.append("c == ").append(range[0]);
+			}
+			else
+			{
+				test.append("(c >= ").append(range[0]).append(" && c <= ").append(range[1]).append(")");
+			}
+		}
+		return test.toString();
+	}
+
+	/**
+	 * Writes a string as a Java string literal
+	 * @param s The string
+	 * @return The literal
+	 */
+	private static String quote(String s)
+	{
+		return "\"" + escape(s) + "\"";
+	}
+
+	/**
+	 * Escapes the characters of a string that cannot appear as is in a
+	 * Java string literal or comment. Control characters are written as
+	 * octal escapes, and not as Unicode escapes, since the compiler
+	 * replaces the latter before reading the code.
+	 * @param s The string
+	 * @return The escaped string
+	 */
+	private static String escape(String s)
+	{
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				out.append('\\').append(c);
+			}
+			else if (c < ' ' || c == 127)
+			{
+				out.append(String.format("\\%03o", (int) c));
+			}
+			else if (c > 127)
+			{
+				out.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				out.append(c);
+			}
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,224 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import ca.uqac.lif.bullwinkle.BnfParser.ParseException;
+
+/**
+ * A parser to which the string to parse is given in chunks, as they
+ * arrive from a network connection or from a file being written. Each
+ * chunk is parsed as soon as it is given with {@link #feed(CharSequence)},
+ * as far as the part of the string received so far allows; the parse tree
+ * is obtained by calling {@link #end()} once the last chunk has been
+ * given:
+ * <pre>
+ * PushParser parser = grammar.newPushParser(options);
+ * while (...)
+ * {
+ *   if (!parser.feed(chunk))
+ *   {
+ *     // The string does not follow the grammar
+ *   }
+ * }
+ * ParseNode tree = parser.end();
+ * </pre>
+ * When a chunk makes it impossible for the string to follow the grammar,
+ * whatever the chunks that come next, {@link #feed(CharSequence)} returns
+ * <tt>false</tt> at once, so that a bad input can be rejected without
+ * waiting for the rest of it.
+ * <p>
+ * The parsing is done with Earley's algorithm, as when
+ * {@link BnfParser#setEarleyMode(boolean) Earley mode} is enabled, and
+ * produces the same tree as that mode would for the whole string.
+ * Partial parsing is not supported. A push parser is meant to be used
+ * by a single thread, and to parse a single string.
+ * 
+ * @author Sylvain Hallé
+ */
+public class PushParser
+{
+	/**
+	 * The chart of the Earley parser
+	 */
+	private final EarleyParser.Chart m_chart;
+
+	/**
+	 * The symbol table of the grammar
+	 */
+	private final SymbolTable m_symbols;
+
+	/**
+	 * The skipper of the grammar
+	 */
+	private final Skipper m_skipper;
+
+	/**
+	 * The part of the string received so far
+	 */
+	private final StringBuilder m_text = new StringBuilder();
+
+	/**
+	 * The part of the string received so far, folded to lower case if the
+	 * grammar ignores case, or <tt>null</tt> otherwise
+	 */
+	private final StringBuilder m_folded;
+
+	/**
+	 * Whether the string is known not to follow the grammar
+	 */
+	private boolean m_failed = false;
+
+	/**
+	 * Whether the end of the string has been given
+	 */
+	private boolean m_ended = false;
+
+	/**
+	 * Creates a new push parser
+	 * @param symbols The symbol table of the grammar
+	 * @param start_id The ID of the start rule in the symbol table
+	 * @param number_values Whether numbers are attached to the nodes of
+	 *   the parse tree
+	 * @see CompiledGrammar#newPushParser(ParseOptions)
+	 */
+	PushParser(/*@NonNull*/ SymbolTable symbols, int start_id, boolean number_values)
+	{
+		super();
+		m_chart = symbols.getEarleyParser().newChart(start_id, number_values);
+		m_symbols = symbols;
+		m_skipper = symbols.getSkipper();
+		m_folded = symbols.isIgnoreCase() ? new StringBuilder() : null;
+	}
+
+	/**
+	 * Gives the next chunk of the string, and parses as much of the string
+	 * as possible
+	 * @param chunk The chunk
+	 * @return <tt>false</tt> if the string received so far cannot be the
+	 *   beginning of a string that follows the grammar, <tt>true</tt>
+	 *   otherwise
+	 * @throws ParseException Thrown if the parsing reaches a non-terminal
+	 *   token that has no rule
+	 * @throws IllegalStateException Thrown if {@link #end()} has already
+	 *   been called
+	 */
+	public boolean feed(/*@NonNull*/ CharSequence chunk) throws ParseException
+	{
+		if (m_ended)
+		{
+			throw new IllegalStateException("The end of the input has already been given");
+		}
+		if (m_failed)
+		{
+			return false;
+		}
+		m_text.append(chunk);
+		if (m_folded != null)
+		{
+			m_folded.append(InputBuffer.fold(chunk));
+		}
+		try
+		{
+			m_failed = !m_chart.feed(newBuffer());
+		}
+		finally
+		{
+			// The matchers of the regular expressions must not keep the
+			// string between two chunks
+			m_symbols.releaseMatchers();
+		}
+		return !m_failed;
+	}
+
+	/**
+	 * Indicates that the whole string has been given, and gets its parse
+	 * tree
+	 * @return The root of the parse tree, or <tt>null</tt> if the string
+	 *   does not follow the grammar
+	 * @throws ParseException Thrown if the parsing reaches a non-terminal
+	 *   token that has no rule
+	 * @throws IllegalStateException Thrown if this method has already been
+	 *   called
+	 */
+	public /*@Nullable*/ ParseNode end() throws ParseException
+	{
+		if (m_ended)
+		{
+			throw new IllegalStateException("The end of the input has already been given");
+		}
+		m_ended = true;
+		if (m_failed)
+		{
+			return null;
+		}
+		try
+		{
+			return m_chart.end(newBuffer());
+		}
+		finally
+		{
+			m_symbols.releaseMatchers();
+		}
+	}
+
+	/**
+	 * Determines if the string received so far is known not to follow the
+	 * grammar
+	 * @return <tt>true</tt> if the string does not follow the grammar,
+	 *   <tt>false</tt> if it may
+	 */
+	/*@ pure @*/ public boolean isFailed()
+	{
+		return m_failed;
+	}
+
+	/**
+	 * Gets the position in the string up to which it has been parsed. The
+	 * characters that follow this position are parsed when the next chunk
+	 * is given.
+	 * @return The position
+	 */
+	/*@ pure @*/ public int getPosition()
+	{
+		return m_chart.getPosition();
+	}
+
+	/**
+	 * Creates a buffer for the part of the string received so far
+	 * @return The buffer
+	 */
+	private InputBuffer newBuffer()
+	{
+		return new InputBuffer(m_text, m_folded == null ? m_text : m_folded, m_skipper);
+	}
+}
@@ -40,6 +40,21 @@ import java.util.regex.Pattern;
 
 /**
  * Terminal symbol in the grammar defined by a regular expression. 
+ * <p>
+ * The expression is matched in place, at the current position of the
+ * input: it must match a prefix of the input from that position, as if it
+ * started with <tt>^</tt>. Each thread matches the token with its own
+ * {@link Matcher}, which is created once and reused for all the matches
+ * of the token in that thread; the capture blocks of the last match of the
+ * token in a thread can be retrieved from it with
+ * {@link #getLastCaptureBlocks()}, without matching the expression again.
+ * When a parsing ends, the parser releases the matchers that the thread
+ * used for the tokens of its grammar, so that they no longer refer to the
+ * string that was parsed.
+ * <p>
+ * An expression that has no capture block and only uses character classes
+ * and quantifiers is also compiled into a {@link SimpleRegex}, which
+ * matches the input without going through the {@link Matcher}.
  * @author Sylvain Hallé
  */
 public class RegexTerminalToken extends TerminalToken
@@ -54,6 +69,22 @@ public class RegexTerminalToken extends TerminalToken
 	 */
 	private transient Pattern m_pattern;
 
+	/**
+	 * The expression compiled without {@link java.util.regex}, or
+	 * <tt>null</tt> if the expression is matched by the pattern
+	 */
+	private transient SimpleRegex m_simple;
+
+	/**
+	 * The flags used to compile the pattern
+	 */
+	private int m_flags;
+
+	/**
+	 * The matcher used by each thread to match the pattern
+	 */
+	private final transient ThreadLocal<Matcher> m_matchers = new ThreadLocal<Matcher>();
+
 	/**
 	 * Creates a new empty terminal token
 	 */
@@ -71,11 +102,47 @@ public class RegexTerminalToken extends TerminalToken
 		super(label);
 	}
 
+	/**
+	 * Creates a new terminal token whose expression is compiled with
+	 * some flags
+	 * @param label The regular expression that matches this token
+	 * @param flags The flags passed to {@link Pattern#compile(String, int)}
+	 */
+	RegexTerminalToken(final String label, final int flags)
+	{
+		super(label);
+		m_flags = flags;
+		compile(label);
+	}
+
 	@Override
 	public void setName(final String s)
 	{
 		super.setName(s);
-		m_pattern = Pattern.compile(s);
+		compile(s);
+	}
+
+	/**
+	 * Compiles the expression of this token
+	 * @param regex The expression
+	 */
+	private void compile(final String regex)
+	{
+		m_pattern = Pattern.compile(regex, m_flags);
+		m_simple = null;
+		if (m_flags == 0 && getCaptureBlockCount() == 0)
+		{
+			m_simple = SimpleRegex.compile(regex);
+		}
+	}
+
+	/**
+	 * Determines if the expression of this token ignores case
+	 * @return <tt>true</tt> if case is ignored, <tt>false</tt> otherwise
+	 */
+	/*@ pure @*/ boolean isCaseInsensitive()
+	{
+		return (m_flags & Pattern.CASE_INSENSITIVE) != 0;
 	}
 
 	@Override
@@ -89,14 +156,76 @@ public class RegexTerminalToken extends TerminalToken
 	@Override
 	public int match(final String s)
 	{
-		Matcher matcher = m_pattern.matcher(s);
-		if (matcher.find())
+		return match(s, 0, s.length());
+	}
+
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		if (m_simple != null)
 		{
-			return matcher.end();
+			int length = m_simple.match(s, start, end);
+			if (length != SimpleRegex.UNDECIDED)
+			{
+				return length;
+			}
+		}
+		// With the default (opaque and anchoring) bounds, the region behaves
+		// exactly like a string made of its contents
+		Matcher matcher = getMatcher(s);
+		matcher.region(start, end);
+		if (matcher.lookingAt())
+		{
+			return matcher.end() - start;
 		}
 		return -1;
 	}
 
+	@Override
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		Matcher matcher = getMatcher(s);
+		matcher.region(start, end);
+		matcher.lookingAt();
+		return matcher.hitEnd();
+	}
+
+	/**
+	 * Gets the matcher of the current thread, set to match a string
+	 * @param s The string
+	 * @return The matcher
+	 */
+	private Matcher getMatcher(final CharSequence s)
+	{
+		Matcher matcher = m_matchers.get();
+		if (matcher == null)
+		{
+			matcher = m_pattern.matcher(s);
+			m_matchers.set(matcher);
+			return matcher;
+		}
+		if (matcher.pattern() != m_pattern)
+		{
+			// The name of the token has changed since the matcher was created
+			matcher.usePattern(m_pattern);
+		}
+		return matcher.reset(s);
+	}
+
+	/**
+	 * Releases the matcher of the current thread, so that it no longer
+	 * refers to the last string it matched. The capture blocks of the last
+	 * match are lost.
+	 */
+	void releaseMatcher()
+	{
+		Matcher matcher = m_matchers.get();
+		if (matcher != null)
+		{
+			matcher.reset("");
+		}
+	}
+
 	@Override
 	public String toString()
 	{
@@ -105,6 +234,15 @@ public class RegexTerminalToken extends TerminalToken
 		return out.toString();
 	}
 
+	/**
+	 * Gets the number of capture blocks in the regex
+	 * @return The number of capture blocks
+	 */
+	/*@ pure @*/ int getCaptureBlockCount()
+	{
+		return m_pattern.matcher("").groupCount();
+	}
+
 	/**
 	 * Returns the content of each capture block in the regex,
 	 * matched against the input string 
@@ -113,10 +251,31 @@ public class RegexTerminalToken extends TerminalToken
 	 * of a capture block
 	 */
 	public List<String> getCaptureBlocks(final String s)
+	{
+		if (match(s) < 0)
+		{
+			return new LinkedList<String>();
+		}
+		return getLastCaptureBlocks();
+	}
+
+	/**
+	 * Returns the content of each capture block in the regex, for the last
+	 * successful call to {@link #match(CharSequence, int, int)} made on this
+	 * token by the current thread. The list is empty once a parsing that
+	 * used the token has ended.
+	 * @return A list of strings, each of which is the content
+	 * of a capture block
+	 */
+	public List<String> getLastCaptureBlocks()
 	{
 		List<String> out = new LinkedList<String>();
-		Matcher matcher = m_pattern.matcher(s);
-		if (matcher.find())
+		Matcher matcher = m_matchers.get();
+		if (matcher == null)
+		{
+			return out;
+		}
+		try
 		{
 			for (int i = 1; i <= matcher.groupCount(); i++)
 			{
@@ -124,6 +283,45 @@ public class RegexTerminalToken extends TerminalToken
 				out.add(group_match);
 			}
 		}
+		catch (IllegalStateException e)
+		{
+			// The last match failed
+			out.clear();
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the content of each capture block in the regex, for the last
+	 * successful match of this token by the current thread against the
+	 * contents of an input buffer. The content of each block is taken from
+	 * the original text of the buffer, which differs from the matched
+	 * contents if the buffer is folded.
+	 * @param input The input buffer
+	 * @return A list of strings, each of which is the content
+	 * of a capture block
+	 */
+	List<String> getLastCaptureBlocks(final InputBuffer input)
+	{
+		List<String> out = new LinkedList<String>();
+		Matcher matcher = m_matchers.get();
+		if (matcher == null)
+		{
+			return out;
+		}
+		try
+		{
+			for (int i = 1; i <= matcher.groupCount(); i++)
+			{
+				int start = matcher.start(i);
+				out.add(start < 0 ? null : input.substring(start, matcher.end(i)));
+			}
+		}
+		catch (IllegalStateException e)
+		{
+			// The last match failed
+			out.clear();
+		}
 		return out;
 	}
 	
@@ -0,0 +1,659 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A regular expression matched without {@link java.util.regex}. Most
+ * regex terminals of a grammar, such as <tt>^[0-9]+</tt> or
+ * <tt>^[a-zA-Z_][a-zA-Z0-9_]*</tt>, are a sequence of character classes,
+ * each repeated some number of times; such an expression is compiled
+ * into a sequence of <em>atoms</em>, and each atom is matched by a loop
+ * that tests one bit for each character of the input.
+ * <p>
+ * An atom is a literal character, a character class in brackets, one of
+ * <tt>.</tt>, <tt>\d</tt>, <tt>\D</tt>, <tt>\w</tt>, <tt>\W</tt>,
+ * <tt>\s</tt> and <tt>\S</tt>, or an escaped character; it can be
+ * followed by one of the greedy quantifiers <tt>*</tt>, <tt>+</tt>,
+ * <tt>?</tt>, <tt>{n}</tt>, <tt>{n,}</tt> and <tt>{n,m}</tt>. The
+ * expression can start with <tt>^</tt>. Any other construct, such as a
+ * group, an alternative or <tt>$</tt>, is not supported: the expression
+ * is then left to {@link java.util.regex.Pattern}.
+ * <p>
+ * Atoms are matched in the same order as by
+ * {@link java.util.regex.Matcher#lookingAt()}: each atom first takes as
+ * many characters as it can, and gives them back one at a time if the
+ * atoms that follow do not match. The length of the match is therefore
+ * always the same as with the pattern. Since a pattern reads supplementary
+ * characters as a whole, an atom that could match part of such a
+ * character gives up, and {@link #match(CharSequence, int, int)} then
+ * returns {@link #UNDECIDED}.
+ * 
+ * @author Sylvain Hallé
+ */
+final class SimpleRegex
+{
+	/**
+	 * The value returned when the input does not match
+	 */
+	static final int NO_MATCH = -1;
+
+	/**
+	 * The value returned when the input must be matched by the pattern
+	 */
+	static final int UNDECIDED = -2;
+
+	/**
+	 * The largest number of characters above 127 that an atom can list
+	 */
+	private static final int MAX_EXCEPTIONS = 256;
+
+	/**
+	 * For each atom, the characters 0 to 63 it matches, as a bit set
+	 */
+	private final long[] m_low;
+
+	/**
+	 * For each atom, the characters 64 to 127 it matches, as a bit set
+	 */
+	private final long[] m_high;
+
+	/**
+	 * For each atom, whether it matches the characters above 127 that are
+	 * not in {@link #m_exceptions}
+	 */
+	private final boolean[] m_others;
+
+	/**
+	 * For each atom, the sorted characters above 127 whose matching is the
+	 * opposite of {@link #m_others}
+	 */
+	private final char[][] m_exceptions;
+
+	/**
+	 * For each atom, the minimum number of repetitions
+	 */
+	private final int[] m_min;
+
+	/**
+	 * For each atom, the maximum number of repetitions
+	 */
+	private final int[] m_max;
+
+	/**
+	 * Creates a new expression out of its atoms
+	 * @param atoms The atoms
+	 */
+	private SimpleRegex(List<Atom> atoms)
+	{
+		super();
+		int size = atoms.size();
+		m_low = new long[size];
+		m_high = new long[size];
+		m_others = new boolean[size];
+		m_exceptions = new char[size][];
+		m_min = new int[size];
+		m_max = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			Atom a = atoms.get(i);
+			m_low[i] = a.m_low;
+			m_high[i] = a.m_high;
+			m_others[i] = a.m_others;
+			m_exceptions[i] = a.getExceptions();
+			m_min[i] = a.m_min;
+			m_max[i] = a.m_max;
+		}
+	}
+
+	/**
+	 * Compiles a regular expression
+	 * @param regex The expression
+	 * @return The compiled expression, or <tt>null</tt> if the expression
+	 *   uses a construct that is not supported
+	 */
+	static /*@Nullable*/ SimpleRegex compile(/*@NonNull*/ String regex)
+	{
+		List<Atom> atoms = new ArrayList<Atom>();
+		int i = regex.startsWith("^") ? 1 : 0;
+		while (i < regex.length())
+		{
+			Atom atom = new Atom();
+			char c = regex.charAt(i);
+			if (c == '[')
+			{
+				i = parseClass(regex, i + 1, atom);
+			}
+			else if (c == '\\')
+			{
+				i = parseEscape(regex, i + 1, atom, false);
+			}
+			else if (c == '.')
+			{
+				atom.addRange(0, 127);
+				atom.remove('\n');
+				atom.remove('\r');
+				atom.m_others = true;
+				atom.m_exceptionList = new ArrayList<Character>(Arrays.asList('\u0085', '\u2028', '\u2029'));
+				i++;
+			}
+			else if ("()[]{}|*+?^$".indexOf(c) < 0 && !Character.isSurrogate(c))
+			{
+				atom.add(c);
+				i++;
+			}
+			else
+			{
+				i = -1;
+			}
+			if (i < 0)
+			{
+				return null;
+			}
+			i = parseQuantifier(regex, i, atom);
+			if (i < 0)
+			{
+				return null;
+			}
+			atoms.add(atom);
+		}
+		return new SimpleRegex(atoms);
+	}
+
+	/**
+	 * Matches the expression against a part of a string
+	 * @param s The string
+	 * @param start The position where the match starts
+	 * @param end The position where the match must end at the latest
+	 * @return The length of the match, {@link #NO_MATCH} if the string
+	 *   does not match, or {@link #UNDECIDED} if the string must be
+	 *   matched by the pattern
+	 */
+	int match(CharSequence s, int start, int end)
+	{
+		int position = match(s, 0, start, end);
+		return position < 0 ? position : position - start;
+	}
+
+	/**
+	 * Matches the atoms of the expression from some atom onwards
+	 * @param s The string
+	 * @param atom The index of the atom
+	 * @param position The position where the atom starts
+	 * @param end The position where the match must end at the latest
+	 * @return The position where the match ends, {@link #NO_MATCH} or
+	 *   {@link #UNDECIDED}
+	 */
+	private int match(CharSequence s, int atom, int position, int end)
+	{
+		if (atom == m_min.length)
+		{
+			return position;
+		}
+		final long low = m_low[atom];
+		final long high = m_high[atom];
+		final int max = m_max[atom];
+		int count = 0;
+		int n = position;
+		while (count < max && n < end)
+		{
+			char c = s.charAt(n);
+			if (c < 64)
+			{
+				if ((low & (1L << c)) == 0)
+				{
+					break;
+				}
+			}
+			else if (c < 128)
+			{
+				if ((high & (1L << c)) == 0)
+				{
+					break;
+				}
+			}
+			else if (Character.isSurrogate(c))
+			{
+				if (m_others[atom] || m_exceptions[atom].length > 0)
+				{
+					return UNDECIDED;
+				}
+				break;
+			}
+			else if (m_others[atom] == (Arrays.binarySearch(m_exceptions[atom], c) >= 0))
+			{
+				break;
+			}
+			count++;
+			n++;
+		}
+		if (count < m_min[atom])
+		{
+			return NO_MATCH;
+		}
+		if (atom == m_min.length - 1)
+		{
+			return n;
+		}
+		// Give back characters one at a time until the rest matches
+		for (int k = count; k >= m_min[atom]; k--)
+		{
+			int result = match(s, atom + 1, position + k, end);
+			if (result != NO_MATCH)
+			{
+				return result;
+			}
+		}
+		return NO_MATCH;
+	}
+
+	/**
+	 * Parses a character class in brackets
+	 * @param regex The regular expression
+	 * @param i The position that follows the opening bracket
+	 * @param atom The atom to which the characters are added
+	 * @return The position that follows the closing bracket, or -1 if the
+	 *   class is not supported
+	 */
+	private static int parseClass(String regex, int i, Atom atom)
+	{
+		boolean negated = i < regex.length() && regex.charAt(i) == '^';
+		if (negated)
+		{
+			i++;
+		}
+		if (i >= regex.length() || regex.charAt(i) == ']')
+		{
+			return -1;
+		}
+		while (i < regex.length())
+		{
+			char c = regex.charAt(i);
+			if (c == ']')
+			{
+				if (negated)
+				{
+					atom.negate();
+				}
+				return i + 1;
+			}
+			if (c == '[' || Character.isSurrogate(c) || (c == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&'))
+			{
+				return -1;
+			}
+			int from;
+			if (c == '\\')
+			{
+				Atom escaped = new Atom();
+				i = parseEscape(regex, i + 1, escaped, true);
+				if (i < 0)
+				{
+					return -1;
+				}
+				from = escaped.getSingle();
+				if (from < 0)
+				{
+					// A predefined class such as \d
+					atom.addAll(escaped);
+					continue;
+				}
+			}
+			else
+			{
+				from = c;
+				i++;
+			}
+			if (i + 1 < regex.length() && regex.charAt(i) == '-' && regex.charAt(i + 1) != ']')
+			{
+				int to;
+				if (regex.charAt(i + 1) == '\\')
+				{
+					Atom escaped = new Atom();
+					i = parseEscape(regex, i + 2, escaped, true);
+					if (i < 0)
+					{
+						return -1;
+					}
+					to = escaped.getSingle();
+				}
+				else
+				{
+					to = regex.charAt(i + 1);
+					i += 2;
+				}
+				if (to < from || (to >= 128 && to - Math.max(from, 128) >= MAX_EXCEPTIONS) || Character.isSurrogate((char) to))
+				{
+					return -1;
+				}
+				atom.addRange(from, to);
+			}
+			else
+			{
+				atom.add((char) from);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses an escape sequence
+	 * @param regex The regular expression
+	 * @param i The position that follows the backslash
+	 * @param atom The atom to which the characters are added
+	 * @param in_class Whether the sequence is inside a character class
+	 * @return The position that follows the sequence, or -1 if the
+	 *   sequence is not supported
+	 */
+	private static int parseEscape(String regex, int i, Atom atom, boolean in_class)
+	{
+		if (i >= regex.length())
+		{
+			return -1;
+		}
+		char c = regex.charAt(i);
+		switch (c)
+		{
+		case 'd':
+		case 'D':
+			atom.addRange('0', '9');
+			break;
+		case 'w':
+		case 'W':
+			atom.addRange('0', '9');
+			atom.addRange('a', 'z');
+			atom.addRange('A', 'Z');
+			atom.add('_');
+			break;
+		case 's':
+		case 'S':
+			atom.add(' ');
+			atom.addRange('\t', '\r');
+			break;
+		case 't':
+			atom.add('\t');
+			break;
+		case 'n':
+			atom.add('\n');
+			break;
+		case 'r':
+			atom.add('\r');
+			break;
+		case 'f':
+			atom.add('\f');
+			break;
+		case 'a':
+			atom.add('\u0007');
+			break;
+		case 'e':
+			atom.add('\u001B');
+			break;
+		case 'x':
+		case 'u':
+		{
+			int digits = c == 'x' ? 2 : 4;
+			if (i + digits >= regex.length())
+			{
+				return -1;
+			}
+			int code = 0;
+			for (int j = 1; j <= digits; j++)
+			{
+				int digit = Character.digit(regex.charAt(i + j), 16);
+				if (digit < 0)
+				{
+					return -1;
+				}
+				code = code * 16 + digit;
+			}
+			if (Character.isSurrogate((char) code))
+			{
+				return -1;
+			}
+			atom.add((char) code);
+			return i + digits + 1;
+		}
+		default:
+			if (Character.isLetterOrDigit(c))
+			{
+				return -1;
+			}
+			// An escaped character that is not a letter stands for itself
+			atom.add(c);
+		}
+		if (c == 'D' || c == 'W' || c == 'S')
+		{
+			if (in_class)
+			{
+				return -1;
+			}
+			atom.negate();
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Parses the quantifier that follows an atom, if any
+	 * @param regex The regular expression
+	 * @param i The position that follows the atom
+	 * @param atom The atom
+	 * @return The position that follows the quantifier, or -1 if the
+	 *   quantifier is not supported
+	 */
+	private static int parseQuantifier(String regex, int i, Atom atom)
+	{
+		if (i >= regex.length())
+		{
+			return i;
+		}
+		char c = regex.charAt(i);
+		if (c == '*')
+		{
+			atom.m_min = 0;
+			atom.m_max = Integer.MAX_VALUE;
+			i++;
+		}
+		else if (c == '+')
+		{
+			atom.m_max = Integer.MAX_VALUE;
+			i++;
+		}
+		else if (c == '?')
+		{
+			atom.m_min = 0;
+			i++;
+		}
+		else if (c == '{')
+		{
+			int close = regex.indexOf('}', i);
+			if (close < 0)
+			{
+				return -1;
+			}
+			String[] bounds = regex.substring(i + 1, close).split(",", -1);
+			try
+			{
+				atom.m_min = Integer.parseInt(bounds[0]);
+				if (bounds.length == 1)
+				{
+					atom.m_max = atom.m_min;
+				}
+				else if (bounds.length == 2)
+				{
+					atom.m_max = bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+				}
+				else
+				{
+					return -1;
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				return -1;
+			}
+			if (atom.m_min < 0 || atom.m_max < atom.m_min)
+			{
+				return -1;
+			}
+			i = close + 1;
+		}
+		else
+		{
+			return i;
+		}
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+		{
+			// Lazy and possessive quantifiers are not supported
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * A character class with its quantifier, while the expression is
+	 * being compiled
+	 */
+	private static final class Atom
+	{
+		long m_low = 0;
+
+		long m_high = 0;
+
+		boolean m_others = false;
+
+		List<Character> m_exceptionList = new ArrayList<Character>();
+
+		int m_min = 1;
+
+		int m_max = 1;
+
+		void add(char c)
+		{
+			if (c < 64)
+			{
+				m_low |= 1L << c;
+			}
+			else if (c < 128)
+			{
+				m_high |= 1L << c;
+			}
+			else if (m_others == m_exceptionList.contains(c))
+			{
+				if (m_others)
+				{
+					m_exceptionList.remove(Character.valueOf(c));
+				}
+				else
+				{
+					m_exceptionList.add(c);
+				}
+			}
+		}
+
+		void addRange(int from, int to)
+		{
+			for (int c = from; c <= to; c++)
+			{
+				add((char) c);
+			}
+		}
+
+		void remove(char c)
+		{
+			if (c < 64)
+			{
+				m_low &= ~(1L << c);
+			}
+			else if (c < 128)
+			{
+				m_high &= ~(1L << c);
+			}
+		}
+
+		void addAll(Atom a)
+		{
+			m_low |= a.m_low;
+			m_high |= a.m_high;
+			for (char c : a.m_exceptionList)
+			{
+				add(c);
+			}
+		}
+
+		void negate()
+		{
+			m_low = ~m_low;
+			m_high = ~m_high;
+			m_others = !m_others;
+		}
+
+		/**
+		 * Gets the only character of this atom, if it has one
+		 * @return The character, or -1 if the atom has more than one
+		 */
+		int getSingle()
+		{
+			if (m_others)
+			{
+				return -1;
+			}
+			int count = Long.bitCount(m_low) + Long.bitCount(m_high) + m_exceptionList.size();
+			if (count != 1)
+			{
+				return -1;
+			}
+			if (m_low != 0)
+			{
+				return Long.numberOfTrailingZeros(m_low);
+			}
+			if (m_high != 0)
+			{
+				return 64 + Long.numberOfTrailingZeros(m_high);
+			}
+			return m_exceptionList.get(0);
+		}
+
+		char[] getExceptions()
+		{
+			char[] out = new char[m_exceptionList.size()];
+			for (int i = 0; i < out.length; i++)
+			{
+				out[i] = m_exceptionList.get(i);
+			}
+			Arrays.sort(out);
+			return out;
+		}
+	}
+}
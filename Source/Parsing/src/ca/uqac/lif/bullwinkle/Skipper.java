@@ -0,0 +1,402 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.bullwinkle.BnfParser.InvalidGrammarException;
+
+/**
+ * The content of the input that the parser skips before each token. This
+ * content is made of whitespace, that is, characters of a given class, and
+ * of comments, which start with an opening delimiter and end either at the
+ * end of the line or at a closing delimiter.
+ * <p>
+ * The whitespace class is stored as a bit set indexed by character, and
+ * the first characters of the opening delimiters as another; skipping
+ * the content at some position of the input therefore takes a single bit
+ * test for each character of whitespace, and only looks for delimiters at
+ * a character that can start a comment. Nothing is allocated.
+ * <p>
+ * By default, a grammar skips whitespace, a whitespace character being
+ * any character whose code is at most that of the space, as in
+ * {@link String#trim()}. A grammar can declare otherwise with a
+ * <tt>%skip</tt> directive, made of a sequence of the following items:
+ * <ul>
+ * <li><tt>whitespace</tt>: the default whitespace characters</li>
+ * <li>a regular expression that matches a single character, such as
+ * <tt>[\x20\t]</tt>: the characters it matches</li>
+ * <li><tt>line</tt> <i>open</i>: comments that start with <i>open</i> and
+ * end at the end of the line</li>
+ * <li><tt>block</tt> <i>open</i> <i>close</i>: comments that start with
+ * <i>open</i> and end with <i>close</i></li>
+ * <li><tt>none</tt>: nothing</li>
+ * </ul>
+ * For example:
+ * <pre>
+ * %skip whitespace line // block /* *&#47; ;
+ * </pre>
+ * Items are separated by spaces. Since the <tt>#</tt> character starts
+ * a comment in the grammar itself, a delimiter can contain escape
+ * sequences of the form <tt>&#92;u</tt><i>XXXX</i>, where <i>XXXX</i> is the
+ * hexadecimal code of a character.
+ * 
+ * @author Sylvain Hallé
+ */
+final class Skipper
+{
+	/**
+	 * The keyword that starts a directive declaring the content to skip
+	 */
+	static final String DIRECTIVE = "%skip";
+
+	/**
+	 * The skipper for the default whitespace characters
+	 */
+	static final Skipper WHITESPACE = new Skipper(whitespace(), new ArrayList<String>(0), new ArrayList<String>(0));
+
+	/**
+	 * The whitespace characters, as a bit set indexed by character
+	 */
+	private final long[] m_spaces;
+
+	/**
+	 * The first characters of the opening delimiters of comments, as a bit
+	 * set indexed by character
+	 */
+	private final long[] m_starts;
+
+	/**
+	 * The opening delimiter of each kind of comment
+	 */
+	private final String[] m_opens;
+
+	/**
+	 * The closing delimiter of each kind of comment, or <tt>null</tt> for a
+	 * comment that ends at the end of the line
+	 */
+	private final String[] m_closes;
+
+	/**
+	 * Creates a new skipper
+	 * @param spaces The whitespace characters, as a bit set
+	 * @param opens The opening delimiter of each kind of comment
+	 * @param closes The closing delimiter of each kind of comment, or
+	 *   <tt>null</tt> for a comment that ends at the end of the line
+	 */
+	private Skipper(long[] spaces, List<String> opens, List<String> closes)
+	{
+		super();
+		m_spaces = spaces;
+		m_opens = opens.toArray(new String[opens.size()]);
+		m_closes = closes.toArray(new String[closes.size()]);
+		long[] starts = new long[0];
+		for (String open : m_opens)
+		{
+			starts = set(starts, open.charAt(0));
+		}
+		m_starts = starts;
+	}
+
+	/**
+	 * Builds a skipper out of a <tt>%skip</tt> directive
+	 * @param directive The directive, without the final semicolon
+	 * @return The skipper
+	 * @throws InvalidGrammarException Thrown if the directive is invalid
+	 */
+	static /*@NonNull*/ Skipper parse(/*@NonNull*/ String directive) throws InvalidGrammarException
+	{
+		long[] spaces = new long[0];
+		List<String> opens = new ArrayList<String>();
+		List<String> closes = new ArrayList<String>();
+		Scanner scanner = new Scanner(directive.trim().substring(DIRECTIVE.length()));
+		try
+		{
+			while (scanner.hasNext())
+			{
+				String item = scanner.next();
+				if (item.equals("none"))
+				{
+					continue;
+				}
+				if (item.equals("whitespace"))
+				{
+					spaces = or(spaces, whitespace());
+				}
+				else if (item.equals("line") || item.equals("block"))
+				{
+					opens.add(getDelimiter(scanner, item));
+					closes.add(item.equals("line") ? null : getDelimiter(scanner, item));
+				}
+				else
+				{
+					spaces = or(spaces, getClass(item));
+				}
+			}
+		}
+		finally
+		{
+			scanner.close();
+		}
+		return new Skipper(spaces, opens, closes);
+	}
+
+	/**
+	 * Determines if a comment could start at some position of a character
+	 * sequence, once more characters are appended to it. This is the case
+	 * if the characters from that position are the beginning of the string
+	 * that opens a comment, or if they contain a whole opening string for
+	 * which no closing string has been found yet.
+	 * @param s The character sequence
+	 * @param position The position
+	 * @return <tt>true</tt> if a comment could start, <tt>false</tt>
+	 *   otherwise
+	 */
+	/*@ pure @*/ boolean mayStartComment(CharSequence s, int position)
+	{
+		for (String open : m_opens)
+		{
+			int length = Math.min(open.length(), s.length() - position);
+			if (InputBuffer.startsWith(s, open.substring(0, length), position))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a character is whitespace
+	 * @param c The character
+	 * @return <tt>true</tt> if the character is whitespace, <tt>false</tt>
+	 *   otherwise
+	 */
+	/*@ pure @*/ boolean isSpace(char c)
+	{
+		return contains(m_spaces, c);
+	}
+
+	/**
+	 * Gets the position of the first character at or after some position
+	 * that is neither whitespace nor part of a comment. A comment that is
+	 * not closed is not skipped.
+	 * @param s The string
+	 * @param position The position
+	 * @param end The position at which skipping stops
+	 * @return The position of the character, or <tt>end</tt> if there is
+	 *   none
+	 */
+	/*@ pure @*/ int skip(CharSequence s, int position, int end)
+	{
+		while (position < end)
+		{
+			char c = s.charAt(position);
+			if (contains(m_spaces, c))
+			{
+				position++;
+				continue;
+			}
+			if (!contains(m_starts, c))
+			{
+				return position;
+			}
+			int next = skipComment(s, position);
+			if (next == position)
+			{
+				return position;
+			}
+			position = next;
+		}
+		return end;
+	}
+
+	/**
+	 * Skips a comment starting at some position
+	 * @param s The string
+	 * @param position The position
+	 * @return The position that follows the comment, or <tt>position</tt>
+	 *   if no comment starts there
+	 */
+	private /*@ pure @*/ int skipComment(CharSequence s, int position)
+	{
+		for (int i = 0; i < m_opens.length; i++)
+		{
+			String open = m_opens[i];
+			if (!InputBuffer.startsWith(s, open, position))
+			{
+				continue;
+			}
+			int from = position + open.length();
+			String close = m_closes[i];
+			if (close == null)
+			{
+				int line_end = InputBuffer.indexOf(s, "\n", from);
+				return line_end < 0 ? s.length() : line_end;
+			}
+			int close_start = InputBuffer.indexOf(s, close, from);
+			if (close_start >= 0)
+			{
+				return close_start + close.length();
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Reads the delimiter that follows a keyword in a directive
+	 * @param scanner The scanner reading the directive
+	 * @param keyword The keyword
+	 * @return The delimiter, in which escape sequences are replaced
+	 * @throws InvalidGrammarException Thrown if there is no delimiter
+	 */
+	private static String getDelimiter(Scanner scanner, String keyword) throws InvalidGrammarException
+	{
+		if (!scanner.hasNext())
+		{
+			throw new InvalidGrammarException("Missing delimiter after " + keyword + " in " + DIRECTIVE + " directive");
+		}
+		String delimiter = scanner.next();
+		StringBuilder out = new StringBuilder();
+		int i = 0;
+		while (i < delimiter.length())
+		{
+			char c = delimiter.charAt(i);
+			if (c == '\\' && i + 5 < delimiter.length() && delimiter.charAt(i + 1) == 'u')
+			{
+				try
+				{
+					out.append((char) Integer.parseInt(delimiter.substring(i + 2, i + 6), 16));
+					i += 6;
+					continue;
+				}
+				catch (NumberFormatException e)
+				{
+					throw new InvalidGrammarException("Invalid escape sequence in " + delimiter);
+				}
+			}
+			out.append(c);
+			i++;
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Gets the characters matched by a regular expression that matches a
+	 * single character
+	 * @param regex The regular expression
+	 * @return The characters, as a bit set
+	 * @throws InvalidGrammarException Thrown if the expression is invalid
+	 */
+	private static long[] getClass(String regex) throws InvalidGrammarException
+	{
+		Pattern pattern;
+		try
+		{
+			pattern = Pattern.compile(regex);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new InvalidGrammarException("Invalid character class " + regex + " in " + DIRECTIVE + " directive");
+		}
+		long[] set = new long[0];
+		for (int c = 0; c <= Character.MAX_VALUE; c++)
+		{
+			if (pattern.matcher(String.valueOf((char) c)).matches())
+			{
+				set = set(set, (char) c);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Gets the default whitespace characters
+	 * @return The characters, as a bit set
+	 */
+	private static long[] whitespace()
+	{
+		return new long[] {(1L << (' ' + 1)) - 1};
+	}
+
+	/**
+	 * Determines if a bit set contains a character
+	 * @param set The bit set
+	 * @param c The character
+	 * @return <tt>true</tt> if the set contains the character, <tt>false</tt>
+	 *   otherwise
+	 */
+	private static boolean contains(long[] set, char c)
+	{
+		int index = c >>> 6;
+		return index < set.length && (set[index] & (1L << c)) != 0;
+	}
+
+	/**
+	 * Adds a character to a bit set
+	 * @param set The bit set
+	 * @param c The character
+	 * @return The bit set, which is a larger copy of <tt>set</tt> if it is
+	 *   too small to contain the character
+	 */
+	private static long[] set(long[] set, char c)
+	{
+		int index = c >>> 6;
+		if (index >= set.length)
+		{
+			long[] larger = new long[index + 1];
+			System.arraycopy(set, 0, larger, 0, set.length);
+			set = larger;
+		}
+		set[index] |= 1L << c;
+		return set;
+	}
+
+	/**
+	 * Computes the union of two bit sets
+	 * @param x The first bit set
+	 * @param y The second bit set
+	 * @return The union
+	 */
+	private static long[] or(long[] x, long[] y)
+	{
+		long[] out = new long[Math.max(x.length, y.length)];
+		for (int i = 0; i < out.length; i++)
+		{
+			out[i] = (i < x.length ? x[i] : 0) | (i < y.length ? y[i] : 0);
+		}
+		return out;
+	}
+}
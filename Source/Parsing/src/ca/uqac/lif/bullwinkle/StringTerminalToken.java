@@ -77,4 +77,23 @@ public class StringTerminalToken extends TerminalToken
 		}
 		return s.indexOf(' ');
 	}
+
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (s.charAt(i) == ' ')
+			{
+				return i - start;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		return match(s, start, end) < 0;
+	}
 }
@@ -0,0 +1,490 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of a grammar, compiled into a form that can be used
+ * efficiently by the parser. Each non-terminal symbol that is the
+ * left-hand side of a rule is given a dense integer ID, and the rules are
+ * stored in arrays indexed by this ID. Each non-terminal token occurring
+ * in the alternatives of a rule is linked in advance to the ID of the
+ * rule that defines it, so that finding this rule while parsing amounts
+ * to a single array access.
+ * <p>
+ * The table is a snapshot of the rules it was built from. Since the rules
+ * of a grammar can still be modified after they have been added to a
+ * parser, method {@link #isUpToDate(List)} tells whether the table must
+ * be rebuilt.
+ * 
+ * @author Sylvain Hallé
+ */
+final class SymbolTable
+{
+	/**
+	 * The ID given to a token that is not a non-terminal symbol defined
+	 * by a rule of the grammar
+	 */
+	static final int UNDEFINED = -1;
+
+	/**
+	 * The rules this table has been built from, in the order they appear
+	 * in the parser
+	 */
+	private final BnfRule[] m_sources;
+
+	/**
+	 * The modification count of each of the rules in {@link #m_sources}
+	 * at the moment the table was built
+	 */
+	private final int[] m_modifications;
+
+	/**
+	 * An association between the name of each non-terminal symbol and
+	 * its ID
+	 */
+	private final Map<String,Integer> m_ids;
+
+	/**
+	 * The rule defining each non-terminal symbol, indexed by ID
+	 */
+	private final BnfRule[] m_rules;
+
+	/**
+	 * The name of each non-terminal symbol, indexed by ID
+	 */
+	private final String[] m_names;
+
+	/**
+	 * The alternatives of the rule defining each non-terminal symbol,
+	 * indexed by ID, in the order they must be tried
+	 */
+	private final TokenString[][] m_alternatives;
+
+	/**
+	 * The tokens of each alternative of each rule
+	 */
+	private final Token[][][] m_tokens;
+
+	/**
+	 * For each token of each alternative of each rule, the ID of the
+	 * non-terminal symbol it refers to, or {@link #UNDEFINED}
+	 */
+	private final int[][][] m_links;
+
+	/**
+	 * The trie of the literals starting the alternatives of each rule,
+	 * indexed by ID, or <tt>null</tt> for a rule with few such alternatives
+	 */
+	private final LiteralTrie[] m_tries;
+
+	/**
+	 * The terminal tokens of this table defined by a regular expression,
+	 * each listed once
+	 */
+	private final RegexTerminalToken[] m_regexTokens;
+
+	/**
+	 * The FIRST sets of the rules in this table
+	 */
+	private final FirstSets m_firstSets;
+
+	/**
+	 * Whether the terminals in this table ignore case
+	 */
+	private final boolean m_ignoreCase;
+
+	/**
+	 * The skipper for the content skipped before each token
+	 */
+	private final Skipper m_skipper;
+
+	/**
+	 * The LL(1) parser for the rules in this table, created the first time
+	 * it is asked for
+	 */
+	private Ll1Parser m_ll1Parser = null;
+
+	/**
+	 * The Earley parser for the rules in this table, created the first time
+	 * it is asked for
+	 */
+	private EarleyParser m_earleyParser = null;
+
+	/**
+	 * The lexer for the terminals in this table, created the first time it
+	 * is asked for
+	 */
+	private Lexer m_lexer = null;
+
+	/**
+	 * The parser generated for the rules in this table, created the first
+	 * time it is asked for
+	 */
+	private GeneratedParser m_generatedParser = null;
+
+	/**
+	 * Whether the generation of a parser for the rules in this table has
+	 * already been attempted
+	 */
+	private boolean m_generationAttempted = false;
+
+	/**
+	 * Builds a symbol table out of a list of rules. If more than one rule
+	 * has the same left-hand side, the first one is used.
+	 * @param rules The rules
+	 */
+	SymbolTable(/*@NonNull*/ List<BnfRule> rules)
+	{
+		this(rules, false, Skipper.WHITESPACE);
+	}
+
+	/**
+	 * Builds a symbol table out of a list of rules. If more than one rule
+	 * has the same left-hand side, the first one is used.
+	 * <p>
+	 * If the table ignores case, its terminals are meant to be matched
+	 * against {@linkplain InputBuffer#fold() folded} input: each literal is
+	 * replaced by its folded form, and each regular expression is compiled
+	 * so that it ignores case. The rules themselves are left untouched.
+	 * @param rules The rules
+	 * @param ignore_case Set to <tt>true</tt> to ignore case when matching
+	 *   terminals
+	 * @param skipper The skipper for the content skipped before each token
+	 */
+	SymbolTable(/*@NonNull*/ List<BnfRule> rules, boolean ignore_case, /*@NonNull*/ Skipper skipper)
+	{
+		super();
+		m_ignoreCase = ignore_case;
+		m_skipper = skipper;
+		int num_sources = rules.size();
+		m_sources = rules.toArray(new BnfRule[num_sources]);
+		m_modifications = new int[num_sources];
+		m_ids = new HashMap<String,Integer>();
+		BnfRule[] defined = new BnfRule[num_sources];
+		int num_rules = 0;
+		for (int i = 0; i < num_sources; i++)
+		{
+			BnfRule rule = m_sources[i];
+			m_modifications[i] = rule.getModificationCount();
+			NonTerminalToken lhs = rule.getLeftHandSide();
+			if (lhs != null && !m_ids.containsKey(lhs.toString()))
+			{
+				m_ids.put(lhs.toString(), num_rules);
+				defined[num_rules++] = rule;
+			}
+		}
+		m_rules = new BnfRule[num_rules];
+		m_names = new String[num_rules];
+		m_alternatives = new TokenString[num_rules][];
+		m_tokens = new Token[num_rules][][];
+		m_links = new int[num_rules][][];
+		m_tries = new LiteralTrie[num_rules];
+		Map<Token,Token> regex_tokens = new IdentityHashMap<Token,Token>();
+		List<RegexTerminalToken> regex_list = new ArrayList<RegexTerminalToken>();
+		for (int id = 0; id < num_rules; id++)
+		{
+			BnfRule rule = defined[id];
+			m_rules[id] = rule;
+			m_names[id] = rule.getLeftHandSide().toString();
+			List<TokenString> alternatives = rule.getAlternatives();
+			int num_alternatives = alternatives.size();
+			m_alternatives[id] = alternatives.toArray(new TokenString[num_alternatives]);
+			m_tokens[id] = new Token[num_alternatives][];
+			m_links[id] = new int[num_alternatives][];
+			for (int j = 0; j < num_alternatives; j++)
+			{
+				TokenString alt = m_alternatives[id][j];
+				Token[] tokens = alt.toArray(new Token[alt.size()]);
+				int[] links = new int[tokens.length];
+				for (int k = 0; k < tokens.length; k++)
+				{
+					if (ignore_case)
+					{
+						tokens[k] = foldCase(tokens[k]);
+					}
+					links[k] = tokens[k] instanceof NonTerminalToken ? getId(tokens[k].toString()) : UNDEFINED;
+					if (tokens[k] instanceof RegexTerminalToken && regex_tokens.put(tokens[k], tokens[k]) == null)
+					{
+						regex_list.add((RegexTerminalToken) tokens[k]);
+					}
+				}
+				m_tokens[id][j] = tokens;
+				m_links[id][j] = links;
+			}
+			m_tries[id] = LiteralTrie.build(m_tokens[id]);
+		}
+		m_regexTokens = regex_list.toArray(new RegexTerminalToken[regex_list.size()]);
+		m_firstSets = new FirstSets(this);
+	}
+
+	/**
+	 * Determines if this table reflects the current state of a list of
+	 * rules, that is, if no rule has been added to the list and no rule of
+	 * the list has been modified since the table was built
+	 * @param rules The rules
+	 * @return {@code true} if the table is up to date, {@code false}
+	 *   otherwise
+	 */
+	/*@ pure @*/ boolean isUpToDate(/*@NonNull*/ List<BnfRule> rules)
+	{
+		if (rules.size() != m_sources.length)
+		{
+			return false;
+		}
+		int i = 0;
+		for (BnfRule rule : rules)
+		{
+			if (rule != m_sources[i] || rule.getModificationCount() != m_modifications[i])
+			{
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if the terminals in this table ignore case
+	 * @return <tt>true</tt> if case is ignored, <tt>false</tt> otherwise
+	 */
+	/*@ pure @*/ boolean isIgnoreCase()
+	{
+		return m_ignoreCase;
+	}
+
+	/**
+	 * Releases the matchers with which the current thread matched the
+	 * regular expressions of this table, so that they no longer refer to
+	 * the last string parsed
+	 */
+	void releaseMatchers()
+	{
+		for (RegexTerminalToken tok : m_regexTokens)
+		{
+			tok.releaseMatcher();
+		}
+	}
+
+	/**
+	 * Gets the skipper for the content skipped before each token
+	 * @return The skipper
+	 */
+	/*@ pure @*/ Skipper getSkipper()
+	{
+		return m_skipper;
+	}
+
+	/**
+	 * Gets a token that matches folded input the way a token matches
+	 * the original input when case is ignored
+	 * @param tok The token
+	 * @return The token, which is <tt>tok</tt> itself if its matching does
+	 *   not depend on case
+	 */
+	private static Token foldCase(Token tok)
+	{
+		// Only the tokens whose matching is known are replaced; a descendant
+		// of these classes is used as is
+		Class<?> c = tok.getClass();
+		if (c == TerminalToken.class)
+		{
+			String folded = InputBuffer.fold(tok.getName());
+			return folded == tok.getName() ? tok : new TerminalToken(folded);
+		}
+		if (c == RegexTerminalToken.class)
+		{
+			return new RegexTerminalToken(tok.getName(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+		}
+		return tok;
+	}
+
+	/**
+	 * Gets the number of non-terminal symbols defined in this table
+	 * @return The number of symbols
+	 */
+	/*@ pure @*/ int size()
+	{
+		return m_rules.length;
+	}
+
+	/**
+	 * Gets the ID of a non-terminal symbol
+	 * @param name The name of the symbol, including its angle brackets
+	 * @return The ID, or {@link #UNDEFINED} if no rule defines this symbol
+	 */
+	/*@ pure @*/ int getId(/*@NonNull*/ String name)
+	{
+		Integer id = m_ids.get(name);
+		if (id == null)
+		{
+			return UNDEFINED;
+		}
+		return id;
+	}
+
+	/**
+	 * Gets the rule defining a non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return The rule
+	 */
+	/*@ pure @*/ BnfRule getRule(int id)
+	{
+		return m_rules[id];
+	}
+
+	/**
+	 * Gets the name of a non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return The name, including its angle brackets
+	 */
+	/*@ pure @*/ String getName(int id)
+	{
+		return m_names[id];
+	}
+
+	/**
+	 * Gets the alternatives of the rule defining a non-terminal symbol, in
+	 * the order they must be tried
+	 * @param id The ID of the symbol
+	 * @return The alternatives
+	 */
+	/*@ pure @*/ TokenString[] getAlternatives(int id)
+	{
+		return m_alternatives[id];
+	}
+
+	/**
+	 * Gets the tokens of each alternative of the rule defining a
+	 * non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return An array containing the tokens of each alternative, in the
+	 *   same order as {@link #getAlternatives(int)}
+	 */
+	/*@ pure @*/ Token[][] getTokens(int id)
+	{
+		return m_tokens[id];
+	}
+
+	/**
+	 * Gets the ID of the non-terminal symbol referred to by each token of
+	 * each alternative of the rule defining a non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return An array containing, for each alternative, the ID of the
+	 *   symbol each token refers to, or {@link #UNDEFINED}
+	 */
+	/*@ pure @*/ int[][] getLinks(int id)
+	{
+		return m_links[id];
+	}
+
+	/**
+	 * Gets the trie of the literals starting the alternatives of the rule
+	 * defining a non-terminal symbol
+	 * @param id The ID of the symbol
+	 * @return The trie, or <tt>null</tt> if few alternatives of the rule
+	 *   start with a literal
+	 */
+	/*@ pure @*/ LiteralTrie getLiteralTrie(int id)
+	{
+		return m_tries[id];
+	}
+
+	/**
+	 * Gets the FIRST sets of the rules in this table
+	 * @return The FIRST sets
+	 */
+	/*@ pure @*/ FirstSets getFirstSets()
+	{
+		return m_firstSets;
+	}
+
+	/**
+	 * Gets the LL(1) parser for the rules in this table
+	 * @return The parser
+	 */
+	Ll1Parser getLl1Parser()
+	{
+		if (m_ll1Parser == null)
+		{
+			m_ll1Parser = new Ll1Parser(this);
+		}
+		return m_ll1Parser;
+	}
+
+	/**
+	 * Gets the Earley parser for the rules in this table
+	 * @return The parser
+	 */
+	EarleyParser getEarleyParser()
+	{
+		if (m_earleyParser == null)
+		{
+			m_earleyParser = new EarleyParser(this);
+		}
+		return m_earleyParser;
+	}
+
+	/**
+	 * Gets the lexer for the terminals in this table
+	 * @return The lexer
+	 */
+	Lexer getLexer()
+	{
+		if (m_lexer == null)
+		{
+			m_lexer = new Lexer(this);
+		}
+		return m_lexer;
+	}
+
+	/**
+	 * Gets the parser generated for the rules in this table
+	 * @return The parser, or <tt>null</tt> if it could not be generated
+	 */
+	GeneratedParser getGeneratedParser()
+	{
+		if (!m_generationAttempted)
+		{
+			m_generatedParser = ParserGenerator.generate(this);
+			m_generationAttempted = true;
+		}
+		return m_generatedParser;
+	}
+}
@@ -0,0 +1,235 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of matching terminals at positions of the input, recorded
+ * during a single parsing. When the parser backtracks, the alternatives it
+ * tries next often start with a terminal that was already matched at the
+ * same position; with this cache, the terminal is matched only once, and
+ * the number of characters it matched is read back the next times.
+ * <p>
+ * A terminal is designated by its type, as numbered by the {@link Lexer}
+ * of the grammar. The pairs of a type and a position are stored in an
+ * open-addressing table of primitive values, so that looking up the
+ * outcome of a match does not create any object.
+ * 
+ * @author Sylvain Hallé
+ */
+final class TerminalCache
+{
+	/**
+	 * The value returned by {@link #get(int, int)} when the outcome of a
+	 * match is not in the cache
+	 */
+	static final int ABSENT = Integer.MIN_VALUE;
+
+	/**
+	 * The key of an empty slot of the table. It is distinct from every
+	 * valid key, since types and positions are never negative.
+	 */
+	private static final long EMPTY = -1L;
+
+	/**
+	 * The initial number of slots of the table
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * The key of each slot, made of a type and a position
+	 */
+	private long[] m_keys;
+
+	/**
+	 * The length of the match recorded in each slot
+	 */
+	private int[] m_lengths;
+
+	/**
+	 * The number of occupied slots
+	 */
+	private int m_size = 0;
+
+	/**
+	 * The number of times the outcome of a match was found in the cache
+	 */
+	private int m_hits = 0;
+
+	/**
+	 * The number of times the outcome of a match was not in the cache
+	 */
+	private int m_misses = 0;
+
+	/**
+	 * Creates an empty cache
+	 */
+	TerminalCache()
+	{
+		super();
+		m_keys = new long[INITIAL_CAPACITY];
+		m_lengths = new int[INITIAL_CAPACITY];
+		Arrays.fill(m_keys, EMPTY);
+	}
+
+	/**
+	 * Gets the outcome of matching a terminal at some position
+	 * @param type The type of the terminal
+	 * @param position The position
+	 * @return The value returned by
+	 *   {@link Token#match(CharSequence, int, int)} when the terminal was
+	 *   matched at this position, or {@link #ABSENT} if it was not
+	 */
+	int get(int type, int position)
+	{
+		long key = getKey(type, position);
+		long[] keys = m_keys;
+		int mask = keys.length - 1;
+		for (int slot = getSlot(key, mask); ; slot = (slot + 1) & mask)
+		{
+			long k = keys[slot];
+			if (k == key)
+			{
+				m_hits++;
+				return m_lengths[slot];
+			}
+			if (k == EMPTY)
+			{
+				m_misses++;
+				return ABSENT;
+			}
+		}
+	}
+
+	/**
+	 * Records the outcome of matching a terminal at some position
+	 * @param type The type of the terminal
+	 * @param position The position
+	 * @param length The value returned by
+	 *   {@link Token#match(CharSequence, int, int)}
+	 */
+	void put(int type, int position, int length)
+	{
+		if (2 * (m_size + 1) > m_keys.length)
+		{
+			grow();
+		}
+		if (insert(m_keys, m_lengths, getKey(type, position), length))
+		{
+			m_size++;
+		}
+	}
+
+	/**
+	 * Gets the number of times the outcome of a match was found in the
+	 * cache
+	 * @return The number of hits
+	 */
+	/*@ pure @*/ int getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Gets the number of times the outcome of a match was not in the cache
+	 * @return The number of misses
+	 */
+	/*@ pure @*/ int getMisses()
+	{
+		return m_misses;
+	}
+
+	/**
+	 * Doubles the number of slots of the table
+	 */
+	private void grow()
+	{
+		long[] keys = new long[2 * m_keys.length];
+		int[] lengths = new int[keys.length];
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < m_keys.length; i++)
+		{
+			if (m_keys[i] != EMPTY)
+			{
+				insert(keys, lengths, m_keys[i], m_lengths[i]);
+			}
+		}
+		m_keys = keys;
+		m_lengths = lengths;
+	}
+
+	/**
+	 * Puts a key and its value into a table
+	 * @param keys The keys of the table
+	 * @param lengths The values of the table
+	 * @param key The key
+	 * @param length The value
+	 * @return <tt>true</tt> if the key was not already in the table
+	 */
+	private static boolean insert(long[] keys, int[] lengths, long key, int length)
+	{
+		int mask = keys.length - 1;
+		int slot = getSlot(key, mask);
+		while (keys[slot] != EMPTY && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		boolean added = keys[slot] == EMPTY;
+		keys[slot] = key;
+		lengths[slot] = length;
+		return added;
+	}
+
+	/**
+	 * Gets the key of a terminal at some position
+	 * @param type The type of the terminal
+	 * @param position The position
+	 * @return The key
+	 */
+	private static long getKey(int type, int position)
+	{
+		return ((long) type << 32) | position;
+	}
+
+	/**
+	 * Gets the slot where the search for a key starts
+	 * @param key The key
+	 * @param mask The number of slots of the table, minus one
+	 * @return The slot
+	 */
+	private static int getSlot(long key, int mask)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
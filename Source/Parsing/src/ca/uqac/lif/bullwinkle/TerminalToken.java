@@ -90,6 +90,45 @@ public class TerminalToken extends Token
 		return 0;
 	}
 
+	@Override
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		String name = getName();
+		int length = name.length();
+		if (end - start < length)
+		{
+			return -1;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (s.charAt(start + i) != name.charAt(i))
+			{
+				return 0;
+			}
+		}
+		return length;
+	}
+
+	@Override
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		// More characters are needed if those available start the literal
+		String name = getName();
+		int available = end - start;
+		if (available >= name.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < available; i++)
+		{
+			if (s.charAt(start + i) != name.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public boolean equals(/* @Nullable */ Object o)
 	{
@@ -132,4 +132,41 @@ public abstract class Token implements Serializable
 	public abstract boolean matches(final Token tok);
 
 	public abstract int match(final String s);
+
+	/**
+	 * Determines how many characters at the beginning of a region of a
+	 * character sequence are matched by this token. This method returns
+	 * the same value as {@link #match(String)} called on the contents of
+	 * the region; descendants override it so that the region does not need
+	 * to be copied into a new string. Descendants that override
+	 * {@link #match(String)} should override this method as well.
+	 * @param s The character sequence
+	 * @param start The index of the first character of the region
+	 * @param end The index following the last character of the region
+	 * @return The number of characters matched, or a value smaller than 1
+	 *   if the region does not start with this token
+	 */
+	public int match(final CharSequence s, final int start, final int end)
+	{
+		return match(s.subSequence(start, end).toString());
+	}
+
+	/**
+	 * Determines if what this token matches at the beginning of a region of
+	 * a character sequence, as given by
+	 * {@link #match(CharSequence, int, int)}, could change if characters
+	 * were appended at the end of the region. This is used when the input
+	 * is given in chunks, to know if the parsing can go on before the next
+	 * chunk arrives. Without more knowledge of the token, this method
+	 * answers that it could.
+	 * @param s The character sequence
+	 * @param start The index of the first character of the region
+	 * @param end The index following the last character of the region
+	 * @return <tt>true</tt> if the match could change, <tt>false</tt>
+	 *   otherwise
+	 */
+	boolean needsMore(final CharSequence s, final int start, final int end)
+	{
+		return true;
+	}
 }
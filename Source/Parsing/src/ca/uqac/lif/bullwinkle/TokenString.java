@@ -35,10 +35,16 @@ package ca.uqac.lif.bullwinkle;
 
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.ListIterator;
 import java.util.Set;
 
 /**
- * An ordered sequence of tokens
+ * An ordered sequence of tokens.
+ * <p>
+ * A token string counts the changes made to it, including the
+ * replacement of a token and a change of {@link #setTryLast(boolean)}, so
+ * that a parser can detect that a rule it has compiled was modified
+ * through one of its alternatives.
  * @author Sylvain Hallé
  */
 public class TokenString extends LinkedList<Token>
@@ -54,6 +60,12 @@ public class TokenString extends LinkedList<Token>
 	 */
 	private boolean m_tryLast = false;
 
+	/**
+	 * The number of changes made to this string that do not change its
+	 * size, and are therefore not counted by the list itself
+	 */
+	private transient int m_changes = 0;
+
 	/**
 	 * Creates a new token string.
 	 * @param tokens An optional list of tokens to add to the string
@@ -82,9 +94,37 @@ public class TokenString extends LinkedList<Token>
 	 */
 	public void setTryLast(boolean b)
 	{
+		if (b != m_tryLast)
+		{
+			// The position of the alternative in its rule changes
+			m_changes++;
+		}
 		m_tryLast = b; 
 	}
 
+	/**
+	 * Gets the number of times this string has been modified since its
+	 * creation
+	 * @return The number of modifications
+	 */
+	/*@ pure @*/ int getModificationCount()
+	{
+		return modCount + m_changes;
+	}
+
+	@Override
+	public Token set(int index, Token t)
+	{
+		m_changes++;
+		return super.set(index, t);
+	}
+
+	@Override
+	public ListIterator<Token> listIterator(int index)
+	{
+		return new CountingIterator(super.listIterator(index));
+	}
+
 	/**
 	 * Creates a copy of this token string
 	 * @return The copy
@@ -222,4 +262,79 @@ public class TokenString extends LinkedList<Token>
 		}
 		return offsets;
 	}
+
+	/**
+	 * A list iterator that counts the tokens it replaces as modifications
+	 * of the string. This also covers the methods of {@link java.util.List}
+	 * that replace elements through an iterator, such as
+	 * {@link java.util.List#sort(java.util.Comparator) sort()}.
+	 */
+	private class CountingIterator implements ListIterator<Token>
+	{
+		/**
+		 * The iterator of the underlying list
+		 */
+		private final ListIterator<Token> m_iterator;
+
+		CountingIterator(ListIterator<Token> iterator)
+		{
+			super();
+			m_iterator = iterator;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_iterator.hasNext();
+		}
+
+		@Override
+		public Token next()
+		{
+			return m_iterator.next();
+		}
+
+		@Override
+		public boolean hasPrevious()
+		{
+			return m_iterator.hasPrevious();
+		}
+
+		@Override
+		public Token previous()
+		{
+			return m_iterator.previous();
+		}
+
+		@Override
+		public int nextIndex()
+		{
+			return m_iterator.nextIndex();
+		}
+
+		@Override
+		public int previousIndex()
+		{
+			return m_iterator.previousIndex();
+		}
+
+		@Override
+		public void remove()
+		{
+			m_iterator.remove();
+		}
+
+		@Override
+		public void set(Token t)
+		{
+			m_iterator.set(t);
+			m_changes++;
+		}
+
+		@Override
+		public void add(Token t)
+		{
+			m_iterator.add(t);
+		}
+	}
 }
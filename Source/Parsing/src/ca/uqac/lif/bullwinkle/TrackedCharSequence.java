@@ -0,0 +1,122 @@
+/* MIT License
+ * 
+ * Copyright 2014-2021 Sylvain Hallé
+ * Laboratoire d'informatique formelle
+ * Université du Québec à Chicoutimi, Canada
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a 
+ * copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation 
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the 
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to 
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.uqac.lif.bullwinkle;
+
+/**
+ * A sequence of characters that records how far it has been read. It is
+ * used by the {@link IncrementalParser} to know which part of the input
+ * the outcome of a rule depends on. The characters read through a
+ * {@link FoldedCharSequence} of this sequence are recorded as well.
+ * 
+ * @author Sylvain Hallé
+ */
+final class TrackedCharSequence implements CharSequence
+{
+	/**
+	 * The characters of the sequence
+	 */
+	private final CharSequence m_sequence;
+
+	/**
+	 * The position that follows the last character read
+	 */
+	private int m_read = 0;
+
+	/**
+	 * Creates a new sequence
+	 * @param sequence The characters of the sequence
+	 */
+	TrackedCharSequence(/*@NonNull*/ CharSequence sequence)
+	{
+		super();
+		m_sequence = sequence;
+	}
+
+	/**
+	 * Gets the position that follows the last character read, among the
+	 * characters read since the record was last set
+	 * @return The position
+	 */
+	/*@ pure @*/ int getRead()
+	{
+		return m_read;
+	}
+
+	/**
+	 * Sets the position that follows the last character read
+	 * @param read The position
+	 */
+	void setRead(int read)
+	{
+		m_read = read;
+	}
+
+	/**
+	 * Records that the characters up to some position have been read
+	 * @param read The position that follows the last character read
+	 */
+	void extendRead(int read)
+	{
+		if (read > m_read)
+		{
+			m_read = read;
+		}
+	}
+
+	@Override
+	public int length()
+	{
+		return m_sequence.length();
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		extendRead(index + 1);
+		return m_sequence.charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		extendRead(end);
+		return m_sequence.subSequence(start, end);
+	}
+
+	@Override
+	public String toString()
+	{
+		extendRead(m_sequence.length());
+		return m_sequence.toString();
+	}
+}
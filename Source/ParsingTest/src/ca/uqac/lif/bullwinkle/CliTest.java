@@ -36,7 +36,10 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.junit.Test;
 
@@ -181,6 +184,114 @@ public class CliTest
 		assertEquals(BullwinkleCli.ERR_GRAMMAR, retcode);
 	}
 	
+	@Test
+	public void testCliBatch()
+	{
+		String[] args = {"--format", "txt", "--batch", "--threads", "3", "Grammar-0.bnf"};
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 500; i++)
+		{
+			input.append(i == 250 ? "SELECT" : "SELECT " + name(i) + " FROM bar").append("\n");
+		}
+		ByteArrayInputStream bais_stdin = new ByteArrayInputStream(input.toString().getBytes());
+		ByteArrayOutputStream baos_stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream baos_stderr = new ByteArrayOutputStream();
+		int retcode = BullwinkleCli.doMain(args, bais_stdin, new PrintStream(baos_stdout), new PrintStream(baos_stderr));
+		assertEquals(BullwinkleCli.ERR_PARSE, retcode);
+		// The outputs are in the order of the input, with the failure inline
+		String s = new String(baos_stdout.toByteArray());
+		int position = 0;
+		for (int i = 0; i < 500; i++)
+		{
+			int next = s.indexOf(i == 250 ? "ERROR Record 251 " : " " + name(i) + "\n", position);
+			assertTrue(next > position);
+			position = next;
+		}
+		assertTrue(new String(baos_stderr.toByteArray()).contains("500 records (1 failed)"));
+	}
+
+	@Test
+	public void testCliBatchDelimiter()
+	{
+		String[] args = {"--format", "xml", "--batch", "--delimiter", ";", "Grammar-0.bnf"};
+		ByteArrayInputStream bais_stdin = new ByteArrayInputStream("SELECT first FROM b;\nSELECT second FROM d ; ".getBytes());
+		ByteArrayOutputStream baos_stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream baos_stderr = new ByteArrayOutputStream();
+		int retcode = BullwinkleCli.doMain(args, bais_stdin, new PrintStream(baos_stdout), new PrintStream(baos_stderr));
+		assertEquals(BullwinkleCli.ERR_OK, retcode);
+		String s = new String(baos_stdout.toByteArray());
+		assertEquals(2, s.split("<\\?xml").length - 1);
+		assertTrue(s.indexOf("first") < s.indexOf("second"));
+	}
+
+	@Test
+	public void testCliBatchTooLong()
+	{
+		String[] args = {"--format", "txt", "--batch", "Grammar-0.bnf"};
+		StringBuilder input = new StringBuilder("SELECT ");
+		for (int i = 0; i < DocumentReader.DEFAULT_MAX_LENGTH; i++)
+		{
+			input.append('a');
+		}
+		input.append(" FROM bar\nSELECT foo FROM bar\n");
+		ByteArrayInputStream bais_stdin = new ByteArrayInputStream(input.toString().getBytes());
+		ByteArrayOutputStream baos_stdout = new ByteArrayOutputStream();
+		ByteArrayOutputStream baos_stderr = new ByteArrayOutputStream();
+		int retcode = BullwinkleCli.doMain(args, bais_stdin, new PrintStream(baos_stdout), new PrintStream(baos_stderr));
+		assertEquals(BullwinkleCli.ERR_PARSE, retcode);
+		String s = new String(baos_stdout.toByteArray());
+		assertTrue(s.startsWith("ERROR Record 1 is longer than " + DocumentReader.DEFAULT_MAX_LENGTH + " characters\n"));
+		assertTrue(s.contains(" foo\n"));
+	}
+
+	@Test
+	public void testCliBatchRecordError() throws IOException
+	{
+		// Matching the regex on the second record overflows the stack of
+		// the regex engine; the error is reported like a parsing failure
+		Path grammar = Files.createTempFile("bullwinkle", ".bnf");
+		try
+		{
+			Files.write(grammar, "<S> := ^(ab|cd)+;".getBytes());
+			String[] args = {"--format", "txt", "--batch", "--threads", "2", grammar.toString()};
+			StringBuilder input = new StringBuilder("abab\n");
+			for (int i = 0; i < 250000; i++)
+			{
+				input.append("ab");
+			}
+			input.append("\ncdcd\n");
+			ByteArrayInputStream bais_stdin = new ByteArrayInputStream(input.toString().getBytes());
+			ByteArrayOutputStream baos_stdout = new ByteArrayOutputStream();
+			ByteArrayOutputStream baos_stderr = new ByteArrayOutputStream();
+			int retcode = BullwinkleCli.doMain(args, bais_stdin, new PrintStream(baos_stdout), new PrintStream(baos_stderr));
+			assertEquals(BullwinkleCli.ERR_PARSE, retcode);
+			String s = new String(baos_stdout.toByteArray());
+			int error = s.indexOf("ERROR Record 2: java.lang.StackOverflowError");
+			assertTrue(s.indexOf("abab") < error);
+			assertTrue(error < s.indexOf("cdcd"));
+			assertTrue(new String(baos_stderr.toByteArray()).contains("3 records (1 failed)"));
+		}
+		finally
+		{
+			Files.delete(grammar);
+		}
+	}
+
+	/**
+	 * Gets a name made of letters for a number
+	 * @param i The number
+	 * @return The name
+	 */
+	private static String name(int i)
+	{
+		StringBuilder name = new StringBuilder("x");
+		for (char c : Integer.toString(i).toCharArray())
+		{
+			name.append((char) ('a' + c - '0'));
+		}
+		return name.toString();
+	}
+
 	@Test
 	public void testCliVersion()
 	{
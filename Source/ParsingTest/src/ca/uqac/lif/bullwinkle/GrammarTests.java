@@ -34,6 +34,17 @@ package ca.uqac.lif.bullwinkle;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -390,6 +401,940 @@ public class GrammarTests
 		assertTrue(dl.hasLogged());
 	}
 
+	@Test
+	public void parseGrammarTracer() throws ParseException
+	{
+		BnfParser parser = readGrammar("data/Grammar-1.bnf", "<S>", false);
+		CountingTracer tracer = new CountingTracer();
+		parser.setTracer(tracer);
+		assertNotNull(parser.parse("SELECT a FROM (SELECT b FROM t)"));
+		assertTrue(tracer.m_success);
+		assertTrue(tracer.m_rules > 0);
+		assertEquals(0, tracer.m_depth);
+		assertEquals(tracer.m_alternatives, tracer.m_exitedAlternatives);
+		assertTrue(tracer.m_terminals > 0);
+		parser.setTracer(null);
+		assertNotNull(parser.parse("SELECT a FROM t"));
+		assertTrue(tracer.m_success);
+		parser.setTracer(tracer);
+		assertNull(parser.parse("SELECT a FROM"));
+		assertFalse(tracer.m_success);
+	}
+
+	@Test
+	public void parseSkipAlternatives() throws ParseException, InvalidGrammarException
+	{
+		// Only the alternatives that can start with "c" should be tried
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> | <B> | <C> | <N> ;\n<A> := a x ;\n<B> := b x ;\n<C> := c x ;\n<N> := ^\\d+;");
+		CountingTracer tracer = new CountingTracer();
+		parser.setTracer(tracer);
+		ParseNode node = parser.parse("c x");
+		assertNotNull(node);
+		assertEquals(2, tracer.m_alternatives);
+		assertEquals("<C>", node.getChildren().get(0).getToken());
+		tracer = new CountingTracer();
+		parser.setTracer(tracer);
+		assertNotNull(parser.parse("42"));
+		assertEquals(2, tracer.m_alternatives);
+	}
+
+	@Test
+	public void parseLl1() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <op> <S> <S> | <num> ;\n<op> := + | - ;\n<num> := ^\\d+;");
+		assertTrue(parser.isLl1());
+		assertTrue(parser.getLl1Conflicts().isEmpty());
+		String expression = "+ 3 - 10 2";
+		ParseNode node = parser.parse(expression);
+		assertNotNull(node);
+		parser.setLl1Mode(false);
+		assertEquals(parser.parse(expression).toString(), node.toString());
+		parser.setLl1Mode(true);
+		assertNull(parser.parse("+ 3"));
+		assertNull(parser.parse("+ 3 4 5"));
+	}
+
+	@Test
+	public void parseLl1Conflicts() throws InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> x | <A> y ;\n<A> := a ;");
+		assertFalse(parser.isLl1());
+		List<String> conflicts = parser.getLl1Conflicts();
+		assertEquals(1, conflicts.size());
+		assertEquals("<S>: alternatives '<A> x' and '<A> y' can both start with 'a'", conflicts.get(0));
+		parser = readGrammar("data/Grammar-15.bnf", "<S>", false);
+		assertFalse(parser.isLl1());
+		assertTrue(parser.getLl1Conflicts().get(0).contains("left-recursive"));
+	}
+
+	@Test
+	public void parseEarleySameTree() throws ParseException, InvalidGrammarException
+	{
+		String expression = "SELECT a FROM (SELECT b FROM t)";
+		BnfParser parser = readGrammar("data/Grammar-1.bnf", "<S>", false);
+		String expected = parser.parse(expression).toString();
+		parser.setEarleyMode(true);
+		ParseNode node = parser.parse(expression);
+		assertNotNull(node);
+		assertEquals(expected, node.toString());
+		// Try-last alternatives are also given the lowest precedence
+		parser = new BnfParser();
+		parser.setGrammar("<S> := <A> || <B> ;\n<S> := <C> ;\n<A> := b ;\n<B> := a ;\n<C> := a ;");
+		expected = parser.parse("a").toString();
+		parser.setEarleyMode(true);
+		node = parser.parse("a");
+		assertEquals(expected, node.toString());
+		assertEquals("<C>", node.getChildren().get(0).getToken());
+	}
+
+	@Test
+	public void parseEarleyLeftRecursion() throws ParseException
+	{
+		BnfParser parser = readGrammar("data/Grammar-15.bnf", "<S>", false);
+		parser.setMaxRecursionSteps(2);
+		parser.setEarleyMode(true);
+		ParseNode node = parser.parse("b a a");
+		assertNotNull(node);
+		assertEquals(2, node.getChildren().size());
+		assertEquals("a", node.getChildren().get(1).getToken());
+		assertEquals(2, node.getChildren().get(0).getChildren().size());
+		assertNull(parser.parse("a a b"));
+	}
+
+	@Test
+	public void parseEarleyAmbiguous() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> <A> ;\n<A> := a | a a ;");
+		// The default parser commits to the first alternative of the first <A>
+		assertNull(parser.parse("a a a"));
+		parser.setEarleyMode(true);
+		ParseNode node = parser.parse("a a a");
+		assertNotNull(node);
+		assertEquals(1, node.getChildren().get(0).getChildren().size());
+		assertEquals(2, node.getChildren().get(1).getChildren().size());
+	}
+
+	@Test
+	public void parseLeftRecursion() throws ParseException
+	{
+		BnfParser parser = readGrammar("data/Grammar-15.bnf", "<S>", false);
+		parser.setMaxRecursionSteps(2);
+		parser.setLeftRecursionMode(true);
+		ParseNode node = parser.parse("b a a a");
+		assertNotNull(node);
+		// The tree is left-associative
+		assertEquals("a", node.getChildren().get(1).getToken());
+		node = node.getChildren().get(0);
+		assertEquals("a", node.getChildren().get(1).getToken());
+		node = node.getChildren().get(0);
+		assertEquals("a", node.getChildren().get(1).getToken());
+		node = node.getChildren().get(0);
+		assertEquals(1, node.getChildren().size());
+		assertEquals("b", node.getChildren().get(0).getToken());
+		assertNull(parser.parse("a a b"));
+	}
+
+	@Test
+	public void parseLeftRecursionIndirect() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<A> := <B> x | y ;\n<B> := <A> z | <C> ;\n<C> := <A> w ;");
+		parser.setLeftRecursionMode(true);
+		ParseNode node = parser.parse("y z x w x");
+		assertNotNull(node);
+		parser.setLeftRecursionMode(false);
+		parser.setEarleyMode(true);
+		assertEquals(parser.parse("y z x w x").toString(), node.toString());
+	}
+
+	@Test
+	public void parseLeftRecursionLongChain() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<exp> := <exp> + <num> | <num> ;\n<num> := ^[0-9]+;");
+		parser.setLeftRecursionMode(true);
+		StringBuilder expression = new StringBuilder("0");
+		for (int i = 1; i <= 1000; i++)
+		{
+			expression.append(" + ").append(i);
+		}
+		ParseNode node = parser.parse(expression.toString());
+		assertNotNull(node);
+		assertEquals("1000", node.getChildren().get(2).getChildren().get(0).getToken());
+	}
+
+	@Test
+	public void parsePackratSameTree() throws ParseException
+	{
+		String expression = "SELECT a FROM (SELECT b FROM t)";
+		BnfParser parser = readGrammar("data/Grammar-1.bnf", "<S>", false);
+		String expected = parser.parse(expression).toString();
+		parser.setPackratMode(true);
+		ParseNode node = parser.parse(expression);
+		assertNotNull(node);
+		assertEquals(expected, node.toString());
+		assertTrue(parser.getMemoMisses() > 0);
+	}
+
+	@Test
+	public void parsePackratManyEntries() throws ParseException, InvalidGrammarException
+	{
+		// Enough outcomes for the memo table to grow several times
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <e> ; <S> | <e> ;\n<e> := <n> + <e> | <n> * <e> | ( <e> ) | <n> ;\n<n> := ^[0-9]+;");
+		parser.setMaxRecursionSteps(10000);
+		StringBuilder expression = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+		{
+			expression.append("3 * (").append(i).append(" + 2) ; ");
+		}
+		expression.append("1");
+		String expected = parser.parse(expression.toString()).toString();
+		parser.setPackratMode(true);
+		ParseNode node = parser.parse(expression.toString());
+		assertNotNull(node);
+		assertEquals(expected, node.toString());
+		assertTrue(parser.getMemoMisses() > 1000);
+		assertTrue(parser.getMemoHits() > 0);
+	}
+
+	@Test
+	public void parsePackratFailure()
+	{
+		BnfParser parser = readGrammar("data/Grammar-10.bnf", "<S>", false);
+		parser.setPackratMode(true);
+		shouldNotParse("a WHERE", parser);
+	}
+
+	@Test
+	public void parsePackratHits() throws ParseException, InvalidGrammarException
+	{
+		// Without memoization, each of the alternatives of <S> re-parses <A>
+		// at the same position, recursively: the parsing takes time
+		// exponential in the number of nested parentheses
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> x | <A> y | <A> z | <A> ;\n<A> := ( <S> ) | a ;");
+		parser.setPackratMode(true);
+		parser.setMaxRecursionSteps(200);
+		StringBuilder expression = new StringBuilder();
+		for (int i = 0; i < 30; i++)
+		{
+			expression.append("(");
+		}
+		expression.append("a");
+		for (int i = 0; i < 30; i++)
+		{
+			expression.append(")");
+		}
+		ParseNode node = parser.parse(expression.toString());
+		assertNotNull(node);
+		assertTrue(parser.getMemoHits() > 0);
+		assertTrue(parser.getMemoMisses() < 200);
+	}
+
+	@Test
+	public void testModifyAfterParse() throws ParseException, InvalidGrammarException, InvalidRuleException
+	{
+		// The parser must notice changes made to the rules after they have
+		// been used for parsing
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> b ;\n<A> := a ;");
+		assertNotNull(parser.parse("a b"));
+		assertNull(parser.parse("c b"));
+		parser.getRule("<A>").addAlternatives(BnfRule.parseRule("<A> := c").getAlternatives());
+		assertNotNull(parser.parse("c b"));
+		parser.addRule(BnfRule.parseRule("<B> := d"));
+		parser.addCaseToRule("<A>", "<B>");
+		assertNotNull(parser.parse("d b"));
+	}
+
+	@Test
+	public void testModifyAlternativeAfterParse() throws ParseException, InvalidGrammarException
+	{
+		// Changes made to the token strings of a rule are noticed as well
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <A> ;\n<A> := a | a b ;");
+		assertNull(parser.parse("a b"));
+		List<TokenString> alternatives = parser.getRule("<A>").getAlternatives();
+		alternatives.get(0).setTryLast(true);
+		assertNotNull(parser.parse("a b"));
+		alternatives.get(1).set(1, new TerminalToken("c"));
+		assertNull(parser.parse("a b"));
+		assertNotNull(parser.parse("a c"));
+		ListIterator<Token> it = alternatives.get(1).listIterator();
+		it.next();
+		it.set(new TerminalToken("d"));
+		assertNotNull(parser.parse("d c"));
+	}
+
+	@Test
+	public void matchRegion()
+	{
+		// Matching a region must give the same result as matching a string
+		// made of the contents of that region
+		String s = "xx foo123 bar yy";
+		assertEquals(3, new TerminalToken("foo").match(s, 3, 13));
+		assertEquals(0, new TerminalToken("bar").match(s, 3, 13));
+		assertEquals(-1, new TerminalToken("foo123 bar yy").match(s, 3, 13));
+		assertEquals(6, new RegexTerminalToken("^[a-z]+\\d+").match(s, 3, 13));
+		assertEquals(-1, new RegexTerminalToken("^yy").match(s, 3, 13));
+		// A regex is matched at the start of the region, even without ^
+		assertEquals(-1, new RegexTerminalToken("bar$").match(s, 3, 13));
+		assertEquals(-1, new RegexTerminalToken("bar$").match(s, 10, 16));
+		assertEquals(3, new RegexTerminalToken("bar$").match(s, 10, 13));
+		assertEquals(6, new StringTerminalToken("s").match(s, 3, 13));
+		assertEquals(-1, new StringTerminalToken("s").match(s, 10, 13));
+	}
+
+	@Test
+	public void literalTrie()
+	{
+		Token[][] alternatives = {{new TerminalToken("AND")}, {new TerminalToken("OR")},
+				{new NonTerminalToken("<w>")}, {new TerminalToken("ANDNOT")},
+				{new TerminalToken("AN"), new TerminalToken("D")}, {new TerminalToken("XOR")}};
+		LiteralTrie trie = LiteralTrie.build(alternatives);
+		assertNotNull(trie);
+		assertArrayEquals(new int[] {0, 2, 3, 4}, trie.getCandidates("x ANDNOT", 2, 8));
+		assertArrayEquals(new int[] {0, 2, 4}, trie.getCandidates("x ANDNOT", 2, 7));
+		assertArrayEquals(new int[] {2}, trie.getCandidates("NAND", 0, 4));
+		assertNull(LiteralTrie.build(new Token[][] {{new TerminalToken("AND")}, {new TerminalToken("OR")}}));
+	}
+
+	@Test
+	public void parseKeywords() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <op> <op> ;\n<op> := AND | OR | XOR | NAND | ANDNOT | <w> | A ;\n<w> := ^[a-z]+;");
+		parser.setLl1Mode(false);
+		ParseNode node = parser.parse("AND OR");
+		assertNotNull(node);
+		assertEquals("OR", node.getChildren().get(1).getChildren().get(0).getToken());
+		node = parser.parse("A x");
+		assertNotNull(node);
+		assertEquals("A", node.getChildren().get(0).getChildren().get(0).getToken());
+		// The alternatives are still tried in order: AND matches the start
+		// of ANDNOT, and the rest cannot be parsed
+		assertNull(parser.parse("ANDNOT OR"));
+		assertNull(parser.parse("NAN OR"));
+	}
+
+	@Test
+	public void parseLexer() throws ParseException, InvalidGrammarException
+	{
+		String expression = "SELECT a FROM (SELECT b FROM t)";
+		BnfParser parser = readGrammar("data/Grammar-1.bnf", "<S>", false);
+		String expected = parser.parse(expression).toString();
+		parser.setLexerMode(true);
+		assertEquals(expected, parser.parse(expression).toString());
+		parser.setPackratMode(true);
+		assertEquals(expected, parser.parse(expression).toString());
+		// The lexer reads the longest token, and prefers literals to regular
+		// expressions of the same length
+		parser = new BnfParser();
+		parser.setGrammar("<S> := a b | select <w> | <w> ;\n<w> := ^([a-z])[a-z]*;");
+		ParseNode node = parser.parse("ab");
+		assertEquals(2, node.getChildren().size());
+		parser.setLexerMode(true);
+		node = parser.parse("ab");
+		assertEquals(1, node.getChildren().size());
+		assertEquals("ab", node.getChildren().get(0).getChildren().get(0).getToken());
+		// Capture blocks are still found
+		assertEquals("a", node.getChildren().get(0).getChildren().get(0).getChildren().get(0).getToken());
+		node = parser.parse("select x");
+		assertEquals("select", node.getChildren().get(0).getToken());
+		// Some part of the input is not a token
+		assertNull(parser.parse("ab ?"));
+	}
+
+	@Test
+	public void parseIgnoreCase() throws ParseException, InvalidGrammarException
+	{
+		String grammar = "<S> := SELECT <w> FROM <w> | select * ;\n<w> := ^([a-z])[a-z0-9]*;";
+		BnfParser sensitive = new BnfParser();
+		sensitive.setGrammar(grammar);
+		BnfParser insensitive = new BnfParser();
+		insensitive.setGrammar(grammar);
+		insensitive.setIgnoreCase(true);
+		// The setting of one parser does not affect the other
+		assertNull(sensitive.parse("select Abc from t1"));
+		ParseNode node = insensitive.parse("select Abc from t1");
+		assertNotNull(node);
+		assertNotNull(sensitive.parse("SELECT abc FROM t1"));
+		// The tree contains the original text of the input
+		assertEquals("select", node.getChildren().get(0).getToken());
+		ParseNode w = node.getChildren().get(1).getChildren().get(0);
+		assertEquals("Abc", w.getToken());
+		assertEquals("A", w.getChildren().get(0).getToken());
+		assertEquals("From", insensitive.parse("Select x From y").getChildren().get(2).getToken());
+		assertNotNull(insensitive.parse("SELECT *"));
+		// Every kind of parser gives the same tree
+		String expected = node.toString();
+		insensitive.setPackratMode(true);
+		assertEquals(expected, insensitive.parse("select Abc from t1").toString());
+		insensitive.setPackratMode(false);
+		insensitive.setLexerMode(true);
+		assertEquals(expected, insensitive.parse("select Abc from t1").toString());
+		insensitive.setLexerMode(false);
+		insensitive.setEarleyMode(true);
+		assertEquals(expected, insensitive.parse("select Abc from t1").toString());
+		insensitive.setEarleyMode(false);
+		insensitive.setCodeGeneration(true);
+		assertEquals(expected, insensitive.parse("select Abc from t1").toString());
+		insensitive.setIgnoreCase(false);
+		assertNull(insensitive.parse("select Abc from t1"));
+	}
+
+	@Test
+	public void skipDirective() throws ParseException, InvalidGrammarException
+	{
+		String rules = "<S> := <w> , <S> | <w> ;\n<w> := ^[a-z]+;";
+		String input = "/* first */ abc, // a comment\n def /* x */ , ghi // end";
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("%skip whitespace line // block /* */ ;\n" + rules);
+		ParseNode node = parser.parse(input);
+		assertNotNull(node);
+		assertEquals("abc", node.getChildren().get(0).getChildren().get(0).getToken());
+		// Every kind of parser skips the same content
+		String expected = node.toString();
+		parser.setPackratMode(true);
+		assertEquals(expected, parser.parse(input).toString());
+		parser.setPackratMode(false);
+		parser.setLexerMode(true);
+		assertEquals(expected, parser.parse(input).toString());
+		parser.setLexerMode(false);
+		parser.setLeftRecursionMode(true);
+		assertEquals(expected, parser.parse(input).toString());
+		parser.setLeftRecursionMode(false);
+		parser.setEarleyMode(true);
+		assertEquals(expected, parser.parse(input).toString());
+		parser.setEarleyMode(false);
+		parser.setCodeGeneration(true);
+		assertEquals(expected, parser.parse(input).toString());
+		// A comment that is not closed is not skipped
+		assertNull(parser.parse("abc /* def"));
+		// Only the declared characters are whitespace
+		parser = new BnfParser();
+		parser.setGrammar("%skip [\\x20] line \\u0023 ;\n" + rules);
+		assertNotNull(parser.parse("abc , def # comment"));
+		assertNull(parser.parse("abc,\tdef"));
+		// Nothing is skipped
+		parser = new BnfParser();
+		parser.setGrammar("%skip none ;\n" + rules);
+		assertNotNull(parser.parse("abc,def"));
+		assertNull(parser.parse("abc, def"));
+	}
+
+	@Test
+	public void numberTokens() throws ParseException, InvalidGrammarException
+	{
+		NumberTerminalToken integer = new NumberTerminalToken(NumberTerminalToken.Format.INTEGER);
+		NumberTerminalToken decimal = new NumberTerminalToken(NumberTerminalToken.Format.DECIMAL);
+		NumberTerminalToken scientific = new NumberTerminalToken(NumberTerminalToken.Format.SCIENTIFIC);
+		NumberTerminalToken hex = new NumberTerminalToken(NumberTerminalToken.Format.HEX);
+		assertEquals(3, integer.match("-42.5", 0, 5));
+		assertEquals(5, decimal.match("-42.5", 0, 5));
+		assertEquals(2, decimal.match(".5e", 0, 3));
+		assertEquals(1, decimal.match("1.e", 0, 3));
+		assertEquals(7, scientific.match("1.5E-10x", 0, 8));
+		assertEquals(3, scientific.match("1.5e+", 0, 5));
+		assertEquals(4, hex.match("0xfFg", 0, 5));
+		assertEquals(-1, hex.match("0x", 0, 2));
+		assertEquals(-1, integer.match("abc", 0, 3));
+		assertEquals(-1, integer.match("-", 0, 1));
+		// A token without a format tells whether a string is a number
+		NumberTerminalToken any = new NumberTerminalToken("n");
+		assertTrue(any.matches(new TerminalToken("-1.5e3")));
+		assertTrue(any.matches(new TerminalToken("NaN")));
+		assertFalse(any.matches(new TerminalToken("1e")));
+		assertFalse(any.matches(new TerminalToken("abc")));
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <n> , <S> | <n> ;\n<n> := <h> | <d> ;\n<h> := %hex;\n<d> := %scientific;");
+		String input = "12, -3.5e2, 0x1F, 99999999999999999999";
+		ParseNode node = parser.parse(input);
+		assertNotNull(node);
+		assertFalse(node.getChildren().get(0).getChildren().get(0).getChildren().get(0).hasNumber());
+		parser.setNumberValues(true);
+		for (int mode = 0; mode < 4; mode++)
+		{
+			parser.setEarleyMode(mode == 1);
+			parser.setLl1Mode(mode != 2);
+			parser.setCodeGeneration(mode == 3);
+			List<ParseNode> numbers = new ArrayList<ParseNode>();
+			node = parser.parse(input);
+			while (node != null)
+			{
+				numbers.add(node.getChildren().get(0).getChildren().get(0).getChildren().get(0));
+				node = node.getChildren().size() > 1 ? node.getChildren().get(2) : null;
+			}
+			assertEquals(4, numbers.size());
+			assertTrue(numbers.get(0).hasNumber());
+			assertEquals(12, numbers.get(0).getLongValue());
+			assertEquals(-350, numbers.get(1).getDoubleValue(), 0);
+			assertEquals(31, numbers.get(2).getLongValue());
+			assertEquals(1e20, numbers.get(3).getDoubleValue(), 1e5);
+		}
+		parser = new BnfParser();
+		parser.setGrammar("<S> := ( <n> ) ;\n<n> := %integer;");
+		parser.setNumberValues(true);
+		assertTrue(parser.isLl1());
+		assertEquals(-7, parser.parse("( -7 )").getChildren().get(1).getChildren().get(0).getLongValue());
+	}
+
+	@Test
+	public void simpleRegex() throws ParseException, InvalidGrammarException
+	{
+		assertNotNull(SimpleRegex.compile("^[a-zA-Z_][a-zA-Z0-9_]*"));
+		assertNotNull(SimpleRegex.compile("^-?\\d{1,3}\\.[^\\s]+"));
+		assertNull(SimpleRegex.compile("^(a)b"));
+		assertNull(SimpleRegex.compile("^a|b"));
+		assertNull(SimpleRegex.compile("^a+?"));
+		assertNull(SimpleRegex.compile("^a$"));
+		// Characters are given back to the atoms that follow, as with a pattern
+		SimpleRegex regex = SimpleRegex.compile("^[a-z]*[a-z0-9]{2}x?");
+		assertEquals(4, regex.match("abcd ", 0, 5));
+		assertEquals(3, regex.match("ab9x", 1, 4));
+		assertEquals(SimpleRegex.NO_MATCH, regex.match("a", 0, 1));
+		assertEquals(SimpleRegex.NO_MATCH, regex.match("abc", 0, 1));
+		// A supplementary character is left to the pattern
+		regex = SimpleRegex.compile("^.");
+		assertEquals(1, regex.match("é", 0, 1));
+		assertEquals(SimpleRegex.NO_MATCH, regex.match("\n", 0, 1));
+		assertEquals(SimpleRegex.UNDECIDED, regex.match("\uD83D\uDE00", 0, 2));
+		assertEquals(2, new RegexTerminalToken("^.").match("\uD83D\uDE00", 0, 2));
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <w> , <S> | <w> ;\n<w> := ^[\\w\\-]+;");
+		ParseNode node = parser.parse("foo-bar, baz");
+		assertNotNull(node);
+		assertEquals("foo-bar", node.getChildren().get(0).getChildren().get(0).getToken());
+	}
+
+	@Test
+	public void parseCharSequence() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := SELECT <w> , <w> | SELECT <w> ;\n<w> := ^[a-z]+;");
+		String expected = parser.parse("SELECT foo , bar").toString();
+		StringBuilder builder = new StringBuilder("SELECT foo , bar");
+		char[] chars = "xxSELECT foo , barxx".toCharArray();
+		for (int mode = 0; mode < 3; mode++)
+		{
+			parser.setEarleyMode(mode == 1);
+			parser.setCodeGeneration(mode == 2);
+			assertEquals(expected, parser.parse(builder).toString());
+			assertEquals(expected, parser.parse(chars, 2, 16).toString());
+		}
+		// The token of a node is copied out of the input when it is first read
+		ParseNode node = parser.parse(builder);
+		ParseNode word = node.getChildren().get(1).getChildren().get(0);
+		assertEquals("foo", word.getToken());
+		builder.setLength(0);
+		assertEquals("foo", word.getToken());
+		assertEquals("foo", word.duplicate().getToken());
+		parser.setIgnoreCase(true);
+		assertEquals("SeLeCt", parser.parse(new StringBuilder("SeLeCt Foo")).getChildren().get(0).getToken());
+		assertNull(parser.parse(chars, 2, 13));
+	}
+
+	@Test
+	public void parseDocuments() throws ParseException, InvalidGrammarException, IOException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <n> + <S> | <n> ;\n<n> := ^[0-9]+;");
+		List<String> sums = new ArrayList<String>();
+		try (DocumentReader documents = parser.parseDocuments(new StringReader("1 + 2\n\n 34\n5 +\n6 + 7 + 8\n"), "\n"))
+		{
+			while (documents.hasNext())
+			{
+				try
+				{
+					sums.add(documents.next().getChildren().get(0).getChildren().get(0).getToken());
+				}
+				catch (DocumentReader.DocumentException e)
+				{
+					// The document that does not parse is skipped
+					sums.add("error " + e.getNumber() + " " + e.getDocument());
+				}
+			}
+			assertEquals(4, documents.getCount());
+		}
+		assertEquals(Arrays.asList("1", "34", "error 3 5 +", "6"), sums);
+	}
+
+	@Test
+	public void parseDocumentsBuffer() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <n> + <S> | <n> ;\n<n> := ^[0-9]+;");
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+		{
+			input.append(i).append(" + ").append(i).append(";;");
+		}
+		input.append("1 + 2 + 3 + 4 + 5 + 6 + 7 + 8 + 9;;10");
+		// A source that gives one character at a time splits the delimiters
+		Reader reader = new Reader()
+		{
+			int m_pos = 0;
+
+			@Override
+			public int read(char[] cbuf, int off, int len)
+			{
+				if (m_pos == input.length())
+				{
+					return -1;
+				}
+				cbuf[off] = input.charAt(m_pos++);
+				return 1;
+			}
+
+			@Override
+			public void close()
+			{
+				// Nothing to do
+			}
+		};
+		List<String> errors = new ArrayList<String>();
+		DocumentReader documents = new DocumentReader(parser.compile(), reader, ";;", new ParseOptions(), 20);
+		int count = 0;
+		while (documents.hasNext())
+		{
+			try
+			{
+				documents.next();
+				count++;
+			}
+			catch (DocumentReader.DocumentException e)
+			{
+				errors.add(e.getDocument());
+			}
+		}
+		assertEquals(1001, count);
+		// Only the beginning of the document that is too long is kept
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0).startsWith("1 + 2 + 3"));
+		assertEquals(1002, parser.compile().documents(new StringReader(input.toString()), ";;", new ParseOptions()).stream().count());
+	}
+
+	@Test
+	public void pushParser() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("%skip whitespace block /* */ ;\n<S> := <e> ; <S> | <e> ;\n<e> := <n> + <e> | <w> | <n> ;\n<n> := %decimal;\n<w> := IF | IFF | <id>;\n<id> := ^[a-z]+;");
+		parser.setEarleyMode(true);
+		String input = "12.5 + 3 ; IFF ; /* x */ foo ; 1 + 7";
+		String expected = parser.parse(input).toString();
+		// Chunk boundaries in the middle of numbers, keywords and comments
+		for (int size = 1; size <= 5; size++)
+		{
+			PushParser push = parser.newPushParser();
+			for (int i = 0; i < input.length(); i += size)
+			{
+				assertTrue(push.feed(input.substring(i, Math.min(input.length(), i + size))));
+			}
+			assertEquals(expected, push.end().toString());
+		}
+		// The tokens of the first document are parsed before the last chunk
+		PushParser push = parser.newPushParser();
+		push.feed("12.5 + 3 ; IF");
+		assertEquals(11, push.getPosition());
+		push.feed("F");
+		assertEquals(expected.substring(0, 10), push.end().toString().substring(0, 10));
+	}
+
+	@Test
+	public void pushParserFailure() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <e> ; <S> | <e> ;\n<e> := <n> + <e> | <n> ;\n<n> := ^[0-9]+;");
+		PushParser push = parser.newPushParser();
+		assertTrue(push.feed("1 + 2 ; 3 "));
+		// The string is rejected as soon as it cannot follow the grammar
+		assertFalse(push.feed("; ; 4"));
+		assertTrue(push.isFailed());
+		assertFalse(push.feed("5"));
+		assertNull(push.end());
+		push = parser.newPushParser();
+		assertTrue(push.feed("1 +"));
+		assertNull(push.end());
+	}
+
+	@Test
+	public void parseEvents() throws ParseException, InvalidGrammarException
+	{
+		// The first alternative of <S> reads "abc" before being abandoned
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <w> = <w> | <w> : <w> | <w> ;\n<w> := ^[a-z]+;");
+		final StringBuilder events = new StringBuilder();
+		final List<ParseNode> stack = new ArrayList<ParseNode>();
+		stack.add(new ParseNode());
+		ParseEventHandler handler = new ParseEventHandler()
+		{
+			@Override
+			public void enterRule(String rule, int position)
+			{
+				events.append(rule).append(position).append(" ");
+				ParseNode node = new ParseNode(rule);
+				stack.get(stack.size() - 1).addChild(node);
+				stack.add(node);
+			}
+
+			@Override
+			public void terminal(CharSequence input, int start, int end)
+			{
+				events.append(input.subSequence(start, end)).append(" ");
+				stack.get(stack.size() - 1).addChild(new ParseNode(input.subSequence(start, end).toString()));
+			}
+
+			@Override
+			public void exitRule(String rule, int position, int end)
+			{
+				events.append("/").append(end).append(" ");
+				stack.remove(stack.size() - 1);
+			}
+		};
+		assertTrue(parser.parse("abc : def", handler));
+		assertEquals("<S>0 <w>0 abc /3 : <w>6 def /9 /9 ", events.toString());
+		assertEquals(parser.parse("abc : def").toString(), stack.get(0).getChildren().get(0).toString());
+		events.setLength(0);
+		// The events of the last alternative are given before the parsing
+		// fails at the end of the input
+		assertFalse(parser.parse("abc : ", handler));
+		assertEquals("<S>0 <w>0 abc /3 ", events.toString());
+	}
+
+	@Test
+	public void parseEventsStreaming() throws ParseException, InvalidGrammarException
+	{
+		// No rule has two alternatives starting with the same character, so
+		// that each event is given as soon as it is produced
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <n> <T> ;\n<T> := , <S> | . ;\n<n> := ^[0-9]+;");
+		final String input = "1, 2, 3, 4, 5, 6.";
+		final boolean[] read = new boolean[input.length()];
+		CharSequence sequence = new CharSequence()
+		{
+			@Override
+			public char charAt(int index)
+			{
+				read[index] = true;
+				return input.charAt(index);
+			}
+
+			@Override
+			public int length()
+			{
+				return input.length();
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end)
+			{
+				return input.subSequence(start, end);
+			}
+		};
+		final List<Integer> read_at_terminal = new ArrayList<Integer>();
+		assertTrue(parser.parse(sequence, new ParseEventHandler()
+		{
+			@Override
+			public void terminal(CharSequence s, int start, int end)
+			{
+				int count = 0;
+				for (boolean b : read)
+				{
+					count += b ? 1 : 0;
+				}
+				read_at_terminal.add(count);
+			}
+		}));
+		assertEquals(12, read_at_terminal.size());
+		// Only the first number and the end of the input have been read
+		// when the first terminal is given
+		assertTrue(read_at_terminal.get(0) < 4);
+		assertTrue(read_at_terminal.get(6) < input.length() - 4);
+	}
+
+	@Test
+	public void incrementalParser() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <e> ; <S> | <e> ;\n<e> := <n> + <e> | <n> * <e> | ( <e> ) | <n> ;\n<n> := ^[0-9]+;");
+		parser.setPackratMode(true);
+		IncrementalParser incremental = parser.newIncrementalParser();
+		String text = "1 + 2 ; 3 * (4 + 5) ; 6 ; 7 * 8 ; 9";
+		assertEquals(parser.parse(text).toString(), incremental.parse(text).toString());
+		int misses = incremental.getMemoMisses();
+		// Replace a number, insert an operand, delete a statement
+		int[][] edits = {{13, 14}, {24, 24}, {0, 8}};
+		String[] replacements = {"42", " + 10", ""};
+		for (int i = 0; i < edits.length; i++)
+		{
+			ParseNode node = incremental.edit(edits[i][0], edits[i][1], replacements[i]);
+			text = text.substring(0, edits[i][0]) + replacements[i] + text.substring(edits[i][1]);
+			assertEquals(text, incremental.getText());
+			assertEquals(parser.parse(text).toString(), node.toString());
+			assertTrue(incremental.getMemoHits() > 0);
+			assertTrue(incremental.getMemoMisses() < misses);
+		}
+		// An edit can make the string invalid, then valid again
+		assertNull(incremental.edit(0, 0, "+"));
+		assertEquals(parser.parse(text).toString(), incremental.edit(0, 1, "").toString());
+	}
+
+	@Test
+	public void incrementalParserEnd() throws ParseException, InvalidGrammarException
+	{
+		// The literal "foo" first fails only because the string is too short
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <H> <F> ;\n<H> := hello <H> | ε ;\n<F> := foo ;");
+		IncrementalParser incremental = parser.newIncrementalParser();
+		assertNull(incremental.parse("hello fo "));
+		assertEquals(parser.parse("hello foo ").toString(), incremental.edit(8, 8, "o").toString());
+		assertNull(incremental.edit(9, 9, " x"));
+		assertNotNull(incremental.edit(10, 12, ""));
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void incrementalParserOutOfBounds() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := a ;");
+		IncrementalParser incremental = parser.newIncrementalParser();
+		incremental.parse("a");
+		incremental.edit(1, 2, "b");
+	}
+
+	@Test
+	public void parseFile() throws ParseException, InvalidGrammarException, IOException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <w> , <S> | <w> ;\n<w> := ^[^,\\s]+;");
+		Path path = Files.createTempFile("bullwinkle", ".txt");
+		try
+		{
+			for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE})
+			{
+				// ASCII input, then input with accented letters
+				Files.write(path, "foo, bar\n".getBytes(charset));
+				ParseNode node = parser.parse(path, charset);
+				assertEquals("bar", node.getChildren().get(2).getChildren().get(0).getChildren().get(0).getToken());
+				Files.write(path, "crème, brûlée\n".getBytes(charset));
+				node = parser.parse(path, charset);
+				assertEquals("crème", node.getChildren().get(0).getChildren().get(0).getToken());
+				assertEquals("brûlée", node.getChildren().get(2).getChildren().get(0).getChildren().get(0).getToken());
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void parseFileIgnoreCase() throws ParseException, InvalidGrammarException, IOException
+	{
+		// The mapped file is matched through a folded view; the tokens of
+		// the tree keep the case of the file
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := select <w> from <w> ;\n<w> := ^[a-z]+;");
+		parser.setIgnoreCase(true);
+		Path path = Files.createTempFile("bullwinkle", ".txt");
+		try
+		{
+			for (Charset charset : new Charset[] {StandardCharsets.US_ASCII, StandardCharsets.UTF_8, StandardCharsets.UTF_16LE})
+			{
+				Files.write(path, "SeLeCt Foo FROM barBaz\n".getBytes(charset));
+				ParseNode node = parser.parse(path, charset);
+				assertEquals("SeLeCt", node.getChildren().get(0).getToken());
+				assertEquals("Foo", node.getChildren().get(1).getChildren().get(0).getToken());
+				assertEquals("barBaz", node.getChildren().get(3).getChildren().get(0).getToken());
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void parseCharArrayOutOfBounds() throws ParseException, InvalidGrammarException
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := a ;");
+		parser.parse(new char[] {'a'}, 1, 1);
+	}
+
+	@Test
+	public void terminalCache() throws ParseException, InvalidGrammarException
+	{
+		// Each alternative of <S> matches the regex of <w> again at the start
+		// of the input
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <w> = <w> | <w> : <w> | <w> ;\n<w> := ^[a-z]+;");
+		ParseNode expected = parser.parse("abc : def");
+		assertNotNull(expected);
+		assertEquals(0, parser.getTerminalCacheHits());
+		parser.setTerminalCache(true);
+		ParseNode node = parser.parse("abc : def");
+		assertEquals(expected.toString(), node.toString());
+		assertEquals(1, parser.getTerminalCacheHits());
+		assertEquals(2, parser.getTerminalCacheMisses());
+		assertEquals(0, parser.getMemoHits());
+		assertEquals(expected.toString(), parser.compile().parse("abc : def", new ParseOptions().setTerminalCache(true)).toString());
+		// Capture blocks are still read from the match of their regex
+		parser = new BnfParser();
+		parser.setTerminalCache(true);
+		parser.setGrammar("<S> := <w> = <w> | <w> : <w> ;\n<w> := ^([a-z])[a-z]*;");
+		node = parser.parse("abc : def");
+		assertEquals("a", node.getChildren().get(0).getChildren().get(0).getChildren().get(0).getToken());
+		assertEquals(0, parser.getTerminalCacheHits());
+	}
+
+	@Test
+	public void regexCaptureBlocks() throws ParseException, InvalidGrammarException
+	{
+		// The capture blocks are those of the match made in the input,
+		// where the lookahead can see past the token
+		RegexTerminalToken tok = new RegexTerminalToken("^(\\d+)(?=x)");
+		assertEquals(2, tok.match("a 12x", 2, 5));
+		assertEquals(Arrays.asList("12"), tok.getLastCaptureBlocks());
+		assertTrue(tok.getCaptureBlocks("12").isEmpty());
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <num> <unit> ;\n<num> := ^(\\d+)(?=(k?)m);\n<unit> := ^k?m;");
+		ParseNode node = parser.parse("12km");
+		assertNotNull(node);
+		List<ParseNode> blocks = node.getChildren().get(0).getChildren().get(0).getChildren();
+		assertEquals(2, blocks.size());
+		assertEquals("12", blocks.get(0).getToken());
+		assertEquals("k", blocks.get(1).getToken());
+	}
+
+	@Test
+	public void regexMatcherReleased() throws ParseException, InvalidGrammarException
+	{
+		// Once a parsing ends, the matcher of a regex no longer refers to the
+		// string parsed, and the capture blocks of its last match are lost
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <num> ;\n<num> := ^(\\d+)x;");
+		RegexTerminalToken tok = (RegexTerminalToken) parser.getRule("<num>").getAlternatives().get(0).get(0);
+		assertNotNull(parser.parse("12x"));
+		assertTrue(tok.getLastCaptureBlocks().isEmpty());
+		assertNotNull(parser.newIncrementalParser().parse("12x"));
+		assertTrue(tok.getLastCaptureBlocks().isEmpty());
+		PushParser push = parser.newPushParser();
+		assertTrue(push.feed("12"));
+		assertTrue(tok.getLastCaptureBlocks().isEmpty());
+		assertTrue(push.feed("x"));
+		assertNotNull(push.end());
+		assertTrue(tok.getLastCaptureBlocks().isEmpty());
+		// The token can still be used on its own
+		assertEquals(3, tok.match("12x"));
+		assertEquals(Arrays.asList("12"), tok.getLastCaptureBlocks());
+	}
+
 	private static void checkParseTreeSize(String expression, int expected, int size)
 	{
 		if (size != expected)
@@ -487,6 +1432,59 @@ public class GrammarTests
 	/**
 	 * A dummy logger; just checks that it has been called at least once
 	 */
+	protected static class CountingTracer implements ParseTracer
+	{
+		int m_rules = 0;
+
+		int m_depth = 0;
+
+		int m_alternatives = 0;
+
+		int m_exitedAlternatives = 0;
+
+		int m_terminals = 0;
+
+		boolean m_success = false;
+
+		@Override
+		public void endParse(boolean success)
+		{
+			m_success = success;
+		}
+
+		@Override
+		public void enterRule(BnfRule rule, int position, int level)
+		{
+			assertEquals(m_depth, level);
+			m_rules++;
+			m_depth++;
+		}
+
+		@Override
+		public void exitRule(BnfRule rule, int position, int end, int level)
+		{
+			m_depth--;
+		}
+
+		@Override
+		public void enterAlternative(BnfRule rule, TokenString alternative, int position, int level)
+		{
+			m_alternatives++;
+		}
+
+		@Override
+		public void exitAlternative(BnfRule rule, TokenString alternative, int position, int end, int level)
+		{
+			m_exitedAlternatives++;
+		}
+
+		@Override
+		public void matchTerminal(TerminalToken token, int position, int end, int level)
+		{
+			m_terminals++;
+		}
+	}
+
 	protected static class DummyLogger extends Logger
 	{
 		boolean m_hasLogged = false;
@@ -135,4 +135,100 @@ public class ParserTest
 		assertTrue(alternatives.get(1).compareTo("b") == 0);
 	}
 
+	@Test
+	public void compiledGrammarSnapshot() throws Exception
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <a> | b;\n<a> := c;");
+		CompiledGrammar grammar = parser.compile();
+		assertSame(grammar, parser.compile());
+		parser.addRule(BnfRule.parseRule("<a> := d"));
+		assertNotSame(grammar, parser.compile());
+		assertNotNull(parser.parse("d"));
+		// The compiled grammar is not affected by the new case
+		assertNull(grammar.parse("d"));
+		assertNotNull(grammar.parse("c"));
+		assertNotNull(grammar.parse("<a>", new ParseOptions().setPartialParsing(true)));
+		assertNull(grammar.parse("<a>"));
+	}
+
+	@Test
+	public void compiledGrammarThreads() throws Exception
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<exp> := <add> | <num> ;\n<add> := ( <exp> + <exp> ) ;\n<num> := ^[0-9]+;");
+		final CompiledGrammar grammar = parser.compile();
+		final String expression = "(1 + ((2 + 3) + 4))";
+		final String expected = grammar.parse(expression).toString();
+		final ParseOptions[] options = {new ParseOptions(), new ParseOptions().setPackratMode(true),
+				new ParseOptions().setEarleyMode(true), new ParseOptions().setLl1Mode(false)};
+		final boolean[] ok = new boolean[8];
+		Thread[] threads = new Thread[ok.length];
+		for (int i = 0; i < threads.length; i++)
+		{
+			final int index = i;
+			threads[i] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						boolean same = true;
+						for (int j = 0; j < 200; j++)
+						{
+							ParseNode node = grammar.parse(expression, options[(index + j) % options.length]);
+							same &= node != null && expected.equals(node.toString());
+						}
+						ok[index] = same;
+					}
+					catch (BnfParser.ParseException e)
+					{
+						ok[index] = false;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i].join();
+			assertTrue(ok[i]);
+		}
+	}
+
+	@Test
+	public void generatedParser() throws Exception
+	{
+		BnfParser parser = new BnfParser();
+		parser.setGrammar("<S> := <item> , <S> | <item> ;\n<item> := <pair> | <num> | <opt> ;\n"
+				+ "<pair> := key = <num> | key : <num> ;\n<num> := ^(\\d+)(\\.\\d+)?;\n<opt> := ? <end> ;\n<end> := ! | \u03B5;");
+		parser.setLl1Mode(false);
+		String[] inputs = {"1", "key = 2 , 3.5 , key : 4", "? , ? !", "key = ", "1 , <item>", "key : 1 2"};
+		String[] expected = new String[inputs.length];
+		for (int i = 0; i < inputs.length; i++)
+		{
+			ParseNode node = parser.parse(inputs[i]);
+			expected[i] = node == null ? null : node.toString();
+		}
+		parser.setCodeGeneration(true);
+		CompiledGrammar grammar = parser.compile();
+		assertEquals(javax.tools.ToolProvider.getSystemJavaCompiler() != null, grammar.isGenerated());
+		if (grammar.isGenerated())
+		{
+			// The class has a loader of its own, so that it can be unloaded
+			ClassLoader loader = grammar.getSymbols().getGeneratedParser().getClass().getClassLoader();
+			assertNotSame(BnfParser.class.getClassLoader(), loader);
+		}
+		for (int i = 0; i < inputs.length; i++)
+		{
+			ParseNode node = parser.parse(inputs[i]);
+			assertEquals(expected[i], node == null ? null : node.toString());
+		}
+		ParseNode node = grammar.parse("1 , <item>", new ParseOptions().setPartialParsing(true));
+		assertNotNull(node);
+		assertEquals("<item>", node.getChildren().get(2).getChildren().get(0).getToken());
+		parser.setCodeGeneration(false);
+		assertFalse(parser.compile().isGenerated());
+	}
 }